@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of decompressing 4MB of text-like data with BZip2Codec, with
+ * the native and the pure-Java implementations: as one stream, and block
+ * by block as a map task reads a split. Each operation decompresses the
+ * whole 4MB. The native library must be on java.library.path for the
+ * native implementation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BZip2Benchmark {
+  private static final int DATA_LENGTH = 4 * 1024 * 1024;
+
+  @Param({"system-native", "java-builtin"})
+  String library;
+
+  private Configuration conf;
+  private SplittableCompressionCodec codec;
+  private Decompressor decompressor;
+  private byte[] compressed;
+  private FileSystem fs;
+  private Path file;
+  private final byte[] buffer = new byte[64 * 1024];
+
+  @Setup
+  public void setup() throws Exception {
+    conf = new Configuration();
+    conf.set(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_LIBRARY_KEY,
+        library);
+    codec = ReflectionUtils.newInstance(BZip2Codec.class, conf);
+    decompressor = CodecPool.getDecompressor(codec);
+
+    // Words from a small vocabulary, which compress much like logs do
+    Random r = new Random(0);
+    String[] words = new String[512];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = Long.toString(r.nextLong() & 0xffffffffL, 36);
+    }
+    StringBuilder sb = new StringBuilder(DATA_LENGTH);
+    while (sb.length() < DATA_LENGTH) {
+      sb.append(words[r.nextInt(words.length)]);
+      sb.append(r.nextInt(16) == 0 ? '\n' : ' ');
+    }
+    byte[] data = sb.substring(0, DATA_LENGTH).getBytes("UTF-8");
+
+    fs = FileSystem.getLocal(conf);
+    file = new Path(File.createTempFile("BZip2Benchmark", ".bz2")
+        .getAbsolutePath());
+    OutputStream out = codec.createOutputStream(fs.create(file, true));
+    out.write(data);
+    out.close();
+    compressed = new byte[(int) fs.getFileStatus(file).getLen()];
+    IOUtils.readFully(fs.open(file), compressed, 0, compressed.length);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    CodecPool.returnDecompressor(decompressor);
+    fs.delete(file, false);
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    decompressor.reset();
+    return readAll(codec.createInputStream(
+        new ByteArrayInputStream(compressed), decompressor));
+  }
+
+  @Benchmark
+  public long decompressSplit() throws IOException {
+    decompressor.reset();
+    return readAll(codec.createInputStream(fs.open(file), decompressor,
+        0, compressed.length, SplittableCompressionCodec.READ_MODE.BYBLOCK));
+  }
+
+  private long readAll(InputStream in) throws IOException {
+    long total = 0;
+    try {
+      for (int n; (n = in.read(buffer)) >= 0; ) {
+        total += n;
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.IOUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares the JSON results of two runs of the benchmarks, as written by
+ * JMH with <tt>-rf json</tt>, and reports each benchmark's change from the
+ * baseline. A benchmark has regressed if its score got worse by more than
+ * the threshold, and by more than the error of the two scores together.
+ *
+ * <pre>
+ * BenchmarkReport [-threshold percent] baseline.json current.json
+ * </pre>
+ * exits with status 1 if any benchmark has regressed.
+ */
+public class BenchmarkReport {
+  /** The default threshold for a regression, in percent. */
+  static final double DEFAULT_THRESHOLD = 10.0;
+
+  /** The results of a benchmark in both runs. */
+  static class Comparison {
+    final String name;
+    final Result baseline;
+    final Result current;
+
+    Comparison(String name, Result baseline, Result current) {
+      this.name = name;
+      this.baseline = baseline;
+      this.current = current;
+    }
+
+    /**
+     * @return the change in score, in percent, where a positive change is
+     *         an improvement, or NaN if the benchmark was not in both runs
+     */
+    double getImprovement() {
+      if (baseline == null || current == null || baseline.score == 0) {
+        return Double.NaN;
+      }
+      double change = (current.score - baseline.score) / baseline.score * 100;
+      return current.higherIsBetter() ? change : -change;
+    }
+
+    boolean isRegression(double threshold) {
+      double improvement = getImprovement();
+      if (Double.isNaN(improvement) || improvement >= -threshold) {
+        return false;
+      }
+      // Don't report changes which are within the noise of the runs
+      return Math.abs(current.score - baseline.score) >
+          current.error + baseline.error;
+    }
+  }
+
+  /** The score of a single benchmark. */
+  static class Result {
+    final String mode;
+    final double score;
+    final double error;
+    final String unit;
+
+    Result(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = Double.isNaN(error) ? 0 : error;
+      this.unit = unit;
+    }
+
+    /** Throughput is better when higher; times are better when lower. */
+    boolean higherIsBetter() {
+      return "thrpt".equals(mode);
+    }
+  }
+
+  /**
+   * Read the results of a run.
+   * @return the results, keyed by benchmark name, parameters and mode
+   */
+  static Map<String, Result> readResults(JsonNode run) throws IOException {
+    if (!run.isArray()) {
+      throw new IOException("Not a list of JMH results");
+    }
+    Map<String, Result> results = new TreeMap<String, Result>();
+    for (JsonNode benchmark : run) {
+      StringBuilder name = new StringBuilder(
+          benchmark.path("benchmark").getTextValue());
+      // JMH lists the parameters in a consistent order
+      JsonNode params = benchmark.path("params");
+      for (Iterator<Map.Entry<String, JsonNode>> it = params.getFields();
+          it.hasNext(); ) {
+        Map.Entry<String, JsonNode> param = it.next();
+        name.append(name.indexOf(":") < 0 ? ":" : ",");
+        name.append(param.getKey()).append('=')
+            .append(param.getValue().getValueAsText());
+      }
+      String mode = benchmark.path("mode").getTextValue();
+      name.append(" (").append(mode).append(')');
+      JsonNode metric = benchmark.path("primaryMetric");
+      results.put(name.toString(), new Result(mode,
+          metric.path("score").getValueAsDouble(Double.NaN),
+          metric.path("scoreError").getValueAsDouble(Double.NaN),
+          metric.path("scoreUnit").getTextValue()));
+    }
+    return results;
+  }
+
+  private static Map<String, Result> readResults(File file)
+      throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      return readResults(new ObjectMapper().readTree(in));
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  /** Pair up the results of the benchmarks in either run. */
+  static List<Comparison> compare(Map<String, Result> baseline,
+      Map<String, Result> current) {
+    Map<String, Comparison> comparisons = new TreeMap<String, Comparison>();
+    for (Map.Entry<String, Result> e : current.entrySet()) {
+      comparisons.put(e.getKey(), new Comparison(e.getKey(),
+          baseline.get(e.getKey()), e.getValue()));
+    }
+    for (Map.Entry<String, Result> e : baseline.entrySet()) {
+      if (!current.containsKey(e.getKey())) {
+        comparisons.put(e.getKey(),
+            new Comparison(e.getKey(), e.getValue(), null));
+      }
+    }
+    return new ArrayList<Comparison>(comparisons.values());
+  }
+
+  /**
+   * Print the comparisons.
+   * @return the number of regressions
+   */
+  static int report(List<Comparison> comparisons, double threshold,
+      PrintStream out) {
+    int regressions = 0;
+    out.println(String.format("%-8s %12s %12s %9s  %s",
+        "", "baseline", "current", "change", "benchmark"));
+    for (Comparison c : comparisons) {
+      String status;
+      if (c.baseline == null) {
+        status = "NEW";
+      } else if (c.current == null) {
+        status = "REMOVED";
+      } else if (c.isRegression(threshold)) {
+        status = "WORSE";
+        regressions++;
+      } else {
+        status = "";
+      }
+      String unit = c.current != null ? c.current.unit : c.baseline.unit;
+      out.println(String.format("%-8s %12s %12s %8s%%  %s [%s]", status,
+          format(c.baseline), format(c.current), 
+          Double.isNaN(c.getImprovement())
+              ? "-" : String.format("%+.1f", c.getImprovement()),
+          c.name, unit));
+    }
+    out.println();
+    out.println(regressions + " of " + comparisons.size() +
+        " benchmarks regressed by more than " + threshold + "%");
+    return regressions;
+  }
+
+  private static String format(Result r) {
+    return r == null ? "-" : String.format("%.3f", r.score);
+  }
+
+  public static void main(String[] args) throws IOException {
+    double threshold = DEFAULT_THRESHOLD;
+    int i = 0;
+    if (args.length > 0 && "-threshold".equals(args[0])) {
+      threshold = Double.parseDouble(args[1]);
+      i = 2;
+    }
+    if (args.length - i != 2) {
+      System.err.println("Usage: BenchmarkReport [-threshold percent] " +
+          "baseline.json current.json");
+      System.exit(2);
+    }
+    Map<String, Result> baseline = readResults(new File(args[i]));
+    Map<String, Result> current = readResults(new File(args[i + 1]));
+    int regressions = report(compare(baseline, current), threshold,
+        System.out);
+    System.exit(regressions > 0 ? 1 : 0);
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.WritableComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link WritableComparator#compareBytes}, which uses
+ * FastByteComparisons, on arrays which only differ in their last byte.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteComparisonBenchmark {
+  @Param({"8", "64", "1024"})
+  int length;
+
+  private byte[] left;
+  private byte[] equal;
+  private byte[] greater;
+
+  @Setup
+  public void setup() {
+    left = new byte[length];
+    for (int i = 0; i < length; i++) {
+      left[i] = (byte)i;
+    }
+    equal = left.clone();
+    greater = left.clone();
+    greater[length - 1]++;
+  }
+
+  @Benchmark
+  public int compareEqual() {
+    return WritableComparator.compareBytes(
+        left, 0, left.length, equal, 0, equal.length);
+  }
+
+  @Benchmark
+  public int compareDiffering() {
+    return WritableComparator.compareBytes(
+        left, 0, left.length, greater, 0, greater.length);
+  }
+}
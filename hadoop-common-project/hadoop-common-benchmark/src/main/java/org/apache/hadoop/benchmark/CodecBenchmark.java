@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of compressing and decompressing 1MB of text-like data
+ * through the streams of each codec, with pooled (de)compressors as
+ * MapReduce uses them. Whether native code is used depends on whether
+ * the native library is on java.library.path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+  private static final int DATA_LENGTH = 1024 * 1024;
+
+  @Param({"org.apache.hadoop.io.compress.DefaultCodec",
+          "org.apache.hadoop.io.compress.GzipCodec",
+          "org.apache.hadoop.io.compress.BZip2Codec"})
+  String codecClass;
+
+  private CompressionCodec codec;
+  private Compressor compressor;
+  private Decompressor decompressor;
+  private byte[] data;
+  private byte[] compressed;
+  private final byte[] buffer = new byte[64 * 1024];
+  private final ByteArrayOutputStream out =
+      new ByteArrayOutputStream(DATA_LENGTH);
+
+  @Setup
+  public void setup() throws Exception {
+    Configuration conf = new Configuration();
+    codec = (CompressionCodec)ReflectionUtils.newInstance(
+        conf.getClassByName(codecClass), conf);
+    compressor = CodecPool.getCompressor(codec);
+    decompressor = CodecPool.getDecompressor(codec);
+
+    // Words from a small vocabulary, which compress much like logs do
+    Random r = new Random(0);
+    String[] words = new String[512];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = Long.toString(r.nextLong() & 0xffffffffL, 36);
+    }
+    StringBuilder sb = new StringBuilder(DATA_LENGTH);
+    while (sb.length() < DATA_LENGTH) {
+      sb.append(words[r.nextInt(words.length)]);
+      sb.append(r.nextInt(16) == 0 ? '\n' : ' ');
+    }
+    data = sb.substring(0, DATA_LENGTH).getBytes("UTF-8");
+    compressed = compress().toByteArray();
+  }
+
+  @TearDown
+  public void tearDown() {
+    CodecPool.returnCompressor(compressor);
+    CodecPool.returnDecompressor(decompressor);
+  }
+
+  @Benchmark
+  public ByteArrayOutputStream compress() throws IOException {
+    out.reset();
+    // Without native zlib, gzip streams don't use a pooled compressor
+    if (compressor != null) {
+      compressor.reset();
+    }
+    OutputStream cout = codec.createOutputStream(out, compressor);
+    cout.write(data);
+    cout.close();
+    return out;
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    if (decompressor != null) {
+      decompressor.reset();
+    }
+    InputStream cin = codec.createInputStream(
+        new ByteArrayInputStream(compressed), decompressor);
+    long total = 0;
+    try {
+      for (int n; (n = cin.read(buffer)) > 0; ) {
+        total += n;
+      }
+    } finally {
+      IOUtils.closeStream(cin);
+    }
+    return total;
+  }
+}
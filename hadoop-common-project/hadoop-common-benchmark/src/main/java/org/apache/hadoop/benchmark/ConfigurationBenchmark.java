@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of creating, copying and reading {@link Configuration}s, and
+ * of reading the frozen snapshots returned by {@link Configuration#freeze()}.
+ * The lookups read a key which is set, one which expands a variable, and
+ * one which is not set, as code reading a default does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigurationBenchmark {
+  private static final String SET_KEY =
+      CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_KEY;
+  private static final String EXPANDED_KEY = "benchmark.expanded";
+  private static final String UNSET_KEY = "benchmark.unset";
+
+  @Param({"false", "true"})
+  boolean frozen;
+
+  private Configuration conf;
+
+  @Setup
+  public void setup() {
+    Configuration c = new Configuration();
+    c.set(EXPANDED_KEY, "${hadoop.tmp.dir}/benchmark");
+    conf = frozen ? c.freeze() : c;
+  }
+
+  /** Create a configuration and load the default resources. */
+  @Benchmark
+  public Configuration create() {
+    Configuration c = new Configuration();
+    c.size();
+    return c;
+  }
+
+  @Benchmark
+  public Configuration copy() {
+    return new Configuration(conf);
+  }
+
+  @Benchmark
+  public Configuration freeze() {
+    return conf.freeze();
+  }
+
+  @Benchmark
+  public String get() {
+    return conf.get(SET_KEY);
+  }
+
+  @Benchmark
+  public String getExpanded() {
+    return conf.get(EXPANDED_KEY);
+  }
+
+  @Benchmark
+  public String getUnset() {
+    return conf.get(UNSET_KEY, "default");
+  }
+
+  @Benchmark
+  public int getInt() {
+    return conf.getInt(SET_KEY, 4096);
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.FieldLayout;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of a composite key declaring a {@link FieldLayout}, against
+ * the same key written by hand without a raw comparator: comparing
+ * serialized keys, as a sort does, and a write and read round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldLayoutBenchmark {
+
+  @FieldLayout.Fields({ "timestamp", "user", "bytes" })
+  public static class LayoutKey implements WritableComparable<LayoutKey> {
+    private static final FieldLayout<LayoutKey> LAYOUT =
+        FieldLayout.get(LayoutKey.class);
+
+    long timestamp;
+    Text user = new Text();
+    int bytes;
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      LAYOUT.write(this, out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      LAYOUT.readFields(this, in);
+    }
+
+    @Override
+    public int compareTo(LayoutKey other) {
+      return LAYOUT.compare(this, other);
+    }
+  }
+
+  public static class HandWrittenKey
+      implements WritableComparable<HandWrittenKey> {
+    long timestamp;
+    Text user = new Text();
+    int bytes;
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeLong(timestamp);
+      user.write(out);
+      out.writeInt(bytes);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      timestamp = in.readLong();
+      user.readFields(in);
+      bytes = in.readInt();
+    }
+
+    @Override
+    public int compareTo(HandWrittenKey other) {
+      if (timestamp != other.timestamp) {
+        return timestamp < other.timestamp ? -1 : 1;
+      }
+      int c = user.compareTo(other.user);
+      if (c != 0) {
+        return c;
+      }
+      return bytes < other.bytes ? -1 : (bytes == other.bytes ? 0 : 1);
+    }
+  }
+
+  private final LayoutKey layoutKey = new LayoutKey();
+  private final HandWrittenKey handWrittenKey = new HandWrittenKey();
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private WritableComparator layoutComparator;
+  private WritableComparator handWrittenComparator;
+  private byte[] layout1;
+  private byte[] layout2;
+  private byte[] handWritten1;
+  private byte[] handWritten2;
+
+  @Setup
+  public void setup() throws IOException {
+    layoutComparator = WritableComparator.get(LayoutKey.class);
+    handWrittenComparator = WritableComparator.get(HandWrittenKey.class);
+    // keys differing in their last field, so that all the fields are read
+    layoutKey.timestamp = handWrittenKey.timestamp = 1350561600000L;
+    layoutKey.user.set("hadoop-user-0001");
+    handWrittenKey.user.set("hadoop-user-0001");
+    layoutKey.bytes = handWrittenKey.bytes = 1;
+    layout1 = serialize(layoutKey);
+    handWritten1 = serialize(handWrittenKey);
+    layoutKey.bytes = handWrittenKey.bytes = 2;
+    layout2 = serialize(layoutKey);
+    handWritten2 = serialize(handWrittenKey);
+  }
+
+  private byte[] serialize(WritableComparable<?> key) throws IOException {
+    out.reset();
+    key.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Benchmark
+  public int compareLayout() {
+    return layoutComparator.compare(layout1, 0, layout1.length,
+        layout2, 0, layout2.length);
+  }
+
+  @Benchmark
+  public int compareHandWritten() {
+    return handWrittenComparator.compare(handWritten1, 0, handWritten1.length,
+        handWritten2, 0, handWritten2.length);
+  }
+
+  @Benchmark
+  public LayoutKey roundTripLayout() throws IOException {
+    out.reset();
+    layoutKey.write(out);
+    in.reset(out.getData(), out.getLength());
+    layoutKey.readFields(in);
+    return layoutKey;
+  }
+
+  @Benchmark
+  public HandWrittenKey roundTripHandWritten() throws IOException {
+    out.reset();
+    handWrittenKey.write(out);
+    in.reset(out.getData(), out.getLength());
+    handWrittenKey.readFields(in);
+    return handWrittenKey;
+  }
+}
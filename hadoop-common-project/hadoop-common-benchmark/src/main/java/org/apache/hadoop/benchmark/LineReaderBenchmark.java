@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of reading 1MB of lines with {@link LineReader}, with the
+ * default and a custom delimiter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineReaderBenchmark {
+  private static final int DATA_LENGTH = 1024 * 1024;
+  private static final byte[] CUSTOM_DELIMITER = "\r\n".getBytes();
+
+  /** The average length of a line. */
+  @Param({"20", "200"})
+  int lineLength;
+
+  private byte[] data;
+  private byte[] customDelimitedData;
+  private final Text line = new Text();
+
+  @Setup
+  public void setup() {
+    data = generate((byte)'\n');
+    customDelimitedData = generate((byte)'\r');
+    for (int i = 0; i < customDelimitedData.length - 1; i++) {
+      if (customDelimitedData[i] == '\r') {
+        customDelimitedData[++i] = '\n';
+      }
+    }
+  }
+
+  private byte[] generate(byte delimiter) {
+    Random r = new Random(0);
+    byte[] bytes = new byte[DATA_LENGTH];
+    for (int i = 0; i < DATA_LENGTH; i++) {
+      bytes[i] = r.nextInt(lineLength) == 0
+          ? delimiter : (byte)('a' + r.nextInt(26));
+    }
+    return bytes;
+  }
+
+  @Benchmark
+  public int readLines() throws IOException {
+    return readAll(new LineReader(new ByteArrayInputStream(data)));
+  }
+
+  @Benchmark
+  public int readCustomDelimitedLines() throws IOException {
+    return readAll(new LineReader(
+        new ByteArrayInputStream(customDelimitedData), CUSTOM_DELIMITER));
+  }
+
+  private int readAll(LineReader reader) throws IOException {
+    int lines = 0;
+    try {
+      while (reader.readLine(line) > 0) {
+        lines++;
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the steps of a log parsing job over 1MB of daemon log
+ * lines: splitting the lines with {@link LineReader}, validating them,
+ * looking for a level with {@link Text#find(String)}, and converting them
+ * to strings.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogLineBenchmark {
+  private static final int DATA_LENGTH = 1024 * 1024;
+  private static final String[] LEVELS = { "INFO", "INFO", "INFO", "WARN",
+      "DEBUG", "ERROR" };
+  private static final String[] CLASSES = {
+      "org.apache.hadoop.mapred.TaskTracker",
+      "org.apache.hadoop.hdfs.server.datanode.DataNode",
+      "org.apache.hadoop.ipc.Server",
+      "org.apache.hadoop.hdfs.StateChange" };
+
+  private byte[] data;
+  private final Text line = new Text();
+
+  @Setup
+  public void setup() {
+    Random r = new Random(0);
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < DATA_LENGTH) {
+      sb.append(String.format("2012-10-%02d %02d:%02d:%02d,%03d %s %s: ",
+          1 + r.nextInt(28), r.nextInt(24), r.nextInt(60), r.nextInt(60),
+          r.nextInt(1000), LEVELS[r.nextInt(LEVELS.length)],
+          CLASSES[r.nextInt(CLASSES.length)]));
+      switch (r.nextInt(3)) {
+      case 0:
+        sb.append(String.format("attempt_201210181234_%04d_m_%06d_0 %.1f%% "
+            + "hdfs://nn.example.com:8020/user/hadoop/input/part-%05d:0+%d",
+            r.nextInt(10000), r.nextInt(1000000), r.nextDouble() * 100,
+            r.nextInt(100000), r.nextInt(1 << 27)));
+        break;
+      case 1:
+        sb.append(String.format("Receiving block blk_%d_%d src: /10.0.%d.%d:"
+            + "%d dest: /10.0.%d.%d:50010", r.nextLong(), r.nextInt(10000),
+            r.nextInt(256), r.nextInt(256), 30000 + r.nextInt(30000),
+            r.nextInt(256), r.nextInt(256)));
+        break;
+      default:
+        sb.append(String.format("IPC Server handler %d on 8020, call "
+            + "getFileInfo(/user/hadoop/out/_temporary/_attempt_%d) from "
+            + "10.0.%d.%d:%d", r.nextInt(10), r.nextInt(1000000),
+            r.nextInt(256), r.nextInt(256), 30000 + r.nextInt(30000)));
+      }
+      sb.append('\n');
+    }
+    data = sb.toString().getBytes();
+  }
+
+  @Benchmark
+  public int readLines() throws IOException {
+    LineReader reader = new LineReader(new ByteArrayInputStream(data));
+    int lines = 0;
+    try {
+      while (reader.readLine(line) > 0) {
+        lines++;
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  @Benchmark
+  public int readAndValidateLines() throws Exception {
+    LineReader reader = new LineReader(new ByteArrayInputStream(data));
+    int lines = 0;
+    try {
+      while (reader.readLine(line) > 0) {
+        Text.validateUTF8(line.getBytes(), 0, line.getLength());
+        lines++;
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  @Benchmark
+  public int readAndFindErrors() throws IOException {
+    LineReader reader = new LineReader(new ByteArrayInputStream(data));
+    int errors = 0;
+    try {
+      while (reader.readLine(line) > 0) {
+        if (line.find(" ERROR ") >= 0) {
+          errors++;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return errors;
+  }
+
+  @Benchmark
+  public int readLinesToString() throws IOException {
+    LineReader reader = new LineReader(new ByteArrayInputStream(data));
+    int chars = 0;
+    try {
+      while (reader.readLine(line) > 0) {
+        chars += line.toString().length();
+      }
+    } finally {
+      reader.close();
+    }
+    return chars;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.util.SampleStat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of updating metrics2 metrics from every available processor
+ * at once, as the RPC handlers and DataNode transfer threads do. The
+ * synchronized benchmarks update a counter and a stat guarded by a single
+ * monitor, as the mutable metrics did before they were striped, to show
+ * the cost of contention on this machine.
+ *
+ * Run with <tt>-t</tt> to vary the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+  private MutableCounterLong counter;
+  private MutableRate rate;
+  private MutableQuantiles quantiles;
+
+  private long syncCounter;
+  private final SampleStat syncStat = new SampleStat();
+
+  @Setup
+  public void setup() {
+    MetricsRegistry registry = new MetricsRegistry("benchmark");
+    counter = registry.newCounter("counter", "counter", 0L);
+    rate = registry.newRate("rate", "rate", true);
+    quantiles = registry.newQuantiles("quantiles", "quantiles", "Ops",
+        "Latency", 60);
+  }
+
+  @Benchmark
+  public void counterIncr() {
+    counter.incr();
+  }
+
+  @Benchmark
+  public void rateAdd() {
+    rate.add(42);
+  }
+
+  @Benchmark
+  public void quantilesAdd() {
+    quantiles.add(42);
+  }
+
+  @Benchmark
+  public void synchronizedCounterIncr() {
+    synchronized (this) {
+      ++syncCounter;
+    }
+  }
+
+  @Benchmark
+  public void synchronizedStatAdd() {
+    synchronized (syncStat) {
+      syncStat.add(42);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of reading every record of a local SequenceFile with
+ * {@link SequenceFile.Reader} and with {@link SequenceFile.MappedReader},
+ * deserializing the records and as raw bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequenceFileBenchmark {
+  private static final int NUM_RECORDS = 100000;
+
+  @Param({"NONE", "RECORD", "BLOCK"})
+  CompressionType compression;
+
+  @Param({"100"})
+  int valueLength;
+
+  private final Configuration conf = new Configuration();
+  private FileSystem fs;
+  private Path file;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    fs = FileSystem.getLocal(conf);
+    File f = File.createTempFile("SequenceFileBenchmark", ".seq");
+    file = new Path(f.getAbsolutePath());
+    Random r = new Random(0);
+    LongWritable key = new LongWritable();
+    byte[] valueBytes = new byte[valueLength];
+    BytesWritable value = new BytesWritable();
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(file),
+        SequenceFile.Writer.keyClass(LongWritable.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class),
+        SequenceFile.Writer.compression(compression));
+    try {
+      for (int i = 0; i < NUM_RECORDS; i++) {
+        // Only half random, so that the values are somewhat compressible
+        for (int j = 0; j < valueLength; j += 2) {
+          valueBytes[j] = (byte)r.nextInt();
+        }
+        key.set(i);
+        value.set(valueBytes, 0, valueLength);
+        writer.append(key, value);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    fs.delete(file, false);
+  }
+
+  @Benchmark
+  public int readAll() throws IOException {
+    SequenceFile.Reader reader =
+        new SequenceFile.Reader(conf, SequenceFile.Reader.file(file));
+    LongWritable key = new LongWritable();
+    BytesWritable value = new BytesWritable();
+    int records = 0;
+    try {
+      while (reader.next(key, value)) {
+        records++;
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+
+  @Benchmark
+  public int readAllRaw() throws IOException {
+    SequenceFile.Reader reader =
+        new SequenceFile.Reader(conf, SequenceFile.Reader.file(file));
+    DataOutputBuffer key = new DataOutputBuffer();
+    SequenceFile.ValueBytes value = reader.createValueBytes();
+    DataOutputBuffer valueBytes = new DataOutputBuffer();
+    int bytes = 0;
+    try {
+      while (reader.nextRaw(key, value) >= 0) {
+        valueBytes.reset();
+        value.writeUncompressedBytes(valueBytes);
+        bytes += key.getLength() + valueBytes.getLength();
+        key.reset();
+      }
+    } finally {
+      reader.close();
+    }
+    return bytes;
+  }
+
+  @Benchmark
+  public int readAllMapped() throws IOException {
+    SequenceFile.MappedReader reader =
+        new SequenceFile.MappedReader(conf, file);
+    LongWritable key = new LongWritable();
+    BytesWritable value = new BytesWritable();
+    int records = 0;
+    try {
+      while (reader.next(key, value)) {
+        records++;
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+
+  @Benchmark
+  public int readAllMappedRaw() throws IOException {
+    SequenceFile.MappedReader reader =
+        new SequenceFile.MappedReader(conf, file);
+    int bytes = 0;
+    try {
+      while (reader.next()) {
+        bytes += reader.getKey().remaining() + reader.getValue().remaining();
+      }
+    } finally {
+      reader.close();
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of looking up random keys in a block-compressed {@link MapFile}
+ * and in block-compressed SequenceFiles with a block index, with and
+ * without bloom filters. The keys looked up are either all in the files,
+ * or all missing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequenceFileLookupBenchmark {
+  private static final int NUM_RECORDS = 200000;
+
+  @Param({"true", "false"})
+  boolean present;
+
+  @Param({"100"})
+  int valueLength;
+
+  private final Configuration conf = new Configuration();
+  private final Random random = new Random(0);
+  private final LongWritable key = new LongWritable();
+  private final BytesWritable value = new BytesWritable();
+  private FileSystem fs;
+  private File dir;
+  private MapFile.Reader mapFile;
+  private SequenceFile.Reader indexed;
+  private SequenceFile.Reader bloomIndexed;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    fs = FileSystem.getLocal(conf);
+    dir = File.createTempFile("SequenceFileLookupBenchmark", "");
+    dir.delete();
+    dir.mkdirs();
+    Path mapFilePath = new Path(dir.getAbsolutePath(), "map");
+    Path indexedPath = new Path(dir.getAbsolutePath(), "indexed.seq");
+    Path bloomPath = new Path(dir.getAbsolutePath(), "bloom.seq");
+
+    MapFile.Writer mapWriter = new MapFile.Writer(conf, mapFilePath,
+        MapFile.Writer.keyClass(LongWritable.class),
+        MapFile.Writer.valueClass(BytesWritable.class),
+        MapFile.Writer.compression(CompressionType.BLOCK));
+    SequenceFile.Writer indexedWriter = createWriter(indexedPath, false);
+    SequenceFile.Writer bloomWriter = createWriter(bloomPath, true);
+    byte[] valueBytes = new byte[valueLength];
+    try {
+      for (int i = 0; i < NUM_RECORDS; i++) {
+        for (int j = 0; j < valueLength; j += 2) {
+          valueBytes[j] = (byte)random.nextInt();
+        }
+        // even keys, so that odd keys are missing
+        key.set(2L * i);
+        value.set(valueBytes, 0, valueLength);
+        mapWriter.append(key, value);
+        indexedWriter.append(key, value);
+        bloomWriter.append(key, value);
+      }
+    } finally {
+      mapWriter.close();
+      indexedWriter.close();
+      bloomWriter.close();
+    }
+
+    mapFile = new MapFile.Reader(mapFilePath, conf);
+    indexed = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(indexedPath));
+    bloomIndexed = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(bloomPath));
+  }
+
+  private SequenceFile.Writer createWriter(Path path, boolean bloomFilters)
+      throws IOException {
+    return SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(LongWritable.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK),
+        SequenceFile.Writer.blockIndex(bloomFilters));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    mapFile.close();
+    indexed.close();
+    bloomIndexed.close();
+    fs.delete(new Path(dir.getAbsolutePath()), true);
+  }
+
+  private LongWritable nextKey() {
+    long k = 2L * random.nextInt(NUM_RECORDS);
+    key.set(present ? k : k + 1);
+    return key;
+  }
+
+  @Benchmark
+  public Writable mapFile() throws IOException {
+    return mapFile.get(nextKey(), value);
+  }
+
+  @Benchmark
+  public Writable blockIndex() throws IOException {
+    return indexed.get(nextKey(), value);
+  }
+
+  @Benchmark
+  public Writable blockIndexBloom() throws IOException {
+    return bloomIndexed.get(nextKey(), value);
+  }
+}
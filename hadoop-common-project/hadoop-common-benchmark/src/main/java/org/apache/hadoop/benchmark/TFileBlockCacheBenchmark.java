@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.file.tfile.TFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of looking up random keys in a gzip compressed TFile, with and
+ * without the block cache shared by the TFile readers. The cache is large
+ * enough for the whole file, so that once warm every lookup is a hit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TFileBlockCacheBenchmark {
+  private static final int NUM_RECORDS = 200000;
+
+  @Param({"true", "false"})
+  boolean cached;
+
+  @Param({"direct", "heap"})
+  String storage;
+
+  @Param({"65536"})
+  int blockSize;
+
+  private final Configuration conf = new Configuration();
+  private final Random random = new Random(0);
+  private FileSystem fs;
+  private File dir;
+  private TFile.Reader reader;
+  private TFile.Reader.Scanner scanner;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    conf.setLong("tfile.block.cache.size", 256L * 1024 * 1024);
+    conf.setBoolean("tfile.block.cache.direct", "direct".equals(storage));
+    fs = FileSystem.getLocal(conf);
+    dir = File.createTempFile("TFileBlockCacheBenchmark", "");
+    dir.delete();
+    dir.mkdirs();
+    Path path = new Path(dir.getAbsolutePath(), "data.tfile");
+
+    FSDataOutputStream out = fs.create(path);
+    TFile.Writer writer = new TFile.Writer(out, blockSize, "gz", "memcmp",
+        conf);
+    byte[] value = new byte[100];
+    try {
+      for (int i = 0; i < NUM_RECORDS; i++) {
+        for (int j = 0; j < value.length; j += 2) {
+          value[j] = (byte) random.nextInt();
+        }
+        writer.append(key(i), value);
+      }
+    } finally {
+      writer.close();
+      out.close();
+    }
+
+    long length = fs.getFileStatus(path).getLen();
+    String cacheName = cached
+        ? path + ":" + fs.getFileStatus(path).getModificationTime()
+        : null;
+    reader = new TFile.Reader(fs.open(path), length, conf, cacheName);
+    scanner = reader.createScanner();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    scanner.close();
+    reader.close();
+    fs.delete(new Path(dir.getAbsolutePath()), true);
+  }
+
+  private static byte[] key(int i) {
+    return String.format("key%09d", i).getBytes();
+  }
+
+  @Benchmark
+  public boolean seekTo() throws IOException {
+    return scanner.seekTo(key(random.nextInt(NUM_RECORDS)));
+  }
+}
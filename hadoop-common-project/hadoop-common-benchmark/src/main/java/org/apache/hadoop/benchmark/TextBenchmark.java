@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of encoding, decoding and comparing {@link Text}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextBenchmark {
+  /** The number of characters in the string. */
+  @Param({"16", "256"})
+  int length;
+
+  /** Whether the string is all ASCII, or all two byte characters. */
+  @Param({"true", "false"})
+  boolean ascii;
+
+  private String string;
+  private byte[] utf8;
+  private Text text;
+  private Text equalText;
+
+  @Setup
+  public void setup() {
+    char[] chars = new char[length];
+    Arrays.fill(chars, ascii ? 'x' : '\u00e9');
+    string = new String(chars);
+    text = new Text(string);
+    equalText = new Text(string);
+    utf8 = Arrays.copyOf(text.getBytes(), text.getLength());
+  }
+
+  @Benchmark
+  public Text set() {
+    text.set(string);
+    return text;
+  }
+
+  @Benchmark
+  public String decode() throws CharacterCodingException {
+    return Text.decode(utf8);
+  }
+
+  @Benchmark
+  public String textToString() {
+    return text.toString();
+  }
+
+  @Benchmark
+  public int compareEqual() {
+    return text.compareTo(equalText);
+  }
+
+  @Benchmark
+  public void validateUTF8() throws Exception {
+    Text.validateUTF8(utf8);
+  }
+}
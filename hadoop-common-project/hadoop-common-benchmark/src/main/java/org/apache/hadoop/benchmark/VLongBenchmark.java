@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link WritableUtils#readVLong} and
+ * {@link WritableUtils#writeVLong}, per value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VLongBenchmark {
+  private static final int NUM_VALUES = 1024;
+
+  /** The largest number of bytes a value may take to encode. */
+  @Param({"1", "4", "9"})
+  int maxEncodedLength;
+
+  private final long[] values = new long[NUM_VALUES];
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private byte[] encoded;
+  private int encodedLength;
+
+  @Setup
+  public void setup() throws IOException {
+    Random r = new Random(0);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      long v;
+      do {
+        v = r.nextLong() >> r.nextInt(64);
+      } while (WritableUtils.getVIntSize(v) > maxEncodedLength);
+      values[i] = v;
+    }
+    write();
+    encoded = out.getData().clone();
+    encodedLength = out.getLength();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public long read() throws IOException {
+    in.reset(encoded, encodedLength);
+    long sum = 0;
+    for (int i = 0; i < NUM_VALUES; i++) {
+      sum += WritableUtils.readVLong(in);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public DataOutputBuffer write() throws IOException {
+    out.reset();
+    for (int i = 0; i < NUM_VALUES; i++) {
+      WritableUtils.writeVLong(out, values[i]);
+    }
+    return out;
+  }
+}
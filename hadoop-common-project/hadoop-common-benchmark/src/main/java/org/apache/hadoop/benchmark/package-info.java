@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * JMH microbenchmarks of the serialization, comparison, checksumming and
+ * compression code at the core of Hadoop.
+ *
+ * <p>The benchmarks are only built with the <tt>benchmark</tt> profile:
+ * <pre>
+ * mvn package -Pbenchmark -DskipTests -pl hadoop-common-project/hadoop-common-benchmark -am
+ * java -jar hadoop-common-project/hadoop-common-benchmark/target/benchmarks.jar \
+ *     -rf json -rff current.json [benchmark regexp]
+ * </pre>
+ *
+ * <p>To catch regressions, keep the results of a run against a baseline
+ * (eg the previous release) and compare a new run with them using
+ * {@link org.apache.hadoop.benchmark.BenchmarkReport}:
+ * <pre>
+ * java -cp hadoop-common-project/hadoop-common-benchmark/target/benchmarks.jar \
+ *     org.apache.hadoop.benchmark.BenchmarkReport baseline.json current.json
+ * </pre>
+ */
+@InterfaceAudience.Private
+package org.apache.hadoop.benchmark;
+import org.apache.hadoop.classification.InterfaceAudience;
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.benchmark.BenchmarkReport.Comparison;
+import org.apache.hadoop.benchmark.BenchmarkReport.Result;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+public class TestBenchmarkReport {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static String result(String benchmark, String mode, String params,
+      double score, double error) {
+    return "{\"benchmark\":\"" + benchmark + "\",\"mode\":\"" + mode + "\"," +
+        "\"params\":{" + params + "},\"primaryMetric\":{\"score\":" + score +
+        ",\"scoreError\":" + error + ",\"scoreUnit\":\"ops/s\"}}";
+  }
+
+  private static Map<String, Result> read(String... results)
+      throws IOException {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < results.length; i++) {
+      json.append(i == 0 ? "" : ",").append(results[i]);
+    }
+    json.append("]");
+    return BenchmarkReport.readResults(MAPPER.readTree(json.toString()));
+  }
+
+  @Test
+  public void testResultsAreKeyedByParams() throws IOException {
+    Map<String, Result> results = read(
+        result("a.B.c", "thrpt", "\"x\":\"1\",\"y\":\"2\"", 10, 1),
+        result("a.B.c", "thrpt", "\"x\":\"3\",\"y\":\"2\"", 20, 1));
+    assertEquals(2, results.size());
+    assertEquals(10, results.get("a.B.c:x=1,y=2 (thrpt)").score, 0);
+    assertEquals(20, results.get("a.B.c:x=3,y=2 (thrpt)").score, 0);
+  }
+
+  @Test
+  public void testRegressions() throws IOException {
+    Map<String, Result> baseline = read(
+        result("a.B.slower", "thrpt", "", 100, 1),
+        result("a.B.faster", "avgt", "", 100, 1),
+        result("a.B.noisy", "avgt", "", 100, 30),
+        result("a.B.removed", "avgt", "", 100, 1));
+    Map<String, Result> current = read(
+        result("a.B.slower", "thrpt", "", 80, 1),
+        result("a.B.faster", "avgt", "", 80, 1),
+        result("a.B.noisy", "avgt", "", 120, 30),
+        result("a.B.added", "avgt", "", 100, 1));
+
+    List<Comparison> comparisons = BenchmarkReport.compare(baseline, current);
+    assertEquals(5, comparisons.size());
+    for (Comparison c : comparisons) {
+      boolean expectRegression = c.name.startsWith("a.B.slower");
+      assertEquals(c.name, expectRegression, c.isRegression(10));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(1, BenchmarkReport.report(comparisons, 10,
+        new PrintStream(out, true)));
+    String report = out.toString();
+    assertTrue(report, report.contains("-20.0%"));
+    assertTrue(report, report.contains("+20.0%"));
+    assertTrue(report, report.contains("NEW"));
+    assertTrue(report, report.contains("REMOVED"));
+  }
+}
@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.conf;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * An immutable snapshot of a {@link Configuration}, which is cheap to read
+ * from many threads at once.
+ *
+ * Values are resolved when the snapshot is taken: variables are expanded
+ * and deprecated keys mapped to their replacements, so that {@link #get}
+ * is a single unsynchronized map lookup. The values of the typed getters,
+ * such as {@link #getInt}, are parsed on first use and cached.
+ *
+ * Since variables are expanded when the snapshot is taken, later changes
+ * to the system properties they refer to are not seen. Neither are default
+ * resources added after the snapshot is taken.
+ *
+ * A snapshot can be used wherever a {@link Configuration} is read. Any
+ * attempt to modify it throws {@link UnsupportedOperationException}; copy
+ * it with {@link Configuration#Configuration(Configuration)} to get a
+ * modifiable configuration.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class FrozenConfiguration extends Configuration {
+  /** The expanded value of every key which is set, except deprecated ones */
+  private final Map<String, String> values;
+
+  /** The expanded values of the deprecated keys which have been read */
+  private final ConcurrentHashMap<String, String> deprecatedValues =
+      new ConcurrentHashMap<String, String>();
+
+  /** The values of the typed getters, keyed by property name */
+  private final ConcurrentHashMap<String, Object> parsedValues =
+      new ConcurrentHashMap<String, Object>();
+
+  /** Stands for a deprecated key which is not set */
+  private static final String UNSET = new String();
+
+  /**
+   * Take a snapshot of a configuration.
+   * @param other the configuration to take a snapshot of
+   */
+  public FrozenConfiguration(Configuration other) {
+    super(other);
+    Map<String, String> resolved = new HashMap<String, String>();
+    for (Object key : getProps().keySet().toArray()) {
+      if (key instanceof String) {
+        String name = (String) key;
+        // Deprecated keys are resolved when read, so that the warning is
+        // only logged if the key is used
+        if (!isDeprecated(name)) {
+          resolved.put(name, super.get(name));
+        }
+      }
+    }
+    values = resolved;
+  }
+
+  /**
+   * @return this configuration, which is already frozen
+   */
+  @Override
+  public FrozenConfiguration freeze() {
+    return this;
+  }
+
+  @Override
+  public String get(String name) {
+    String value = values.get(name);
+    if (value != null || !isDeprecated(name)) {
+      return value;
+    }
+    value = deprecatedValues.get(name);
+    if (value == null) {
+      value = super.get(name);
+      deprecatedValues.put(name, value == null ? UNSET : value);
+    }
+    return value == UNSET ? null : value;
+  }
+
+  @Override
+  public String get(String name, String defaultValue) {
+    String value = get(name);
+    if (value != null) {
+      return value;
+    }
+    if (defaultValue == null || defaultValue.indexOf("${") < 0) {
+      return defaultValue;
+    }
+    // Default values are expanded too
+    return super.get(name, defaultValue);
+  }
+
+  @Override
+  public int getInt(String name, int defaultValue) {
+    Object value = parsedValues.get(name);
+    if (value instanceof Integer) {
+      return (Integer) value;
+    }
+    if (get(name) == null) {
+      return defaultValue;
+    }
+    int parsed = super.getInt(name, defaultValue);
+    parsedValues.put(name, parsed);
+    return parsed;
+  }
+
+  @Override
+  public long getLong(String name, long defaultValue) {
+    Object value = parsedValues.get(name);
+    if (value instanceof Long) {
+      return (Long) value;
+    }
+    if (get(name) == null) {
+      return defaultValue;
+    }
+    long parsed = super.getLong(name, defaultValue);
+    parsedValues.put(name, parsed);
+    return parsed;
+  }
+
+  @Override
+  public float getFloat(String name, float defaultValue) {
+    Object value = parsedValues.get(name);
+    if (value instanceof Float) {
+      return (Float) value;
+    }
+    if (get(name) == null) {
+      return defaultValue;
+    }
+    float parsed = super.getFloat(name, defaultValue);
+    parsedValues.put(name, parsed);
+    return parsed;
+  }
+
+  @Override
+  public double getDouble(String name, double defaultValue) {
+    Object value = parsedValues.get(name);
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    if (get(name) == null) {
+      return defaultValue;
+    }
+    double parsed = super.getDouble(name, defaultValue);
+    parsedValues.put(name, parsed);
+    return parsed;
+  }
+
+  @Override
+  public boolean getBoolean(String name, boolean defaultValue) {
+    Object value = parsedValues.get(name);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    String valueString = get(name);
+    if (valueString == null) {
+      return defaultValue;
+    }
+    boolean parsed = super.getBoolean(name, defaultValue);
+    // Values other than true and false give the default, so can't be cached
+    if (valueString.trim().equalsIgnoreCase(Boolean.toString(parsed))) {
+      parsedValues.put(name, parsed);
+    }
+    return parsed;
+  }
+
+  @Override
+  public void set(String name, String value, String source) {
+    throw frozen();
+  }
+
+  @Override
+  public synchronized void unset(String name) {
+    throw frozen();
+  }
+
+  @Override
+  public void clear() {
+    throw frozen();
+  }
+
+  @Override
+  public void addResource(String name) {
+    throw frozen();
+  }
+
+  @Override
+  public void addResource(URL url) {
+    throw frozen();
+  }
+
+  @Override
+  public void addResource(Path file) {
+    throw frozen();
+  }
+
+  @Override
+  public void addResource(InputStream in) {
+    throw frozen();
+  }
+
+  @Override
+  public void addResource(InputStream in, String name) {
+    throw frozen();
+  }
+
+  /**
+   * Does nothing: a snapshot keeps the values it was taken with, even if
+   * a default resource is added later.
+   */
+  @Override
+  public synchronized void reloadConfiguration() {
+  }
+
+  @Override
+  public void setClassLoader(ClassLoader classLoader) {
+    throw frozen();
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    throw frozen();
+  }
+
+  private static UnsupportedOperationException frozen() {
+    return new UnsupportedOperationException(
+        "Cannot modify a frozen configuration");
+  }
+}
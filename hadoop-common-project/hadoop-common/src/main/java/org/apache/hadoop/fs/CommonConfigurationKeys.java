@@ -53,6 +53,14 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String  IPC_CLIENT_PING_KEY = "ipc.client.ping";
   /** Default value of IPC_CLIENT_PING_KEY */
   public static final boolean IPC_CLIENT_PING_DEFAULT = true;
+  /**
+   * Number of connections the RPC client opens to each server, protocol
+   * and user. Calls are assigned to them in turn.
+   */
+  public static final String  IPC_CLIENT_CONNECTIONS_PER_ADDRESS_KEY =
+    "ipc.client.connections.per.address";
+  /** Default value of IPC_CLIENT_CONNECTIONS_PER_ADDRESS_KEY */
+  public static final int     IPC_CLIENT_CONNECTIONS_PER_ADDRESS_DEFAULT = 1;
   /** Responses larger than this will be logged */
   public static final String  IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY =
     "ipc.server.max.response.size";
@@ -64,12 +72,75 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
     "ipc.server.read.threadpool.size";
   /** Default value for IPC_SERVER_RPC_READ_THREADS_KEY */
   public static final int     IPC_SERVER_RPC_READ_THREADS_DEFAULT = 1;
+  /** Size of the pooled buffers which the RPC server reads requests into */
+  public static final String  IPC_SERVER_REQUEST_BUFFER_SIZE_KEY =
+    "ipc.server.request.buffer.size";
+  /** Default value for IPC_SERVER_REQUEST_BUFFER_SIZE_KEY */
+  public static final int     IPC_SERVER_REQUEST_BUFFER_SIZE_DEFAULT = 8*1024;
+  /** Number of request buffers the RPC server pools, or 0 to not pool them */
+  public static final String  IPC_SERVER_REQUEST_BUFFER_POOL_SIZE_KEY =
+    "ipc.server.request.buffer.pool.size";
+  /** Default value for IPC_SERVER_REQUEST_BUFFER_POOL_SIZE_KEY */
+  public static final int     IPC_SERVER_REQUEST_BUFFER_POOL_SIZE_DEFAULT = 128;
 
   /** How many calls per handler are allowed in the queue. */
   public static final String  IPC_SERVER_HANDLER_QUEUE_SIZE_KEY =
     "ipc.server.handler.queue.size";
   /** Default value for IPC_SERVER_HANDLER_QUEUE_SIZE_KEY */
   public static final int     IPC_SERVER_HANDLER_QUEUE_SIZE_DEFAULT = 100;
+  /**
+   * The most calls a handler takes from the call queue at once, when more
+   * than one is waiting. Larger values suit servers of many small calls.
+   */
+  public static final String  IPC_SERVER_HANDLER_BATCH_SIZE_KEY =
+    "ipc.server.handler.batch.size";
+  /** Default value for IPC_SERVER_HANDLER_BATCH_SIZE_KEY */
+  public static final int     IPC_SERVER_HANDLER_BATCH_SIZE_DEFAULT = 1;
+  /** Class of the BlockingQueue which holds calls waiting for a handler */
+  public static final String  IPC_SERVER_CALLQUEUE_IMPL_KEY =
+    "ipc.server.callqueue.impl";
+  /**
+   * Whether to reject calls which do not fit in the call queue with a
+   * RetriableException, rather than blocking the reader until they do
+   */
+  public static final String  IPC_SERVER_CALLQUEUE_BACKOFF_ENABLE_KEY =
+    "ipc.server.callqueue.backoff.enable";
+  /** Default value for IPC_SERVER_CALLQUEUE_BACKOFF_ENABLE_KEY */
+  public static final boolean IPC_SERVER_CALLQUEUE_BACKOFF_ENABLE_DEFAULT =
+    false;
+  /** Number of priority levels of the FairCallQueue */
+  public static final String  IPC_SERVER_CALLQUEUE_LEVELS_KEY =
+    "ipc.server.callqueue.levels";
+  /** Default value for IPC_SERVER_CALLQUEUE_LEVELS_KEY */
+  public static final int     IPC_SERVER_CALLQUEUE_LEVELS_DEFAULT = 4;
+  /**
+   * Number of calls taken from each level of the FairCallQueue in turn,
+   * highest priority first. Defaults to halving from one level to the next.
+   */
+  public static final String  IPC_SERVER_CALLQUEUE_WEIGHTS_KEY =
+    "ipc.server.callqueue.weights";
+  /** Whether the DecayRpcScheduler accounts calls by "user" or "group" */
+  public static final String  IPC_SERVER_SCHEDULER_IDENTITY_KEY =
+    "ipc.server.scheduler.identity";
+  /** Default value for IPC_SERVER_SCHEDULER_IDENTITY_KEY */
+  public static final String  IPC_SERVER_SCHEDULER_IDENTITY_DEFAULT = "user";
+  /** How often the DecayRpcScheduler decays its call counts */
+  public static final String  IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_KEY =
+    "ipc.server.scheduler.decay.period.ms";
+  /** Default value for IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_KEY */
+  public static final long    IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_DEFAULT =
+    5000;
+  /** The factor by which the DecayRpcScheduler decays its call counts */
+  public static final String  IPC_SERVER_SCHEDULER_DECAY_FACTOR_KEY =
+    "ipc.server.scheduler.decay.factor";
+  /** Default value for IPC_SERVER_SCHEDULER_DECAY_FACTOR_KEY */
+  public static final float   IPC_SERVER_SCHEDULER_DECAY_FACTOR_DEFAULT = 0.5f;
+  /**
+   * Shares of recent calls, in percent, above which a caller is moved to
+   * each lower priority level. Defaults to halving from the lowest level up.
+   */
+  public static final String  IPC_SERVER_SCHEDULER_THRESHOLDS_KEY =
+    "ipc.server.scheduler.thresholds";
 
   /** Internal buffer size for Lzo compressor/decompressors */
   public static final String  IO_COMPRESSION_CODEC_LZO_BUFFERSIZE_KEY =
@@ -99,6 +170,57 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_DEFAULT =
       256 * 1024;
 
+  /**
+   * Implementation used by BZip2Codec: "system-native" uses libbz2 through
+   * libhadoop when both are available, "java-builtin" always uses the
+   * pure-Java streams.
+   */
+  public static final String IO_COMPRESSION_CODEC_BZIP2_LIBRARY_KEY =
+      "io.compression.codec.bzip2.library";
+  /** Default value for IO_COMPRESSION_CODEC_BZIP2_LIBRARY_KEY */
+  public static final String IO_COMPRESSION_CODEC_BZIP2_LIBRARY_DEFAULT =
+      "system-native";
+
+  /** Codec compressing the blocks of IndexedBlockCodec files */
+  public static final String IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_KEY =
+      "io.compression.codec.indexedblock.codec";
+  /** Default value for IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_KEY */
+  public static final String IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_DEFAULT =
+      "org.apache.hadoop.io.compress.DefaultCodec";
+
+  /** Uncompressed size of the blocks of IndexedBlockCodec files */
+  public static final String IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_KEY =
+      "io.compression.codec.indexedblock.blocksize";
+  /** Default value for IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_KEY */
+  public static final int IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_DEFAULT =
+      256 * 1024;
+
+  /**
+   * Number of threads compressing output written through
+   * {@link org.apache.hadoop.io.compress.ParallelCompressionOutputStream}.
+   * 0 or 1 compresses on the writing thread, as the codec's own stream does.
+   */
+  public static final String IO_COMPRESSION_PARALLEL_THREADS_KEY =
+      "io.compression.parallel.threads";
+  /** Default value for IO_COMPRESSION_PARALLEL_THREADS_KEY */
+  public static final int IO_COMPRESSION_PARALLEL_THREADS_DEFAULT = 0;
+
+  /** Uncompressed size of each block compressed in parallel */
+  public static final String IO_COMPRESSION_PARALLEL_BLOCK_SIZE_KEY =
+      "io.compression.parallel.block.size";
+  /** Default value for IO_COMPRESSION_PARALLEL_BLOCK_SIZE_KEY */
+  public static final int IO_COMPRESSION_PARALLEL_BLOCK_SIZE_DEFAULT =
+      1024 * 1024;
+
+  /**
+   * False positive rate of the per-block bloom filters of SequenceFiles
+   * written with a block index.
+   */
+  public static final String IO_SEQFILE_BLOOM_ERROR_RATE_KEY =
+      "io.seqfile.bloom.error.rate";
+  /** Default value for IO_SEQFILE_BLOOM_ERROR_RATE_KEY */
+  public static final float IO_SEQFILE_BLOOM_ERROR_RATE_DEFAULT = 0.005f;
+
   /**
    * Service Authorization
    */
@@ -228,6 +228,28 @@ public class CommonConfigurationKeysPublic {
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  HADOOP_SECURITY_GROUPS_CACHE_SECS =
     "hadoop.security.groups.cache.secs";
+  /** Default value for HADOOP_SECURITY_GROUPS_CACHE_SECS */
+  public static final long HADOOP_SECURITY_GROUPS_CACHE_SECS_DEFAULT =
+    300;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS =
+    "hadoop.security.groups.negative-cache.secs";
+  /** Default value for HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS */
+  public static final long HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS_DEFAULT =
+    30;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD =
+    "hadoop.security.groups.cache.background.reload";
+  /** Default value for HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD */
+  public static final boolean
+    HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_DEFAULT = false;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String
+    HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS =
+    "hadoop.security.groups.cache.background.reload.threads";
+  /** Default value for HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS */
+  public static final int
+    HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS_DEFAULT = 3;
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  HADOOP_SECURITY_AUTHENTICATION =
     "hadoop.security.authentication";
@@ -24,6 +24,7 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.DataChecksum;
 
 /**
  * This is a generic output stream for generating checksums for
@@ -40,12 +41,28 @@ abstract public class FSOutputSummer extends OutputStream {
   private byte checksum[];
   // The number of valid bytes in the buffer.
   private int count;
+  // the checksum, when it can checksum several chunks at once
+  private final DataChecksum dataChecksum;
+  // checksums of the chunks written directly from the user's buffer
+  private final byte[] bulkChecksums;
+
+  // The most chunks checksummed in a single call
+  private static final int BULK_CHECKSUM_CHUNKS = 32;
   
   protected FSOutputSummer(Checksum sum, int maxChunkSize, int checksumSize) {
     this.sum = sum;
     this.buf = new byte[maxChunkSize];
     this.checksum = new byte[checksumSize];
     this.count = 0;
+    if (sum instanceof DataChecksum &&
+        ((DataChecksum)sum).getChecksumSize() == checksumSize &&
+        checksumSize > 0) {
+      this.dataChecksum = (DataChecksum)sum;
+      this.bulkChecksums = new byte[checksumSize * BULK_CHECKSUM_CHUNKS];
+    } else {
+      this.dataChecksum = null;
+      this.bulkChecksums = null;
+    }
   }
   
   /* write the data chunk in <code>b</code> staring at <code>offset</code> with
@@ -99,6 +116,11 @@ public synchronized void write(byte b[], int off, int len)
    */
   private int write1(byte b[], int off, int len) throws IOException {
     if(count==0 && len>=buf.length) {
+      if (dataChecksum != null &&
+          buf.length == dataChecksum.getBytesPerChecksum()) {
+        // checksum all of the whole chunks in one go
+        return writeChecksumChunks(b, off, len);
+      }
       // local buffer is empty and user data has one chunk
       // checksum and output data
       final int length = buf.length;
@@ -163,6 +185,29 @@ private void writeChecksumChunk(byte b[], int off, int len, boolean keep)
     writeChunk(b, off, len, checksum);
   }
 
+  /**
+   * Checksum as many whole chunks of the user's data as fit in the bulk
+   * checksum buffer, using a single call to the DataChecksum, and output
+   * each chunk with its checksum.
+   *
+   * @return the number of bytes written
+   */
+  private int writeChecksumChunks(byte b[], int off, int len)
+  throws IOException {
+    final int chunkLen = buf.length;
+    final int numChunks = Math.min(len / chunkLen, BULK_CHECKSUM_CHUNKS);
+    dataChecksum.calculateChunkedSums(b, off, numChunks * chunkLen,
+        bulkChecksums, 0);
+    // The buffer is empty, so there is no running checksum to keep.
+    sum.reset();
+    for (int i = 0; i < numChunks; i++) {
+      System.arraycopy(bulkChecksums, i * checksum.length,
+          checksum, 0, checksum.length);
+      writeChunk(b, off + i * chunkLen, chunkLen, checksum);
+    }
+    return numChunks * chunkLen;
+  }
+
   /**
    * Converts a checksum integer value to a byte stream
    */
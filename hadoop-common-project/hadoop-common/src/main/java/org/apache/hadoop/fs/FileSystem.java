@@ -30,15 +30,17 @@
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -2463,16 +2465,148 @@ public String toString() {
     }
   }
   
+  /**
+   * Tracks statistics about how many reads, writes, and so forth have been
+   * done in a FileSystem.
+   *
+   * Each thread keeps its own statistics, so that threads reading and
+   * writing at the same time don't contend for shared counters. The totals
+   * are summed from the statistics of every thread when they are read.
+   * The statistics of a thread are kept until it dies, and then added to
+   * the totals which are kept for dead threads.
+   */
   public static final class Statistics {
+    /** The number of buckets in the read latency histogram */
+    public static final int READ_LATENCY_BUCKETS = 32;
+
+    /**
+     * Statistics data, for a single thread or summed over several.
+     *
+     * Thread data is only written by its own thread, so the fields are
+     * updated without atomic operations. The fields are volatile so that
+     * other threads reading the totals see the updates.
+     */
+    public static class StatisticsData {
+      /** The thread which owns this data, or null for summed data */
+      private final Thread owner;
+
+      volatile long bytesRead;
+      volatile long bytesWritten;
+      volatile int readOps;
+      volatile int largeReadOps;
+      volatile int writeOps;
+      volatile int seekOps;
+      /** Bucket i counts reads which took up to 2^i - 1 microseconds */
+      final AtomicLongArray readLatencies =
+          new AtomicLongArray(READ_LATENCY_BUCKETS);
+
+      StatisticsData(Thread owner) {
+        this.owner = owner;
+      }
+
+      /**
+       * Add another StatisticsData object to this one.
+       */
+      void add(StatisticsData other) {
+        this.bytesRead += other.bytesRead;
+        this.bytesWritten += other.bytesWritten;
+        this.readOps += other.readOps;
+        this.largeReadOps += other.largeReadOps;
+        this.writeOps += other.writeOps;
+        this.seekOps += other.seekOps;
+        for (int i = 0; i < READ_LATENCY_BUCKETS; i++) {
+          this.readLatencies.set(i,
+              this.readLatencies.get(i) + other.readLatencies.get(i));
+        }
+      }
+
+      /**
+       * @return true if this is the data of a thread which has died
+       */
+      boolean isDead() {
+        return owner != null && !owner.isAlive();
+      }
+
+      void addReadLatency(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+        if (bucket >= READ_LATENCY_BUCKETS) {
+          bucket = READ_LATENCY_BUCKETS - 1;
+        }
+        // Only the owner writes, so an ordered write is enough
+        readLatencies.lazySet(bucket, readLatencies.get(bucket) + 1);
+      }
+
+      public long getBytesRead() {
+        return bytesRead;
+      }
+
+      public long getBytesWritten() {
+        return bytesWritten;
+      }
+
+      public int getReadOps() {
+        return readOps;
+      }
+
+      public int getLargeReadOps() {
+        return largeReadOps;
+      }
+
+      public int getWriteOps() {
+        return writeOps;
+      }
+
+      public int getSeekOps() {
+        return seekOps;
+      }
+
+      /**
+       * @return the number of timed reads in each bucket of the read
+       *         latency histogram. Bucket 0 counts reads which took less
+       *         than a microsecond, and bucket i &gt; 0 reads which took
+       *         from 2^(i-1) to 2^i - 1 microseconds. The last bucket also
+       *         counts all slower reads.
+       */
+      public long[] getReadLatencyHistogram() {
+        long[] histogram = new long[READ_LATENCY_BUCKETS];
+        for (int i = 0; i < READ_LATENCY_BUCKETS; i++) {
+          histogram[i] = readLatencies.get(i);
+        }
+        return histogram;
+      }
+
+      @Override
+      public String toString() {
+        return bytesRead + " bytes read, " + bytesWritten + " bytes written, "
+            + readOps + " read ops, " + largeReadOps + " large read ops, "
+            + writeOps + " write ops";
+      }
+    }
+
     private final String scheme;
-    private AtomicLong bytesRead = new AtomicLong();
-    private AtomicLong bytesWritten = new AtomicLong();
-    private AtomicInteger readOps = new AtomicInteger();
-    private AtomicInteger largeReadOps = new AtomicInteger();
-    private AtomicInteger writeOps = new AtomicInteger();
-    
+
+    /**
+     * The data of threads which have died, and the adjustments made by
+     * {@link #reset()}. Guarded by this.
+     */
+    private final StatisticsData rootData;
+
+    /** The data of the current thread */
+    private final ThreadLocal<StatisticsData> threadData;
+
+    /**
+     * The data of each thread, until it dies. Dead threads are pruned
+     * whenever a thread registers or the totals are read, so the data of a
+     * dead thread, and the Thread itself, are not kept for long. Guarded by
+     * this.
+     */
+    private final List<StatisticsData> allData;
+
     public Statistics(String scheme) {
       this.scheme = scheme;
+      this.rootData = new StatisticsData(null);
+      this.threadData = new ThreadLocal<StatisticsData>();
+      this.allData = new LinkedList<StatisticsData>();
     }
 
     /**
@@ -2482,9 +2616,48 @@ public Statistics(String scheme) {
      *          The input Statistics object which is cloned.
      */
     public Statistics(Statistics st) {
-      this.scheme = st.scheme;
-      this.bytesRead = new AtomicLong(st.bytesRead.longValue());
-      this.bytesWritten = new AtomicLong(st.bytesWritten.longValue());
+      this(st.scheme);
+      this.rootData.bytesRead = st.getBytesRead();
+      this.rootData.bytesWritten = st.getBytesWritten();
+    }
+
+    /**
+     * Get the statistics of the current thread, which are the counts of
+     * its operations since it first used this file system.
+     * @return the live statistics of the current thread
+     */
+    public StatisticsData getThreadStatistics() {
+      StatisticsData data = threadData.get();
+      if (data == null) {
+        data = new StatisticsData(Thread.currentThread());
+        threadData.set(data);
+        synchronized (this) {
+          liveData();
+          allData.add(data);
+        }
+      }
+      return data;
+    }
+
+    /**
+     * Get a copy of the statistics of each live thread which has used this
+     * file system, keyed by thread name. Threads with the same name are
+     * summed together.
+     * @return the statistics of each thread
+     */
+    public synchronized Map<String, StatisticsData> getThreadStatisticsMap() {
+      Map<String, StatisticsData> result =
+          new TreeMap<String, StatisticsData>();
+      for (StatisticsData data : liveData()) {
+        String name = data.owner.getName();
+        StatisticsData sum = result.get(name);
+        if (sum == null) {
+          sum = new StatisticsData(null);
+          result.put(name, sum);
+        }
+        sum.add(data);
+      }
+      return result;
     }
 
     /**
@@ -2492,7 +2665,7 @@ public Statistics(Statistics st) {
      * @param newBytes the additional bytes read
      */
     public void incrementBytesRead(long newBytes) {
-      bytesRead.getAndAdd(newBytes);
+      getThreadStatistics().bytesRead += newBytes;
     }
     
     /**
@@ -2500,7 +2673,7 @@ public void incrementBytesRead(long newBytes) {
      * @param newBytes the additional bytes written
      */
     public void incrementBytesWritten(long newBytes) {
-      bytesWritten.getAndAdd(newBytes);
+      getThreadStatistics().bytesWritten += newBytes;
     }
     
     /**
@@ -2508,7 +2681,7 @@ public void incrementBytesWritten(long newBytes) {
      * @param count number of read operations
      */
     public void incrementReadOps(int count) {
-      readOps.getAndAdd(count);
+      getThreadStatistics().readOps += count;
     }
 
     /**
@@ -2516,7 +2689,7 @@ public void incrementReadOps(int count) {
      * @param count number of large read operations
      */
     public void incrementLargeReadOps(int count) {
-      largeReadOps.getAndAdd(count);
+      getThreadStatistics().largeReadOps += count;
     }
 
     /**
@@ -2524,7 +2697,50 @@ public void incrementLargeReadOps(int count) {
      * @param count number of write operations
      */
     public void incrementWriteOps(int count) {
-      writeOps.getAndAdd(count);
+      getThreadStatistics().writeOps += count;
+    }
+
+    /**
+     * Increment the number of seeks on input streams
+     * @param count number of seeks
+     */
+    public void incrementSeekOps(int count) {
+      getThreadStatistics().seekOps += count;
+    }
+
+    /**
+     * Add a read to the read latency histogram
+     * @param nanos time taken by the read, in nanoseconds
+     */
+    public void addReadLatency(long nanos) {
+      getThreadStatistics().addReadLatency(nanos);
+    }
+
+    /**
+     * Get the data of the live threads, moving the data of threads which
+     * have died into the root data.
+     */
+    private synchronized List<StatisticsData> liveData() {
+      for (Iterator<StatisticsData> it = allData.iterator(); it.hasNext();) {
+        StatisticsData data = it.next();
+        if (data.isDead()) {
+          rootData.add(data);
+          it.remove();
+        }
+      }
+      return allData;
+    }
+
+    /**
+     * Get the totals over all threads.
+     */
+    private synchronized StatisticsData getTotals() {
+      StatisticsData total = new StatisticsData(null);
+      for (StatisticsData data : liveData()) {
+        total.add(data);
+      }
+      total.add(rootData);
+      return total;
     }
 
     /**
@@ -2532,7 +2748,7 @@ public void incrementWriteOps(int count) {
      * @return the number of bytes
      */
     public long getBytesRead() {
-      return bytesRead.get();
+      return getTotals().bytesRead;
     }
     
     /**
@@ -2540,7 +2756,7 @@ public long getBytesRead() {
      * @return the number of bytes
      */
     public long getBytesWritten() {
-      return bytesWritten.get();
+      return getTotals().bytesWritten;
     }
     
     /**
@@ -2548,7 +2764,8 @@ public long getBytesWritten() {
      * @return number of read operations
      */
     public int getReadOps() {
-      return readOps.get() + largeReadOps.get();
+      StatisticsData total = getTotals();
+      return total.readOps + total.largeReadOps;
     }
 
     /**
@@ -2557,7 +2774,7 @@ public int getReadOps() {
      * @return number of large read operations
      */
     public int getLargeReadOps() {
-      return largeReadOps.get();
+      return getTotals().largeReadOps;
     }
 
     /**
@@ -2566,22 +2783,39 @@ public int getLargeReadOps() {
      * @return number of write operations
      */
     public int getWriteOps() {
-      return writeOps.get();
+      return getTotals().writeOps;
+    }
+
+    /**
+     * Get the number of seeks on input streams
+     * @return number of seeks
+     */
+    public int getSeekOps() {
+      return getTotals().seekOps;
+    }
+
+    /**
+     * Get the read latency histogram over all threads.
+     * @return the histogram, as described by
+     *         {@link StatisticsData#getReadLatencyHistogram()}
+     */
+    public long[] getReadLatencyHistogram() {
+      return getTotals().getReadLatencyHistogram();
     }
 
     @Override
     public String toString() {
-      return bytesRead + " bytes read, " + bytesWritten + " bytes written, "
-          + readOps + " read ops, " + largeReadOps + " large read ops, "
-          + writeOps + " write ops";
+      return getTotals().toString();
     }
     
     /**
-     * Reset the counts of bytes to 0.
+     * Reset the counts of bytes to 0. The statistics of each thread are
+     * left as they are.
      */
-    public void reset() {
-      bytesWritten.set(0);
-      bytesRead.set(0);
+    public synchronized void reset() {
+      StatisticsData total = getTotals();
+      rootData.bytesRead -= total.bytesRead;
+      rootData.bytesWritten -= total.bytesWritten;
     }
     
     /**
@@ -2592,6 +2826,7 @@ public String getScheme() {
       return scheme;
     }
   }
+
   
   /**
    * Get the Map of Statistics object indexed by URI Scheme.
@@ -98,8 +98,10 @@ public int read() throws IOException {
     
     @Override
     public int read(byte[] data) throws IOException {
+      long start = System.nanoTime();
       int result = super.read(data);
       if (result != -1) {
+        statistics.addReadLatency(System.nanoTime() - start);
         statistics.incrementBytesRead(result);
       }
       return result;
@@ -107,8 +109,10 @@ public int read(byte[] data) throws IOException {
     
     @Override
     public int read(byte[] data, int offset, int length) throws IOException {
+      long start = System.nanoTime();
       int result = super.read(data, offset, length);
       if (result != -1) {
+        statistics.addReadLatency(System.nanoTime() - start);
         statistics.incrementBytesRead(result);
       }
       return result;
@@ -130,6 +134,7 @@ public LocalFSFileInputStream(Path f) throws IOException {
     public void seek(long pos) throws IOException {
       fis.getChannel().position(pos);
       this.position = pos;
+      statistics.incrementSeekOps(1);
     }
     
     @Override
@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import sun.misc.Unsafe;
+
+import com.google.common.primitives.Longs;
+
+/**
+ * Utility code to scan byte arrays for some byte values, eight bytes at a
+ * time. Each word is tested for the bytes with bit arithmetic (SWAR, SIMD
+ * within a register), and only the word with a match is scanned byte by
+ * byte. Like {@link FastByteComparisons}, words are read through
+ * {@link Unsafe}, with a fall back to a byte at a time scan if it is not
+ * available.
+ */
+@InterfaceAudience.Private
+public final class FastByteScans {
+  private FastByteScans() {
+  }
+
+  /**
+   * Find the first CR or LF.
+   * @param b the bytes to scan
+   * @param from the index of the first byte to scan
+   * @param to the index after the last byte to scan
+   * @return the index of the first '\r' or '\n', or <code>to</code> if
+   *         there is none
+   */
+  public static int indexOfLineEnd(byte[] b, int from, int to) {
+    checkBounds(b, from, to);
+    return ScannerHolder.BEST_SCANNER.indexOfLineEnd(b, from, to);
+  }
+
+  /**
+   * Find the first occurrence of a byte.
+   * @param b the bytes to scan
+   * @param from the index of the first byte to scan
+   * @param to the index after the last byte to scan
+   * @param value the byte to find
+   * @return the index of the first <code>value</code>, or <code>to</code> if
+   *         there is none
+   */
+  public static int indexOf(byte[] b, int from, int to, byte value) {
+    checkBounds(b, from, to);
+    return ScannerHolder.BEST_SCANNER.indexOf(b, from, to, value);
+  }
+
+  /**
+   * Find the first occurrence of a pair of bytes. Pairs are much rarer than
+   * single bytes in text, so this finds candidates for a longer match with
+   * fewer false starts than {@link #indexOf(byte[], int, int, byte)}.
+   * @param b the bytes to scan
+   * @param from the index of the first byte to scan
+   * @param to the index after the last byte to scan
+   * @param first the first byte of the pair
+   * @param second the second byte of the pair
+   * @return the index of the first byte of the first pair, or
+   *         <code>to</code> if there is none
+   */
+  public static int indexOf(byte[] b, int from, int to, byte first,
+      byte second) {
+    checkBounds(b, from, to);
+    return ScannerHolder.BEST_SCANNER.indexOf(b, from, to, first, second);
+  }
+
+  /**
+   * Find the first byte which is not 7 bit ASCII.
+   * @param b the bytes to scan
+   * @param from the index of the first byte to scan
+   * @param to the index after the last byte to scan
+   * @return the index of the first byte with the high bit set, or
+   *         <code>to</code> if all the bytes are ASCII
+   */
+  public static int indexOfNonAscii(byte[] b, int from, int to) {
+    checkBounds(b, from, to);
+    return ScannerHolder.BEST_SCANNER.indexOfNonAscii(b, from, to);
+  }
+
+  /**
+   * Words are read without bounds checks, so check the range up front.
+   */
+  private static void checkBounds(byte[] b, int from, int to) {
+    if (from < 0 || to > b.length) {
+      throw new ArrayIndexOutOfBoundsException("from=" + from + ", to=" + to
+          + ", length=" + b.length);
+    }
+  }
+
+  private interface Scanner {
+    int indexOfLineEnd(byte[] b, int from, int to);
+    int indexOf(byte[] b, int from, int to, byte value);
+    int indexOf(byte[] b, int from, int to, byte first, byte second);
+    int indexOfNonAscii(byte[] b, int from, int to);
+  }
+
+  /**
+   * Provides a scanner implementation; either a Java implementation or a
+   * faster implementation based on {@link Unsafe}.
+   */
+  private static class ScannerHolder {
+    static final String UNSAFE_SCANNER_NAME =
+        ScannerHolder.class.getName() + "$UnsafeScanner";
+
+    static final Scanner BEST_SCANNER = getBestScanner();
+
+    /**
+     * Returns the Unsafe-using Scanner, or falls back to the pure-Java
+     * implementation if unable to do so.
+     */
+    static Scanner getBestScanner() {
+      try {
+        Class<?> theClass = Class.forName(UNSAFE_SCANNER_NAME);
+        return (Scanner) theClass.getEnumConstants()[0];
+      } catch (Throwable t) { // ensure we really catch *everything*
+        return PureJavaScanner.INSTANCE;
+      }
+    }
+
+    private enum PureJavaScanner implements Scanner {
+      INSTANCE;
+
+      @Override
+      public int indexOfLineEnd(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+          if (b[i] == '\n' || b[i] == '\r') {
+            return i;
+          }
+        }
+        return to;
+      }
+
+      @Override
+      public int indexOf(byte[] b, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+          if (b[i] == value) {
+            return i;
+          }
+        }
+        return to;
+      }
+
+      @Override
+      public int indexOf(byte[] b, int from, int to, byte first,
+          byte second) {
+        for (int i = from; i < to - 1; i++) {
+          if (b[i] == first && b[i + 1] == second) {
+            return i;
+          }
+        }
+        return to;
+      }
+
+      @Override
+      public int indexOfNonAscii(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+          if (b[i] < 0) {
+            return i;
+          }
+        }
+        return to;
+      }
+    }
+
+    @SuppressWarnings("unused") // used via reflection
+    private enum UnsafeScanner implements Scanner {
+      INSTANCE;
+
+      static final Unsafe theUnsafe;
+
+      /** The offset to the first element in a byte array. */
+      static final int BYTE_ARRAY_BASE_OFFSET;
+
+      static {
+        theUnsafe = (Unsafe) AccessController.doPrivileged(
+            new PrivilegedAction<Object>() {
+              @Override
+              public Object run() {
+                try {
+                  Field f = Unsafe.class.getDeclaredField("theUnsafe");
+                  f.setAccessible(true);
+                  return f.get(null);
+                } catch (NoSuchFieldException e) {
+                  // It doesn't matter what we throw;
+                  // it's swallowed in getBestScanner().
+                  throw new Error();
+                } catch (IllegalAccessException e) {
+                  throw new Error();
+                }
+              }
+            });
+
+        BYTE_ARRAY_BASE_OFFSET = theUnsafe.arrayBaseOffset(byte[].class);
+
+        // sanity check - this should never fail
+        if (theUnsafe.arrayIndexScale(byte[].class) != 1) {
+          throw new AssertionError();
+        }
+      }
+
+      private static final long ONES = 0x0101010101010101L;
+      private static final long HIGH_BITS = 0x8080808080808080L;
+      private static final long LFS = '\n' * ONES;
+      private static final long CRS = '\r' * ONES;
+
+      /**
+       * Returns non-zero if a byte of the word is zero. Only the existence
+       * of a zero byte is exact, the bits set do not locate it reliably,
+       * which is why a word with a match is scanned again byte by byte.
+       */
+      private static long zeroBytes(long w) {
+        return (w - ONES) & ~w & HIGH_BITS;
+      }
+
+      private static long word(byte[] b, int i) {
+        return theUnsafe.getLong(b, BYTE_ARRAY_BASE_OFFSET + (long) i);
+      }
+
+      @Override
+      public int indexOfLineEnd(byte[] b, int from, int to) {
+        int i = from;
+        for (; i <= to - Longs.BYTES; i += Longs.BYTES) {
+          long w = word(b, i);
+          if ((zeroBytes(w ^ LFS) | zeroBytes(w ^ CRS)) != 0) {
+            break;
+          }
+        }
+        return PureJavaScanner.INSTANCE.indexOfLineEnd(b, i, to);
+      }
+
+      @Override
+      public int indexOf(byte[] b, int from, int to, byte value) {
+        long values = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i <= to - Longs.BYTES; i += Longs.BYTES) {
+          if (zeroBytes(word(b, i) ^ values) != 0) {
+            break;
+          }
+        }
+        return PureJavaScanner.INSTANCE.indexOf(b, i, to, value);
+      }
+
+      @Override
+      public int indexOf(byte[] b, int from, int to, byte first,
+          byte second) {
+        long firsts = (first & 0xFFL) * ONES;
+        long seconds = (second & 0xFFL) * ONES;
+        int i = from;
+        // each word is matched against the first byte, and the word one
+        // byte further against the second; a true zero byte always has its
+        // bit set, so combining the two cannot miss a pair
+        for (; i <= to - Longs.BYTES - 1; i += Longs.BYTES) {
+          if ((zeroBytes(word(b, i) ^ firsts)
+              & zeroBytes(word(b, i + 1) ^ seconds)) != 0) {
+            break;
+          }
+        }
+        return PureJavaScanner.INSTANCE.indexOf(b, i, to, first, second);
+      }
+
+      @Override
+      public int indexOfNonAscii(byte[] b, int from, int to) {
+        int i = from;
+        for (; i <= to - Longs.BYTES; i += Longs.BYTES) {
+          if ((word(b, i) & HIGH_BITS) != 0) {
+            break;
+          }
+        }
+        return PureJavaScanner.INSTANCE.indexOfNonAscii(b, i, to);
+      }
+    }
+  }
+}
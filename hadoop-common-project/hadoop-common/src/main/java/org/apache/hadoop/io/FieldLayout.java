@@ -0,0 +1,815 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The serialized form and the ordering of a class, made of a list of its
+ * fields. The fields are written one after the other in the format of
+ * {@link DataOutput} for primitives, and of {@link Text} and
+ * {@link BytesWritable} for fields of these types. Instances are ordered by
+ * comparing their fields in the same order.
+ *
+ * <p>Since the layout knows where each field is in the serialized form, it
+ * compares serialized instances in place, without deserializing them, and
+ * {@link WritableComparator#get(Class)} uses its comparator for the
+ * {@link WritableComparable}s which declare a layout. It also reads and
+ * writes instances field by field, without any code in the class, so that
+ * plain classes can be used as keys and values through
+ * {@link org.apache.hadoop.io.serializer.FieldLayoutSerialization}.
+ *
+ * <p>A class declares its layout with the {@link Fields} annotation. A
+ * {@link WritableComparable} would delegate to its layout:
+ * <pre>
+ * &#64;FieldLayout.Fields({"timestamp", "user", "bytes"})
+ * public class EventKey implements WritableComparable&lt;EventKey&gt; {
+ *   private static final FieldLayout&lt;EventKey&gt; LAYOUT =
+ *       FieldLayout.get(EventKey.class);
+ *
+ *   private long timestamp;
+ *   private Text user = new Text();
+ *   private int bytes;
+ *
+ *   public void write(DataOutput out) throws IOException {
+ *     LAYOUT.write(this, out);
+ *   }
+ *
+ *   public void readFields(DataInput in) throws IOException {
+ *     LAYOUT.readFields(this, in);
+ *   }
+ *
+ *   public int compareTo(EventKey other) {
+ *     return LAYOUT.compare(this, other);
+ *   }
+ *
+ *   public int hashCode() {
+ *     return LAYOUT.hashCode(this);
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Fields are accessed through reflection, since the code is built for
+ * runtimes without method handles or class generation. Primitive fields are
+ * read and written without boxing, and deserializing into an instance
+ * allocates nothing once its {@link Text} and {@link BytesWritable} fields
+ * are set.
+ *
+ * @param <T> the class laid out
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class FieldLayout<T> {
+
+  /**
+   * Declares the fields of a class which make up its serialized form, in
+   * the order they are written and compared. Fields may be declared by the
+   * class or by its superclasses.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  public @interface Fields {
+    String[] value();
+  }
+
+  private static final ConcurrentHashMap<Class<?>, FieldLayout<?>> layouts =
+      new ConcurrentHashMap<Class<?>, FieldLayout<?>>();
+
+  /**
+   * @param c a class
+   * @return whether the class declares a layout
+   */
+  public static boolean isDeclared(Class<?> c) {
+    return c.isAnnotationPresent(Fields.class);
+  }
+
+  /**
+   * Get the layout of a class.
+   * @param c a class annotated with {@link Fields}
+   * @return the layout of the class
+   * @throws IllegalArgumentException if the class does not declare a layout,
+   *         or declares fields which do not exist or are of unsupported types
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> FieldLayout<T> get(Class<T> c) {
+    FieldLayout<T> layout = (FieldLayout<T>) layouts.get(c);
+    if (layout == null) {
+      layout = new FieldLayout<T>(c);
+      FieldLayout<T> existing = (FieldLayout<T>) layouts.putIfAbsent(c, layout);
+      if (existing != null) {
+        layout = existing;
+      }
+    }
+    return layout;
+  }
+
+  private final Class<T> type;
+  private final Constructor<T> constructor;
+  private final FieldCodec[] codecs;
+  private final Comparator comparator;
+
+  private FieldLayout(Class<T> type) {
+    Fields fields = type.getAnnotation(Fields.class);
+    if (fields == null) {
+      throw new IllegalArgumentException(type + " is not annotated with "
+          + Fields.class.getName());
+    }
+    this.type = type;
+    try {
+      constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(type + " has no default constructor",
+          e);
+    }
+    codecs = new FieldCodec[fields.value().length];
+    for (int i = 0; i < codecs.length; i++) {
+      codecs[i] = newCodec(findField(type, fields.value()[i]));
+    }
+    comparator = new Comparator(this);
+  }
+
+  private static Field findField(Class<?> type, String name) {
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      try {
+        Field field = c.getDeclaredField(name);
+        if (Modifier.isStatic(field.getModifiers())) {
+          throw new IllegalArgumentException("Field " + name + " of " + type
+              + " is static");
+        }
+        if (Modifier.isFinal(field.getModifiers())
+            && field.getType().isPrimitive()) {
+          throw new IllegalArgumentException("Field " + name + " of " + type
+              + " is a final primitive, which cannot be read into");
+        }
+        field.setAccessible(true);
+        return field;
+      } catch (NoSuchFieldException e) {
+        // look in the superclass
+      }
+    }
+    throw new IllegalArgumentException("No field " + name + " in " + type);
+  }
+
+  private static FieldCodec newCodec(Field field) {
+    Class<?> c = field.getType();
+    if (c == Boolean.TYPE) {
+      return new BooleanCodec(field);
+    } else if (c == Byte.TYPE) {
+      return new ByteCodec(field);
+    } else if (c == Short.TYPE) {
+      return new ShortCodec(field);
+    } else if (c == Character.TYPE) {
+      return new CharCodec(field);
+    } else if (c == Integer.TYPE) {
+      return new IntCodec(field);
+    } else if (c == Long.TYPE) {
+      return new LongCodec(field);
+    } else if (c == Float.TYPE) {
+      return new FloatCodec(field);
+    } else if (c == Double.TYPE) {
+      return new DoubleCodec(field);
+    } else if (c == Text.class) {
+      return new TextCodec(field);
+    } else if (c == BytesWritable.class) {
+      return new BytesCodec(field);
+    }
+    throw new IllegalArgumentException("Field " + field.getName() + " of "
+        + field.getDeclaringClass() + " has unsupported type " + c.getName());
+  }
+
+  /**
+   * @return the class laid out
+   */
+  public Class<T> getType() {
+    return type;
+  }
+
+  /**
+   * @return a new instance of the class, made by its default constructor
+   */
+  public T newInstance() {
+    try {
+      return constructor.newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Write the fields of an instance.
+   * @param obj the instance
+   * @param out the output
+   * @throws IOException if the output throws
+   */
+  public void write(T obj, DataOutput out) throws IOException {
+    try {
+      for (FieldCodec codec : codecs) {
+        codec.write(obj, out);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Read the fields of an instance. Text and BytesWritable fields which are
+   * set are read into, the others are set to new instances.
+   * @param obj the instance
+   * @param in the input
+   * @throws IOException if the input throws
+   */
+  public void readFields(T obj, DataInput in) throws IOException {
+    try {
+      for (FieldCodec codec : codecs) {
+        codec.read(obj, in);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compare two instances field by field.
+   * @return the result of the comparison of the first fields which differ,
+   *         or 0 if all the fields are equal
+   */
+  public int compare(T a, T b) {
+    try {
+      for (FieldCodec codec : codecs) {
+        int c = codec.compare(a, b);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return 0;
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return a hash code of the fields of an instance, consistent with
+   *         {@link #compare(Object, Object)}
+   */
+  public int hashCode(T obj) {
+    try {
+      int hash = 1;
+      for (FieldCodec codec : codecs) {
+        hash = 31 * hash + codec.hashCode(obj);
+      }
+      return hash;
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compare two serialized instances, in the order of
+   * {@link #compare(Object, Object)}, without deserializing them.
+   */
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    for (FieldCodec codec : codecs) {
+      int c = codec.compare(b1, s1, b2, s2);
+      if (c != 0) {
+        return c;
+      }
+      s1 += codec.size(b1, s1);
+      s2 += codec.size(b2, s2);
+    }
+    return 0;
+  }
+
+  /**
+   * @return the comparator of the class, which compares serialized instances
+   *         without deserializing them
+   */
+  public Comparator getComparator() {
+    return comparator;
+  }
+
+  /**
+   * A comparator of the instances of a class which declares a layout. It is
+   * thread safe. Subclasses naming the class can be configured by name, for
+   * example as the key comparator of a job whose keys are not
+   * {@link WritableComparable}s.
+   */
+  public static class Comparator extends WritableComparator {
+    @SuppressWarnings("rawtypes")
+    private final FieldLayout layout;
+
+    /**
+     * Constructor
+     * @param c the class compared, which declares a layout
+     */
+    protected Comparator(Class<?> c) {
+      this(FieldLayout.get(c));
+    }
+
+    private Comparator(FieldLayout<?> layout) {
+      super(WritableComparable.class.isAssignableFrom(layout.type)
+          ? layout.type.asSubclass(WritableComparable.class) : null);
+      this.layout = layout;
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return layout.compare(b1, s1, l1, b2, s2, l2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compare(WritableComparable a, WritableComparable b) {
+      return layout.compare(a, b);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compare(Object a, Object b) {
+      return layout.compare(a, b);
+    }
+  }
+
+  /**
+   * Reads, writes and compares a field, in objects and serialized.
+   */
+  private static abstract class FieldCodec {
+    final Field field;
+
+    FieldCodec(Field field) {
+      this.field = field;
+    }
+
+    abstract void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException;
+
+    abstract void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException;
+
+    abstract int compare(Object a, Object b) throws IllegalAccessException;
+
+    abstract int hashCode(Object obj) throws IllegalAccessException;
+
+    /** Compare the serialized fields starting at s1 and s2. */
+    abstract int compare(byte[] b1, int s1, byte[] b2, int s2);
+
+    /** @return the size of the serialized field starting at s */
+    abstract int size(byte[] b, int s);
+  }
+
+  private static int compareInts(int a, int b) {
+    return a < b ? -1 : (a == b ? 0 : 1);
+  }
+
+  private static int compareLongs(long a, long b) {
+    return a < b ? -1 : (a == b ? 0 : 1);
+  }
+
+  private static final class BooleanCodec extends FieldCodec {
+    BooleanCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeBoolean(field.getBoolean(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setBoolean(obj, in.readBoolean());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      boolean x = field.getBoolean(a);
+      return x == field.getBoolean(b) ? 0 : (x ? 1 : -1);
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.getBoolean(obj) ? 1231 : 1237;
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return compareInts(b1[s1] != 0 ? 1 : 0, b2[s2] != 0 ? 1 : 0);
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 1;
+    }
+  }
+
+  private static final class ByteCodec extends FieldCodec {
+    ByteCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeByte(field.getByte(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setByte(obj, in.readByte());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return field.getByte(a) - field.getByte(b);
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.getByte(obj);
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return b1[s1] - b2[s2];
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 1;
+    }
+  }
+
+  private static final class ShortCodec extends FieldCodec {
+    ShortCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeShort(field.getShort(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setShort(obj, in.readShort());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return field.getShort(a) - field.getShort(b);
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.getShort(obj);
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return (short) WritableComparator.readUnsignedShort(b1, s1)
+          - (short) WritableComparator.readUnsignedShort(b2, s2);
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 2;
+    }
+  }
+
+  private static final class CharCodec extends FieldCodec {
+    CharCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeChar(field.getChar(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setChar(obj, in.readChar());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return field.getChar(a) - field.getChar(b);
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.getChar(obj);
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return WritableComparator.readUnsignedShort(b1, s1)
+          - WritableComparator.readUnsignedShort(b2, s2);
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 2;
+    }
+  }
+
+  private static final class IntCodec extends FieldCodec {
+    IntCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeInt(field.getInt(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setInt(obj, in.readInt());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return compareInts(field.getInt(a), field.getInt(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.getInt(obj);
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return compareInts(WritableComparator.readInt(b1, s1),
+          WritableComparator.readInt(b2, s2));
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 4;
+    }
+  }
+
+  private static final class LongCodec extends FieldCodec {
+    LongCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeLong(field.getLong(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setLong(obj, in.readLong());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return compareLongs(field.getLong(a), field.getLong(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      long v = field.getLong(obj);
+      return (int) (v ^ (v >>> 32));
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return compareLongs(WritableComparator.readLong(b1, s1),
+          WritableComparator.readLong(b2, s2));
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 8;
+    }
+  }
+
+  private static final class FloatCodec extends FieldCodec {
+    FloatCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeFloat(field.getFloat(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setFloat(obj, in.readFloat());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return Float.compare(field.getFloat(a), field.getFloat(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return Float.floatToIntBits(field.getFloat(obj));
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return Float.compare(WritableComparator.readFloat(b1, s1),
+          WritableComparator.readFloat(b2, s2));
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 4;
+    }
+  }
+
+  private static final class DoubleCodec extends FieldCodec {
+    DoubleCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      out.writeDouble(field.getDouble(obj));
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      field.setDouble(obj, in.readDouble());
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return Double.compare(field.getDouble(a), field.getDouble(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      long v = Double.doubleToLongBits(field.getDouble(obj));
+      return (int) (v ^ (v >>> 32));
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return Double.compare(WritableComparator.readDouble(b1, s1),
+          WritableComparator.readDouble(b2, s2));
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 8;
+    }
+  }
+
+  /** Text fields, as a vint length followed by the UTF-8 bytes. */
+  private static final class TextCodec extends FieldCodec {
+    TextCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      ((Text) field.get(obj)).write(out);
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      Text text = (Text) field.get(obj);
+      if (text == null) {
+        text = new Text();
+        field.set(obj, text);
+      }
+      text.readFields(in);
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return ((Text) field.get(a)).compareTo((Text) field.get(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.get(obj).hashCode();
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      try {
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        return WritableComparator.compareBytes(
+            b1, s1 + n1, WritableComparator.readVInt(b1, s1),
+            b2, s2 + n2, WritableComparator.readVInt(b2, s2));
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      try {
+        return WritableUtils.decodeVIntSize(b[s])
+            + WritableComparator.readVInt(b, s);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+
+  /** BytesWritable fields, as an int length followed by the bytes. */
+  private static final class BytesCodec extends FieldCodec {
+    BytesCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object obj, DataOutput out)
+        throws IOException, IllegalAccessException {
+      ((BytesWritable) field.get(obj)).write(out);
+    }
+
+    @Override
+    void read(Object obj, DataInput in)
+        throws IOException, IllegalAccessException {
+      BytesWritable bytes = (BytesWritable) field.get(obj);
+      if (bytes == null) {
+        bytes = new BytesWritable();
+        field.set(obj, bytes);
+      }
+      bytes.readFields(in);
+    }
+
+    @Override
+    int compare(Object a, Object b) throws IllegalAccessException {
+      return ((BytesWritable) field.get(a)).compareTo(
+          (BytesWritable) field.get(b));
+    }
+
+    @Override
+    int hashCode(Object obj) throws IllegalAccessException {
+      return field.get(obj).hashCode();
+    }
+
+    @Override
+    int compare(byte[] b1, int s1, byte[] b2, int s2) {
+      return WritableComparator.compareBytes(
+          b1, s1 + 4, WritableComparator.readInt(b1, s1),
+          b2, s2 + 4, WritableComparator.readInt(b2, s2));
+    }
+
+    @Override
+    int size(byte[] b, int s) {
+      return 4 + WritableComparator.readInt(b, s);
+    }
+  }
+}
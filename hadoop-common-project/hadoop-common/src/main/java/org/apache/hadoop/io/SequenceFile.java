@@ -19,6 +19,8 @@
 package org.apache.hadoop.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
@@ -48,13 +50,17 @@
 import org.apache.hadoop.util.MergeSort;
 import org.apache.hadoop.util.PriorityQueue;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
 
 /** 
  * <code>SequenceFile</code>s are flat files consisting of binary key/value 
  * pairs.
  * 
  * <p><code>SequenceFile</code> provides {@link Writer}, {@link Reader} and
- * {@link Sorter} classes for writing, reading and sorting respectively.</p>
+ * {@link Sorter} classes for writing, reading and sorting respectively.
+ * {@link MappedReader} reads local files mapped into memory.</p>
  * 
  * There are three <code>SequenceFile</code> <code>Writer</code>s based on the 
  * {@link CompressionType} used to compress key/value pairs:
@@ -186,6 +192,32 @@
  * <p>The compressed blocks of key lengths and value lengths consist of the 
  * actual lengths of individual keys/values encoded in ZeroCompressedInteger 
  * format.</p>
+ *
+ * <h5 id="#BlockIndex">Block Index</h5>
+ *
+ * <p>A block-compressed file of sorted keys may be written with a
+ * {@link Writer#blockIndex(boolean) block index}, letting
+ * {@link Reader#get(WritableComparable, Writable)} look up a key by reading
+ * one or two blocks. The header metadata then has a
+ * <code>seqfile.block.index</code> entry, and the last block is followed by:
+ * <ul>
+ * <li>Number of blocks</li>
+ * <li>A boolean which specifies if there is a bloom filter per block</li>
+ * <li>
+ * Block index entry
+ *   <ul>
+ *     <li>Offset of the sync-marker starting the block</li>
+ *     <li>Number of records in the block</li>
+ *     <li>First key length</li>
+ *     <li>First key</li>
+ *     <li>The bloom filter of the keys in the block, if any</li>
+ *   </ul>
+ * </li>
+ * <li>Offset of the block index, as a long</li>
+ * <li>4 bytes of magic <b>SIDX</b></li>
+ * </ul>
+ * Readers of releases without the block index read the blocks of such a
+ * file, but fail at its end.</p>
  * 
  * @see CompressionCodec
  */
@@ -210,6 +242,15 @@ private SequenceFile() {}                         // no public ctor
   /** The number of bytes between sync points.*/
   public static final int SYNC_INTERVAL = 100*SYNC_SIZE; 
 
+  /** Metadata key marking a file with a block index */
+  private static final Text BLOCK_INDEX_KEY = new Text("seqfile.block.index");
+  private static final byte[] BLOCK_INDEX_MAGIC = new byte[] {
+    (byte)'S', (byte)'I', (byte)'D', (byte)'X'
+  };
+  /** Length of the block index offset and magic ending the file */
+  private static final int BLOCK_INDEX_TAIL_SIZE = 8 + 4;
+  private static final int BLOOM_HASH_COUNT = 5;
+
   /** 
    * The compression type used to compress key/value pairs in the 
    * {@link SequenceFile}.
@@ -823,6 +864,8 @@ public static class Writer implements java.io.Closeable, Syncable {
     private Configuration conf;
     FSDataOutputStream out;
     boolean ownOutputStream = true;
+    boolean blockIndex = false;                // write a block index
+    boolean bloomFilters = false;              // with bloom filters
     DataOutputBuffer buffer = new DataOutputBuffer();
 
     Class keyClass;
@@ -936,6 +979,16 @@ static class ProgressableOption extends Options.ProgressableOption
       }
     }
 
+    static class BlockIndexOption implements Option {
+      private final boolean bloomFilters;
+      BlockIndexOption(boolean bloomFilters) {
+        this.bloomFilters = bloomFilters;
+      }
+      boolean getBloomFilters() {
+        return bloomFilters;
+      }
+    }
+
     private static class CompressionOption implements Option {
       private final CompressionType value;
       private final CompressionCodec codec;
@@ -1009,6 +1062,19 @@ public static Option compression(CompressionType value,
         CompressionCodec codec) {
       return new CompressionOption(value, codec);
     }
+
+    /**
+     * Write a block index, and optionally a bloom filter per block, after
+     * the last block, so that {@link Reader#get(WritableComparable,
+     * Writable)} can find keys. Needs block compression, and keys which
+     * are {@link WritableComparable} and appended in sorted order. The
+     * false positive rate of the bloom filters is
+     * <code>io.seqfile.bloom.error.rate</code>.
+     * @param bloomFilters whether to write a bloom filter per block
+     */
+    public static Option blockIndex(boolean bloomFilters) {
+      return new BlockIndexOption(bloomFilters);
+    }
     
     /**
      * Construct a uncompressed writer from a set of options.
@@ -1037,6 +1103,8 @@ public static Option compression(CompressionType value,
         Options.getOption(MetadataOption.class, opts);
       CompressionOption compressionTypeOption =
         Options.getOption(CompressionOption.class, opts);
+      BlockIndexOption blockIndexOption =
+        Options.getOption(BlockIndexOption.class, opts);
       // check consistency of options
       if ((fileOption == null) == (streamOption == null)) {
         throw new IllegalArgumentException("file or stream must be specified");
@@ -1079,6 +1147,21 @@ public static Option compression(CompressionType value,
       Metadata metadata = metadataOption == null ?
           new Metadata() : metadataOption.getValue();
       this.compress = compressionTypeOption.getValue();
+      if (blockIndexOption != null) {
+        if (compress != CompressionType.BLOCK) {
+          throw new IllegalArgumentException(
+              "a block index needs block compression");
+        }
+        if (!WritableComparable.class.isAssignableFrom(keyClass)) {
+          throw new IllegalArgumentException(
+              "a block index needs WritableComparable keys");
+        }
+        metadata = new Metadata(
+            new TreeMap<Text, Text>(metadata.getMetadata()));
+        metadata.set(BLOCK_INDEX_KEY, new Text("1"));
+        blockIndex = true;
+        bloomFilters = blockIndexOption.getBloomFilters();
+      }
       final CompressionCodec codec = compressionTypeOption.getCodec();
       if (codec != null &&
           (codec instanceof GzipCodec) &&
@@ -1435,6 +1518,16 @@ static class BlockCompressWriter extends Writer {
     private DataOutputBuffer valBuffer = new DataOutputBuffer();
 
     private final int compressionBlockSize;
+
+    // The block index, if written: the entries of the blocks written so
+    // far, the last key appended, to check the order of keys, and the
+    // settings of the bloom filters
+    private int indexedBlocks = 0;
+    private DataOutputBuffer indexBuffer;
+    private DataOutputBuffer lastKey;
+    private RawComparator<?> comparator;
+    private float bloomErrorRate;
+    private int bloomHashType;
     
     BlockCompressWriter(Configuration conf,
                         Option... options) throws IOException {
@@ -1445,6 +1538,69 @@ static class BlockCompressWriter extends Writer {
       keySerializer.open(keyBuffer);
       uncompressedValSerializer.close();
       uncompressedValSerializer.open(valBuffer);
+      if (blockIndex) {
+        indexBuffer = new DataOutputBuffer();
+        comparator = WritableComparator.get(
+            keyClass.asSubclass(WritableComparable.class));
+        bloomErrorRate = conf.getFloat(
+            CommonConfigurationKeys.IO_SEQFILE_BLOOM_ERROR_RATE_KEY,
+            CommonConfigurationKeys.IO_SEQFILE_BLOOM_ERROR_RATE_DEFAULT);
+        bloomHashType = Hash.getHashType(conf);
+      }
+    }
+
+    /** Check that a key sorts after the last one appended. */
+    private void checkKey(byte[] key, int offset, int length)
+      throws IOException {
+      if (lastKey == null) {
+        lastKey = new DataOutputBuffer();
+      } else if (comparator.compare(lastKey.getData(), 0, lastKey.getLength(),
+                                    key, offset, length) > 0) {
+        throw new IOException("key out of order: appended after " +
+                              "a greater key in " + keyClass.getName() +
+                              " order");
+      }
+      lastKey.reset();
+      lastKey.write(key, offset, length);
+    }
+
+    /** Add the buffered block, about to start at an offset, to the index. */
+    private void indexBlock(long offset) throws IOException {
+      byte[] keys = keyBuffer.getData();
+      byte[] keyLengths = keyLenBuffer.getData();
+      WritableUtils.writeVLong(indexBuffer, offset);
+      WritableUtils.writeVInt(indexBuffer, noBufferedRecords);
+      int firstKeyLength = WritableComparator.readVInt(keyLengths, 0);
+      WritableUtils.writeVInt(indexBuffer, firstKeyLength);
+      indexBuffer.write(keys, 0, firstKeyLength);
+      if (bloomFilters) {
+        int vectorSize = (int)Math.ceil((double)
+            (-BLOOM_HASH_COUNT * noBufferedRecords) /
+            Math.log(1.0 - Math.pow(bloomErrorRate, 1.0/BLOOM_HASH_COUNT)));
+        BloomFilter bloom = new BloomFilter(vectorSize, BLOOM_HASH_COUNT,
+                                            bloomHashType);
+        for (int i = 0, lengthOffset = 0, keyOffset = 0;
+             i < noBufferedRecords; i++) {
+          int keyLength = WritableComparator.readVInt(keyLengths, lengthOffset);
+          lengthOffset +=
+            WritableUtils.decodeVIntSize(keyLengths[lengthOffset]);
+          bloom.add(new Key(
+              Arrays.copyOfRange(keys, keyOffset, keyOffset + keyLength)));
+          keyOffset += keyLength;
+        }
+        bloom.write(indexBuffer);
+      }
+      indexedBlocks++;
+    }
+
+    /** Write the block index after the last block. */
+    private void writeIndex() throws IOException {
+      long indexOffset = out.getPos();
+      WritableUtils.writeVInt(out, indexedBlocks);
+      out.writeBoolean(bloomFilters);
+      out.write(indexBuffer.getData(), 0, indexBuffer.getLength());
+      out.writeLong(indexOffset);
+      out.write(BLOCK_INDEX_MAGIC);
     }
 
     /** Workhorse to check and write out compressed data/lengths */
@@ -1466,6 +1622,9 @@ void writeBuffer(DataOutputBuffer uncompressedDataBuffer)
     @Override
     public synchronized void sync() throws IOException {
       if (noBufferedRecords > 0) {
+        if (blockIndex) {
+          indexBlock(out.getPos());
+        }
         super.sync();
         
         // No. of records
@@ -1497,6 +1656,9 @@ public synchronized void sync() throws IOException {
     public synchronized void close() throws IOException {
       if (out != null) {
         sync();
+        if (blockIndex) {
+          writeIndex();
+        }
       }
       super.close();
     }
@@ -1517,6 +1679,9 @@ public synchronized void append(Object key, Object val)
       int keyLength = keyBuffer.getLength() - oldKeyLength;
       if (keyLength < 0)
         throw new IOException("negative length keys not allowed: " + key);
+      if (blockIndex) {
+        checkKey(keyBuffer.getData(), oldKeyLength, keyLength);
+      }
       WritableUtils.writeVInt(keyLenBuffer, keyLength);
 
       int oldValLength = valBuffer.getLength();
@@ -1541,6 +1706,9 @@ public synchronized void appendRaw(byte[] keyData, int keyOffset,
       
       if (keyLength < 0)
         throw new IOException("negative length keys not allowed");
+      if (blockIndex) {
+        checkKey(keyData, keyOffset, keyLength);
+      }
 
       int valLength = val.getSize();
       
@@ -1592,6 +1760,17 @@ public static class Reader implements java.io.Closeable {
     private int keyLength;
     private int recordLength;
 
+    // The block index, if the file has one: its offset, which ends the
+    // blocks, and the index itself, read when first used
+    private long blockIndexStart = -1;
+    private long[] blockOffsets;
+    private int[] blockRecords;
+    private byte[][] blockFirstKeys;
+    private BloomFilter[] blockBlooms;
+    private RawComparator<?> blockIndexComparator;
+    private DataOutputBuffer lookupKey;
+    private DataOutputBuffer lookupRawKey;
+
     private boolean decompress;
     private boolean blockCompressed;
     
@@ -1907,6 +2086,10 @@ private void init(boolean tempReader) throws IOException {
         in.readFully(sync);                       // read sync bytes
         headerEnd = in.getPos();                  // record end of header
       }
+
+      if (blockCompressed && metadata.get(BLOCK_INDEX_KEY) != null) {
+        findBlockIndex();
+      }
       
       // Initialize... *not* if this we are constructing a temporary Reader
       if (!tempReader) {
@@ -2090,6 +2273,10 @@ private synchronized void readBlock() throws IOException {
         in.seek(WritableUtils.readVInt(in)+in.getPos());
         in.seek(WritableUtils.readVInt(in)+in.getPos());
       }
+      if (in.getPos() >= end) {
+        // the blocks of a file may be followed by a block index
+        throw new EOFException("No block before " + end);
+      }
       
       // Reset internal states
       noBufferedKeys = 0; noBufferedValues = 0; noBufferedRecords = 0;
@@ -2631,6 +2818,143 @@ public synchronized void sync(long position) throws IOException {
     /** Returns true iff the previous call to next passed a sync mark.*/
     public synchronized boolean syncSeen() { return syncSeen; }
 
+    /**
+     * Find the block index after the last block, if the file was closed,
+     * and end the blocks there.
+     */
+    private void findBlockIndex() throws IOException {
+      if (end == Long.MAX_VALUE ||
+          end - headerEnd < BLOCK_INDEX_TAIL_SIZE) {
+        return;
+      }
+      long pos = in.getPos();
+      in.seek(end - BLOCK_INDEX_TAIL_SIZE);
+      long indexStart = in.readLong();
+      byte[] magic = new byte[BLOCK_INDEX_MAGIC.length];
+      in.readFully(magic);
+      in.seek(pos);
+      if (Arrays.equals(magic, BLOCK_INDEX_MAGIC) &&
+          indexStart >= headerEnd &&
+          indexStart <= end - BLOCK_INDEX_TAIL_SIZE) {
+        blockIndexStart = indexStart;
+        end = indexStart;
+      }
+    }
+
+    private void readBlockIndex() throws IOException {
+      in.seek(blockIndexStart);
+      int blocks = WritableUtils.readVInt(in);
+      boolean blooms = in.readBoolean();
+      long[] offsets = new long[blocks];
+      int[] records = new int[blocks];
+      byte[][] firstKeys = new byte[blocks][];
+      BloomFilter[] filters = blooms ? new BloomFilter[blocks] : null;
+      for (int i = 0; i < blocks; i++) {
+        offsets[i] = WritableUtils.readVLong(in);
+        records[i] = WritableUtils.readVInt(in);
+        firstKeys[i] = new byte[WritableUtils.readVInt(in)];
+        in.readFully(firstKeys[i]);
+        if (blooms) {
+          filters[i] = new BloomFilter();
+          filters[i].readFields(in);
+        }
+      }
+      blockIndexComparator = WritableComparator.get(
+          getKeyClass().asSubclass(WritableComparable.class));
+      lookupKey = new DataOutputBuffer();
+      lookupRawKey = new DataOutputBuffer();
+      blockRecords = records;
+      blockFirstKeys = firstKeys;
+      blockBlooms = filters;
+      blockOffsets = offsets;
+    }
+
+    /**
+     * Returns true if the file was written with a
+     * {@link Writer#blockIndex(boolean) block index}, so that
+     * {@link #get(WritableComparable, Writable)} can be used.
+     */
+    public synchronized boolean hasBlockIndex() {
+      return blockIndexStart >= 0;
+    }
+
+    /**
+     * Read the value of a key, in a file with a block index. The key is
+     * found by a binary search of the index, then by reading the block
+     * which may hold the key, and the block before if the key starts the
+     * block. Blocks whose bloom filter rules out the key are not read.
+     * Moves the reader to the record after the one found.
+     * @param key the key to look for
+     * @param val the value to read into
+     * @return val, or null if the key is not in the file
+     * @throws IOException
+     */
+    public synchronized Writable get(WritableComparable key, Writable val)
+      throws IOException {
+      if (blockIndexStart < 0) {
+        throw new IOException(this + " has no block index");
+      }
+      if (blockOffsets == null) {
+        readBlockIndex();
+      }
+      if (key.getClass() != getKeyClass())
+        throw new IOException("wrong key class: "+key.getClass().getName()
+                              +" is not "+keyClass);
+      lookupKey.reset();
+      key.write(lookupKey);
+      byte[] k = lookupKey.getData();
+      int length = lookupKey.getLength();
+
+      // The first block whose first key is not less than the key
+      int lo = 0;
+      int hi = blockOffsets.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        byte[] first = blockFirstKeys[mid];
+        if (blockIndexComparator.compare(first, 0, first.length,
+                                         k, 0, length) < 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      int last = lo - 1;
+      if (lo < blockOffsets.length &&
+          blockIndexComparator.compare(blockFirstKeys[lo], 0,
+              blockFirstKeys[lo].length, k, 0, length) == 0) {
+        last = lo;
+      }
+
+      Key bloomKey = null;
+      for (int b = Math.max(0, lo - 1); b <= last; b++) {
+        if (blockBlooms != null) {
+          if (bloomKey == null) {
+            bloomKey = new Key(Arrays.copyOf(k, length));
+          }
+          if (!blockBlooms[b].membershipTest(bloomKey)) {
+            continue;
+          }
+        }
+        seek(blockOffsets[b]);
+        for (int r = 0; r < blockRecords[b]; r++) {
+          lookupRawKey.reset();
+          if (nextRawKey(lookupRawKey) < 0) {
+            throw new IOException(this + " is missing records of block " +
+                                  "at " + blockOffsets[b]);
+          }
+          int c = blockIndexComparator.compare(lookupRawKey.getData(), 0,
+              lookupRawKey.getLength(), k, 0, length);
+          if (c == 0) {
+            getCurrentValue(val);
+            return val;
+          } else if (c > 0) {
+            return null;
+          }
+        }
+      }
+      return null;
+    }
+
     /** Return the current byte position in the input file. */
     public synchronized long getPosition() throws IOException {
       return in.getPos();
@@ -2644,6 +2968,705 @@ public String toString() {
 
   }
 
+  /**
+   * Reads a SequenceFile mapped into memory, returning each key and value
+   * as a {@link ByteBuffer} over its bytes rather than copying them into
+   * buffers as {@link Reader#nextRaw(DataOutputBuffer, ValueBytes)} does.
+   * It suits repeated scans and lookups of local side files, including the
+   * data files of {@link MapFile}s, whose index positions may be passed to
+   * {@link #seek(long)}.
+   *
+   * <p>Files on the local file system are mapped a window at a time, and
+   * their checksums are not verified. Files on other file systems are read
+   * a window at a time into one heap buffer. Compressed values, and the
+   * keys and values of block-compressed files, are decompressed into
+   * buffers reused for every record and block. Values are only decompressed
+   * when asked for, so a scan of the keys skips them.</p>
+   *
+   * <p>The buffers returned by {@link #getKey()} and {@link #getValue()}
+   * are reused, and only valid until the reader moves to another record.
+   * A MappedReader must not be shared by threads.</p>
+   */
+  public static class MappedReader implements java.io.Closeable {
+    /** Size of the windows of local files mapped at once */
+    static final int MAPPED_WINDOW = 256 * 1024 * 1024;
+    /** Size of the windows of other files read at once */
+    static final int READ_WINDOW = 4 * 1024 * 1024;
+
+    private final String filename;
+    private final Configuration conf;
+    private int window;
+    private FileChannel channel;                // local files
+    private FSDataInputStream in;               // other files
+    private long end;
+
+    private byte version;
+    private String keyClassName;
+    private String valClassName;
+    private Class<?> keyClass;
+    private Class<?> valClass;
+    private boolean decompress;
+    private boolean blockCompressed;
+    private CompressionCodec codec = null;
+    private Metadata metadata = null;
+    private byte[] sync = null;
+    private long headerEnd;
+
+    // The window of the file, its offset in the file, and views of it for
+    // the keys and values of uncompressed and record-compressed files
+    private ByteBuffer buf;
+    private long bufStart;
+    private ByteBuffer keyView, valView;
+
+    /** File offset of the next record or block */
+    private long pos;
+
+    // The current record. Offsets are into the window for uncompressed and
+    // record-compressed files, and into the decompressed sections for
+    // block-compressed files.
+    private boolean haveRecord;
+    private int keyStart, keyLength;
+    private int valStart, valLength;
+    private boolean valueInflated;
+
+    private Decompressor decompressor;
+    private BufferSource compressed;
+    private CompressionInputStream inflater;
+    private final Section recordValue = new Section();
+    private final Section keyLens = new Section();
+    private final Section keys = new Section();
+    private final Section valLens = new Section();
+    private final Section vals = new Section();
+
+    // The current block of a block-compressed file. Values are decompressed
+    // when first asked for, so the compressed sections are remembered, and
+    // a cursor follows the value lengths up to the current record.
+    private int blockRecords;
+    private int blockRecord;
+    private int keyLenOffset, keyOffset;
+    private long valLensPos, valsPos;
+    private int valLensLength, valsLength;
+    private boolean valuesInflated;
+    private int valRecord;
+    private int valLenOffset, valOffset;
+
+    private final DataInputByteBuffer dataIn = new DataInputByteBuffer();
+
+    /**
+     * Open a file for reading.
+     * @param conf the configuration
+     * @param file the file
+     * @throws IOException
+     */
+    public MappedReader(Configuration conf, Path file) throws IOException {
+      this(file.getFileSystem(conf), file, conf);
+    }
+
+    /**
+     * Open a file for reading.
+     * @param fs the file system of the file
+     * @param file the file
+     * @param conf the configuration
+     * @throws IOException
+     */
+    public MappedReader(FileSystem fs, Path file, Configuration conf)
+      throws IOException {
+      this(fs, file, conf, 0);
+    }
+
+    /**
+     * @param window the size of the windows of the file, or 0 for the
+     *               default
+     */
+    MappedReader(FileSystem fs, Path file, Configuration conf, int window)
+      throws IOException {
+      this.filename = file.toString();
+      this.conf = conf;
+      FileSystem raw = fs instanceof ChecksumFileSystem
+          ? ((ChecksumFileSystem) fs).getRawFileSystem() : fs;
+      boolean succeeded = false;
+      try {
+        if (raw instanceof RawLocalFileSystem) {
+          File f = ((RawLocalFileSystem) raw).pathToFile(file);
+          channel = new FileInputStream(f).getChannel();
+          end = channel.size();
+          this.window = window > 0 ? window : MAPPED_WINDOW;
+        } else {
+          in = fs.open(file);
+          end = fs.getFileStatus(file).getLen();
+          this.window = window > 0 ? window : READ_WINDOW;
+        }
+        init();
+        succeeded = true;
+      } finally {
+        if (!succeeded) {
+          close();
+        }
+      }
+    }
+
+    /** Read the header, as {@link Reader} does. */
+    private void init() throws IOException {
+      ensure(0, (int) Math.min(end, window));
+      DataInputByteBuffer header = new DataInputByteBuffer();
+      header.reset(buf.duplicate());
+
+      byte[] versionBlock = new byte[VERSION.length];
+      header.readFully(versionBlock);
+      if ((versionBlock[0] != VERSION[0]) ||
+          (versionBlock[1] != VERSION[1]) ||
+          (versionBlock[2] != VERSION[2]))
+        throw new IOException(this + " not a SequenceFile");
+      version = versionBlock[3];
+      if (version > VERSION[3])
+        throw new VersionMismatchException(VERSION[3], version);
+
+      if (version < BLOCK_COMPRESS_VERSION) {
+        UTF8 className = new UTF8();
+        className.readFields(header);
+        keyClassName = className.toStringChecked();
+        className.readFields(header);
+        valClassName = className.toStringChecked();
+      } else {
+        keyClassName = Text.readString(header);
+        valClassName = Text.readString(header);
+      }
+
+      decompress = version > 2 && header.readBoolean();
+      blockCompressed =
+        version >= BLOCK_COMPRESS_VERSION && header.readBoolean();
+
+      if (decompress) {
+        if (version >= CUSTOM_COMPRESS_VERSION) {
+          String codecClassname = Text.readString(header);
+          try {
+            Class<? extends CompressionCodec> codecClass = conf.getClassByName(
+                codecClassname).asSubclass(CompressionCodec.class);
+            codec = ReflectionUtils.newInstance(codecClass, conf);
+          } catch (ClassNotFoundException cnfe) {
+            throw new IllegalArgumentException("Unknown codec: " +
+                                               codecClassname, cnfe);
+          }
+        } else {
+          codec = new DefaultCodec();
+          ((Configurable)codec).setConf(conf);
+        }
+        decompressor = CodecPool.getDecompressor(codec);
+        compressed = new BufferSource();
+        inflater = codec.createInputStream(compressed, decompressor);
+      }
+
+      metadata = new Metadata();
+      if (version >= VERSION_WITH_METADATA) {
+        metadata.readFields(header);
+      }
+
+      if (version > 1) {
+        sync = new byte[SYNC_HASH_SIZE];
+        header.readFully(sync);
+      }
+      headerEnd = header.getPosition();
+
+      // The blocks of a closed file with a block index end at the index
+      if (blockCompressed && metadata.get(BLOCK_INDEX_KEY) != null &&
+          end - headerEnd >= BLOCK_INDEX_TAIL_SIZE) {
+        long tail = end - BLOCK_INDEX_TAIL_SIZE;
+        ensure(tail, BLOCK_INDEX_TAIL_SIZE);
+        long indexStart = buf.getLong(offset(tail));
+        boolean magic = true;
+        for (int i = 0; i < BLOCK_INDEX_MAGIC.length; i++) {
+          magic &= buf.get(offset(tail) + 8 + i) == BLOCK_INDEX_MAGIC[i];
+        }
+        if (magic && indexStart >= headerEnd && indexStart <= tail) {
+          end = indexStart;
+        }
+      }
+      seek(headerEnd);
+    }
+
+    /** Returns the name of the key class. */
+    public String getKeyClassName() {
+      return keyClassName;
+    }
+
+    /** Returns the class of keys in this file. */
+    public Class<?> getKeyClass() {
+      if (null == keyClass) {
+        try {
+          keyClass = WritableName.getClass(getKeyClassName(), conf);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return keyClass;
+    }
+
+    /** Returns the name of the value class. */
+    public String getValueClassName() {
+      return valClassName;
+    }
+
+    /** Returns the class of values in this file. */
+    public Class<?> getValueClass() {
+      if (null == valClass) {
+        try {
+          valClass = WritableName.getClass(getValueClassName(), conf);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return valClass;
+    }
+
+    /** Returns true if values are compressed. */
+    public boolean isCompressed() { return decompress; }
+
+    /** Returns true if records are block-compressed. */
+    public boolean isBlockCompressed() { return blockCompressed; }
+
+    /** Returns the compression codec of data in this file. */
+    public CompressionCodec getCompressionCodec() { return codec; }
+
+    /** Returns the metadata object of the file */
+    public Metadata getMetadata() {
+      return metadata;
+    }
+
+    /**
+     * Move to the next record.
+     * @return true if there was a next record, false at the end of the file
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+      haveRecord = false;
+      if (blockCompressed) {
+        if (blockRecord + 1 >= blockRecords) {
+          if (pos >= end) {
+            return false;
+          }
+          try {
+            readBlock();
+          } catch (EOFException eof) {
+            return false;
+          }
+        }
+        blockRecord++;
+        checkSection(keyLens, keyLenOffset, 1);
+        keyLength = WritableComparator.readVInt(keyLens.data, keyLenOffset);
+        keyLenOffset +=
+          WritableUtils.decodeVIntSize(keyLens.data[keyLenOffset]);
+        if (keyLength < 0) {
+          throw new IOException("zero length key found!");
+        }
+        checkSection(keys, keyOffset, keyLength);
+        keyStart = keyOffset;
+        keyOffset += keyLength;
+      } else {
+        if (pos >= end) {
+          return false;
+        }
+        ensure(pos, 4);
+        int length = buf.getInt(offset(pos));
+        if (sync != null && length == SYNC_ESCAPE) {
+          checkSync(pos + 4);
+          pos += SYNC_SIZE;
+          if (pos >= end) {
+            return false;
+          }
+          ensure(pos, 4);
+          length = buf.getInt(offset(pos));
+        }
+        if (length < 0) {
+          throw new IOException(this + " is corrupt at " + pos);
+        }
+        ensure(pos, 8 + length);
+        int start = offset(pos);
+        keyLength = buf.getInt(start + 4);
+        if (keyLength < 0 || keyLength > length) {
+          throw new IOException(this + " is corrupt at " + pos);
+        }
+        keyStart = start + 8;
+        valStart = keyStart + keyLength;
+        valLength = length - keyLength;
+        valueInflated = false;
+        pos += 8 + length;
+      }
+      haveRecord = true;
+      return true;
+    }
+
+    /**
+     * Move to the next record, and read its key.
+     * @param key the key to read into
+     * @return true if there was a next record, false at the end of the file
+     * @throws IOException
+     */
+    public boolean next(Writable key) throws IOException {
+      if (key.getClass() != getKeyClass())
+        throw new IOException("wrong key class: "+key.getClass().getName()
+                              +" is not "+keyClass);
+      if (!next()) {
+        return false;
+      }
+      getCurrentKey(key);
+      return true;
+    }
+
+    /**
+     * Move to the next record, and read its key and value.
+     * @param key the key to read into
+     * @param val the value to read into
+     * @return true if there was a next record, false at the end of the file
+     * @throws IOException
+     */
+    public boolean next(Writable key, Writable val) throws IOException {
+      if (val.getClass() != getValueClass())
+        throw new IOException("wrong value class: "+val+" is not "+valClass);
+      if (!next(key)) {
+        return false;
+      }
+      getCurrentValue(val);
+      return true;
+    }
+
+    /**
+     * Read the key of the current record.
+     * @param key the key to read into
+     * @throws IOException
+     */
+    public void getCurrentKey(Writable key) throws IOException {
+      dataIn.reset(getKey());
+      key.readFields(dataIn);
+    }
+
+    /**
+     * Read the value of the current record.
+     * @param val the value to read into
+     * @throws IOException
+     */
+    public void getCurrentValue(Writable val) throws IOException {
+      if (val instanceof Configurable) {
+        ((Configurable) val).setConf(conf);
+      }
+      dataIn.reset(getValue());
+      val.readFields(dataIn);
+    }
+
+    /**
+     * Returns the serialized key of the current record, between the
+     * position and the limit of the buffer returned.
+     */
+    public ByteBuffer getKey() {
+      checkRecord();
+      return view(blockCompressed ? keys.view : keyView, keyStart, keyLength);
+    }
+
+    /**
+     * Returns the serialized value of the current record, decompressed,
+     * between the position and the limit of the buffer returned.
+     * @throws IOException if the value cannot be decompressed
+     */
+    public ByteBuffer getValue() throws IOException {
+      checkRecord();
+      if (blockCompressed) {
+        positionValue();
+        return view(vals.view, valStart, valLength);
+      } else if (decompress) {
+        if (!valueInflated) {
+          inflate(bufStart + valStart, valLength, recordValue);
+          valueInflated = true;
+        }
+        return view(recordValue.view, 0, recordValue.length);
+      }
+      return view(valView, valStart, valLength);
+    }
+
+    /**
+     * Move to a record or, in a block-compressed file, to a block. The
+     * position must be one returned by {@link #getPosition()}, by
+     * {@link Writer#getLength()} or by a {@link MapFile} index.
+     * @param position the offset of the record or block in the file
+     */
+    public void seek(long position) {
+      pos = position;
+      haveRecord = false;
+      blockRecords = 0;
+      blockRecord = -1;
+    }
+
+    /**
+     * Move to the first sync mark after a position, as
+     * {@link Reader#sync(long)} does.
+     * @param position the offset in the file to search from
+     * @throws IOException
+     */
+    public void sync(long position) throws IOException {
+      if (position+SYNC_SIZE >= end) {
+        seek(end);
+        return;
+      }
+      if (sync == null) {
+        seek(Math.max(position, headerEnd));
+        return;
+      }
+      if (position < headerEnd) {
+        seek(headerEnd);
+        return;
+      }
+      for (long p = position + 4; p + SYNC_HASH_SIZE <= end; p++) {
+        ensure(p, SYNC_HASH_SIZE);
+        if (isSync(offset(p))) {
+          seek(p - 4);                            // position before sync
+          return;
+        }
+      }
+      seek(end);
+    }
+
+    /**
+     * Returns the offset in the file of the next record or, in a
+     * block-compressed file, the next block.
+     */
+    public long getPosition() {
+      return pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+        decompressor = null;
+      }
+      buf = keyView = valView = null;
+      haveRecord = false;
+      try {
+        if (channel != null) {
+          channel.close();
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    }
+
+    /** Returns the name of the file. */
+    @Override
+    public String toString() {
+      return filename;
+    }
+
+    /** Read the record counts and sections of the next block. */
+    private void readBlock() throws IOException {
+      if (sync != null) {
+        checkSync(pos + 4);
+        pos += SYNC_SIZE;
+      }
+      blockRecords = readVInt();
+      int keyLensLength = readVInt();
+      inflate(pos, keyLensLength, keyLens);
+      pos += keyLensLength;
+      int keysLength = readVInt();
+      inflate(pos, keysLength, keys);
+      pos += keysLength;
+      valLensLength = readVInt();
+      valLensPos = pos;
+      pos += valLensLength;
+      valsLength = readVInt();
+      valsPos = pos;
+      pos += valsLength;
+
+      blockRecord = -1;
+      keyLenOffset = keyOffset = 0;
+      valuesInflated = false;
+    }
+
+    /** Find the value of the current record of a block. */
+    private void positionValue() throws IOException {
+      if (!valuesInflated) {
+        inflate(valLensPos, valLensLength, valLens);
+        inflate(valsPos, valsLength, vals);
+        valuesInflated = true;
+        valRecord = 0;
+        valLenOffset = valOffset = 0;
+      }
+      // Follow the lengths of the values skipped
+      while (valRecord <= blockRecord) {
+        checkSection(valLens, valLenOffset, 1);
+        int length = WritableComparator.readVInt(valLens.data, valLenOffset);
+        valLenOffset +=
+          WritableUtils.decodeVIntSize(valLens.data[valLenOffset]);
+        checkSection(vals, valOffset, length);
+        valStart = valOffset;
+        valLength = length;
+        valOffset += length;
+        valRecord++;
+      }
+    }
+
+    /**
+     * Decompress a range of the file into a section.
+     */
+    private void inflate(long position, int length, Section out)
+      throws IOException {
+      ensure(position, length);
+      ByteBuffer in = buf.duplicate();
+      int start = offset(position);
+      in.limit(start + length);
+      in.position(start);
+      compressed.reset(in);
+      inflater.resetState();
+      out.length = 0;
+      while (true) {
+        if (out.length == out.data.length) {
+          out.grow();
+        }
+        int n = inflater.read(out.data, out.length,
+                              out.data.length - out.length);
+        if (n < 0) {
+          break;
+        }
+        out.length += n;
+      }
+    }
+
+    /** Read a vint at the position, and move past it. */
+    private int readVInt() throws IOException {
+      ensure(pos, 1);
+      byte first = buf.get(offset(pos));
+      int size = WritableUtils.decodeVIntSize(first);
+      if (size == 1) {
+        pos++;
+        return first;
+      }
+      ensure(pos, size);
+      int start = offset(pos);
+      long i = 0;
+      for (int idx = 1; idx < size; idx++) {
+        i = (i << 8) | (buf.get(start + idx) & 0xFF);
+      }
+      pos += size;
+      i = WritableUtils.isNegativeVInt(first) ? (i ^ -1L) : i;
+      if (i > Integer.MAX_VALUE || i < Integer.MIN_VALUE) {
+        throw new IOException("value too long to fit in integer");
+      }
+      return (int) i;
+    }
+
+    private void checkSync(long position) throws IOException {
+      ensure(position, SYNC_HASH_SIZE);
+      if (!isSync(offset(position))) {
+        throw new IOException("File is corrupt!");
+      }
+    }
+
+    private boolean isSync(int start) {
+      for (int i = 0; i < SYNC_HASH_SIZE; i++) {
+        if (buf.get(start + i) != sync[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void checkSection(Section section, int start, int length)
+      throws IOException {
+      if (length < 0 || start + length > section.length) {
+        throw new IOException(this + " has a corrupt block before " + pos);
+      }
+    }
+
+    private void checkRecord() {
+      if (!haveRecord) {
+        throw new IllegalStateException("No current record");
+      }
+    }
+
+    private static ByteBuffer view(ByteBuffer view, int start, int length) {
+      view.limit(start + length);
+      view.position(start);
+      return view;
+    }
+
+    /** Returns the offset in the window of an offset in the file. */
+    private int offset(long position) {
+      return (int) (position - bufStart);
+    }
+
+    /**
+     * Make sure a range of the file is in the window, moving the window to
+     * start at the range if not.
+     */
+    private void ensure(long position, int length) throws IOException {
+      if (buf != null && position >= bufStart &&
+          position + length <= bufStart + buf.limit()) {
+        return;
+      }
+      if (length < 0 || position < 0) {
+        throw new IOException(this + " is corrupt at " + position);
+      }
+      if (position + length > end) {
+        throw new EOFException(this + " ends at " + end + " before " +
+                               (position + length));
+      }
+      int size = (int) Math.min(end - position, Math.max(window, length));
+      if (channel != null) {
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+      } else {
+        if (buf == null || buf.capacity() < size) {
+          buf = ByteBuffer.allocate(size);
+        }
+        in.readFully(position, buf.array(), 0, size);
+        buf.clear();
+        buf.limit(size);
+      }
+      bufStart = position;
+      keyView = buf.duplicate();
+      valView = buf.duplicate();
+    }
+
+    /** A reusable buffer of decompressed data */
+    private static class Section {
+      byte[] data = new byte[0];
+      int length;
+      ByteBuffer view = ByteBuffer.wrap(data);
+
+      void grow() {
+        data = Arrays.copyOf(data, Math.max(4096, data.length * 2));
+        view = ByteBuffer.wrap(data);
+      }
+    }
+
+    /** Feeds a range of the window to the decompressor */
+    private static class BufferSource extends InputStream {
+      private ByteBuffer in = ByteBuffer.allocate(0);
+
+      void reset(ByteBuffer in) {
+        this.in = in;
+      }
+
+      @Override
+      public int read() {
+        return in.hasRemaining() ? in.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (!in.hasRemaining()) {
+          return -1;
+        }
+        len = Math.min(len, in.remaining());
+        in.get(b, off, len);
+        return len;
+      }
+
+      @Override
+      public int available() {
+        return in.remaining();
+      }
+    }
+  } // SequenceFile.MappedReader
+
   /** Sorts key/value pairs in a sequence-format file.
    *
    * <p>For best performance, applications should make sure that the {@link
@@ -156,33 +156,30 @@ public int find(String what) {
    */
   public int find(String what, int start) {
     try {
-      ByteBuffer src = ByteBuffer.wrap(this.bytes,0,this.length);
       ByteBuffer tgt = encode(what);
       byte b = tgt.get();
-      src.position(start);
-          
-      while (src.hasRemaining()) {
-        if (b == src.get()) { // matching first byte
-          src.mark(); // save position in loop
-          tgt.mark(); // save position in target
-          boolean found = true;
-          int pos = src.position()-1;
-          while (tgt.hasRemaining()) {
-            if (!src.hasRemaining()) { // src expired first
-              tgt.reset();
-              src.reset();
-              found = false;
-              break;
-            }
-            if (!(tgt.get() == src.get())) {
-              tgt.reset();
-              src.reset();
-              found = false;
-              break; // no match
-            }
-          }
-          if (found) return pos;
+      byte[] target = tgt.array();
+      int targetLength = tgt.limit();
+      // the last position where the whole target still fits
+      int last = this.length - targetLength;
+
+      int pos = start;
+      while (pos <= last) {
+        // skip to the next match of the first bytes, a word at a time
+        if (targetLength == 1) {
+          pos = FastByteScans.indexOf(bytes, pos, last + 1, b);
+        } else {
+          pos = FastByteScans.indexOf(bytes, pos, last + 2, b, target[1]);
+        }
+        if (pos > last) {
+          break;
         }
+        int i = 1;
+        while (i < targetLength && bytes[pos + i] == target[i]) {
+          i++;
+        }
+        if (i == targetLength) return pos;
+        pos++;
       }
       return -1; // not found
     } catch (CharacterCodingException e) {
@@ -233,7 +230,8 @@ public void set(byte[] utf8, int start, int len) {
    * @param len the number of bytes to append
    */
   public void append(byte[] utf8, int start, int len) {
-    setCapacity(length + len, true);
+    // after clear() there is nothing to keep, so do not copy the old bytes
+    setCapacity(length + len, length > 0);
     System.arraycopy(utf8, start, bytes, length, len);
     length += len;
   }
@@ -394,8 +392,19 @@ public static String decode(byte[] utf8, int start, int length, boolean replace)
     return decode(ByteBuffer.wrap(utf8, start, length), replace);
   }
   
+  @SuppressWarnings("deprecation")
   private static String decode(ByteBuffer utf8, boolean replace) 
     throws CharacterCodingException {
+    if (utf8.hasArray()) {
+      // ASCII is the same in UTF-8 and UTF-16, so all ASCII text only needs
+      // widening, which the String constructor taking a high byte does
+      byte[] b = utf8.array();
+      int start = utf8.arrayOffset() + utf8.position();
+      int end = start + utf8.remaining();
+      if (FastByteScans.indexOfNonAscii(b, start, end) == end) {
+        return new String(b, 0, start, end - start);
+      }
+    }
     CharsetDecoder decoder = DECODER_FACTORY.get();
     if (replace) {
       decoder.onMalformedInput(
@@ -526,7 +535,15 @@ public static void validateUTF8(byte[] utf8, int start, int len)
     int leadByte = 0;
     int length = 0;
     int state = LEAD_BYTE;
-    while (count < start+len) {
+    int end = start + len;
+    while (count < end) {
+      if (state == LEAD_BYTE) {
+        // ASCII is always valid, skip it a word at a time
+        count = FastByteScans.indexOfNonAscii(utf8, count, end);
+        if (count == end) {
+          break;
+        }
+      }
       int aByte = utf8[count] & 0xFF;
 
       switch (state) {
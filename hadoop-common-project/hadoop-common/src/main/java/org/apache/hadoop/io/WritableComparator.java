@@ -50,9 +50,14 @@ public static WritableComparator get(Class<? extends WritableComparable> c) {
       forceInit(c);
       // look to see if it is defined now
       comparator = comparators.get(c);
-      // if not, use the generic one
+      // if not, use the one of the layout of the class, which compares
+      // serialized keys in place, or the generic one
       if (comparator == null) {
-        comparator = new WritableComparator(c, true);
+        if (FieldLayout.isDeclared(c)) {
+          comparator = FieldLayout.get(c).getComparator();
+        } else {
+          comparator = new WritableComparator(c, true);
+        }
       }
     }
     return comparator;
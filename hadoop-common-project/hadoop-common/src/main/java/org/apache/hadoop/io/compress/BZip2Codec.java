@@ -26,34 +26,70 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.compress.bzip2.BZip2Constants;
 import org.apache.hadoop.io.compress.bzip2.BZip2DummyCompressor;
 import org.apache.hadoop.io.compress.bzip2.BZip2DummyDecompressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Compressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Decompressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Factory;
+import org.apache.hadoop.io.compress.bzip2.Bzip2SplitInputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
 
 /**
  * This class provides CompressionOutputStream and CompressionInputStream for
- * compression and decompression. Currently we dont have an implementation of
- * the Compressor and Decompressor interfaces, so those methods of
- * CompressionCodec which have a Compressor or Decompressor type argument, throw
- * UnsupportedOperationException.
+ * compression and decompression.
+ *
+ * When the native hadoop library was built with libbz2, and the codec is
+ * configured, the native {@link Bzip2Compressor} and
+ * {@link Bzip2Decompressor} are used, including for reading splits block by
+ * block. Otherwise, or if io.compression.codec.bzip2.library is
+ * "java-builtin", the pure-Java streams are used, and those methods of
+ * CompressionCodec which have a Compressor or Decompressor type argument
+ * ignore it. Both implementations read and write the same format, and split
+ * files at the same places.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class BZip2Codec implements SplittableCompressionCodec {
+public class BZip2Codec implements Configurable, SplittableCompressionCodec {
 
   private static final String HEADER = "BZ";
   private static final int HEADER_LEN = HEADER.length();
   private static final String SUB_HEADER = "h9";
   private static final int SUB_HEADER_LEN = SUB_HEADER.length();
 
+  private Configuration conf;
+
   /**
   * Creates a new instance of BZip2Codec
   */
   public BZip2Codec() { }
 
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Whether to use native bzip2. A codec which has not been configured
+   * always uses the pure-Java streams.
+   */
+  private boolean isNativeBzip2Loaded() {
+    return conf != null && Bzip2Factory.isNativeBzip2Loaded(conf);
+  }
+
+  private int getBufferSize() {
+    return conf.getInt("io.file.buffer.size", 4*1024);
+  }
+
   /**
   * Creates CompressionOutputStream for BZip2
   *
@@ -66,6 +102,9 @@ public BZip2Codec() { }
   @Override
   public CompressionOutputStream createOutputStream(OutputStream out)
       throws IOException {
+    if (isNativeBzip2Loaded()) {
+      return createOutputStream(out, createCompressor());
+    }
     return new BZip2CompressionOutputStream(out);
   }
 
@@ -78,27 +117,34 @@ public CompressionOutputStream createOutputStream(OutputStream out)
   @Override
   public CompressionOutputStream createOutputStream(OutputStream out,
       Compressor compressor) throws IOException {
-    return createOutputStream(out);
+    if (compressor instanceof Bzip2Compressor) {
+      return new CompressorStream(out, compressor, getBufferSize());
+    }
+    return new BZip2CompressionOutputStream(out);
   }
 
   /**
-  * This functionality is currently not supported.
+  * Returns the type of compressor {@link #createCompressor()} creates.
   *
-  * @return BZip2DummyCompressor.class
+  * @return Bzip2Compressor.class with native bzip2, else
+  *         BZip2DummyCompressor.class
   */
   @Override
   public Class<? extends org.apache.hadoop.io.compress.Compressor> getCompressorType() {
-    return BZip2DummyCompressor.class;
+    return isNativeBzip2Loaded() ?
+        Bzip2Factory.getBzip2CompressorType(conf) : BZip2DummyCompressor.class;
   }
 
   /**
-  * This functionality is currently not supported.
+  * Creates a native compressor if native bzip2 is available. Otherwise the
+  * compressor is a placeholder, which the pure-Java streams ignore.
   *
   * @return Compressor
   */
   @Override
   public Compressor createCompressor() {
-    return new BZip2DummyCompressor();
+    return isNativeBzip2Loaded() ?
+        Bzip2Factory.getBzip2Compressor(conf) : new BZip2DummyCompressor();
   }
 
   /**
@@ -113,18 +159,25 @@ public Compressor createCompressor() {
   @Override
   public CompressionInputStream createInputStream(InputStream in)
       throws IOException {
+    if (isNativeBzip2Loaded()) {
+      return createInputStream(in, createDecompressor());
+    }
     return new BZip2CompressionInputStream(in);
   }
 
   /**
-  * This functionality is currently not supported.
+  * Creates CompressionInputStream using the given decompressor, if it is a
+  * native one.
   *
   * @return CompressionInputStream
   */
   @Override
   public CompressionInputStream createInputStream(InputStream in,
       Decompressor decompressor) throws IOException {
-    return createInputStream(in);
+    if (decompressor instanceof Bzip2Decompressor) {
+      return new DecompressorStream(in, decompressor, getBufferSize());
+    }
+    return new BZip2CompressionInputStream(in);
   }
 
   /**
@@ -149,6 +202,11 @@ public SplitCompressionInputStream createInputStream(InputStream seekableIn,
           Seekable.class.getName());
     }
 
+    if (readMode == READ_MODE.BYBLOCK && isNativeBzip2Loaded()) {
+      return Bzip2SplitInputStream.create(seekableIn, decompressor, start,
+          end);
+    }
+
     //find the position of first BZip2 start up marker
     ((Seekable)seekableIn).seek(0);
 
@@ -184,23 +242,27 @@ public SplitCompressionInputStream createInputStream(InputStream seekableIn,
   }
 
   /**
-  * This functionality is currently not supported.
+  * Returns the type of decompressor {@link #createDecompressor()} creates.
   *
-  * @return BZip2DummyDecompressor.class
+  * @return Bzip2Decompressor.class with native bzip2, else
+  *         BZip2DummyDecompressor.class
   */
   @Override
   public Class<? extends org.apache.hadoop.io.compress.Decompressor> getDecompressorType() {
-    return BZip2DummyDecompressor.class;
+    return isNativeBzip2Loaded() ? Bzip2Factory.getBzip2DecompressorType(conf)
+        : BZip2DummyDecompressor.class;
   }
 
   /**
-  * This functionality is currently not supported.
+  * Creates a native decompressor if native bzip2 is available. Otherwise the
+  * decompressor is a placeholder, which the pure-Java streams ignore.
   *
   * @return Decompressor
   */
   @Override
   public Decompressor createDecompressor() {
-    return new BZip2DummyDecompressor();
+    return isNativeBzip2Loaded() ? Bzip2Factory.getBzip2Decompressor(conf)
+        : new BZip2DummyDecompressor();
   }
 
   /**
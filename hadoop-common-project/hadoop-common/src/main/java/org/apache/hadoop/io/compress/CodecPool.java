@@ -17,8 +17,11 @@
  */
 package org.apache.hadoop.io.compress;
 
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -52,6 +55,20 @@ public class CodecPool {
   private static final Map<Class<Decompressor>, List<Decompressor>> decompressorPool = 
     new HashMap<Class<Decompressor>, List<Decompressor>>();
 
+  /**
+   * A global pool of direct buffers, by capacity, for use with
+   * {@link DirectCompressor}s and {@link DirectDecompressor}s. Direct buffers
+   * are expensive to allocate, and their memory is only released when they
+   * are garbage collected. So that the pool never pins that memory itself,
+   * the buffers are held through soft references, and at most
+   * {@link #MAX_POOLED_DIRECT_BUFFERS} of each capacity are kept.
+   */
+  private static final Map<Integer, List<SoftReference<ByteBuffer>>>
+    directBufferPool = new HashMap<Integer, List<SoftReference<ByteBuffer>>>();
+
+  /** The most direct buffers of any one capacity that are pooled. */
+  static final int MAX_POOLED_DIRECT_BUFFERS = 8;
+
   private static <T> T borrow(Map<Class<T>, List<T>> pool,
                              Class<? extends T> codecClass) {
     T codec = null;
@@ -174,4 +191,61 @@ public static void returnDecompressor(Decompressor decompressor) {
     decompressor.reset();
     payback(decompressorPool, decompressor);
   }
+
+  /**
+   * Get a direct {@link ByteBuffer} of the given capacity from the pool, or
+   * a new one. The buffer is cleared.
+   *
+   * @param capacity the capacity of the buffer
+   * @return a direct buffer of exactly the given capacity
+   */
+  public static ByteBuffer getDirectBuffer(int capacity) {
+    ByteBuffer buf = null;
+    synchronized (directBufferPool) {
+      List<SoftReference<ByteBuffer>> bufs = directBufferPool.get(capacity);
+      if (bufs != null) {
+        while (buf == null && !bufs.isEmpty()) {
+          buf = bufs.remove(bufs.size() - 1).get();
+        }
+        if (bufs.isEmpty()) {
+          directBufferPool.remove(capacity);
+        }
+      }
+    }
+    if (buf == null) {
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    buf.clear();
+    return buf;
+  }
+
+  /**
+   * Return a direct {@link ByteBuffer} to the pool, once nothing refers to
+   * its contents any longer.
+   *
+   * @param buf the buffer to be returned to the pool
+   */
+  public static void returnDirectBuffer(ByteBuffer buf) {
+    if (buf == null || !buf.isDirect()) {
+      return;
+    }
+    synchronized (directBufferPool) {
+      List<SoftReference<ByteBuffer>> bufs =
+          directBufferPool.get(buf.capacity());
+      if (bufs == null) {
+        bufs = new ArrayList<SoftReference<ByteBuffer>>();
+        directBufferPool.put(buf.capacity(), bufs);
+      }
+      // Forget the buffers which have been collected.
+      for (Iterator<SoftReference<ByteBuffer>> it = bufs.iterator();
+          it.hasNext(); ) {
+        if (it.next().get() == null) {
+          it.remove();
+        }
+      }
+      if (bufs.size() < MAX_POOLED_DIRECT_BUFFERS) {
+        bufs.add(new SoftReference<ByteBuffer>(buf));
+      }
+    }
+  }
 }
@@ -32,7 +32,7 @@
 
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class DefaultCodec implements Configurable, CompressionCodec {
+public class DefaultCodec implements Configurable, DirectCompressionCodec {
   private static final Log LOG = LogFactory.getLog(DefaultCodec.class);
   
   Configuration conf;
@@ -103,6 +103,34 @@ public Decompressor createDecompressor() {
     return ZlibFactory.getZlibDecompressor(conf);
   }
   
+  /**
+   * Create a new {@link DirectCompressor}, which is available with the
+   * native zlib library.
+   *
+   * @return the compressor {@link #createCompressor()} returns, or
+   *         <code>null</code> if it cannot compress direct buffers
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    Compressor compressor = createCompressor();
+    return compressor instanceof DirectCompressor
+        ? (DirectCompressor) compressor : null;
+  }
+
+  /**
+   * Create a new {@link DirectDecompressor}, which is available with the
+   * native zlib library.
+   *
+   * @return the decompressor {@link #createDecompressor()} returns, or
+   *         <code>null</code> if it cannot decompress direct buffers
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    Decompressor decompressor = createDecompressor();
+    return decompressor instanceof DirectDecompressor
+        ? (DirectDecompressor) decompressor : null;
+  }
+
   @Override
   public String getDefaultExtension() {
     return ".deflate";
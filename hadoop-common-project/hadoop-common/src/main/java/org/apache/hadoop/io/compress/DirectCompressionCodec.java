@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A {@link CompressionCodec} which can also compress and decompress blocks
+ * held in direct buffers, without copying them.
+ *
+ * The compressors and decompressors returned by {@link #createCompressor()}
+ * and {@link #createDecompressor()}, and so those pooled by
+ * {@link CodecPool}, implement the direct interfaces too whenever the
+ * direct ones are available.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectCompressionCodec extends CompressionCodec {
+  /**
+   * Create a new {@link DirectCompressor} for use by this codec.
+   *
+   * @return a new direct compressor, or <code>null</code> if the codec
+   *         cannot compress direct buffers, e.g. without native code
+   */
+  public DirectCompressor createDirectCompressor();
+
+  /**
+   * Create a new {@link DirectDecompressor} for use by this codec.
+   *
+   * @return a new direct decompressor, or <code>null</code> if the codec
+   *         cannot decompress direct buffers, e.g. without native code
+   */
+  public DirectDecompressor createDirectDecompressor();
+}
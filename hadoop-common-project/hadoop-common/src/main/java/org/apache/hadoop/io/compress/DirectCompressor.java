@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Specification of a compressor which compresses directly between direct
+ * {@link ByteBuffer}s owned by the caller, rather than copying the data
+ * through buffers of its own as a {@link Compressor} does.
+ *
+ * Each call compresses a single, self-contained block, which the
+ * corresponding {@link DirectDecompressor} decompresses in a single call.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectCompressor {
+  /**
+   * Returns the most bytes that compressing a block of the given length
+   * can produce.
+   *
+   * @param uncompressedLength the length of the data to compress
+   * @return the space the compressed data may need in the output buffer
+   */
+  public int maxCompressedLength(int uncompressedLength);
+
+  /**
+   * Compresses the bytes remaining in <code>src</code> into
+   * <code>dst</code>. On return, the position of <code>src</code> is at its
+   * limit, and the position of <code>dst</code> is just past the compressed
+   * data.
+   *
+   * Any stream compression in progress is abandoned.
+   *
+   * @param src direct buffer holding the data to compress
+   * @param dst direct buffer with at least
+   *            {@link #maxCompressedLength(int)} bytes remaining
+   * @throws IllegalArgumentException if either buffer is not direct, or
+   *                                  <code>dst</code> is too small
+   */
+  public void compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Specification of a decompressor which decompresses directly between
+ * direct {@link ByteBuffer}s owned by the caller, rather than copying the
+ * data through buffers of its own as a {@link Decompressor} does.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectDecompressor {
+  /**
+   * Decompresses a block written by {@link DirectCompressor#compress},
+   * which starts at the position of <code>src</code>, into
+   * <code>dst</code>. On return, the position of <code>src</code> is just
+   * past the compressed block, and the position of <code>dst</code> is
+   * just past the uncompressed data.
+   *
+   * Any stream decompression in progress is abandoned.
+   *
+   * @param src direct buffer holding the compressed block
+   * @param dst direct buffer to decompress into
+   * @throws IllegalArgumentException if either buffer is not direct
+   * @throws IOException if the block is corrupt, or does not fit into
+   *                     <code>dst</code>
+   */
+  public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
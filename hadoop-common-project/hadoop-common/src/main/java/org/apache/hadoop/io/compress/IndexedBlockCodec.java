@@ -0,0 +1,528 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.rmi.server.UID;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Time;
+
+/**
+ * A splittable container for the output of any other codec, such as Snappy,
+ * LZ4 or Deflate. The data is cut into blocks, each compressed on its own
+ * with the codec named by
+ * {@link CommonConfigurationKeys#IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_KEY}:
+ *
+ * <pre>
+ * header: "IBLK" version codec-class-name sync-marker
+ * block:  sync-marker uncompressed-length compressed-length compressed-data
+ * </pre>
+ *
+ * As in {@link org.apache.hadoop.io.SequenceFile}, the sync marker is random
+ * and recorded in the header, so a reader starting anywhere in the file finds
+ * the next block by scanning for the marker. A split holds the blocks whose
+ * markers start after its first byte and up to its last, and reports its
+ * position at block boundaries as
+ * {@link SplittableCompressionCodec.READ_MODE#BYBLOCK} requires.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class IndexedBlockCodec implements Configurable,
+    SplittableCompressionCodec {
+  private static final byte[] MAGIC = {'I', 'B', 'L', 'K'};
+  private static final byte VERSION = 1;
+  private static final int SYNC_SIZE = 16;
+
+  private Configuration conf;
+  private CompressionCodec blockCodec;
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.blockCodec = null;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /** @return the codec which compresses the blocks of new files */
+  private synchronized CompressionCodec getBlockCodec() {
+    if (blockCodec == null) {
+      try {
+        blockCodec = newBlockCodec(conf, conf.get(
+            CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_KEY,
+            CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_DEFAULT));
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+    return blockCodec;
+  }
+
+  private static CompressionCodec newBlockCodec(Configuration conf,
+      String className) throws IOException {
+    Class<?> codecClass;
+    try {
+      codecClass = conf.getClassByName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Block codec " + className + " not found", e);
+    }
+    if (!CompressionCodec.class.isAssignableFrom(codecClass) ||
+        IndexedBlockCodec.class.isAssignableFrom(codecClass)) {
+      throw new IOException(className + " can not compress blocks");
+    }
+    return (CompressionCodec)ReflectionUtils.newInstance(codecClass, conf);
+  }
+
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out)
+      throws IOException {
+    return createOutputStream(out, createCompressor());
+  }
+
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out,
+      Compressor compressor) throws IOException {
+    int blockSize = conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_DEFAULT);
+    return new IndexedBlockOutputStream(out, getBlockCodec(), compressor,
+        blockSize);
+  }
+
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return getBlockCodec().getCompressorType();
+  }
+
+  @Override
+  public Compressor createCompressor() {
+    return getBlockCodec().createCompressor();
+  }
+
+  @Override
+  public CompressionInputStream createInputStream(InputStream in)
+      throws IOException {
+    return createInputStream(in, createDecompressor());
+  }
+
+  @Override
+  public CompressionInputStream createInputStream(InputStream in,
+      Decompressor decompressor) throws IOException {
+    return new IndexedBlockInputStream(in, conf, decompressor);
+  }
+
+  /**
+   * Create a stream reading the blocks which start in the given range of
+   * the file. Both read modes report the position of the block being read,
+   * as it is the only position at which a split can start.
+   */
+  @Override
+  public SplitCompressionInputStream createInputStream(InputStream seekableIn,
+      Decompressor decompressor, long start, long end, READ_MODE readMode)
+      throws IOException {
+    if (!(seekableIn instanceof Seekable)) {
+      throw new IOException("seekableIn must be an instance of " +
+          Seekable.class.getName());
+    }
+    return new IndexedBlockInputStream(seekableIn, conf, decompressor,
+        start, end);
+  }
+
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return getBlockCodec().getDecompressorType();
+  }
+
+  @Override
+  public Decompressor createDecompressor() {
+    return getBlockCodec().createDecompressor();
+  }
+
+  @Override
+  public String getDefaultExtension() {
+    return ".iblk";
+  }
+
+  private static class IndexedBlockOutputStream
+      extends CompressionOutputStream {
+    private final DataOutputStream data;
+    private final CompressionCodec codec;
+    private final Compressor compressor;
+    private final byte[] sync;
+    private final byte[] block;
+    private int blockLen = 0;
+    private final ByteArrayOutputStream compressed =
+        new ByteArrayOutputStream();
+    private boolean headerWritten = false;
+    private final byte[] oneByte = new byte[1];
+
+    IndexedBlockOutputStream(OutputStream out, CompressionCodec codec,
+        Compressor compressor, int blockSize) {
+      super(out);
+      this.data = new DataOutputStream(out);
+      this.codec = codec;
+      this.compressor = compressor;
+      this.block = new byte[blockSize];
+      try {
+        MessageDigest digester = MessageDigest.getInstance("MD5");
+        long time = Time.now();
+        digester.update((new UID()+"@"+time).getBytes());
+        sync = digester.digest();
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      oneByte[0] = (byte)(b & 0xff);
+      write(oneByte, 0, oneByte.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+        throw new IndexOutOfBoundsException();
+      }
+      while (len > 0) {
+        int n = Math.min(len, block.length - blockLen);
+        System.arraycopy(b, off, block, blockLen, n);
+        blockLen += n;
+        off += n;
+        len -= n;
+        if (blockLen == block.length) {
+          writeBlock();
+        }
+      }
+    }
+
+    @Override
+    public void finish() throws IOException {
+      writeBlock();
+      if (!headerWritten) {
+        writeHeader();
+      }
+    }
+
+    /**
+     * Start a new container, with a header of its own, with the next data
+     * written, as a stream created anew would.
+     */
+    @Override
+    public void resetState() throws IOException {
+      blockLen = 0;
+      headerWritten = false;
+    }
+
+    private void writeHeader() throws IOException {
+      data.write(MAGIC);
+      data.writeByte(VERSION);
+      Text.writeString(data, codec.getClass().getName());
+      data.write(sync);
+      headerWritten = true;
+    }
+
+    private void writeBlock() throws IOException {
+      if (blockLen == 0) {
+        return;
+      }
+      if (!headerWritten) {
+        writeHeader();
+      }
+      compressed.reset();
+      CompressionOutputStream cout;
+      if (compressor == null) {
+        cout = codec.createOutputStream(compressed);
+      } else {
+        compressor.reset();
+        cout = codec.createOutputStream(compressed, compressor);
+      }
+      cout.write(block, 0, blockLen);
+      cout.finish();
+
+      data.write(sync);
+      data.writeInt(blockLen);
+      data.writeInt(compressed.size());
+      compressed.writeTo(data);
+      blockLen = 0;
+    }
+  }
+
+  private static class IndexedBlockInputStream
+      extends SplitCompressionInputStream {
+    private final Configuration conf;
+    private final Decompressor givenDecompressor;
+    private DataInputStream data;
+    /** Offset in the file of the next byte of data */
+    private long filePos;
+
+    private boolean headerRead = false;
+    private CompressionCodec codec;
+    private Decompressor decompressor;
+    private final byte[] sync = new byte[SYNC_SIZE];
+    private final byte[] syncCheck = new byte[SYNC_SIZE];
+    /** Whether the sync marker of the next block has already been read */
+    private boolean syncSkipped = false;
+    private boolean eof = false;
+
+    /** Offset in the file of the block last read from */
+    private long blockPos;
+    private byte[] compressedBuf = new byte[0];
+    private byte[] uncompressedBuf = new byte[0];
+    private int uncompressedLen = 0;
+    private int uncompressedPos = 0;
+    private final byte[] oneByte = new byte[1];
+
+    /** Read the whole of a stream. */
+    IndexedBlockInputStream(InputStream in, Configuration conf,
+        Decompressor decompressor) throws IOException {
+      super(in, 0, Long.MAX_VALUE);
+      this.conf = conf;
+      this.givenDecompressor = decompressor;
+      this.data = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /** Read the blocks starting in (start, end] of a seekable stream. */
+    IndexedBlockInputStream(InputStream in, Configuration conf,
+        Decompressor decompressor, long start, long end) throws IOException {
+      this(in, conf, decompressor);
+      Seekable seekable = (Seekable)in;
+      seekable.seek(0);
+      readHeader();
+      if (start > 0) {
+        setStart(start);
+        // The split before this one owns the block starting at its end,
+        // and the header's copy of the sync marker is not a block.
+        long from = Math.max(start + 1, filePos);
+        if (from > filePos) {
+          seekable.seek(from);
+          data = new DataInputStream(new BufferedInputStream(in));
+          filePos = from;
+        }
+        if (skipToSync()) {
+          setStart(blockPos);
+        } else {
+          eof = true;
+        }
+      }
+      setEnd(end);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int n = read(oneByte, 0, 1);
+      return n < 0 ? n : (oneByte[0] & 0xff);
+    }
+
+    /**
+     * Reads never span blocks, so that {@link #getPos()} is the position of
+     * the block holding all of the bytes last returned.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+        throw new IndexOutOfBoundsException();
+      } else if (len == 0) {
+        return 0;
+      }
+      while (uncompressedPos == uncompressedLen) {
+        if (!nextBlock()) {
+          return -1;
+        }
+      }
+      int n = Math.min(len, uncompressedLen - uncompressedPos);
+      System.arraycopy(uncompressedBuf, uncompressedPos, b, off, n);
+      uncompressedPos += n;
+      return n;
+    }
+
+    @Override
+    public long getPos() {
+      return blockPos;
+    }
+
+    /** Expect the header of a new container with the next data read. */
+    @Override
+    public void resetState() throws IOException {
+      headerRead = false;
+      syncSkipped = false;
+      eof = false;
+      uncompressedLen = uncompressedPos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (decompressor != null && decompressor != givenDecompressor) {
+        decompressor.end();
+      }
+      super.close();
+    }
+
+    /** @return false if the stream ends before the header */
+    private boolean readHeader() throws IOException {
+      int first = data.read();
+      if (first < 0) {
+        return false;
+      }
+      byte[] magic = new byte[MAGIC.length];
+      magic[0] = (byte)first;
+      data.readFully(magic, 1, magic.length - 1);
+      if (!Arrays.equals(MAGIC, magic)) {
+        throw new IOException("Not an indexed block file");
+      }
+      byte version = data.readByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported indexed block file version " +
+            version);
+      }
+      String codecName = Text.readString(data);
+      data.readFully(sync);
+      int nameLen = Text.encode(codecName).limit();
+      filePos += MAGIC.length + 1 + WritableUtils.getVIntSize(nameLen) +
+          nameLen + SYNC_SIZE;
+
+      CompressionCodec newCodec = newBlockCodec(conf, codecName);
+      if (codec == null || codec.getClass() != newCodec.getClass()) {
+        if (decompressor != null && decompressor != givenDecompressor) {
+          decompressor.end();
+        }
+        codec = newCodec;
+        if (givenDecompressor != null &&
+            codec.getDecompressorType().isInstance(givenDecompressor)) {
+          decompressor = givenDecompressor;
+        } else {
+          decompressor = codec.createDecompressor();
+        }
+      }
+      headerRead = true;
+      return true;
+    }
+
+    /**
+     * Scan for the next sync marker, and leave the stream just past it.
+     * @return false if the stream ends first
+     */
+    private boolean skipToSync() throws IOException {
+      long pos = filePos;
+      for (int i = 0; i < SYNC_SIZE; i++) {
+        int b = data.read();
+        if (b < 0) {
+          filePos = pos;
+          return false;
+        }
+        syncCheck[i] = (byte)b;
+        pos++;
+      }
+      for (int i = 0; ; i++) {
+        int j = 0;
+        for (; j < SYNC_SIZE; j++) {
+          if (sync[j] != syncCheck[(i+j)%SYNC_SIZE])
+            break;
+        }
+        if (j == SYNC_SIZE) {
+          filePos = pos;
+          blockPos = pos - SYNC_SIZE;
+          syncSkipped = true;
+          return true;
+        }
+        int b = data.read();
+        if (b < 0) {
+          filePos = pos;
+          return false;
+        }
+        syncCheck[i%SYNC_SIZE] = (byte)b;
+        pos++;
+      }
+    }
+
+    /** @return false at the end of the stream */
+    private boolean nextBlock() throws IOException {
+      if (eof) {
+        return false;
+      }
+      if (!headerRead && !readHeader()) {
+        eof = true;
+        return false;
+      }
+      long pos = syncSkipped ? filePos - SYNC_SIZE : filePos;
+      if (!syncSkipped) {
+        int first = data.read();
+        if (first < 0) {
+          eof = true;
+          return false;
+        }
+        syncCheck[0] = (byte)first;
+        data.readFully(syncCheck, 1, SYNC_SIZE - 1);
+        if (!Arrays.equals(sync, syncCheck)) {
+          throw new IOException("Missing sync marker at " + pos);
+        }
+        filePos += SYNC_SIZE;
+      }
+      syncSkipped = false;
+      int ulen = data.readInt();
+      int clen = data.readInt();
+      if (ulen < 0 || clen < 0) {
+        throw new IOException("Corrupt block at " + pos);
+      }
+      if (compressedBuf.length < clen) {
+        compressedBuf = new byte[clen];
+      }
+      data.readFully(compressedBuf, 0, clen);
+      filePos += 8 + clen;
+
+      if (uncompressedBuf.length < ulen) {
+        uncompressedBuf = new byte[ulen];
+      }
+      InputStream cin = new ByteArrayInputStream(compressedBuf, 0, clen);
+      if (decompressor == null) {
+        cin = codec.createInputStream(cin);
+      } else {
+        decompressor.reset();
+        cin = codec.createInputStream(cin, decompressor);
+      }
+      IOUtils.readFully(cin, uncompressedBuf, 0, ulen);
+      blockPos = pos;
+      uncompressedLen = ulen;
+      uncompressedPos = 0;
+      return true;
+    }
+  }
+}
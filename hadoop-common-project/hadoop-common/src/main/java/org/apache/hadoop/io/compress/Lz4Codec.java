@@ -32,7 +32,7 @@
 /**
  * This class creates lz4 compressors/decompressors.
  */
-public class Lz4Codec implements Configurable, CompressionCodec {
+public class Lz4Codec implements Configurable, DirectCompressionCodec {
 
   static {
     NativeCodeLoader.isNativeCodeLoaded();
@@ -205,6 +205,37 @@ public Decompressor createDecompressor() {
     return new Lz4Decompressor(bufferSize);
   }
 
+  /**
+   * Create a new {@link DirectCompressor} for use by this codec. It is a
+   * {@link Lz4Compressor}, the same as {@link #createCompressor()} returns.
+   *
+   * @return a new direct compressor for use by this codec, or
+   *         <code>null</code> if the native lz4 library is not loaded
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    if (!isNativeCodeLoaded()) {
+      return null;
+    }
+    return (Lz4Compressor) createCompressor();
+  }
+
+  /**
+   * Create a new {@link DirectDecompressor} for use by this codec. It is a
+   * {@link Lz4Decompressor}, the same as {@link #createDecompressor()}
+   * returns.
+   *
+   * @return a new direct decompressor for use by this codec, or
+   *         <code>null</code> if the native lz4 library is not loaded
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    if (!isNativeCodeLoaded()) {
+      return null;
+    }
+    return (Lz4Decompressor) createDecompressor();
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link CompressionOutputStream} which splits the data written to it into
+ * fixed-size blocks, compresses each block independently on a pool of
+ * threads, and writes the compressed blocks out in order.
+ *
+ * Each block is written as a complete compressed stream of its own: a gzip
+ * member, a bzip2 stream, or a sequence of LZ4 or Snappy blocks. The output
+ * is therefore only readable by codecs whose input streams read concatenated
+ * streams as one, which {@link #isSupported(CompressionCodec)} checks. As
+ * with pigz, the compression ratio is slightly worse than that of a single
+ * stream, since matches can not span blocks.
+ *
+ * At most twice as many blocks as there are threads are buffered at a time,
+ * so the writer blocks once the threads fall behind.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ParallelCompressionOutputStream extends CompressionOutputStream {
+  private final CompressionCodec codec;
+  private final int blockSize;
+  private final int maxPending;
+  private final ExecutorService executor;
+  private final Deque<Future<ByteArrayOutputStream>> pending =
+      new ArrayDeque<Future<ByteArrayOutputStream>>();
+
+  private byte[] block;
+  private int blockLen = 0;
+  private boolean closed = false;
+  private final byte[] oneByte = new byte[1];
+
+  /**
+   * Create a stream writing to the given stream, compressing with the given
+   * codec in blocks of blockSize bytes on the given number of threads.
+   */
+  public ParallelCompressionOutputStream(OutputStream out,
+      CompressionCodec codec, int threads, int blockSize) {
+    super(out);
+    Preconditions.checkArgument(isSupported(codec),
+        "%s can not read concatenated streams", codec.getClass().getName());
+    Preconditions.checkArgument(threads > 0, "threads must be positive");
+    Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+    this.codec = codec;
+    this.blockSize = blockSize;
+    this.maxPending = 2 * threads;
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("Compressor for " + codec.getClass().getSimpleName() +
+            " #%d")
+        .build());
+    this.block = new byte[blockSize];
+  }
+
+  /**
+   * Create an output stream for the given codec. If
+   * {@link CommonConfigurationKeys#IO_COMPRESSION_PARALLEL_THREADS_KEY} is
+   * more than one and the codec supports it, the stream compresses in
+   * parallel; otherwise it is the codec's own stream.
+   */
+  public static CompressionOutputStream createOutputStream(
+      CompressionCodec codec, OutputStream out, Configuration conf)
+      throws IOException {
+    int threads = conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_PARALLEL_THREADS_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_PARALLEL_THREADS_DEFAULT);
+    if (threads <= 1 || !isSupported(codec)) {
+      return codec.createOutputStream(out);
+    }
+    int blockSize = conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_PARALLEL_BLOCK_SIZE_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_PARALLEL_BLOCK_SIZE_DEFAULT);
+    return new ParallelCompressionOutputStream(out, codec, threads, blockSize);
+  }
+
+  /**
+   * @return whether streams compressed by the codec may be concatenated,
+   *         and still read back as a single stream
+   */
+  public static boolean isSupported(CompressionCodec codec) {
+    return codec instanceof DefaultCodec || codec instanceof BZip2Codec ||
+        codec instanceof Lz4Codec || codec instanceof SnappyCodec;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    oneByte[0] = (byte)(b & 0xff);
+    write(oneByte, 0, oneByte.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      int n = Math.min(len, blockSize - blockLen);
+      System.arraycopy(b, off, block, blockLen, n);
+      blockLen += n;
+      off += n;
+      len -= n;
+      if (blockLen == blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Writes out the blocks compressed so far. The block being filled is not
+   * compressed until it is full, so that flushing often does not cost
+   * compression ratio.
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+      writeFirst();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void finish() throws IOException {
+    submitBlock();
+    while (!pending.isEmpty()) {
+      writeFirst();
+    }
+  }
+
+  @Override
+  public void resetState() throws IOException {
+    // Every block is compressed from scratch, so there is no state to reset.
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      finish();
+      out.close();
+    } finally {
+      closed = true;
+      for (Future<ByteArrayOutputStream> f : pending) {
+        f.cancel(true);
+      }
+      pending.clear();
+      executor.shutdownNow();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    if (blockLen == 0) {
+      return;
+    }
+    while (pending.size() >= maxPending) {
+      writeFirst();
+    }
+    final byte[] data = block;
+    final int len = blockLen;
+    pending.addLast(executor.submit(new Callable<ByteArrayOutputStream>() {
+      @Override
+      public ByteArrayOutputStream call() throws IOException {
+        return compress(data, len);
+      }
+    }));
+    block = new byte[blockSize];
+    blockLen = 0;
+  }
+
+  private ByteArrayOutputStream compress(byte[] data, int len)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+    Compressor compressor = CodecPool.getCompressor(codec);
+    try {
+      CompressionOutputStream cout = compressor == null
+          ? codec.createOutputStream(bytes)
+          : codec.createOutputStream(bytes, compressor);
+      cout.write(data, 0, len);
+      cout.finish();
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+    return bytes;
+  }
+
+  /** Wait for the oldest block to be compressed, and write it out. */
+  private void writeFirst() throws IOException {
+    Future<ByteArrayOutputStream> f = pending.peekFirst();
+    ByteArrayOutputStream compressed;
+    try {
+      compressed = f.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted compressing a block");
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException("Failed to compress a block", cause);
+    }
+    pending.removeFirst();
+    compressed.writeTo(out);
+  }
+}
@@ -32,7 +32,7 @@
 /**
  * This class creates snappy compressors/decompressors.
  */
-public class SnappyCodec implements Configurable, CompressionCodec {
+public class SnappyCodec implements Configurable, DirectCompressionCodec {
   Configuration conf;
 
   /**
@@ -200,6 +200,37 @@ public Decompressor createDecompressor() {
     return new SnappyDecompressor(bufferSize);
   }
 
+  /**
+   * Create a new {@link DirectCompressor} for use by this codec. It is a
+   * {@link SnappyCompressor}, the same as {@link #createCompressor()} returns.
+   *
+   * @return a new direct compressor for use by this codec, or
+   *         <code>null</code> if the native snappy library is not loaded
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    if (!isNativeCodeLoaded()) {
+      return null;
+    }
+    return (SnappyCompressor) createCompressor();
+  }
+
+  /**
+   * Create a new {@link DirectDecompressor} for use by this codec. It is a
+   * {@link SnappyDecompressor}, the same as {@link #createDecompressor()}
+   * returns.
+   *
+   * @return a new direct decompressor for use by this codec, or
+   *         <code>null</code> if the native snappy library is not loaded
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    if (!isNativeCodeLoaded()) {
+      return null;
+    }
+    return (SnappyDecompressor) createDecompressor();
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
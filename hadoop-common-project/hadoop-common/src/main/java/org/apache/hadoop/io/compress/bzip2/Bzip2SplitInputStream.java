@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+
+/**
+ * Reads a range of a bzip2 file block by block, as CBZip2InputStream does in
+ * BYBLOCK mode, but decompresses each block with the native
+ * {@link Bzip2Decompressor}.
+ *
+ * libbz2 can only decompress whole streams, while a split starts at an
+ * arbitrary block which need not even be byte aligned. So the blocks are
+ * found by scanning for the 48 bit block magic, and each block is copied,
+ * realigned, into a stream of its own: the "BZh9" header, the block, and an
+ * end of stream marker whose combined CRC is the block's own CRC.
+ *
+ * The positions this stream reports, and so the records each split reads,
+ * are exactly those of CBZip2InputStream in BYBLOCK mode, so that tasks with
+ * and without the native library agree on where the splits of a file begin
+ * and end:
+ * <ul>
+ * <li>to begin with, the position is the first byte after the first block
+ * magic at or after the start;</li>
+ * <li>the first byte of each following block is returned on its own, and
+ * the position is then one more than the first byte after its magic;</li>
+ * <li>reads never span two blocks;</li>
+ * <li>at the end of the file the position is one more than its length.</li>
+ * </ul>
+ */
+public class Bzip2SplitInputStream extends SplitCompressionInputStream {
+  static final long BLOCK_MAGIC = 0x314159265359L;
+  static final long EOS_MAGIC = 0x177245385090L;
+  private static final int MAGIC_BITS = 48;
+  private static final long MAGIC_MASK = (1L << MAGIC_BITS) - 1;
+  private static final byte[] HEADER = { 'B', 'Z', 'h', '9' };
+
+  /**
+   * The most bits a compressed block can take: bzip2 never expands a block
+   * of 900k by more than 1%, plus 600 bytes.
+   */
+  private static final long MAX_BLOCK_BITS = (900000L * 101 / 100 + 600) * 8;
+
+  /**
+   * Whether a byte can be the last whole byte of a magic number, for any of
+   * its 8 bit alignments. This lets the scan for magic numbers look at each
+   * byte once, rather than at each bit.
+   */
+  private static final boolean[] MAGIC_CANDIDATE = new boolean[256];
+  static {
+    for (int j = 1; j <= 8; j++) {
+      MAGIC_CANDIDATE[(int) (BLOCK_MAGIC >>> j) & 0xff] = true;
+      MAGIC_CANDIDATE[(int) (EOS_MAGIC >>> j) & 0xff] = true;
+    }
+  }
+
+  private final Decompressor decompressor;
+  private final boolean ownDecompressor;
+
+  // The compressed data read so far, from byte bufStart of the file on.
+  private byte[] buf = new byte[64 * 1024];
+  private int bufLen = 0;
+  private long bufStart;
+  private boolean inputEnded = false;
+
+  // The current block, decompressed.
+  private byte[] block = new byte[0];
+  private int blockLen = 0;
+  private int blockOff = 0;
+  private byte[] blockStream = new byte[0];
+
+  // The bit at which the current block's magic starts, if not yet decoded.
+  private long pendingBlockBit = -1;
+  // The bit from which to search for the next block.
+  private long nextSearchBit;
+  private boolean eof = false;
+  private long pos;
+  private boolean needsReset = false;
+
+  /**
+   * Create a stream reading from the first block whose magic begins at or
+   * after the given start.
+   *
+   * @param in the compressed file, positioned at <code>start</code>
+   * @param decompressor the decompressor to use, or <code>null</code> to
+   *                     create one which the stream ends when it is closed
+   * @param start the offset into the file to search for a block from
+   * @param end the end of the split
+   */
+  public Bzip2SplitInputStream(InputStream in, Decompressor decompressor,
+      long start, long end) throws IOException {
+    super(in, start, end);
+    if (decompressor instanceof Bzip2Decompressor) {
+      this.decompressor = decompressor;
+      this.ownDecompressor = false;
+    } else {
+      this.decompressor = new Bzip2Decompressor();
+      this.ownDecompressor = true;
+    }
+    startAt(start);
+  }
+
+  /**
+   * Forget everything read so far, and search for the first block magic
+   * from the given offset of the file, which the input is positioned at.
+   */
+  private void startAt(long offset) throws IOException {
+    bufStart = offset;
+    bufLen = 0;
+    inputEnded = false;
+    blockLen = 0;
+    blockOff = 0;
+    pendingBlockBit = -1;
+    eof = false;
+    long blockBit = findMagic(offset * 8, true);
+    if (blockBit < 0) {
+      eof = true;
+      pos = bufStart + bufLen;
+    } else {
+      pendingBlockBit = blockBit;
+      pos = byteAfter(blockBit);
+    }
+  }
+
+  /**
+   * Create a stream for the split of a bzip2 file between start and end,
+   * adjusting the start to a block boundary exactly as
+   * {@link org.apache.hadoop.io.compress.BZip2Codec} does for the Java
+   * implementation.
+   */
+  public static SplitCompressionInputStream create(InputStream seekableIn,
+      Decompressor decompressor, long start, long end) throws IOException {
+    Seekable seekable = (Seekable) seekableIn;
+    // The first block magic usually ends 10 bytes into the file, after the
+    // "BZh9" header; a block found by going back that far from the start
+    // might begin before the start, though, in which case the split is
+    // searched from the start itself.
+    long adjStart = 0;
+    if (start > 0) {
+      seekable.seek(0);
+      Bzip2SplitInputStream probe =
+          new Bzip2SplitInputStream(seekableIn, decompressor, 0, end);
+      try {
+        adjStart = Math.max(0L, start - probe.getPos());
+      } finally {
+        probe.releaseDecompressor();
+      }
+    }
+    seekable.seek(adjStart);
+    Bzip2SplitInputStream in =
+        new Bzip2SplitInputStream(seekableIn, decompressor, adjStart, end);
+    if (in.getPos() <= start) {
+      in.releaseDecompressor();
+      seekable.seek(start);
+      in = new Bzip2SplitInputStream(seekableIn, decompressor, start, end);
+    }
+    return in;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (needsReset) {
+      internalReset();
+    }
+    if (eof) {
+      return -1;
+    }
+    if (pendingBlockBit >= 0) {
+      decodeBlock(pendingBlockBit);
+      pendingBlockBit = -1;
+    }
+    if (blockOff == blockLen) {
+      // Advance to the next block, and return only its first byte, which is
+      // when CBZip2InputStream advertises the new position.
+      long blockBit = findMagic(nextSearchBit, true);
+      if (blockBit < 0) {
+        eof = true;
+        pos = bufStart + bufLen + 1;
+        return -1;
+      }
+      pos = byteAfter(blockBit) + 1;
+      decodeBlock(blockBit);
+      len = Math.min(len, 1);
+    }
+    int n = Math.min(len, blockLen - blockOff);
+    System.arraycopy(block, blockOff, b, off, n);
+    blockOff += n;
+    return n;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int result = read(b, 0, 1);
+    return (result < 0) ? result : (b[0] & 0xff);
+  }
+
+  @Override
+  public long getPos() {
+    return pos;
+  }
+
+  /**
+   * As for the Java implementation, the next read starts decompressing anew
+   * from wherever the input then is.
+   */
+  @Override
+  public void resetState() throws IOException {
+    // Cannot read from in at this point because in might not be ready yet,
+    // as in SequenceFile.Reader implementation.
+    needsReset = true;
+  }
+
+  private void internalReset() throws IOException {
+    needsReset = false;
+    long offset = (in instanceof Seekable) ? ((Seekable) in).getPos()
+        : bufStart + bufLen;
+    decompressor.reset();
+    startAt(offset);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      releaseDecompressor();
+    }
+  }
+
+  /**
+   * End the decompressor if this stream created it, leaving the input, which
+   * another stream may go on to read, open.
+   */
+  private void releaseDecompressor() {
+    if (ownDecompressor) {
+      decompressor.end();
+    }
+  }
+
+  /** The offset of the byte following the magic which begins at a bit. */
+  private static long byteAfter(long magicBit) {
+    return (magicBit + MAGIC_BITS + 7) >>> 3;
+  }
+
+  /**
+   * Decompress the block whose magic begins at the given bit. The block is
+   * taken to end at the next block or end of stream magic; if it does not
+   * decompress, that magic must have been part of the compressed data, and
+   * the block is taken to end at the magic following it instead.
+   */
+  private void decodeBlock(long blockBit) throws IOException {
+    discardBefore(blockBit >>> 3);
+    long searchBit = blockBit + MAGIC_BITS;
+    while (true) {
+      long magicBit = findMagic(searchBit, false);
+      long endBit = magicBit < 0 ? (bufStart + bufLen) * 8 : magicBit;
+      try {
+        decode(blockBit, endBit);
+        nextSearchBit = endBit;
+        return;
+      } catch (IOException ioe) {
+        if (magicBit < 0 || magicBit - blockBit > MAX_BLOCK_BITS) {
+          throw ioe;
+        }
+        searchBit = magicBit + MAGIC_BITS;
+      }
+    }
+  }
+
+  /**
+   * Decompress the block between two bits, wrapped in a stream of its own.
+   */
+  private void decode(long blockBit, long endBit) throws IOException {
+    long blockCRC = getBits(blockBit + MAGIC_BITS, 32);
+    long nBits = endBit - blockBit;
+    int streamLen = HEADER.length + (int) ((nBits + MAGIC_BITS + 32 + 7) >>> 3);
+    if (blockStream.length < streamLen) {
+      blockStream = new byte[streamLen];
+    }
+    System.arraycopy(HEADER, 0, blockStream, 0, HEADER.length);
+
+    // Copy the whole bytes of the block, shifted into alignment.
+    int src = (int) ((blockBit >>> 3) - bufStart);
+    int shift = (int) (blockBit & 7);
+    int dst = HEADER.length;
+    int nBytes = (int) (nBits >>> 3);
+    if (shift == 0) {
+      System.arraycopy(buf, src, blockStream, dst, nBytes);
+    } else {
+      for (int i = 0; i < nBytes; i++) {
+        int next = src + i + 1 < bufLen ? buf[src + i + 1] & 0xff : 0;
+        blockStream[dst + i] =
+            (byte) (((buf[src + i] & 0xff) << shift) | (next >>> (8 - shift)));
+      }
+    }
+
+    // Then the remaining bits of the block, and the end of stream marker
+    // and combined CRC, which for a single block is the block's CRC.
+    int tailBits = (int) (nBits & 7);
+    long tail = getBits(endBit - tailBits, tailBits);
+    int out = putBits(blockStream, dst + nBytes, tail, tailBits, EOS_MAGIC,
+        blockCRC);
+
+    decompressor.reset();
+    decompressor.setInput(blockStream, 0, out);
+    blockLen = 0;
+    blockOff = 0;
+    while (!decompressor.finished()) {
+      if (blockLen == block.length) {
+        byte[] newBlock = new byte[Math.max(64 * 1024, block.length * 2)];
+        System.arraycopy(block, 0, newBlock, 0, blockLen);
+        block = newBlock;
+      }
+      int n = decompressor.decompress(block, blockLen, block.length - blockLen);
+      if (n == 0 && decompressor.needsInput()) {
+        throw new IOException("Truncated bzip2 block");
+      }
+      blockLen += n;
+    }
+  }
+
+  /**
+   * Write the last bits of a block, the end of stream magic and the
+   * combined CRC, padded to a whole byte.
+   *
+   * @return the offset following the last byte written
+   */
+  private static int putBits(byte[] b, int off, long tail, int tailBits,
+      long magic, long crc) {
+    long acc = 0;
+    int accBits = 0;
+    long[] values = { tail, magic, crc };
+    int[] widths = { tailBits, MAGIC_BITS, 32 };
+    for (int v = 0; v < values.length; v++) {
+      for (int i = widths[v] - 1; i >= 0; i--) {
+        acc = (acc << 1) | ((values[v] >>> i) & 1);
+        if (++accBits == 8) {
+          b[off++] = (byte) acc;
+          acc = 0;
+          accBits = 0;
+        }
+      }
+    }
+    if (accBits > 0) {
+      b[off++] = (byte) (acc << (8 - accBits));
+    }
+    return off;
+  }
+
+  /** Read up to 32 bits beginning at a bit. */
+  private long getBits(long bit, int n) throws IOException {
+    long value = 0;
+    for (int i = 0; i < n; i++) {
+      long b = bit + i;
+      int idx = (int) ((b >>> 3) - bufStart);
+      while (idx >= bufLen) {
+        if (!fill()) {
+          throw new IOException("Truncated bzip2 block");
+        }
+      }
+      value = (value << 1) | ((buf[idx] >>> (7 - (b & 7))) & 1);
+    }
+    return value;
+  }
+
+  /**
+   * Find the first block magic, or if <code>blockOnly</code> is not set the
+   * first block or end of stream magic, which begins at or after a bit.
+   *
+   * @return the bit at which the magic begins, or -1 if there is none
+   */
+  private long findMagic(long fromBit, boolean blockOnly) throws IOException {
+    int idx = (int) ((fromBit >>> 3) - bufStart);
+    long window = 0;
+    while (true) {
+      if (idx == bufLen && !fill()) {
+        return -1;
+      }
+      window = (window << 8) | (buf[idx] & 0xff);
+      if (MAGIC_CANDIDATE[(int) (window >>> 8) & 0xff]) {
+        // A magic ending j bits into this byte.
+        long byteBit = (bufStart + idx) << 3;
+        for (int j = 1; j <= 8; j++) {
+          long v = (window >>> (8 - j)) & MAGIC_MASK;
+          if (v == BLOCK_MAGIC || (!blockOnly && v == EOS_MAGIC)) {
+            long magicBit = byteBit + j - MAGIC_BITS;
+            if (magicBit >= fromBit) {
+              return magicBit;
+            }
+          }
+        }
+      }
+      idx++;
+    }
+  }
+
+  /**
+   * Read more of the file into the buffer.
+   *
+   * @return false if the end of the file has been reached
+   */
+  private boolean fill() throws IOException {
+    if (inputEnded) {
+      return false;
+    }
+    if (bufLen == buf.length) {
+      byte[] newBuf = new byte[buf.length * 2];
+      System.arraycopy(buf, 0, newBuf, 0, bufLen);
+      buf = newBuf;
+    }
+    int n = in.read(buf, bufLen, buf.length - bufLen);
+    if (n < 0) {
+      inputEnded = true;
+      return false;
+    }
+    bufLen += n;
+    return true;
+  }
+
+  /** Drop the buffered bytes of the file before an offset. */
+  private void discardBefore(long offset) {
+    int n = (int) (offset - bufStart);
+    if (n > 0) {
+      System.arraycopy(buf, n, buf, 0, bufLen - n);
+      bufLen -= n;
+      bufStart = offset;
+    }
+  }
+}
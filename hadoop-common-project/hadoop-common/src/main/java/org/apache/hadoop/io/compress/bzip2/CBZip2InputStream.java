@@ -569,11 +569,54 @@ private void endBlock() throws IOException {
   private void complete() throws IOException {
     this.storedCombinedCRC = bsGetInt();
     this.currentState = STATE.EOF;
-    this.data = null;
 
     if (this.storedCombinedCRC != this.computedCombinedCRC) {
+      this.data = null;
       reportCRCError();
     }
+
+    // Concatenated streams, such as pbzip2 writes, are read as one stream.
+    if (this.readMode == READ_MODE.CONTINUOUS && readNextStreamHeader()) {
+      this.computedCombinedCRC = 0;
+      initBlock();
+    } else {
+      this.data = null;
+    }
+  }
+
+  /**
+  * Skip the padding at the end of a stream, and read the header of the
+  * stream which follows it, if any. Anything else following the stream is
+  * ignored, as bzip2 does.
+  *
+  * @return whether another stream follows
+  */
+  private boolean readNextStreamHeader() throws IOException {
+    // Streams are padded to a byte boundary.
+    this.bsLive -= this.bsLive % 8;
+    for (int i = 0; i < 3; i++) {
+      if (this.bsLive == 0) {
+        int thech = readAByte(this.in);
+        if (thech < 0) {
+          return false;
+        }
+        this.bsBuff = (this.bsBuff << 8) | thech;
+        this.bsLive = 8;
+      }
+      if (bsGetUByte() != "BZh".charAt(i)) {
+        return false;
+      }
+    }
+    int blockSize = bsGetUByte();
+    if ((blockSize < '1') || (blockSize > '9')) {
+      throw new IOException("Stream is not BZip2 formatted: illegal "
+          + "blocksize " + (char) blockSize);
+    }
+    if (blockSize - '0' != this.blockSize100k) {
+      this.blockSize100k = blockSize - '0';
+      this.data = null;
+    }
+    return true;
   }
 
   @Override
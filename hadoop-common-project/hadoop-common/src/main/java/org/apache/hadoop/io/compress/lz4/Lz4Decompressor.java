@@ -25,13 +25,14 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
  * A {@link Decompressor} based on the lz4 compression algorithm.
  * http://code.google.com/p/lz4/
  */
-public class Lz4Decompressor implements Decompressor {
+public class Lz4Decompressor implements Decompressor, DirectDecompressor {
   private static final Log LOG =
       LogFactory.getLog(Lz4Compressor.class.getName());
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64 * 1024;
@@ -276,7 +277,29 @@ public synchronized void end() {
     // do nothing
   }
 
+  /**
+   * Decompresses a single lz4 block, which is all of the bytes remaining in
+   * <code>src</code>, without copying through this decompressor's buffers.
+   * The decompressor is reset before and after.
+   */
+  @Override
+  public synchronized void decompress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Buffers must be direct");
+    }
+    reset();
+    int n = decompressDirectBuf(src, src.position(), src.remaining(),
+        dst, dst.position(), dst.remaining());
+    src.position(src.limit());
+    dst.position(dst.position() + n);
+    reset();
+  }
+
   private native static void initIDs();
 
   private native int decompressBytesDirect();
+
+  private native static int decompressDirectBuf(ByteBuffer src, int srcOff,
+      int srcLen, ByteBuffer dst, int dstOff, int dstLen);
 }
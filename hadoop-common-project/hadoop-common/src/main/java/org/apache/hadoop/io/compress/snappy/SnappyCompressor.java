@@ -26,13 +26,14 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
  * A {@link Compressor} based on the snappy compression algorithm.
  * http://code.google.com/p/snappy/
  */
-public class SnappyCompressor implements Compressor {
+public class SnappyCompressor implements Compressor, DirectCompressor {
   private static final Log LOG =
       LogFactory.getLog(SnappyCompressor.class.getName());
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64 * 1024;
@@ -295,7 +296,46 @@ public synchronized long getBytesWritten() {
   public synchronized void end() {
   }
 
+  /**
+   * Returns the most bytes that a block of the given length can compress to,
+   * which is snappy's MaxCompressedLength().
+   */
+  @Override
+  public int maxCompressedLength(int uncompressedLength) {
+    return 32 + uncompressedLength + uncompressedLength / 6;
+  }
+
+  /**
+   * Compresses the bytes remaining in <code>src</code> into a single snappy
+   * block, as {@link #compress(byte[], int, int)} does with each buffer of
+   * input, but without copying through this compressor's buffers. The
+   * compressor is reset before and after.
+   */
+  @Override
+  public synchronized void compress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Buffers must be direct");
+    }
+    int len = src.remaining();
+    if (dst.remaining() < maxCompressedLength(len)) {
+      throw new IllegalArgumentException("Compressing " + len +
+          " bytes needs up to " + maxCompressedLength(len) +
+          " bytes of output buffer, but only " + dst.remaining() +
+          " are left");
+    }
+    reset();
+    int n = compressDirectBuf(src, src.position(), len,
+        dst, dst.position(), dst.remaining());
+    src.position(src.limit());
+    dst.position(dst.position() + n);
+    reset();
+  }
+
   private native static void initIDs();
 
   private native int compressBytesDirect();
+
+  private native static int compressDirectBuf(ByteBuffer src, int srcOff,
+      int srcLen, ByteBuffer dst, int dstOff, int dstLen);
 }
@@ -24,6 +24,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 import org.apache.commons.logging.Log;
@@ -35,7 +36,7 @@
  * http://www.zlib.net/
  * 
  */
-public class ZlibCompressor implements Compressor {
+public class ZlibCompressor implements Compressor, DirectCompressor {
 
   private static final Log LOG = LogFactory.getLog(ZlibCompressor.class);
 
@@ -430,6 +431,44 @@ public synchronized void end() {
     }
   }
   
+  /**
+   * Returns the most bytes that compressing a block of the given length can
+   * produce: zlib's deflateBound() for any compression settings, plus the
+   * largest (gzip) header and trailer.
+   */
+  @Override
+  public int maxCompressedLength(int uncompressedLength) {
+    return uncompressedLength + ((uncompressedLength + 7) >> 3) +
+        ((uncompressedLength + 63) >> 6) + 5 + 18;
+  }
+
+  /**
+   * Compresses the bytes remaining in <code>src</code> into a complete
+   * zlib stream, with the header this compressor was created with, without
+   * copying through this compressor's buffers. The compressor is reset
+   * before and after.
+   */
+  @Override
+  public synchronized void compress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Buffers must be direct");
+    }
+    int len = src.remaining();
+    if (dst.remaining() < maxCompressedLength(len)) {
+      throw new IllegalArgumentException("Compressing " + len +
+          " bytes needs up to " + maxCompressedLength(len) +
+          " bytes of output buffer, but only " + dst.remaining() +
+          " are left");
+    }
+    reset();
+    int n = deflateDirectBuf(stream, src, src.position(), len,
+        dst, dst.position(), dst.remaining());
+    src.position(src.limit());
+    dst.position(dst.position() + n);
+    reset();
+  }
+
   private void checkStream() {
     if (stream == 0)
       throw new NullPointerException();
@@ -444,4 +483,6 @@ private native static void setDictionary(long strm, byte[] b, int off,
   private native static long getBytesWritten(long strm);
   private native static void reset(long strm);
   private native static void end(long strm);
+  private native static int deflateDirectBuf(long strm, ByteBuffer src,
+      int srcOff, int srcLen, ByteBuffer dst, int dstOff, int dstLen);
 }
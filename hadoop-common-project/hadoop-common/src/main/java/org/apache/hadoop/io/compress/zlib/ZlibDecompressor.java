@@ -23,6 +23,7 @@
 import java.nio.ByteBuffer;
 
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
@@ -31,7 +32,7 @@
  * http://www.zlib.net/
  * 
  */
-public class ZlibDecompressor implements Decompressor {
+public class ZlibDecompressor implements Decompressor, DirectDecompressor {
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64*1024;
   
   // HACK - Use this as a global lock in the JNI layer
@@ -295,6 +296,26 @@ protected void finalize() {
     end();
   }
   
+  /**
+   * Decompresses a complete zlib stream, starting at the position of
+   * <code>src</code>, without copying through this decompressor's buffers.
+   * Any bytes after the end of the stream are left in <code>src</code>.
+   * The decompressor is reset before and after.
+   */
+  @Override
+  public synchronized void decompress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Buffers must be direct");
+    }
+    reset();
+    int n = inflateDirectBuf(stream, src, src.position(), src.remaining(),
+        dst, dst.position(), dst.remaining());
+    src.position(src.limit() - getRemaining(stream));
+    dst.position(dst.position() + n);
+    reset();
+  }
+
   private void checkStream() {
     if (stream == 0)
       throw new NullPointerException();
@@ -310,4 +331,6 @@ private native static void setDictionary(long strm, byte[] b, int off,
   private native static int getRemaining(long strm);
   private native static void reset(long strm);
   private native static void end(long strm);
+  private native static int inflateDirectBuf(long strm, ByteBuffer src,
+      int srcOff, int srcLen, ByteBuffer dst, int dstOff, int dstLen);
 }
@@ -25,6 +25,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
@@ -36,6 +37,7 @@
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.compress.Compressor;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.file.tfile.CompareUtils.Scalar;
@@ -478,6 +480,9 @@ public void register(long raw, long begin, long end) {
   static public class Reader implements Closeable {
     private final FSDataInputStream in;
     private final Configuration conf;
+    // shared cache of decompressed data blocks, and the name of the file in it
+    private final BlockCache cache;
+    private final String cacheName;
     final DataIndex dataIndex;
     // Index for meta blocks
     final MetaIndex metaIndex;
@@ -512,6 +517,16 @@ public RBlockState(Algorithm compressionAlgo, FSDataInputStream fsin,
         }
       }
 
+      /**
+       * Constructor for a block already decompressed, from the block cache.
+       */
+      public RBlockState(Algorithm compressionAlgo, BlockRegion region,
+          ByteBuffer block) {
+        this.compressAlgo = compressionAlgo;
+        this.region = region;
+        this.in = new ByteBufferInputStream(block);
+      }
+
       /**
        * Get the output stream for BlockAppender's consumption.
        * 
@@ -533,12 +548,55 @@ public void finish() throws IOException {
         try {
           in.close();
         } finally {
-          compressAlgo.returnDecompressor(decompressor);
-          decompressor = null;
+          if (decompressor != null) {
+            compressAlgo.returnDecompressor(decompressor);
+            decompressor = null;
+          }
         }
       }
     }
 
+    /**
+     * Input stream over a decompressed block.
+     */
+    static private final class ByteBufferInputStream extends InputStream {
+      private final ByteBuffer buf;
+
+      ByteBufferInputStream(ByteBuffer buf) {
+        this.buf = buf;
+      }
+
+      @Override
+      public int read() {
+        return buf.hasRemaining() ? buf.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+          return 0;
+        }
+        if (!buf.hasRemaining()) {
+          return -1;
+        }
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+      }
+
+      @Override
+      public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+        buf.position(buf.position() + skipped);
+        return skipped;
+      }
+
+      @Override
+      public int available() {
+        return buf.remaining();
+      }
+    }
+
     /**
      * Access point to read a block.
      */
@@ -616,8 +674,27 @@ public long getStartPos() {
      */
     public Reader(FSDataInputStream fin, long fileLength, Configuration conf)
         throws IOException {
+      this(fin, fileLength, conf, null);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param fin
+     *          FS input stream.
+     * @param fileLength
+     *          Length of the corresponding file
+     * @param cacheName
+     *          Name of the file in the shared block cache, or null not to
+     *          cache the data blocks.
+     * @throws IOException
+     */
+    public Reader(FSDataInputStream fin, long fileLength, Configuration conf,
+        String cacheName) throws IOException {
       this.in = fin;
       this.conf = conf;
+      this.cache = cacheName == null ? null : TFile.getBlockCache(conf);
+      this.cacheName = cacheName;
 
       // move the cursor to the beginning of the tail, containing: offset to the
       // meta block index, version and magic
@@ -724,7 +801,31 @@ public BlockReader getDataBlock(int blockIndex) throws IOException {
       }
 
       BlockRegion region = dataIndex.getBlockRegionList().get(blockIndex);
-      return createReader(dataIndex.getDefaultCompressionAlgorithm(), region);
+      Algorithm compressAlgo = dataIndex.getDefaultCompressionAlgorithm();
+      if (cache != null && region.getRawSize() <= Integer.MAX_VALUE) {
+        ByteBuffer block = cache.getBlock(cacheName, region.getOffset());
+        if (block == null) {
+          block = readBlock(compressAlgo, region);
+          cache.cacheBlock(cacheName, region.getOffset(), block.duplicate());
+        }
+        return new BlockReader(new RBlockState(compressAlgo, region, block));
+      }
+      return createReader(compressAlgo, region);
+    }
+
+    /**
+     * Read and decompress a whole block, to add it to the block cache.
+     */
+    private ByteBuffer readBlock(Algorithm compressAlgo, BlockRegion region)
+        throws IOException {
+      byte[] block = new byte[(int) region.getRawSize()];
+      RBlockState rbs = new RBlockState(compressAlgo, in, region, conf);
+      try {
+        IOUtils.readFully(rbs.getInputStream(), block, 0, block.length);
+      } finally {
+        rbs.finish();
+      }
+      return ByteBuffer.wrap(block);
     }
 
     private BlockReader createReader(Algorithm compressAlgo, BlockRegion region)
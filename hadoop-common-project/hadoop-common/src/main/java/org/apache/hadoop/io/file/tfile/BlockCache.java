@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.hadoop.io.file.tfile;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A cache of decompressed data blocks, shared by the TFile readers of a JVM.
+ * Blocks are identified by a name of the file they belong to, given when the
+ * reader was opened, and by the offset of the block in the file.
+ * 
+ * Implementations must be thread safe. The buffers passed to
+ * {@link #cacheBlock(String, long, ByteBuffer)} are not modified afterwards,
+ * and the buffers returned are only read, from position to limit, through
+ * duplicates.
+ * 
+ * @see TFile#getBlockCache(org.apache.hadoop.conf.Configuration)
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface BlockCache {
+  /**
+   * Look up a block.
+   * 
+   * @param file
+   *          the name of the file.
+   * @param offset
+   *          the offset of the block in the file.
+   * @return the decompressed block, or null if it is not cached.
+   */
+  ByteBuffer getBlock(String file, long offset);
+
+  /**
+   * Add a block. The cache may decline to keep it, for example if the block
+   * is larger than the cache.
+   * 
+   * @param file
+   *          the name of the file.
+   * @param offset
+   *          the offset of the block in the file.
+   * @param block
+   *          the decompressed block, from position to limit.
+   */
+  void cacheBlock(String file, long offset, ByteBuffer block);
+
+  /**
+   * Drop all the blocks of a file, for example when the file is deleted or
+   * replaced.
+   * 
+   * @param file
+   *          the name of the file.
+   * @return the number of blocks dropped.
+   */
+  int evictBlocks(String file);
+
+  /**
+   * @return the number of lookups which found the block.
+   */
+  long getHitCount();
+
+  /**
+   * @return the number of lookups which did not find the block.
+   */
+  long getMissCount();
+
+  /**
+   * @return the number of blocks dropped to make room for others.
+   */
+  long getEvictionCount();
+
+  /**
+   * @return the number of bytes of blocks in the cache.
+   */
+  long getSize();
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.hadoop.io.file.tfile;
+
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * Metrics of the block cache shared by the TFile readers.
+ */
+@Metrics(about="TFile block cache metrics", context="tfile")
+final class BlockCacheMetrics {
+  private final BlockCache cache;
+
+  private BlockCacheMetrics(BlockCache cache) {
+    this.cache = cache;
+  }
+
+  static BlockCacheMetrics create(BlockCache cache) {
+    return DefaultMetricsSystem.instance().register("TFileBlockCache",
+        "TFile block cache metrics", new BlockCacheMetrics(cache));
+  }
+
+  @Metric(value="Number of lookups which found the block",
+      type=Metric.Type.COUNTER)
+  public long hits() {
+    return cache.getHitCount();
+  }
+
+  @Metric(value="Number of lookups which did not find the block",
+      type=Metric.Type.COUNTER)
+  public long misses() {
+    return cache.getMissCount();
+  }
+
+  @Metric(value="Number of blocks dropped to make room for others",
+      type=Metric.Type.COUNTER)
+  public long evictions() {
+    return cache.getEvictionCount();
+  }
+
+  @Metric("Fraction of the lookups which found the block")
+  public float hitRatio() {
+    long hits = cache.getHitCount();
+    long lookups = hits + cache.getMissCount();
+    return lookups == 0 ? 0f : (float) hits / lookups;
+  }
+
+  @Metric("Number of bytes of blocks in the cache")
+  public long size() {
+    return cache.getSize();
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.hadoop.io.file.tfile;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * A {@link BlockCache} bounded by the number of bytes of the blocks it
+ * holds, which drops the least recently used blocks first. Blocks are kept
+ * either on the heap, or off the heap in direct buffers, which keeps a large
+ * cache out of the way of the garbage collector.
+ * 
+ * When created through {@link TFile#getBlockCache(Configuration)}, the
+ * capacity is set by <b>tfile.block.cache.size</b> and the use of direct
+ * buffers by <b>tfile.block.cache.direct</b>.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class LruBlockCache implements BlockCache, Configurable {
+  private Configuration conf;
+  private long capacity;
+  private boolean direct;
+
+  // access ordered, so that iteration starts with the least recently used
+  private final LinkedHashMap<BlockKey, ByteBuffer> blocks =
+      new LinkedHashMap<BlockKey, ByteBuffer>(16, 0.75f, true);
+  private long size;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor, for a cache configured by {@link #setConf(Configuration)}.
+   */
+  public LruBlockCache() {
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param capacity
+   *          the maximum number of bytes of blocks to keep.
+   * @param direct
+   *          whether to keep the blocks in direct buffers.
+   */
+  public LruBlockCache(long capacity, boolean direct) {
+    this.capacity = capacity;
+    this.direct = direct;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf != null) {
+      capacity = TFile.getBlockCacheSize(conf);
+      direct = TFile.isBlockCacheDirect(conf);
+    }
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * @return the maximum number of bytes of blocks kept.
+   */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return whether the blocks are kept in direct buffers.
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * @return the number of blocks in the cache.
+   */
+  public int getBlockCount() {
+    synchronized (blocks) {
+      return blocks.size();
+    }
+  }
+
+  @Override
+  public ByteBuffer getBlock(String file, long offset) {
+    ByteBuffer block;
+    synchronized (blocks) {
+      block = blocks.get(new BlockKey(file, offset));
+    }
+    if (block == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return block.duplicate();
+  }
+
+  @Override
+  public void cacheBlock(String file, long offset, ByteBuffer block) {
+    int length = block.remaining();
+    if (length > capacity) {
+      return;
+    }
+    ByteBuffer copy;
+    if (direct) {
+      copy = ByteBuffer.allocateDirect(length);
+      copy.put(block.duplicate());
+      copy.flip();
+    } else if (block.isDirect()) {
+      copy = ByteBuffer.allocate(length);
+      copy.put(block.duplicate());
+      copy.flip();
+    } else {
+      // the caller does not modify the buffer afterwards
+      copy = block.slice();
+    }
+
+    synchronized (blocks) {
+      ByteBuffer previous = blocks.put(new BlockKey(file, offset), copy);
+      if (previous != null) {
+        size -= previous.remaining();
+      }
+      size += length;
+      Iterator<ByteBuffer> it = blocks.values().iterator();
+      while (size > capacity && it.hasNext()) {
+        size -= it.next().remaining();
+        it.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  @Override
+  public int evictBlocks(String file) {
+    int count = 0;
+    synchronized (blocks) {
+      Iterator<Map.Entry<BlockKey, ByteBuffer>> it =
+          blocks.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<BlockKey, ByteBuffer> e = it.next();
+        if (e.getKey().file.equals(file)) {
+          size -= e.getValue().remaining();
+          it.remove();
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getSize() {
+    synchronized (blocks) {
+      return size;
+    }
+  }
+
+  /**
+   * The file and offset of a block.
+   */
+  private static final class BlockKey {
+    final String file;
+    final long offset;
+
+    BlockKey(String file, long offset) {
+      this.file = file;
+      this.offset = offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return file.hashCode() * 31 + (int) (offset ^ (offset >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof BlockKey)) return false;
+      BlockKey other = (BlockKey) obj;
+      return offset == other.offset && file.equals(other.file);
+    }
+  }
+}
@@ -51,6 +51,7 @@
 import org.apache.hadoop.io.file.tfile.CompareUtils.MemcmpRawComparator;
 import org.apache.hadoop.io.file.tfile.Utils.Version;
 import org.apache.hadoop.io.serializer.JavaSerializationComparator;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * A TFile is a container of key-value pairs. Both keys and values are type-less
@@ -94,6 +95,15 @@
  * FSDataOutputStream. Integer (in bytes). Default to 256KB.
  * <li><b>tfile.fs.input.buffer.size</b>: Buffer size used for
  * FSDataInputStream. Integer (in bytes). Default to 256KB.
+ * <li><b>tfile.block.cache.size</b>: Size of the cache of decompressed data
+ * blocks shared by the readers of the JVM. Long (in bytes). Default to 0,
+ * which disables the cache. Only readers given the name of their file cache
+ * blocks (See {@link TFile.Reader#Reader(FSDataInputStream, long,
+ * Configuration, String)}).
+ * <li><b>tfile.block.cache.direct</b>: Whether the cache keeps the blocks off
+ * the heap, in direct buffers. Boolean. Default to false.
+ * <li><b>tfile.block.cache.class</b>: Implementation of {@link BlockCache}.
+ * Default to {@link LruBlockCache}.
  * </ul>
  * <p>
  * Suggestions on performance optimization.
@@ -123,6 +133,10 @@
  * reads/writes keys and values in large buffers, we can reduce the sizes of
  * input/output buffering in TFile layer by setting the configuration parameters
  * "tfile.fs.input.buffer.size" and "tfile.fs.output.buffer.size".
+ * <li>Block cache. Applications doing random lookups, or scanning the same
+ * files over and over, can avoid reading and decompressing the same blocks
+ * again by setting "tfile.block.cache.size". The cache is shared by all the
+ * readers of the JVM, and is configured by the first reader which uses it.
  * </ul>
  * 
  * Some design rationale behind TFile can be found at <a
@@ -138,6 +152,11 @@ public class TFile {
       "tfile.fs.input.buffer.size";
   private static final String FS_OUTPUT_BUF_SIZE_ATTR =
       "tfile.fs.output.buffer.size";
+  private static final String BLOCK_CACHE_SIZE_ATTR = "tfile.block.cache.size";
+  private static final String BLOCK_CACHE_DIRECT_ATTR =
+      "tfile.block.cache.direct";
+  private static final String BLOCK_CACHE_CLASS_ATTR =
+      "tfile.block.cache.class";
 
   static int getChunkBufferSize(Configuration conf) {
     int ret = conf.getInt(CHUNK_BUF_SIZE_ATTR, 1024 * 1024);
@@ -152,6 +171,35 @@ static int getFSOutputBufferSize(Configuration conf) {
     return conf.getInt(FS_OUTPUT_BUF_SIZE_ATTR, 256 * 1024);
   }
 
+  static long getBlockCacheSize(Configuration conf) {
+    return conf.getLong(BLOCK_CACHE_SIZE_ATTR, 0);
+  }
+
+  static boolean isBlockCacheDirect(Configuration conf) {
+    return conf.getBoolean(BLOCK_CACHE_DIRECT_ATTR, false);
+  }
+
+  private static BlockCache blockCache;
+
+  /**
+   * Get the block cache shared by the readers of the JVM. The cache is
+   * created by the first call which finds "tfile.block.cache.size" greater
+   * than 0, using the configuration of that call.
+   * 
+   * @param conf
+   *          The configuration.
+   * @return the shared block cache, or null if it is disabled.
+   */
+  public static synchronized BlockCache getBlockCache(Configuration conf) {
+    if (blockCache == null && getBlockCacheSize(conf) > 0) {
+      Class<? extends BlockCache> clazz = conf.getClass(BLOCK_CACHE_CLASS_ATTR,
+          LruBlockCache.class, BlockCache.class);
+      blockCache = ReflectionUtils.newInstance(clazz, conf);
+      BlockCacheMetrics.create(blockCache);
+    }
+    return blockCache;
+  }
+
   private static final int MAX_KEY_SIZE = 64 * 1024; // 64KB
   static final Version API_VERSION = new Version((short) 1, (short) 0);
 
@@ -801,7 +849,28 @@ public boolean equals(Object obj) {
      */
     public Reader(FSDataInputStream fsdis, long fileLength, Configuration conf)
         throws IOException {
-      readerBCF = new BCFile.Reader(fsdis, fileLength, conf);
+      this(fsdis, fileLength, conf, null);
+    }
+
+    /**
+     * Constructor of a reader which shares the data blocks it decompresses
+     * with the other readers of the same file, through the block cache of the
+     * JVM (See {@link TFile#getBlockCache(Configuration)}).
+     * 
+     * @param fsdis
+     *          FS input stream of the TFile.
+     * @param fileLength
+     *          The length of TFile.
+     * @param conf
+     * @param cacheName
+     *          The name of the file in the block cache, or null not to use the
+     *          cache. The name must change when the file is replaced, for
+     *          example by including the modification time along with the path.
+     * @throws IOException
+     */
+    public Reader(FSDataInputStream fsdis, long fileLength, Configuration conf,
+        String cacheName) throws IOException {
+      readerBCF = new BCFile.Reader(fsdis, fileLength, conf, cacheName);
 
       // first, read TFile meta
       BlockReader brMeta = readerBCF.getMetaBlock(TFileMeta.BLOCK_NAME);
@@ -34,6 +34,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.net.ConnectTimeoutException;
 
@@ -149,6 +150,13 @@ public static final RetryPolicy failoverOnNetworkException(
     return new FailoverOnNetworkExceptionRetry(fallbackPolicy, maxFailovers,
         delayMillis, maxDelayBase);
   }
+
+  public static final RetryPolicy failoverOnNetworkException(
+      RetryPolicy fallbackPolicy, int maxFailovers, int maxRetries,
+      long delayMillis, long maxDelayBase) {
+    return new FailoverOnNetworkExceptionRetry(fallbackPolicy, maxFailovers,
+        maxRetries, delayMillis, maxDelayBase);
+  }
   
   static class TryOnceThenFail implements RetryPolicy {
     @Override
@@ -506,6 +514,10 @@ protected long calculateSleepTime(int retries) {
    * The first failover is immediate, while all subsequent failovers wait an
    * exponentially-increasing random amount of time.
    * 
+   * Retry the same server, after an exponentially-increasing random amount
+   * of time, in the case of:
+   *   Remote RetriableException (server is up, but too busy to take the call)
+   * 
    * Fail immediately in the case of:
    *   Socket exceptions after initial connection when operation is not idempotent
    * 
@@ -515,6 +527,7 @@ static class FailoverOnNetworkExceptionRetry implements RetryPolicy {
     
     private RetryPolicy fallbackPolicy;
     private int maxFailovers;
+    private int maxRetries;
     private long delayMillis;
     private long maxDelayBase;
     
@@ -525,8 +538,21 @@ public FailoverOnNetworkExceptionRetry(RetryPolicy fallbackPolicy,
     
     public FailoverOnNetworkExceptionRetry(RetryPolicy fallbackPolicy,
         int maxFailovers, long delayMillis, long maxDelayBase) {
+      this(fallbackPolicy, maxFailovers, maxFailovers, delayMillis,
+          maxDelayBase);
+    }
+
+    /**
+     * @param maxRetries the most attempts, failovers included, after which
+     *                   a call rejected with a RetriableException is
+     *                   retried on the same server
+     */
+    public FailoverOnNetworkExceptionRetry(RetryPolicy fallbackPolicy,
+        int maxFailovers, int maxRetries, long delayMillis,
+        long maxDelayBase) {
       this.fallbackPolicy = fallbackPolicy;
       this.maxFailovers = maxFailovers;
+      this.maxRetries = maxRetries;
       this.delayMillis = delayMillis;
       this.maxDelayBase = maxDelayBase;
     }
@@ -551,6 +577,17 @@ public RetryAction shouldRetry(Exception e, int retries,
             // retry immediately if this is our first failover, sleep otherwise
             failovers == 0 ? 0 :
                 calculateExponentialTime(delayMillis, failovers, maxDelayBase));
+      } else if (e instanceof RetriableException ||
+                 isWrappedRetriableException(e)) {
+        // The server rejected the call before running it, so it is safe
+        // to retry whether or not the method is idempotent.
+        if (retries >= maxRetries) {
+          return new RetryAction(RetryAction.RetryDecision.FAIL, 0,
+              "retries (" + retries + ") exceeded maximum allowed ("
+              + maxRetries + ")");
+        }
+        return new RetryAction(RetryAction.RetryDecision.RETRY,
+            calculateExponentialTime(delayMillis, retries, maxDelayBase));
       } else if (e instanceof SocketException ||
                  (e instanceof IOException && !(e instanceof RemoteException))) {
         if (isMethodIdempotent) {
@@ -596,4 +633,13 @@ private static boolean isWrappedStandbyException(Exception e) {
         StandbyException.class);
     return unwrapped instanceof StandbyException;
   }
+
+  private static boolean isWrappedRetriableException(Exception e) {
+    if (!(e instanceof RemoteException)) {
+      return false;
+    }
+    Exception unwrapped = ((RemoteException)e).unwrapRemoteException(
+        RetriableException.class);
+    return unwrapped instanceof RetriableException;
+  }
 }
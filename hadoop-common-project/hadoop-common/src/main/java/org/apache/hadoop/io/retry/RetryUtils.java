@@ -23,6 +23,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
 
 import com.google.protobuf.ServiceException;
 
@@ -39,6 +40,7 @@ public class RetryUtils {
    * and then
    * (1) use multipleLinearRandomRetry for
    *     - remoteExceptionToRetry, or
+   *     - RetriableException, which a busy server throws, or
    *     - IOException other than RemoteException, or
    *     - ServiceException; and
    * (2) use TRY_ONCE_THEN_FAIL for
@@ -94,7 +96,8 @@ public RetryAction shouldRetry(Exception e, int retries, int failovers,
           final RetryPolicy p;
           if (e instanceof RemoteException) {
             final RemoteException re = (RemoteException)e;
-            p = remoteExceptionToRetry.getName().equals(re.getClassName())?
+            p = remoteExceptionToRetry.getName().equals(re.getClassName())
+                || RetriableException.class.getName().equals(re.getClassName())?
                 multipleLinearRandomRetry: RetryPolicies.TRY_ONCE_THEN_FAIL;
           } else if (e instanceof IOException || e instanceof ServiceException) {
             p = multipleLinearRandomRetry;
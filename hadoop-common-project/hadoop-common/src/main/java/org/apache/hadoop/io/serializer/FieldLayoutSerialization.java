@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.FieldLayout;
+
+/**
+ * A {@link Serialization} for classes which declare a {@link FieldLayout},
+ * which reads and writes their fields without any code in the classes, so
+ * that plain classes can be used as keys and values. Serialized instances
+ * are compared in place by {@link FieldLayout#getComparator()}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class FieldLayoutSerialization implements Serialization<Object> {
+
+  static class FieldLayoutDeserializer implements Deserializer<Object> {
+    private final FieldLayout<Object> layout;
+    private DataInputStream dataIn;
+
+    FieldLayoutDeserializer(FieldLayout<Object> layout) {
+      this.layout = layout;
+    }
+
+    @Override
+    public void open(InputStream in) {
+      if (in instanceof DataInputStream) {
+        dataIn = (DataInputStream) in;
+      } else {
+        dataIn = new DataInputStream(in);
+      }
+    }
+
+    @Override
+    public Object deserialize(Object obj) throws IOException {
+      if (obj == null) {
+        obj = layout.newInstance();
+      }
+      layout.readFields(obj, dataIn);
+      return obj;
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataIn.close();
+    }
+  }
+
+  static class FieldLayoutSerializer implements Serializer<Object> {
+    private final FieldLayout<Object> layout;
+    private DataOutputStream dataOut;
+
+    FieldLayoutSerializer(FieldLayout<Object> layout) {
+      this.layout = layout;
+    }
+
+    @Override
+    public void open(OutputStream out) {
+      if (out instanceof DataOutputStream) {
+        dataOut = (DataOutputStream) out;
+      } else {
+        dataOut = new DataOutputStream(out);
+      }
+    }
+
+    @Override
+    public void serialize(Object obj) throws IOException {
+      layout.write(obj, dataOut);
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataOut.close();
+    }
+  }
+
+  @InterfaceAudience.Private
+  @Override
+  public boolean accept(Class<?> c) {
+    return FieldLayout.isDeclared(c);
+  }
+
+  @InterfaceAudience.Private
+  @Override
+  public Serializer<Object> getSerializer(Class<Object> c) {
+    return new FieldLayoutSerializer(FieldLayout.get(c));
+  }
+
+  @InterfaceAudience.Private
+  @Override
+  public Deserializer<Object> getDeserializer(Class<Object> c) {
+    return new FieldLayoutDeserializer(FieldLayout.get(c));
+  }
+}
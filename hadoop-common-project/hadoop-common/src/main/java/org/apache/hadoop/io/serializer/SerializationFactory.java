@@ -63,6 +63,7 @@ public SerializationFactory(Configuration conf) {
       for (String serializerName : conf.getStrings(
           CommonConfigurationKeys.IO_SERIALIZATIONS_KEY, new String[] {
               WritableSerialization.class.getName(),
+              FieldLayoutSerialization.class.getName(),
               AvroSpecificSerialization.class.getName(),
               AvroReflectSerialization.class.getName() })) {
         add(conf, serializerName);
@@ -38,13 +38,13 @@
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.SocketFactory;
@@ -83,6 +83,8 @@
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Time;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /** A client for an IPC service.  IPC calls take a single {@link Writable} as a
@@ -97,8 +99,15 @@ public class Client {
   
   public static final Log LOG = LogFactory.getLog(Client.class);
 
-  private Hashtable<ConnectionId, Connection> connections =
-    new Hashtable<ConnectionId, Connection>();
+  /**
+   * The connections to each remote server. Each ConnectionId may have
+   * several connections, used in turn, so that highly concurrent callers
+   * are not all funnelled through one socket and one receiver thread.
+   */
+  private Hashtable<ConnectionId, Connection[]> connections =
+    new Hashtable<ConnectionId, Connection[]>();
+  private final int connectionsPerAddress;
+  private final AtomicInteger nextConnection = new AtomicInteger();
 
   private Class<? extends Writable> valueClass;   // class of call values
   private int counter;                            // counter for call ids
@@ -207,6 +216,8 @@ private class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    InetSocketAddress server;   // where the call was sent
+    SettableFuture<Writable> future; // completed with the result, if async
 
     protected Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -221,6 +232,13 @@ protected Call(RPC.RpcKind rpcKind, Writable param) {
     protected synchronized void callComplete() {
       this.done = true;
       notify();                                 // notify caller
+      if (future != null) {
+        if (error == null) {
+          future.set(rpcResponse);
+        } else {
+          future.setException(wrapException(this));
+        }
+      }
     }
 
     /** Set the exception when there is an error.
@@ -276,10 +294,16 @@ private class Connection extends Thread {
     private AtomicLong lastActivity = new AtomicLong();// last I/O activity time
     private AtomicBoolean shouldCloseConnection = new AtomicBoolean();  // indicate if the connection is closed
     private IOException closeException; // close reason
-    
-    private final Object sendRpcRequestLock = new Object();
 
-    public Connection(ConnectionId remoteId) throws IOException {
+    /** Serialized requests waiting to be written, in the order sent. */
+    private final ConcurrentLinkedQueue<DataOutputBuffer> pendingRequests =
+        new ConcurrentLinkedQueue<DataOutputBuffer>();
+    /** True while a task is writing pendingRequests to the socket. */
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final int index; // of this connection among those to remoteId
+
+    public Connection(ConnectionId remoteId, int index) throws IOException {
+      this.index = index;
       this.remoteId = remoteId;
       this.server = remoteId.getAddress();
       if (server.isUnresolved()) {
@@ -341,7 +365,8 @@ public Connection(ConnectionId remoteId) throws IOException {
         LOG.debug("Use " + authMethod + " authentication for protocol "
             + protocol.getSimpleName());
       
-      this.setName("IPC Client (" + socketFactory.hashCode() +") connection to " +
+      this.setName("IPC Client (" + socketFactory.hashCode() +") connection " +
+          (connectionsPerAddress > 1 ? "#" + index + " " : "") + "to " +
           server.toString() +
           " from " + ((ticket==null)?"an unknown user":ticket.getUserName()));
       this.setDaemon(true);
@@ -862,10 +887,15 @@ public void run() {
     /** Initiates a rpc call by sending the rpc request to the remote server.
      * Note: this is not called from the Connection thread, but by other
      * threads.
+     *
+     * The request is queued, and written by a task on SEND_PARAMS_EXECUTOR,
+     * which isolates the socket from interruptions of the calling thread.
+     * Callers never block on each other: a single task at a time drains
+     * the queue, writing every request it finds before flushing, so that
+     * concurrent calls are coalesced into fewer writes to the socket.
      * @param call - the rpc request
      */
-    public void sendRpcRequest(final Call call)
-        throws InterruptedException, IOException {
+    public void sendRpcRequest(final Call call) throws IOException {
       if (shouldCloseConnection.get()) {
         return;
       }
@@ -887,52 +917,68 @@ public void sendRpcRequest(final Call call)
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
-      synchronized (sendRpcRequestLock) {
-        Future<?> senderFuture = SEND_PARAMS_EXECUTOR.submit(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              synchronized (Connection.this.out) {
-                if (shouldCloseConnection.get()) {
-                  return;
-                }
-                
-                if (LOG.isDebugEnabled())
-                  LOG.debug(getName() + " sending #" + call.id);
-         
-                byte[] data = d.getData();
-                int totalLength = d.getLength();
-                out.writeInt(totalLength); // Total Length
-                out.write(data, 0, totalLength);// RpcRequestHeader + RpcRequest
-                out.flush();
-              }
-            } catch (IOException e) {
-              // exception at this point would leave the connection in an
-              // unrecoverable state (eg half a call left on the wire).
-              // So, close the connection, killing any outstanding calls
-              markClosed(e);
-            } finally {
-              //the buffer is just an in-memory buffer, but it is still polite to
-              // close early
-              IOUtils.closeStream(d);
-            }
-          }
-        });
-      
+      pendingRequests.add(d);
+      if (sending.compareAndSet(false, true)) {
         try {
-          senderFuture.get();
-        } catch (ExecutionException e) {
-          Throwable cause = e.getCause();
-          
-          // cause should only be a RuntimeException as the Runnable above
-          // catches IOException
-          if (cause instanceof RuntimeException) {
-            throw (RuntimeException) cause;
-          } else {
-            throw new RuntimeException("unexpected checked exception", cause);
+          SEND_PARAMS_EXECUTOR.execute(sender);
+        } catch (RejectedExecutionException e) {
+          // No task will send this request, or any queued behind it, so
+          // fail them all rather than leave them waiting.
+          sending.set(false);
+          markClosed(new IOException("unable to send rpc requests", e));
+          throw e;
+        }
+      }
+    }
+
+    private final Runnable sender = new Runnable() {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            writePendingRequests();
+          } catch (IOException e) {
+            // exception at this point would leave the connection in an
+            // unrecoverable state (eg half a call left on the wire).
+            // So, close the connection, killing any outstanding calls
+            markClosed(e);
+          } finally {
+            sending.set(false);
+          }
+          // A request may have been queued after the queue was found empty
+          // but before sending was cleared, in which case its caller did
+          // not start a task; carry on and send it.
+          if (pendingRequests.isEmpty() || !sending.compareAndSet(false, true)) {
+            return;
           }
         }
       }
+    };
+
+    private void writePendingRequests() throws IOException {
+      synchronized (out) {
+        boolean written = false;
+        for (DataOutputBuffer d; (d = pendingRequests.poll()) != null; ) {
+          try {
+            if (shouldCloseConnection.get()) {
+              // the calls are failed when the connection is closed
+              continue;
+            }
+            byte[] data = d.getData();
+            int totalLength = d.getLength();
+            out.writeInt(totalLength); // Total Length
+            out.write(data, 0, totalLength);// RpcRequestHeader + RpcRequest
+            written = true;
+          } finally {
+            //the buffer is just an in-memory buffer, but it is still polite to
+            // close early
+            IOUtils.closeStream(d);
+          }
+        }
+        if (written) {
+          out.flush();
+        }
+      }
     }
 
     /* Receive a response.
@@ -993,10 +1039,19 @@ private synchronized void close() {
       // release the resources
       // first thing to do;take the connection out of the connection list
       synchronized (connections) {
-        if (connections.get(remoteId) == this) {
-          connections.remove(remoteId);
+        Connection[] slots = connections.get(remoteId);
+        if (slots != null && slots[index] == this) {
+          slots[index] = null;
+          boolean empty = true;
+          for (Connection c : slots) {
+            empty &= (c == null);
+          }
+          if (empty) {
+            connections.remove(remoteId);
+          }
         }
       }
+      pendingRequests.clear();
 
       // close the streams and therefore the socket
       IOUtils.closeStream(out);
@@ -1047,6 +1102,9 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
     this.socketFactory = factory;
     this.connectionTimeout = conf.getInt(CommonConfigurationKeys.IPC_CLIENT_CONNECT_TIMEOUT_KEY,
         CommonConfigurationKeys.IPC_CLIENT_CONNECT_TIMEOUT_DEFAULT);
+    this.connectionsPerAddress = Math.max(1, conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTIONS_PER_ADDRESS_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTIONS_PER_ADDRESS_DEFAULT));
   }
 
   /**
@@ -1079,8 +1137,12 @@ public void stop() {
     
     // wake up all connections
     synchronized (connections) {
-      for (Connection conn : connections.values()) {
-        conn.interrupt();
+      for (Connection[] slots : connections.values()) {
+        for (Connection conn : slots) {
+          if (conn != null) {
+            conn.interrupt();
+          }
+        }
       }
     }
     
@@ -1205,16 +1267,7 @@ public Writable call(Writable param, ConnectionId remoteId)
   public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId) throws InterruptedException, IOException {
     Call call = new Call(rpcKind, rpcRequest);
-    Connection connection = getConnection(remoteId, call);
-    try {
-      connection.sendRpcRequest(call);                 // send the rpc request
-    } catch (RejectedExecutionException e) {
-      throw new IOException("connection has been closed", e);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      LOG.warn("interrupted waiting to send rpc request to server", e);
-      throw new IOException(e);
-    }
+    sendCall(call, remoteId);
 
     boolean interrupted = false;
     synchronized (call) {
@@ -1233,23 +1286,86 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       }
 
       if (call.error != null) {
-        if (call.error instanceof RemoteException) {
-          call.error.fillInStackTrace();
-          throw call.error;
-        } else { // local exception
-          InetSocketAddress address = connection.getRemoteAddress();
-          throw NetUtils.wrapException(address.getHostName(),
-                  address.getPort(),
-                  NetUtils.getHostname(),
-                  0,
-                  call.error);
-        }
+        throw wrapException(call);
       } else {
         return call.getRpcResult();
       }
     }
   }
 
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, without waiting for the response. This allows a
+   * single thread to have many calls outstanding.
+   * 
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @return a future which is completed with the rpc response, or with the
+   *         exception thrown by the remote code or the network
+   * @throws IOException if the call could not be sent
+   */
+  public ListenableFuture<Writable> asyncCall(RPC.RpcKind rpcKind,
+      Writable rpcRequest, ConnectionId remoteId) throws IOException {
+    Call call = new Call(rpcKind, rpcRequest);
+    SettableFuture<Writable> future = SettableFuture.create();
+    synchronized (call) {
+      call.future = future;
+    }
+    try {
+      sendCall(call, remoteId);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    return future;
+  }
+
+  /** Add the call to a connection to remoteId and send its request. */
+  private void sendCall(Call call, ConnectionId remoteId)
+      throws InterruptedException, IOException {
+    synchronized (call) {
+      call.server = remoteId.getAddress();
+    }
+    Connection connection = getConnection(remoteId, call);
+    synchronized (call) {
+      call.server = connection.getRemoteAddress();
+    }
+    if (Thread.interrupted()) {
+      // Fail before the request is queued, as we did when we waited for it
+      // to be sent, so that the caller is not told a call has failed which
+      // the server goes on to run.
+      connection.calls.remove(call.id);
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted waiting to send rpc request to server");
+      throw new IOException(new InterruptedException());
+    }
+    try {
+      connection.sendRpcRequest(call);                 // send the rpc request
+    } catch (RejectedExecutionException e) {
+      throw new IOException("connection has been closed", e);
+    }
+  }
+
+  /**
+   * @return the exception with which the call failed: a remote exception
+   *         with its stack trace filled in here, or a local exception
+   *         wrapped with the addresses involved.
+   */
+  private static IOException wrapException(Call call) {
+    if (call.error instanceof RemoteException) {
+      call.error.fillInStackTrace();
+      return call.error;
+    } else { // local exception
+      InetSocketAddress address = call.server;
+      return NetUtils.wrapException(address.getHostName(),
+              address.getPort(),
+              NetUtils.getHostname(),
+              0,
+              call.error);
+    }
+  }
+
   // for unit testing only
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
@@ -1260,7 +1376,8 @@ Set<ConnectionId> getConnectionIds() {
   }
   
   /** Get a connection from the pool, or create a new one and add it to the
-   * pool.  Connections to a given ConnectionId are reused. */
+   * pool.  Connections to a given ConnectionId are reused, and assigned to
+   * calls in turn when there are several of them. */
   private Connection getConnection(ConnectionId remoteId,
                                    Call call)
                                    throws IOException, InterruptedException {
@@ -1275,10 +1392,21 @@ private Connection getConnection(ConnectionId remoteId,
      */
     do {
       synchronized (connections) {
-        connection = connections.get(remoteId);
+        Connection[] slots = connections.get(remoteId);
+        int index = connectionsPerAddress == 1 ? 0
+            : (nextConnection.getAndIncrement() & Integer.MAX_VALUE)
+              % connectionsPerAddress;
+        connection = (slots == null) ? null : slots[index];
         if (connection == null) {
-          connection = new Connection(remoteId);
-          connections.put(remoteId, connection);
+          // Construct the connection before adding anything to the pool:
+          // the constructor throws for an unresolved address, and an
+          // empty entry would keep stop() waiting forever.
+          connection = new Connection(remoteId, index);
+          if (slots == null) {
+            slots = new Connection[connectionsPerAddress];
+            connections.put(remoteId, slots);
+          }
+          slots[index] = connection;
         }
       }
     } while (!connection.addCall(call));
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link RpcScheduler} which prioritizes calls according to how many
+ * calls their caller has made recently. Each caller's share of the recent
+ * calls is compared against a threshold for each priority level: callers
+ * with a larger share get a lower priority.
+ *
+ * Call counts are multiplied by a decay factor periodically, so that
+ * callers which stop being heavy users regain their priority. The decay
+ * is done by whichever call first finds it to be due, so the scheduler
+ * needs no thread of its own.
+ *
+ * Callers are identified by user name or, if so configured, by their
+ * primary group, so that all the users of a group share its allowance.
+ * Since scheduling runs on the server's reader threads, primary groups
+ * are cached here, and only looked up on the first call from each user
+ * in every group cache period.
+ */
+@InterfaceAudience.Private
+public class DecayRpcScheduler implements RpcScheduler {
+  public static final Log LOG = LogFactory.getLog(DecayRpcScheduler.class);
+
+  /** Identity used for calls whose user is not known. */
+  static final String UNKNOWN_IDENTITY = "__UNKNOWN__";
+
+  private final int numLevels;
+  /** thresholds[i] is the share of calls above which level i+1 is used. */
+  private final double[] thresholds;
+  private final long decayPeriodMs;
+  private final double decayFactor;
+  private final boolean identifyByGroup;
+
+  private final ConcurrentMap<String, AtomicLong> callCounts =
+      new ConcurrentHashMap<String, AtomicLong>();
+  private final AtomicLong totalCalls = new AtomicLong();
+  private final AtomicLong nextDecayTime;
+
+  /** Primary group of each user, when identifying callers by group. */
+  private final ConcurrentMap<String, String> primaryGroups =
+      new ConcurrentHashMap<String, String>();
+  private final long groupCacheMs;
+  private final AtomicLong nextGroupExpiryTime;
+
+  public DecayRpcScheduler(int numLevels, Configuration conf) {
+    Preconditions.checkArgument(numLevels > 0,
+        "Number of levels must be positive: %s", numLevels);
+    this.numLevels = numLevels;
+    this.thresholds = parseThresholds(numLevels, conf);
+    this.decayPeriodMs = conf.getLong(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_DEFAULT);
+    this.decayFactor = conf.getFloat(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_FACTOR_KEY,
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_FACTOR_DEFAULT);
+    Preconditions.checkArgument(decayFactor >= 0 && decayFactor < 1,
+        "Decay factor must be in [0, 1): %s", decayFactor);
+
+    final String identity = conf.get(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_IDENTITY_KEY,
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_IDENTITY_DEFAULT);
+    if ("group".equalsIgnoreCase(identity)) {
+      identifyByGroup = true;
+    } else if ("user".equalsIgnoreCase(identity)) {
+      identifyByGroup = false;
+    } else {
+      throw new IllegalArgumentException("Unknown value for "
+          + CommonConfigurationKeys.IPC_SERVER_SCHEDULER_IDENTITY_KEY
+          + ": " + identity);
+    }
+    this.nextDecayTime = new AtomicLong(Time.monotonicNow() + decayPeriodMs);
+    this.groupCacheMs = conf.getLong(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS,
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS_DEFAULT)
+        * 1000;
+    this.nextGroupExpiryTime = new AtomicLong(
+        Time.monotonicNow() + groupCacheMs);
+  }
+
+  /**
+   * The default thresholds halve from one level to the one above it, eg
+   * for four levels a caller with more than 50% of the calls gets level 3,
+   * more than 25% level 2, and more than 12.5% level 1.
+   */
+  private static double[] parseThresholds(int numLevels, Configuration conf) {
+    final double[] thresholds = new double[numLevels - 1];
+    final String[] percents = conf.getTrimmedStrings(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_THRESHOLDS_KEY);
+    if (percents.length == 0) {
+      for (int i = 0; i < thresholds.length; i++) {
+        thresholds[i] = 1.0 / (1L << (thresholds.length - i));
+      }
+      return thresholds;
+    }
+    if (percents.length != thresholds.length) {
+      throw new IllegalArgumentException("Expected " + thresholds.length
+          + " values for "
+          + CommonConfigurationKeys.IPC_SERVER_SCHEDULER_THRESHOLDS_KEY
+          + " but got " + percents.length);
+    }
+    for (int i = 0; i < thresholds.length; i++) {
+      thresholds[i] = Double.parseDouble(percents[i]) / 100;
+    }
+    return thresholds;
+  }
+
+  @Override
+  public int getPriorityLevel(Schedulable obj) {
+    decayIfDue();
+
+    final String id = getIdentity(obj.getUserGroupInformation());
+    AtomicLong count = callCounts.get(id);
+    if (count == null) {
+      final AtomicLong created = new AtomicLong();
+      count = callCounts.putIfAbsent(id, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    final long callerCalls = count.incrementAndGet();
+    final long allCalls = totalCalls.incrementAndGet();
+    return computePriorityLevel((double)callerCalls / allCalls);
+  }
+
+  private int computePriorityLevel(double share) {
+    for (int i = thresholds.length - 1; i >= 0; i--) {
+      if (share > thresholds[i]) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  private String getIdentity(UserGroupInformation ugi) {
+    if (ugi == null) {
+      return UNKNOWN_IDENTITY;
+    }
+    final String user = ugi.getShortUserName();
+    if (!identifyByGroup) {
+      return user;
+    }
+    expireGroupsIfDue();
+    String group = primaryGroups.get(user);
+    if (group == null) {
+      final String[] groups = ugi.getGroupNames();
+      group = groups.length > 0 ? groups[0] : user;
+      primaryGroups.put(user, group);
+    }
+    return group;
+  }
+
+  private void expireGroupsIfDue() {
+    final long due = nextGroupExpiryTime.get();
+    final long now = Time.monotonicNow();
+    if (now >= due && nextGroupExpiryTime.compareAndSet(due,
+        now + groupCacheMs)) {
+      primaryGroups.clear();
+    }
+  }
+
+  private void decayIfDue() {
+    final long due = nextDecayTime.get();
+    final long now = Time.monotonicNow();
+    if (now >= due && nextDecayTime.compareAndSet(due, now + decayPeriodMs)) {
+      decayCallCounts();
+    }
+  }
+
+  /**
+   * Multiply all the call counts by the decay factor, forgetting callers
+   * whose count reaches zero.
+   */
+  @VisibleForTesting
+  void decayCallCounts() {
+    long total = 0;
+    for (Iterator<Map.Entry<String, AtomicLong>> it =
+        callCounts.entrySet().iterator(); it.hasNext(); ) {
+      final AtomicLong count = it.next().getValue();
+      final long decayed = (long)(count.get() * decayFactor);
+      if (decayed == 0) {
+        it.remove();
+      } else {
+        count.set(decayed);
+        total += decayed;
+      }
+    }
+    // Calls counted concurrently with the decay may be lost; this only
+    // makes the counts approximate, which is fine for scheduling.
+    totalCalls.set(total);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Decayed call counts: " + callCounts.size()
+          + " callers, " + total + " calls");
+    }
+  }
+
+  int getNumLevels() {
+    return numLevels;
+  }
+
+  @VisibleForTesting
+  long getCallCount(String identity) {
+    final AtomicLong count = callCounts.get(identity);
+    return count == null ? 0 : count.get();
+  }
+
+  @VisibleForTesting
+  long getTotalCallCount() {
+    return totalCalls.get();
+  }
+}
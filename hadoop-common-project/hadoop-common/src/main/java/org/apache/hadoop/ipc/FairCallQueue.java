@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A call queue which shares the RPC server's handlers fairly between its
+ * callers. Calls are placed into one of several levels of priority by a
+ * {@link DecayRpcScheduler}, so that a caller which issues far more calls
+ * than the others is moved to the lower levels, and the levels are served
+ * in weighted round-robin order by a {@link WeightedRoundRobinMultiplexer}.
+ *
+ * The capacity is divided evenly between the levels, so that once a heavy
+ * caller has filled its level, it can no longer hold up the calls of the
+ * other callers: with backoff enabled, its further calls are rejected.
+ *
+ * To use it, set ipc.server.callqueue.impl to this class.
+ */
+@InterfaceAudience.Private
+public class FairCallQueue<E extends Schedulable> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+  private final BlockingQueue<E>[] queues;
+  private final RpcScheduler scheduler;
+  private final WeightedRoundRobinMultiplexer multiplexer;
+
+  /** One permit for each call in the queues, for consumers to wait on. */
+  private final Semaphore available = new Semaphore(0);
+
+  public FairCallQueue(int capacity, Configuration conf) {
+    this(capacity, conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_LEVELS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_LEVELS_DEFAULT), conf);
+  }
+
+  @SuppressWarnings("unchecked")
+  FairCallQueue(int capacity, int numLevels, Configuration conf) {
+    Preconditions.checkArgument(numLevels > 0,
+        "Number of levels must be positive: %s", numLevels);
+    this.queues = new BlockingQueue[numLevels];
+    final int levelCapacity = Math.max(1, capacity / numLevels);
+    for (int i = 0; i < numLevels; i++) {
+      queues[i] = new LinkedBlockingQueue<E>(levelCapacity);
+    }
+    this.scheduler = new DecayRpcScheduler(numLevels, conf);
+    this.multiplexer = new WeightedRoundRobinMultiplexer(numLevels, conf);
+  }
+
+  /** @return the number of priority levels */
+  public int getNumLevels() {
+    return queues.length;
+  }
+
+  /** @return the number of calls waiting at the given priority level */
+  public int size(int level) {
+    return queues[level].size();
+  }
+
+  private BlockingQueue<E> schedule(E e) {
+    Preconditions.checkNotNull(e);
+    final int level = scheduler.getPriorityLevel(e);
+    e.setPriorityLevel(level);
+    return queues[level];
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    schedule(e).put(e);
+    available.release();
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    if (!schedule(e).offer(e, timeout, unit)) {
+      return false;
+    }
+    available.release();
+    return true;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (!schedule(e).offer(e)) {
+      return false;
+    }
+    available.release();
+    return true;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    available.acquire();
+    return removeNext();
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return available.tryAcquire(timeout, unit) ? removeNext() : null;
+  }
+
+  @Override
+  public E poll() {
+    return available.tryAcquire() ? removeNext() : null;
+  }
+
+  /**
+   * Remove a call, starting at the level chosen by the multiplexer and
+   * falling through to the following levels if it is empty. The caller
+   * must hold a permit, which guarantees that a call is available.
+   */
+  private E removeNext() {
+    final int start = multiplexer.getAndAdvanceCurrentLevel();
+    while (true) {
+      for (int i = 0; i < queues.length; i++) {
+        final E e = queues[(start + i) % queues.length].poll();
+        if (e != null) {
+          return e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public E peek() {
+    for (BlockingQueue<E> q : queues) {
+      final E e = q.peek();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (BlockingQueue<E> q : queues) {
+      size += q.size();
+    }
+    return size;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    int remaining = 0;
+    for (BlockingQueue<E> q : queues) {
+      remaining += q.remainingCapacity();
+    }
+    return remaining;
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    int drained = 0;
+    for (E e; drained < maxElements && (e = poll()) != null; drained++) {
+      c.add(e);
+    }
+    return drained;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    for (BlockingQueue<E> q : queues) {
+      if (q.contains(o)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    // Claim a permit first, so that a consumer which already holds one is
+    // never left looking for a call which has been removed under it.
+    if (!available.tryAcquire()) {
+      return false;
+    }
+    for (BlockingQueue<E> q : queues) {
+      if (q.remove(o)) {
+        return true;
+      }
+    }
+    available.release();
+    return false;
+  }
+
+  /**
+   * Iterate over the calls, highest priority level first. Like the
+   * iterators of the per-level queues, this is weakly consistent: it
+   * never throws ConcurrentModificationException, and may or may not
+   * reflect changes made after its creation.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new Itr();
+  }
+
+  private class Itr implements Iterator<E> {
+    private int level = 0;
+    private Iterator<E> it = queues[0].iterator();
+    private BlockingQueue<E> lastQueue = null;
+    private E last = null;
+
+    @Override
+    public boolean hasNext() {
+      while (!it.hasNext()) {
+        if (++level >= queues.length) {
+          return false;
+        }
+        it = queues[level].iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = it.next();
+      lastQueue = queues[level];
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      // As in FairCallQueue#remove(Object), claim the call's permit first.
+      if (available.tryAcquire()) {
+        if (!lastQueue.remove(last)) {
+          available.release();
+        }
+      }
+      last = null;
+    }
+  }
+}
@@ -35,6 +35,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputOutputStream;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.retry.RetryPolicy;
@@ -49,6 +50,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.Descriptors.MethodDescriptor;
 import com.google.protobuf.Message;
 import com.google.protobuf.ServiceException;
@@ -298,6 +300,10 @@ public void write(DataOutput out) throws IOException {
 
     @Override
     public void readFields(DataInput in) throws IOException {
+      if (in instanceof DataInputBuffer) {
+        readFields((DataInputBuffer)in);
+        return;
+      }
       int length = ProtoUtil.readRawVarint32(in);
       byte[] bytes = new byte[length];
       in.readFully(bytes);
@@ -306,6 +312,22 @@ public void readFields(DataInput in) throws IOException {
       theRequestRead = new byte[length];
       in.readFully(theRequestRead);
     }
+
+    /**
+     * Parse the header straight out of the server's request buffer. The
+     * request itself is still copied, since the server reuses the buffer
+     * once the call has been queued.
+     */
+    private void readFields(DataInputBuffer in) throws IOException {
+      int start = in.getPosition();
+      CodedInputStream cis = CodedInputStream.newInstance(
+          in.getData(), start, in.getLength() - start);
+      int oldLimit = cis.pushLimit(cis.readRawVarint32());
+      requestHeader = RequestHeaderProto.parseFrom(cis);
+      cis.popLimit(oldLimit);
+      theRequestRead = cis.readRawBytes(cis.readRawVarint32());
+      in.skipBytes(cis.getTotalBytesRead());
+    }
     
     @Override
     public String toString() {
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of equally sized buffers, which the IPC server reads
+ * requests into, so that each small request doesn't allocate a buffer of
+ * its own. A buffer is only held by a connection while a request is read
+ * and deserialized, so a pool a few times larger than the number of
+ * reader threads is enough to serve most requests.
+ *
+ * The buffers are heap buffers: the request is deserialized and, with
+ * SASL, unwrapped from the backing array.
+ */
+class RequestBufferPool {
+  private final int bufferSize;
+  private final BlockingQueue<ByteBuffer> buffers;
+
+  /**
+   * @param bufferSize the size of each buffer; larger requests are given
+   *                   a buffer of their own
+   * @param maxBuffers the most buffers to keep in the pool, or 0 to not
+   *                   pool buffers at all
+   */
+  RequestBufferPool(int bufferSize, int maxBuffers) {
+    this.bufferSize = bufferSize;
+    this.buffers = maxBuffers > 0
+        ? new ArrayBlockingQueue<ByteBuffer>(maxBuffers) : null;
+  }
+
+  /**
+   * Get a buffer for a request of the given length. The buffer's array is
+   * at least that long, and it is positioned to read exactly the request.
+   */
+  ByteBuffer getBuffer(int length) {
+    if (buffers == null || length > bufferSize) {
+      return ByteBuffer.allocate(length);
+    }
+    ByteBuffer buf = buffers.poll();
+    if (buf == null) {
+      buf = ByteBuffer.allocate(bufferSize);
+    }
+    buf.clear();
+    buf.limit(length);
+    return buf;
+  }
+
+  /**
+   * Return a buffer, once nothing refers to its contents any longer.
+   * Buffers which did not come from the pool are left to be collected.
+   */
+  void returnBuffer(ByteBuffer buf) {
+    if (buffers != null && buf.capacity() == bufferSize) {
+      buffers.offer(buf);
+    }
+  }
+
+  /** @return the number of buffers currently held by the pool */
+  int size() {
+    return buffers == null ? 0 : buffers.size();
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * An item, such as an RPC call, which can be prioritized by an
+ * {@link RpcScheduler} according to the user who made it.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public interface Schedulable {
+  /**
+   * @return the user on whose behalf the call was made, or null if it is
+   *         not known
+   */
+  public UserGroupInformation getUserGroupInformation();
+
+  /** @return the priority level assigned to the call by its queue */
+  public int getPriorityLevel();
+
+  /** Record the priority level assigned to the call by its queue. */
+  public void setPriorityLevel(int level);
+}
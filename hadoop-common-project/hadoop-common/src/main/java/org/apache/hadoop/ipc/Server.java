@@ -24,6 +24,7 @@
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -73,6 +74,7 @@
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
@@ -107,6 +109,7 @@
 import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.CodedInputStream;
 
 /** An abstract IPC service.  IPC calls take a single {@link Writable} as a
  * parameter, and return a {@link Writable} as their value.  A service runs on
@@ -354,11 +357,15 @@ public static boolean isRpcInvocation() {
 
   private int maxQueueSize;
   private final int maxRespSize;
+  private final RequestBufferPool requestBuffers; // buffers to read requests
   private int socketSendBufferSize;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
   volatile private boolean running = true;         // true while server runs
   private BlockingQueue<Call> callQueue; // queued calls
+  private FairCallQueue<Call> fairCallQueue; // callQueue, if it is fair
+  private final boolean callQueueBackoff; // reject calls when queue is full
+  private final int handlerBatchSize; // most calls a handler takes at once
 
   private List<Connection> connectionList = 
     Collections.synchronizedList(new LinkedList<Connection>());
@@ -451,8 +458,23 @@ public ServiceAuthorizationManager getServiceAuthorizationManager() {
     return serviceAuthorizationManager;
   }
 
+  /**
+   * A handler's buffer for serializing responses, which can be written out
+   * without first copying it.
+   */
+  private static class ResponseBuffer extends ByteArrayOutputStream {
+    ResponseBuffer(int size) {
+      super(size);
+    }
+
+    /** @return a buffer backed by, rather than copied from, this one */
+    ByteBuffer getByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+
   /** A call queued for handling. */
-  private static class Call {
+  private static class Call implements Schedulable {
     private final int callId;             // the client's call id
     private final Writable rpcRequest;    // Serialized Rpc request from client
     private final Connection connection;  // connection to client
@@ -460,6 +482,7 @@ private static class Call {
                                           // time served when response is not null
     private ByteBuffer rpcResponse;       // the response for this call
     private final RPC.RpcKind rpcKind;
+    private int priorityLevel;            // assigned by the call queue
 
     public Call(int id, Writable param, Connection connection) {
       this( id,  param,  connection, RPC.RpcKind.RPC_BUILTIN );    
@@ -481,6 +504,35 @@ public String toString() {
     public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
+
+    /**
+     * Copy what remains to be sent of the response into a buffer of its
+     * own, if it has not been sent yet. This must be called with the
+     * connection's response queue locked.
+     */
+    void detachResponse() {
+      if (rpcResponse != null) {
+        ByteBuffer copy = ByteBuffer.allocate(rpcResponse.remaining());
+        copy.put(rpcResponse);
+        copy.flip();
+        rpcResponse = copy;
+      }
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return connection.user;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return priorityLevel;
+    }
+
+    @Override
+    public void setPriorityLevel(int level) {
+      this.priorityLevel = level;
+    }
   }
 
   /** Listens on the socket. Creates jobs for the handler threads*/
@@ -985,7 +1037,7 @@ private boolean processResponse(LinkedList<Call> responseQueue,
           //
           // Send as much data as we can in the non-blocking fashion
           //
-          int numBytes = channelWrite(channel, call.rpcResponse);
+          int numBytes = writeResponses(channel, call, responseQueue);
           if (numBytes < 0) {
             return true;
           }
@@ -993,7 +1045,7 @@ private boolean processResponse(LinkedList<Call> responseQueue,
             //Clear out the response buffer so it can be collected
             call.rpcResponse = null;
             call.connection.decRpcCount();
-            if (numElements == 1) {    // last call fully processes.
+            if (responseQueue.isEmpty()) { // last call fully processes.
               done = true;             // no more data for this channel.
             } else {
               done = false;            // more calls pending to be sent.
@@ -1044,6 +1096,51 @@ private boolean processResponse(LinkedList<Call> responseQueue,
       return done;
     }
 
+    /**
+     * Write the response to the given call. If small responses to other
+     * calls are queued behind it, write as many of them as fit within
+     * NIO_BUFFER_LIMIT along with it, in one gathering write. Those which
+     * are sent in full are removed from the queue; the given call is left
+     * to the caller.
+     */
+    private int writeResponses(SocketChannel channel, Call call,
+        LinkedList<Call> responseQueue) throws IOException {
+      int numResponses = 1;
+      int size = call.rpcResponse.remaining();
+      for (Call next : responseQueue) {
+        if (numResponses == MAX_COALESCED_RESPONSES ||
+            size + next.rpcResponse.remaining() > NIO_BUFFER_LIMIT) {
+          break;
+        }
+        size += next.rpcResponse.remaining();
+        numResponses++;
+      }
+      if (numResponses == 1) {
+        return channelWrite(channel, call.rpcResponse);
+      }
+
+      ByteBuffer[] responses = new ByteBuffer[numResponses];
+      responses[0] = call.rpcResponse;
+      Iterator<Call> iter = responseQueue.iterator();
+      for (int i = 1; i < numResponses; i++) {
+        responses[i] = iter.next().rpcResponse;
+      }
+      int count = (int)channel.write(responses);
+      if (count > 0) {
+        rpcMetrics.incrSentBytes(count);
+      }
+      for (int i = 1; i < numResponses && !responses[i].hasRemaining(); i++) {
+        Call sent = responseQueue.removeFirst();
+        sent.rpcResponse = null;
+        sent.connection.decRpcCount();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(getName() + ": responding to #" + sent.callId + " from " +
+                    sent.connection + " along with #" + call.callId);
+        }
+      }
+      return count;
+    }
+
     //
     // Enqueue a response from the application.
     //
@@ -1101,6 +1198,8 @@ public class Connection {
     private ByteBuffer connectionHeaderBuf = null;
     private ByteBuffer unwrappedData;
     private ByteBuffer unwrappedDataLengthBuffer;
+    // reused to deserialize each request, which is only read by one thread
+    private final DataInputBuffer requestInput = new DataInputBuffer();
     
     UserGroupInformation user = null;
     public UserGroupInformation attemptingUser = null; // user name before auth
@@ -1204,9 +1303,10 @@ private UserGroupInformation getAuthorizedUgi(String authorizedId)
       }
     }
 
-    private void saslReadAndProcess(byte[] saslToken) throws IOException,
-        InterruptedException {
+    private void saslReadAndProcess(byte[] buf, int length)
+        throws IOException, InterruptedException {
       if (!saslContextEstablished) {
+        byte[] saslToken = Arrays.copyOf(buf, length);
         byte[] replyToken = null;
         try {
           if (LOG.isDebugEnabled())
@@ -1259,14 +1359,13 @@ private void saslReadAndProcess(byte[] saslToken) throws IOException,
         }
       } else {
         if (LOG.isDebugEnabled())
-          LOG.debug("Have read input token of size " + saslToken.length
+          LOG.debug("Have read input token of size " + length
               + " for processing by saslServer.unwrap()");
         
         if (!useWrap) {
-          processOneRpc(saslToken);
+          processOneRpc(buf, length);
         } else {
-          byte[] plaintextData = saslServer.unwrap(saslToken, 0,
-              saslToken.length);
+          byte[] plaintextData = saslServer.unwrap(buf, 0, length);
           processUnwrappedData(plaintextData);
         }
       }
@@ -1374,7 +1473,7 @@ public int readAndProcess() throws IOException, InterruptedException {
             LOG.warn("Unexpected data length " + dataLength + "!! from " + 
                 getHostAddress());
           }
-          data = ByteBuffer.allocate(dataLength);
+          data = requestBuffers.getBuffer(dataLength);
         }
         
         count = channelRead(channel, data);
@@ -1383,17 +1482,24 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLengthBuffer.clear();
           data.flip();
           if (skipInitialSaslHandshake) {
+            requestBuffers.returnBuffer(data);
             data = null;
             skipInitialSaslHandshake = false;
             continue;
           }
           boolean isHeaderRead = connectionContextRead;
-          if (saslServer != null) {
-            saslReadAndProcess(data.array());
-          } else {
-            processOneRpc(data.array());
+          // The request is copied out of the buffer as it is deserialized,
+          // so the buffer can be reused as soon as it has been processed.
+          try {
+            if (saslServer != null) {
+              saslReadAndProcess(data.array(), data.limit());
+            } else {
+              processOneRpc(data.array(), data.limit());
+            }
+          } finally {
+            requestBuffers.returnBuffer(data);
+            data = null;
           }
-          data = null;
           if (!isHeaderRead) {
             continue;
           }
@@ -1552,10 +1658,10 @@ private void setupHttpRequestOnIpcPortResponse() throws IOException {
     }
 
     /** Reads the connection context following the connection header */
-    private void processConnectionContext(byte[] buf) throws IOException {
-      DataInputStream in =
-        new DataInputStream(new ByteArrayInputStream(buf));
-      connectionContext = IpcConnectionContextProto.parseFrom(in);
+    private void processConnectionContext(byte[] buf, int length)
+        throws IOException {
+      connectionContext = IpcConnectionContextProto.parseFrom(
+          CodedInputStream.newInstance(buf, 0, length));
       protocolName = connectionContext.hasProtocol() ? connectionContext
           .getProtocol() : null;
 
@@ -1610,7 +1716,7 @@ private void processUnwrappedData(byte[] inBuf) throws IOException,
             unwrappedDataLengthBuffer.clear();
             continue; // ping message
           }
-          unwrappedData = ByteBuffer.allocate(unwrappedDataLength);
+          unwrappedData = requestBuffers.getBuffer(unwrappedDataLength);
         }
 
         count = channelRead(ch, unwrappedData);
@@ -1620,18 +1726,22 @@ private void processUnwrappedData(byte[] inBuf) throws IOException,
         if (unwrappedData.remaining() == 0) {
           unwrappedDataLengthBuffer.clear();
           unwrappedData.flip();
-          processOneRpc(unwrappedData.array());
-          unwrappedData = null;
+          try {
+            processOneRpc(unwrappedData.array(), unwrappedData.limit());
+          } finally {
+            requestBuffers.returnBuffer(unwrappedData);
+            unwrappedData = null;
+          }
         }
       }
     }
     
-    private void processOneRpc(byte[] buf) throws IOException,
+    private void processOneRpc(byte[] buf, int length) throws IOException,
         InterruptedException {
       if (connectionContextRead) {
-        processData(buf);
+        processData(buf, length);
       } else {
-        processConnectionContext(buf);
+        processConnectionContext(buf, length);
         connectionContextRead = true;
         if (!authorizeConnection()) {
           throw new AccessControlException("Connection from " + this
@@ -1641,10 +1751,17 @@ private void processOneRpc(byte[] buf) throws IOException,
       }
     }
     
-    private void processData(byte[] buf) throws  IOException, InterruptedException {
-      DataInputStream dis =
-        new DataInputStream(new ByteArrayInputStream(buf));
-      RpcRequestHeaderProto header = RpcRequestHeaderProto.parseDelimitedFrom(dis);
+    private void processData(byte[] buf, int length)
+        throws  IOException, InterruptedException {
+      // Parse the header straight from the buffer, rather than through a
+      // stream which would need buffers of its own.
+      CodedInputStream cis = CodedInputStream.newInstance(buf, 0, length);
+      int oldLimit = cis.pushLimit(cis.readRawVarint32());
+      RpcRequestHeaderProto header = RpcRequestHeaderProto.parseFrom(cis);
+      cis.popLimit(oldLimit);
+      int headerLength = cis.getTotalBytesRead();
+      DataInputBuffer dis = requestInput;
+      dis.reset(buf, headerLength, length - headerLength);
         
       if (LOG.isDebugEnabled())
         LOG.debug(" got #" + header.getCallId());
@@ -1698,7 +1815,26 @@ private void processData(byte[] buf) throws  IOException, InterruptedException {
         
       Call call = new Call(header.getCallId(), rpcRequest, this, 
           ProtoUtil.convert(header.getRpcKind()));
-      callQueue.put(call);              // queue the call; maybe blocked here
+      if (callQueueBackoff) {
+        if (!callQueue.offer(call)) {
+          // Tell the client to come back later, rather than holding up
+          // every other connection served by this reader.
+          rpcMetrics.incrCallQueueBackoffs();
+          synchronized (responseQueue) {
+            setupResponse(new ByteArrayOutputStream(), call,
+                RpcStatusProto.ERROR, null, RetriableException.class.getName(),
+                "Server too busy: the call queue is full");
+            responder.doRespond(call);
+          }
+          return;
+        }
+      } else {
+        callQueue.put(call);            // queue the call; maybe blocked here
+      }
+      if (fairCallQueue != null) {
+        final int level = call.getPriorityLevel();
+        rpcMetrics.setCallQueueLength(level, fairCallQueue.size(level));
+      }
       incRpcCount();  // Increment the rpc count
     }
 
@@ -1745,6 +1881,8 @@ private synchronized void close() throws IOException {
 
   /** Handles queued calls . */
   private class Handler extends Thread {
+    private ResponseBuffer buf = new ResponseBuffer(INITIAL_RESP_BUF_SIZE);
+
     public Handler(int instanceNumber) {
       this.setDaemon(true);
       this.setName("IPC Server handler "+ instanceNumber + " on " + port);
@@ -1754,95 +1892,118 @@ public Handler(int instanceNumber) {
     public void run() {
       LOG.debug(getName() + ": starting");
       SERVER.set(Server.this);
-      ByteArrayOutputStream buf = 
-        new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+      final List<Call> calls = new ArrayList<Call>(handlerBatchSize);
       while (running) {
         try {
-          final Call call = callQueue.take(); // pop the queue; maybe blocked here
-          if (LOG.isDebugEnabled()) {
-            LOG.debug(getName() + ": has Call#" + call.callId + 
-                "for RpcKind " + call.rpcKind + " from " + call.connection);
-          }
-          String errorClass = null;
-          String error = null;
-          Writable value = null;
-
-          CurCall.set(call);
-          try {
-            // Make the call as the user via Subject.doAs, thus associating
-            // the call with the Subject
-            if (call.connection.user == null) {
-              value = call(call.rpcKind, call.connection.protocolName, call.rpcRequest, 
-                           call.timestamp);
-            } else {
-              value = 
-                call.connection.user.doAs
-                  (new PrivilegedExceptionAction<Writable>() {
-                     @Override
-                     public Writable run() throws Exception {
-                       // make the call
-                       return call(call.rpcKind, call.connection.protocolName, 
-                                   call.rpcRequest, call.timestamp);
-
-                     }
-                   }
-                  );
-            }
-          } catch (Throwable e) {
-            if (e instanceof UndeclaredThrowableException) {
-              e = e.getCause();
-            }
-            String logMsg = getName() + ", call " + call + ": error: " + e;
-            if (e instanceof RuntimeException || e instanceof Error) {
-              // These exception types indicate something is probably wrong
-              // on the server side, as opposed to just a normal exceptional
-              // result.
-              LOG.warn(logMsg, e);
-            } else if (exceptionsHandler.isTerse(e.getClass())) {
-             // Don't log the whole stack trace of these exceptions.
-              // Way too noisy!
-              LOG.info(logMsg);
-            } else {
-              LOG.info(logMsg, e);
-            }
-
-            errorClass = e.getClass().getName();
-            error = StringUtils.stringifyException(e);
-            // Remove redundant error class name from the beginning of the stack trace
-            String exceptionHdr = errorClass + ": ";
-            if (error.startsWith(exceptionHdr)) {
-              error = error.substring(exceptionHdr.length());
-            }
-          }
-          CurCall.set(null);
-          synchronized (call.connection.responseQueue) {
-            // setupResponse() needs to be sync'ed together with 
-            // responder.doResponse() since setupResponse may use
-            // SASL to encrypt response data and SASL enforces
-            // its own message ordering.
-            setupResponse(buf, call, (error == null) ? RpcStatusProto.SUCCESS
-                : RpcStatusProto.ERROR, value, errorClass, error);
-            
-            // Discard the large buf and reset it back to smaller size 
-            // to free up heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
-            }
-            responder.doRespond(call);
+          calls.add(callQueue.take()); // pop the queue; maybe blocked here
+          if (handlerBatchSize > 1) {
+            // Take any other calls which are already waiting, rather than
+            // going back to the queue for each of them.
+            callQueue.drainTo(calls, handlerBatchSize - 1);
           }
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
             LOG.info(getName() + " unexpectedly interrupted", e);
           }
-        } catch (Exception e) {
-          LOG.info(getName() + " caught an exception", e);
+          continue;
         }
+        for (Call call : calls) {
+          try {
+            handleCall(call);
+          } catch (Exception e) {
+            LOG.info(getName() + " caught an exception", e);
+          }
+        }
+        calls.clear();
       }
       LOG.debug(getName() + ": exiting");
     }
 
+    private void handleCall(final Call call) throws IOException {
+      if (fairCallQueue != null) {
+        final int level = call.getPriorityLevel();
+        rpcMetrics.addCallQueueTime(level, Time.now() - call.timestamp);
+        rpcMetrics.setCallQueueLength(level, fairCallQueue.size(level));
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(getName() + ": has Call#" + call.callId + 
+            "for RpcKind " + call.rpcKind + " from " + call.connection);
+      }
+      String errorClass = null;
+      String error = null;
+      Writable value = null;
+
+      CurCall.set(call);
+      try {
+        // Make the call as the user via Subject.doAs, thus associating
+        // the call with the Subject
+        if (call.connection.user == null) {
+          value = call(call.rpcKind, call.connection.protocolName, call.rpcRequest, 
+                       call.timestamp);
+        } else {
+          value = 
+            call.connection.user.doAs
+              (new PrivilegedExceptionAction<Writable>() {
+                 @Override
+                 public Writable run() throws Exception {
+                   // make the call
+                   return call(call.rpcKind, call.connection.protocolName, 
+                               call.rpcRequest, call.timestamp);
+
+                 }
+               }
+              );
+        }
+      } catch (Throwable e) {
+        if (e instanceof UndeclaredThrowableException) {
+          e = e.getCause();
+        }
+        String logMsg = getName() + ", call " + call + ": error: " + e;
+        if (e instanceof RuntimeException || e instanceof Error) {
+          // These exception types indicate something is probably wrong
+          // on the server side, as opposed to just a normal exceptional
+          // result.
+          LOG.warn(logMsg, e);
+        } else if (exceptionsHandler.isTerse(e.getClass())) {
+         // Don't log the whole stack trace of these exceptions.
+          // Way too noisy!
+          LOG.info(logMsg);
+        } else {
+          LOG.info(logMsg, e);
+        }
+
+        errorClass = e.getClass().getName();
+        error = StringUtils.stringifyException(e);
+        // Remove redundant error class name from the beginning of the stack trace
+        String exceptionHdr = errorClass + ": ";
+        if (error.startsWith(exceptionHdr)) {
+          error = error.substring(exceptionHdr.length());
+        }
+      }
+      CurCall.set(null);
+      synchronized (call.connection.responseQueue) {
+        // setupResponse() needs to be sync'ed together with 
+        // responder.doResponse() since setupResponse may use
+        // SASL to encrypt response data and SASL enforces
+        // its own message ordering.
+        setupResponse(buf, call, (error == null) ? RpcStatusProto.SUCCESS
+            : RpcStatusProto.ERROR, value, errorClass, error);
+        
+        // Discard the large buf and reset it back to smaller size 
+        // to free up heap
+        if (buf.size() > maxRespSize) {
+          LOG.warn("Large response size " + buf.size() + " for call "
+              + call.toString());
+          buf = new ResponseBuffer(INITIAL_RESP_BUF_SIZE);
+        }
+        responder.doRespond(call);
+        // The response is usually written out in full by doRespond.
+        // If not, the rest of it must be copied out of buf before the
+        // next call reuses it.
+        call.detachResponse();
+      }
+    }
+
   }
   
   protected Server(String bindAddress, int port,
@@ -1900,6 +2061,12 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    this.requestBuffers = new RequestBufferPool(
+        conf.getInt(CommonConfigurationKeys.IPC_SERVER_REQUEST_BUFFER_SIZE_KEY,
+            CommonConfigurationKeys.IPC_SERVER_REQUEST_BUFFER_SIZE_DEFAULT),
+        conf.getInt(
+            CommonConfigurationKeys.IPC_SERVER_REQUEST_BUFFER_POOL_SIZE_KEY,
+            CommonConfigurationKeys.IPC_SERVER_REQUEST_BUFFER_POOL_SIZE_DEFAULT));
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -1907,7 +2074,16 @@ protected Server(String bindAddress, int port,
           CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_KEY,
           CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_DEFAULT);
     }
-    this.callQueue  = new LinkedBlockingQueue<Call>(maxQueueSize); 
+    this.callQueue = createCallQueue(maxQueueSize, conf);
+    if (callQueue instanceof FairCallQueue) {
+      this.fairCallQueue = (FairCallQueue<Call>)callQueue;
+    }
+    this.callQueueBackoff = conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_BACKOFF_ENABLE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_BACKOFF_ENABLE_DEFAULT);
+    this.handlerBatchSize = Math.max(1, conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_DEFAULT));
     this.maxIdleTime = 2 * conf.getInt(
         CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
         CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_DEFAULT);
@@ -2028,7 +2204,12 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     if (call.connection.useWrap) {
       wrapWithSasl(responseBuf, call);
     }
-    call.setResponse(ByteBuffer.wrap(responseBuf.toByteArray()));
+    if (responseBuf instanceof ResponseBuffer) {
+      // Send straight from the handler's buffer; see Call#detachResponse.
+      call.setResponse(((ResponseBuffer)responseBuf).getByteBuffer());
+    } else {
+      call.setResponse(ByteBuffer.wrap(responseBuf.toByteArray()));
+    }
   }
   
   /**
@@ -2206,6 +2387,41 @@ public int getCallQueueLen() {
     return callQueue.size();
   }
   
+  /**
+   * The number of priority levels of the call queue: more than one if it
+   * is a {@link FairCallQueue}.
+   * @return The number of priority levels of the call queue.
+   */
+  public int getNumCallQueueLevels() {
+    return fairCallQueue == null ? 1 : fairCallQueue.getNumLevels();
+  }
+
+  /**
+   * Create the call queue, of the class configured by
+   * {@link CommonConfigurationKeys#IPC_SERVER_CALLQUEUE_IMPL_KEY}. The class
+   * must have a constructor taking the capacity and the configuration, or
+   * just the capacity.
+   */
+  @SuppressWarnings("unchecked")
+  private static BlockingQueue<Call> createCallQueue(int maxQueueSize,
+      Configuration conf) {
+    final Class<? extends BlockingQueue> queueClass = conf.getClass(
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_IMPL_KEY,
+        LinkedBlockingQueue.class, BlockingQueue.class);
+    try {
+      try {
+        final Constructor<? extends BlockingQueue> ctor =
+            queueClass.getConstructor(int.class, Configuration.class);
+        return ctor.newInstance(maxQueueSize, conf);
+      } catch (NoSuchMethodException nsme) {
+        return queueClass.getConstructor(int.class).newInstance(maxQueueSize);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Unable to create call queue of "
+          + queueClass, e);
+    }
+  }
+
   /**
    * The maximum size of the rpc call queue of this server.
    * @return The maximum size of the rpc call queue.
@@ -2228,6 +2444,13 @@ public int getNumReaders() {
    * be smaller.
    */
   private static int NIO_BUFFER_LIMIT = 8*1024; //should not be more than 64KB.
+
+  /**
+   * The most responses which are written to a connection in one gathering
+   * write. This is well within the limit on the number of buffers which
+   * the OS accepts at once.
+   */
+  private static final int MAX_COALESCED_RESPONSES = 64;
   
   /**
    * This is a wrapper around {@link WritableByteChannel#write(ByteBuffer)}.
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses which level of a {@link FairCallQueue} to serve next. Each level
+ * is served for its weight's worth of calls before moving on to the next,
+ * so that with the default weights of 8, 4, 2 and 1 the highest priority
+ * level gets 8/15 of the handlers' time when all the levels are busy.
+ */
+@InterfaceAudience.Private
+class WeightedRoundRobinMultiplexer {
+  private final int[] weights;
+  private int currentLevel = 0;
+  private int servedAtCurrentLevel = 0;
+
+  WeightedRoundRobinMultiplexer(int numLevels, Configuration conf) {
+    Preconditions.checkArgument(numLevels > 0,
+        "Number of levels must be positive: %s", numLevels);
+    final int[] configured = conf.getInts(
+        CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_WEIGHTS_KEY);
+    if (configured.length == 0) {
+      weights = new int[numLevels];
+      for (int i = 0; i < numLevels; i++) {
+        weights[i] = 1 << Math.min(numLevels - 1 - i, 30);
+      }
+    } else if (configured.length == numLevels) {
+      for (int w : configured) {
+        Preconditions.checkArgument(w > 0, "Weights must be positive: %s", w);
+      }
+      weights = configured;
+    } else {
+      throw new IllegalArgumentException("Expected " + numLevels
+          + " values for "
+          + CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_WEIGHTS_KEY
+          + " but got " + configured.length);
+    }
+  }
+
+  /**
+   * @return the level from which the next call should be taken, advancing
+   *         to the following level once this one has had its share
+   */
+  synchronized int getAndAdvanceCurrentLevel() {
+    final int level = currentLevel;
+    if (++servedAtCurrentLevel >= weights[level]) {
+      currentLevel = (currentLevel + 1) % weights.length;
+      servedAtCurrentLevel = 0;
+    }
+    return level;
+  }
+}
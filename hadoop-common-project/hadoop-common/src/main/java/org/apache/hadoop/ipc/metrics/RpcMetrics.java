@@ -27,6 +27,7 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterInt;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 
 /**
@@ -47,6 +48,17 @@ public class RpcMetrics {
     name = "RpcActivityForPort"+ port;
     this.server = server;
     registry = new MetricsRegistry("rpc").tag("port", "RPC port", port);
+    int levels = server.getNumCallQueueLevels();
+    if (levels > 1) {
+      callQueueLengths = new MutableGaugeInt[levels];
+      callQueueTimes = new MutableRate[levels];
+      for (int i = 0; i < levels; i++) {
+        callQueueLengths[i] = registry.newGauge("CallQueueLengthLevel" + i,
+            "Length of the call queue at priority level " + i, 0);
+        callQueueTimes[i] = registry.newRate("CallQueueTimeLevel" + i,
+            "Queue time at priority level " + i, false);
+      }
+    }
     LOG.debug("Initialized "+ registry);
   }
 
@@ -69,6 +81,11 @@ public static RpcMetrics create(Server server) {
   MutableCounterInt rpcAuthorizationFailures;
   @Metric("Number of authorization sucesses")
   MutableCounterInt rpcAuthorizationSuccesses;
+  @Metric("Number of calls rejected because the call queue was full")
+  MutableCounterLong rpcCallQueueBackoffs;
+  /** Per priority level metrics, when the server has a FairCallQueue */
+  private MutableGaugeInt[] callQueueLengths;
+  private MutableRate[] callQueueTimes;
 
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
@@ -148,6 +165,31 @@ public void addRpcQueueTime(int qTime) {
     rpcQueueTime.add(qTime);
   }
 
+  /**
+   * One call rejected because the call queue was full
+   */
+  public void incrCallQueueBackoffs() {
+    rpcCallQueueBackoffs.incr();
+  }
+
+  /**
+   * Update the length of the call queue at the given priority level
+   * @param level the priority level
+   * @param length the number of calls queued at that level
+   */
+  public void setCallQueueLength(int level, int length) {
+    callQueueLengths[level].set(length);
+  }
+
+  /**
+   * Add a sample of the time a call waited at the given priority level
+   * @param level the priority level
+   * @param time the time the call spent in the queue
+   */
+  public void addCallQueueTime(int level, long time) {
+    callQueueTimes[level].add(time);
+  }
+
   /**
    * Add an RPC processing time sample
    * @param processingTime the processing time
@@ -22,45 +22,47 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.StripedLong;
 
 /**
- * A mutable long counter
+ * A mutable long counter. Increments are striped over several cells, so
+ * that a counter updated by many threads, e.g. on every RPC call, does not
+ * become a point of contention.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class MutableCounterLong extends MutableCounter {
 
-  private volatile long value;
+  private final StripedLong value;
 
   MutableCounterLong(MetricsInfo info, long initValue) {
     super(info);
-    this.value = initValue;
+    this.value = new StripedLong(initValue);
   }
 
   @Override
-  public synchronized void incr() {
-    ++value;
-    setChanged();
+  public void incr() {
+    incr(1);
   }
 
   /**
    * Increment the value by a delta
    * @param delta of the increment
    */
-  public synchronized void incr(long delta) {
-    value += delta;
+  public void incr(long delta) {
+    value.add(delta);
     setChanged();
   }
 
   public long value() {
-    return value;
+    return value.sum();
   }
 
   @Override
   public void snapshot(MetricsRecordBuilder builder, boolean all) {
     if (all || changed()) {
-      builder.addCounter(info(), value);
       clearChanged();
+      builder.addCounter(info(), value());
     }
   }
 
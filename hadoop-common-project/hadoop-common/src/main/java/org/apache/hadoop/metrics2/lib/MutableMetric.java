@@ -48,7 +48,13 @@ public void snapshot(MetricsRecordBuilder builder) {
   /**
    * Set the changed flag in mutable operations
    */
-  protected void setChanged() { changed = true; }
+  protected void setChanged() {
+    // Only write the flag if needed, so that threads updating a metric
+    // don't all write to the same cache line
+    if (!changed) {
+      changed = true;
+    }
+  }
 
   /**
    * Clear the changed flag in the snapshot operations
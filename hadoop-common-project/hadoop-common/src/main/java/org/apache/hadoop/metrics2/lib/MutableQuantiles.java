@@ -32,6 +32,7 @@
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.util.Quantile;
 import org.apache.hadoop.metrics2.util.SampleQuantiles;
+import org.apache.hadoop.metrics2.util.StripedSamples;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -40,6 +41,9 @@
  * Watches a stream of long values, maintaining online estimates of specific
  * quantiles with provably low error bounds. This is particularly useful for
  * accurate high-percentile (e.g. 95th, 99th) latency metrics.
+ *
+ * Values are buffered in striped cells and passed to the estimator in
+ * batches, so that threads adding values do not contend for it.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
@@ -55,6 +59,7 @@ public class MutableQuantiles extends MutableMetric {
   private final int interval;
 
   private SampleQuantiles estimator;
+  private StripedSamples samples;
   private long previousCount = 0;
 
   @VisibleForTesting
@@ -102,6 +107,7 @@ public MutableQuantiles(String name, String description, String sampleName,
     }
 
     estimator = new SampleQuantiles(quantiles);
+    samples = new StripedSamples(estimator);
 
     this.interval = interval;
     scheduler.scheduleAtFixedRate(new RolloverSample(this), interval, interval,
@@ -126,8 +132,8 @@ public synchronized void snapshot(MetricsRecordBuilder builder, boolean all) {
     }
   }
 
-  public synchronized void add(long value) {
-    estimator.insert(value);
+  public void add(long value) {
+    samples.insert(value);
   }
 
   public int getInterval() {
@@ -149,6 +155,7 @@ public RolloverSample(MutableQuantiles parent) {
     @Override
     public void run() {
       synchronized (parent) {
+        parent.samples.flush();
         parent.previousCount = parent.estimator.getCount();
         parent.previousSnapshot = parent.estimator.snapshot();
         parent.estimator.clear();
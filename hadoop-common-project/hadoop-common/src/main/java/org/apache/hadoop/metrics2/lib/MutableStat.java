@@ -24,12 +24,14 @@
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.util.SampleStat;
+import org.apache.hadoop.metrics2.util.StripedStat;
 import static org.apache.hadoop.metrics2.lib.Interns.*;
 
 /**
  * A mutable metric with stats.
  *
- * Useful for keeping throughput/latency stats.
+ * Useful for keeping throughput/latency stats. Samples are added to
+ * striped cells without locking the metric, and gathered up at snapshot.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
@@ -42,6 +44,7 @@ public class MutableStat extends MutableMetric {
   private final MetricsInfo minInfo;
   private final MetricsInfo maxInfo;
 
+  private final StripedStat samples = new StripedStat();
   private final SampleStat intervalStat = new SampleStat();
   private final SampleStat prevStat = new SampleStat();
   private final SampleStat.MinMax minMax = new SampleStat.MinMax();
@@ -94,8 +97,8 @@ public MutableStat(String name, String description,
    * @param numSamples  number of samples
    * @param sum of the samples
    */
-  public synchronized void add(long numSamples, long sum) {
-    intervalStat.add(numSamples, sum);
+  public void add(long numSamples, long sum) {
+    samples.add(numSamples, sum);
     setChanged();
   }
 
@@ -103,43 +106,43 @@ public synchronized void add(long numSamples, long sum) {
    * Add a snapshot to the metric
    * @param value of the metric
    */
-  public synchronized void add(long value) {
-    intervalStat.add(value);
-    minMax.add(value);
+  public void add(long value) {
+    samples.add(value);
     setChanged();
   }
 
   @Override
   public synchronized void snapshot(MetricsRecordBuilder builder, boolean all) {
-    if (all || changed()) {
+    boolean changed = changed();
+    if (changed) {
+      // Clear the flag first, so that samples added while we drain are
+      // flagged for the next snapshot
+      clearChanged();
+      samples.drainTo(intervalStat, minMax);
+    }
+    if (all || changed) {
+      SampleStat lastStat = changed ? intervalStat : prevStat;
       numSamples += intervalStat.numSamples();
       builder.addCounter(numInfo, numSamples)
-             .addGauge(avgInfo, lastStat().mean());
+             .addGauge(avgInfo, lastStat.mean());
       if (extended) {
-        builder.addGauge(stdevInfo, lastStat().stddev())
-               .addGauge(iMinInfo, lastStat().min())
-               .addGauge(iMaxInfo, lastStat().max())
+        builder.addGauge(stdevInfo, lastStat.stddev())
+               .addGauge(iMinInfo, lastStat.min())
+               .addGauge(iMaxInfo, lastStat.max())
                .addGauge(minInfo, minMax.min())
                .addGauge(maxInfo, minMax.max());
       }
-      if (changed()) {
-        if (numSamples > 0) {
-          intervalStat.copyTo(prevStat);
-          intervalStat.reset();
-        }
-        clearChanged();
+      if (changed && numSamples > 0) {
+        intervalStat.copyTo(prevStat);
+        intervalStat.reset();
       }
     }
   }
 
-  private SampleStat lastStat() {
-    return changed() ? intervalStat : prevStat;
-  }
-
   /**
    * Reset the all time min max of the metric
    */
-  public void resetMinMax() {
+  public synchronized void resetMinMax() {
     minMax.reset();
   }
 
@@ -122,6 +122,19 @@ synchronized public void insert(long v) {
     }
   }
 
+  /**
+   * Add a batch of new values from the stream.
+   * 
+   * @param values array holding the values
+   * @param off offset of the first value
+   * @param len number of values
+   */
+  synchronized public void insert(long[] values, int off, int len) {
+    for (int i = off; i < off + len; i++) {
+      insert(values[i]);
+    }
+  }
+
   /**
    * Merges items from buffer into the samples array in one pass.
    * This is more efficient than doing an insert on every item.
@@ -95,6 +95,37 @@ public SampleStat add(long nSamples, double x) {
     return this;
   }
 
+  /**
+   * Add the samples of another running stat to this one, as if they had
+   * been added here one by one. Uses the parallel form of the Welford method.
+   * @param other the stat to add
+   * @return  self
+   */
+  public SampleStat add(SampleStat other) {
+    if (other.numSamples == 0) {
+      return this;
+    }
+    minmax.add(other.minmax);
+    if (numSamples == 0) {
+      numSamples = other.numSamples;
+      a0 = a1 = other.a0;
+      s0 = s1 = other.s0;
+      return this;
+    }
+    long n = numSamples + other.numSamples;
+    double delta = other.a0 - a0;
+    a1 = a0 + delta * other.numSamples / n;
+    s1 = s0 + other.s0 + delta * delta * numSamples / n * other.numSamples;
+    a0 = a1;
+    s0 = s1;
+    numSamples = n;
+    return this;
+  }
+
+  MinMax minMax() {
+    return minmax;
+  }
+
   /**
    * @return  the total number of samples
    */
@@ -159,6 +190,15 @@ public void add(double value) {
       if (value < min) min = value;
     }
 
+    /**
+     * Merge the min/max of another instance into this one
+     * @param other the min/max to merge
+     */
+    public void add(MinMax other) {
+      if (other.max > max) max = other.max;
+      if (other.min < min) min = other.min;
+    }
+
     public double min() { return min; }
     public double max() { return max; }
 
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Spreads the updates of a metric over a set of cells, so that threads
+ * updating it at the same time mostly work on different cells rather than
+ * contending for one monitor or cache line. Readers visit every cell and
+ * combine their values.
+ *
+ * There is a single cell to begin with. Each thread is assigned a cell by a
+ * per-thread hash, and a thread which finds its cell in use moves to
+ * another one and doubles the number of cells, up to the number of
+ * processors. Uncontended metrics so stay small. This follows the design of
+ * Striped64 from JSR 166.
+ *
+ * @param <C> the type of the cells
+ */
+@InterfaceAudience.Private
+public abstract class Striped<C> {
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  /** The number of processors, rounded up to a power of two */
+  private static final int MAX_CELLS =
+      NCPU <= 1 ? 1 : Integer.highestOneBit(NCPU - 1) << 1;
+
+  /** The hash of each thread, shared by all the striped metrics */
+  private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      // Spread the thread ids, so that threads started one after another
+      // start on different cells
+      int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+      return new int[] { h == 0 ? 1 : h };
+    }
+  };
+
+  private volatile Object[] cells;
+  private final AtomicBoolean resizing = new AtomicBoolean(false);
+
+  protected Striped() {
+    cells = new Object[] { newCell() };
+  }
+
+  /**
+   * Create a new, empty cell. Called from the constructor, so it must not
+   * depend on the state of subclasses.
+   * @return the cell
+   */
+  protected abstract C newCell();
+
+  /**
+   * @return the cell of the current thread
+   */
+  @SuppressWarnings("unchecked")
+  protected final C cell() {
+    Object[] cs = cells;
+    return (C) cs[PROBE.get()[0] & (cs.length - 1)];
+  }
+
+  /**
+   * Called by a thread which found its cell in use. Moves the thread to
+   * another cell, and adds cells if there are fewer than the processors.
+   */
+  protected final void contended() {
+    int[] probe = PROBE.get();
+    int h = probe[0];
+    // xorshift, which never maps a non-zero hash to zero
+    h ^= h << 13;
+    h ^= h >>> 17;
+    h ^= h << 5;
+    probe[0] = h;
+
+    Object[] cs = cells;
+    if (cs.length < MAX_CELLS && resizing.compareAndSet(false, true)) {
+      try {
+        if (cs == cells) {
+          Object[] grown = Arrays.copyOf(cs, cs.length << 1);
+          for (int i = cs.length; i < grown.length; i++) {
+            grown[i] = newCell();
+          }
+          cells = grown;
+        }
+      } finally {
+        resizing.set(false);
+      }
+    }
+  }
+
+  /**
+   * @return the cells at the time of the call. Cells may be added, but are
+   *         never removed, so values in the cells returned are never lost.
+   */
+  @SuppressWarnings("unchecked")
+  protected final List<C> cells() {
+    return (List<C>) Arrays.asList(cells);
+  }
+}
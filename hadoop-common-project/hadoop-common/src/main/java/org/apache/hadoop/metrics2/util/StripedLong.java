@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A long sum which many threads can add to without contention.
+ */
+@InterfaceAudience.Private
+public class StripedLong extends Striped<StripedLong.Cell> {
+
+  static final class Cell {
+    // Padding keeps cells updated by different processors on separate
+    // cache lines
+    long p0, p1, p2, p3, p4, p5, p6;
+    volatile long value;
+    long q0, q1, q2, q3, q4, q5, q6;
+  }
+
+  private static final AtomicLongFieldUpdater<Cell> VALUE =
+      AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+  /**
+   * Construct a sum with an initial value
+   * @param initValue of the sum
+   */
+  public StripedLong(long initValue) {
+    add(initValue);
+  }
+
+  @Override
+  protected Cell newCell() {
+    return new Cell();
+  }
+
+  /**
+   * Add to the sum
+   * @param x the value to add
+   */
+  public void add(long x) {
+    for (;;) {
+      Cell c = cell();
+      long v = c.value;
+      if (VALUE.compareAndSet(c, v, v + x)) {
+        return;
+      }
+      contended();
+    }
+  }
+
+  /**
+   * @return the sum. Additions concurrent with the call may or may not be
+   *         included.
+   */
+  public long sum() {
+    long sum = 0;
+    for (Cell c : cells()) {
+      sum += c.value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Buffers the samples for a {@link SampleQuantiles} estimator in cells, so
+ * that many threads can add samples without contending for the estimator.
+ * A cell passes its samples to the estimator whenever its buffer fills, and
+ * all the cells are flushed before the estimator is read.
+ *
+ * The estimates of a {@link SampleQuantiles} cannot be merged, so the cells
+ * buffer raw samples rather than keeping estimates of their own.
+ */
+@InterfaceAudience.Private
+public class StripedSamples extends Striped<StripedSamples.Cell> {
+  private static final int BUFFER_SIZE = 128;
+
+  static final class Cell {
+    final ReentrantLock lock = new ReentrantLock();
+    final long[] buffer = new long[BUFFER_SIZE];
+    int count = 0;
+  }
+
+  private final SampleQuantiles estimator;
+
+  /**
+   * @param estimator to pass the samples to
+   */
+  public StripedSamples(SampleQuantiles estimator) {
+    this.estimator = estimator;
+  }
+
+  @Override
+  protected Cell newCell() {
+    return new Cell();
+  }
+
+  /**
+   * Add a sample
+   * @param v the sample
+   */
+  public void insert(long v) {
+    Cell c = cell();
+    if (!c.lock.tryLock()) {
+      contended();
+      c = cell();
+      c.lock.lock();
+    }
+    try {
+      c.buffer[c.count++] = v;
+      if (c.count == BUFFER_SIZE) {
+        estimator.insert(c.buffer, 0, c.count);
+        c.count = 0;
+      }
+    } finally {
+      c.lock.unlock();
+    }
+  }
+
+  /**
+   * Pass the samples buffered in all the cells to the estimator
+   */
+  public void flush() {
+    for (Cell c : cells()) {
+      c.lock.lock();
+      try {
+        estimator.insert(c.buffer, 0, c.count);
+        c.count = 0;
+      } finally {
+        c.lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Running sample stats which many threads can add to without contention.
+ * Each cell keeps its own {@link SampleStat}, and the cells are drained
+ * into a single stat when the metric is read.
+ */
+@InterfaceAudience.Private
+public class StripedStat extends Striped<StripedStat.Cell> {
+
+  static final class Cell {
+    final ReentrantLock lock = new ReentrantLock();
+    final SampleStat stat = new SampleStat();
+  }
+
+  @Override
+  protected Cell newCell() {
+    return new Cell();
+  }
+
+  /**
+   * Add a sample
+   * @param x the sample number
+   */
+  public void add(long x) {
+    Cell c = lockCell();
+    try {
+      c.stat.add(x);
+    } finally {
+      c.lock.unlock();
+    }
+  }
+
+  /**
+   * Add some samples and their sum. Min/max is not evaluated using this
+   * method.
+   * @param numSamples  number of samples
+   * @param sum of the samples
+   */
+  public void add(long numSamples, long sum) {
+    Cell c = lockCell();
+    try {
+      c.stat.add(numSamples, sum);
+    } finally {
+      c.lock.unlock();
+    }
+  }
+
+  /**
+   * Move the samples added so far into a stat, leaving the cells empty.
+   * @param stat  to add the samples to
+   * @param minMax  to add the min and max of the samples to
+   */
+  public void drainTo(SampleStat stat, SampleStat.MinMax minMax) {
+    for (Cell c : cells()) {
+      c.lock.lock();
+      try {
+        if (c.stat.numSamples() > 0) {
+          stat.add(c.stat);
+          minMax.add(c.stat.minMax());
+          c.stat.reset();
+        }
+      } finally {
+        c.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Lock the cell of the current thread. If it is in use, the thread moves
+   * to another cell, and waits for that if it is in use too.
+   */
+  private Cell lockCell() {
+    Cell c = cell();
+    if (!c.lock.tryLock()) {
+      contended();
+      c = cell();
+      c.lock.lock();
+    }
+    return c;
+  }
+}
@@ -18,20 +18,33 @@
 package org.apache.hadoop.security;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation.UgiMetrics;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Time;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * A user-to-groups mapping service.
  * 
@@ -39,6 +52,14 @@
  * of a given user via the {@link #getGroups(String)} call, thus ensuring 
  * a consistent user-to-groups mapping and protects against vagaries of 
  * different mappings on servers and clients in a Hadoop cluster. 
+ *
+ * The groups of each user are cached. A user found to have no groups is
+ * remembered for a shorter time, so that repeated lookups of unknown users
+ * do not each reach the mapping provider. When background reload is
+ * enabled, an expired entry keeps being returned while a small pool of
+ * threads fetches the new groups, so that callers such as RPC handlers
+ * wait on the provider only for users not cached at all. Concurrent
+ * lookups of the same user share one call to the provider.
  */
 @InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
 @InterfaceStability.Evolving
@@ -49,7 +70,19 @@ public class Groups {
   
   private final Map<String, CachedGroups> userToGroupsMap = 
     new ConcurrentHashMap<String, CachedGroups>();
+  /** The lookups in progress, by user */
+  private final ConcurrentMap<String, FutureTask<List<String>>> loading =
+    new ConcurrentHashMap<String, FutureTask<List<String>>>();
+  /**
+   * The number of refreshes so far. Lookups which began before the latest
+   * one do not cache what they find. Guarded by this.
+   */
+  private long generation = 0;
   private final long cacheTimeout;
+  private final long negativeCacheTimeout;
+  /** Reloads expired entries, or null if they are reloaded by the caller */
+  private final ExecutorService reloader;
+  private final UgiMetrics metrics = UserGroupInformation.metrics;
 
   public Groups(Configuration conf) {
     impl = 
@@ -60,11 +93,39 @@ public Groups(Configuration conf) {
           conf);
     
     cacheTimeout = 
-      conf.getLong(CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS, 5*60) * 1000;
+      conf.getLong(CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS,
+          CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS_DEFAULT)
+      * 1000;
+    negativeCacheTimeout = conf.getLong(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS,
+        CommonConfigurationKeys.
+            HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS_DEFAULT) * 1000;
+
+    if (conf.getBoolean(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD,
+        CommonConfigurationKeys.
+            HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_DEFAULT)) {
+      int threads = Math.max(1, conf.getInt(
+          CommonConfigurationKeys.
+              HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS,
+          CommonConfigurationKeys.
+              HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS_DEFAULT));
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+          60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Groups cache reloader #%d").build());
+      // Let the pool of an idle cache shrink to nothing
+      pool.allowCoreThreadTimeOut(true);
+      reloader = pool;
+    } else {
+      reloader = null;
+    }
     
     if(LOG.isDebugEnabled())
       LOG.debug("Group mapping impl=" + impl.getClass().getName() + 
-          "; cacheTimeout=" + cacheTimeout);
+          "; cacheTimeout=" + cacheTimeout +
+          "; negativeCacheTimeout=" + negativeCacheTimeout +
+          "; backgroundReload=" + (reloader != null));
   }
   
   /**
@@ -76,29 +137,172 @@ public Groups(Configuration conf) {
   public List<String> getGroups(String user) throws IOException {
     // Return cached value if available
     CachedGroups groups = userToGroupsMap.get(user);
-    long now = Time.now();
+    long now = Time.monotonicNow();
     // if cache has a value and it hasn't expired
-    if (groups != null && (groups.getTimestamp() + cacheTimeout > now)) {
+    if (groups != null && !groups.isExpired(now)) {
       if(LOG.isDebugEnabled()) {
         LOG.debug("Returning cached groups for '" + user + "'");
       }
+      metrics.groupsCacheHits.incr();
+      return checkGroups(user, groups.getGroups());
+    }
+
+    // Serve the expired groups while they are fetched again. Users found
+    // to have no groups are looked up again at once, like new users.
+    if (groups != null && reloader != null && !groups.isNegative()) {
+      reloadInBackground(user);
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Returning expired groups for '" + user + "'");
+      }
+      metrics.groupsCacheStaleHits.incr();
       return groups.getGroups();
     }
     
-    // Create and cache user's groups
-    groups = new CachedGroups(impl.getGroups(user));
-    if (groups.getGroups().isEmpty()) {
-      throw new IOException("No groups found for user " + user);
+    // Fetch and cache user's groups, or wait for another caller doing so
+    metrics.groupsCacheMisses.incr();
+    FutureTask<List<String>> task =
+      new FutureTask<List<String>>(new GroupsLoader(user));
+    FutureTask<List<String>> loader = loading.putIfAbsent(user, task);
+    if (loader == null) {
+      loader = task;
+      task.run();
     }
-    userToGroupsMap.put(user, groups);
+    List<String> fetched = waitFor(loader);
     if(LOG.isDebugEnabled()) {
       LOG.debug("Returning fetched groups for '" + user + "'");
     }
-    return groups.getGroups();
+    return checkGroups(user, fetched);
+  }
+
+  private static List<String> checkGroups(String user, List<String> groups)
+      throws IOException {
+    if (groups.isEmpty()) {
+      throw new IOException("No groups found for user " + user);
+    }
+    return groups;
+  }
+
+  /**
+   * Schedule a reload of the groups of a user, unless one is in progress.
+   */
+  private void reloadInBackground(String user) {
+    FutureTask<List<String>> task =
+      new FutureTask<List<String>>(new GroupsLoader(user));
+    if (loading.putIfAbsent(user, task) == null) {
+      try {
+        reloader.execute(task);
+      } catch (RejectedExecutionException e) {
+        loading.remove(user, task);
+        LOG.warn("Could not schedule a reload of the groups of " + user, e);
+      }
+    }
+  }
+
+  private static List<String> waitFor(FutureTask<List<String>> loader)
+      throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return loader.get();
+        } catch (InterruptedException e) {
+          // the lookup is under way, so wait for it rather than giving up
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Fetches the groups of a user from the mapping provider and caches them.
+   */
+  private class GroupsLoader implements Callable<List<String>> {
+    private final String user;
+
+    GroupsLoader(String user) {
+      this.user = user;
+    }
+
+    @Override
+    public List<String> call() throws IOException {
+      long start = Time.monotonicNow();
+      long startGeneration = getGeneration();
+      try {
+        List<String> groups = impl.getGroups(user);
+        long now = Time.monotonicNow();
+        metrics.getGroups.add(now - start);
+        if (groups.isEmpty()) {
+          groups = Collections.emptyList();
+          cache(startGeneration, user, negativeCacheTimeout > 0
+              ? new CachedGroups(groups, now + negativeCacheTimeout) : null);
+        } else {
+          cache(startGeneration, user,
+              new CachedGroups(groups, now + cacheTimeout));
+        }
+        return groups;
+      } catch (IOException e) {
+        metrics.getGroupsFailures.incr();
+        LOG.warn("Error fetching the groups of " + user, e);
+        throw e;
+      } catch (RuntimeException e) {
+        metrics.getGroupsFailures.incr();
+        LOG.warn("Error fetching the groups of " + user, e);
+        throw e;
+      } finally {
+        // only now, so that lookups after this one find the new entry
+        finishLoading(startGeneration, user);
+      }
+    }
+  }
+
+  private synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Cache the groups of a user, or remove the user if the entry is null,
+   * unless the cache has been refreshed since the lookup began.
+   */
+  private synchronized void cache(long startGeneration, String user,
+      CachedGroups entry) {
+    if (startGeneration != generation) {
+      return;
+    }
+    if (entry != null) {
+      userToGroupsMap.put(user, entry);
+    } else {
+      userToGroupsMap.remove(user);
+    }
+  }
+
+  /**
+   * End a lookup. A refresh since it began has already forgotten it, and
+   * the user may since be being looked up again.
+   */
+  private synchronized void finishLoading(long startGeneration, String user) {
+    if (startGeneration == generation) {
+      loading.remove(user);
+    }
   }
   
   /**
-   * Refresh all user-to-groups mappings.
+   * Refresh all user-to-groups mappings. Lookups in progress are forgotten,
+   * so that what they find is not cached, and later lookups do not wait
+   * for them.
    */
   public void refresh() {
     LOG.info("clearing userToGroupsMap cache");
@@ -107,7 +311,11 @@ public void refresh() {
     } catch (IOException e) {
       LOG.warn("Error refreshing groups cache", e);
     }
-    userToGroupsMap.clear();
+    synchronized (this) {
+      generation++;
+      userToGroupsMap.clear();
+      loading.clear();
+    }
   }
 
   /**
@@ -127,24 +335,30 @@ public void cacheGroupsAdd(List<String> groups) {
    * Class to hold the cached groups
    */
   private static class CachedGroups {
-    final long timestamp;
+    final long expiry;
     final List<String> groups;
     
     /**
      * Create and initialize group cache
      */
-    CachedGroups(List<String> groups) {
+    CachedGroups(List<String> groups, long expiry) {
       this.groups = groups;
-      this.timestamp = Time.now();
+      this.expiry = expiry;
     }
 
     /**
-     * Returns time of last cache update
-     *
-     * @return time of last cache update
+     * @param now the current {@link Time#monotonicNow()}
+     * @return whether the entry has expired
+     */
+    boolean isExpired(long now) {
+      return now >= expiry;
+    }
+
+    /**
+     * @return whether the user was found to have no groups
      */
-    public long getTimestamp() {
-      return timestamp;
+    boolean isNegative() {
+      return groups.isEmpty();
     }
 
     /**
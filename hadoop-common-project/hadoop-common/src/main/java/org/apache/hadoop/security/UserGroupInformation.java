@@ -58,6 +58,7 @@
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.security.SaslRpcServer.AuthMethod;
 import org.apache.hadoop.security.authentication.util.KerberosName;
@@ -96,6 +97,17 @@ static class UgiMetrics {
     MutableRate loginSuccess;
     @Metric("Rate of failed kerberos logins and latency (milliseconds)")
     MutableRate loginFailure;
+    @Metric("Rate of group lookups by the group mapping provider and " +
+        "latency (milliseconds)")
+    MutableRate getGroups;
+    @Metric("Group lookups answered by the groups cache")
+    MutableCounterLong groupsCacheHits;
+    @Metric("Group lookups of users not in the groups cache")
+    MutableCounterLong groupsCacheMisses;
+    @Metric("Group lookups answered by an expired entry while it reloads")
+    MutableCounterLong groupsCacheStaleHits;
+    @Metric("Failed group lookups by the group mapping provider")
+    MutableCounterLong getGroupsFailures;
 
     static UgiMetrics create() {
       return DefaultMetricsSystem.instance().register(new UgiMetrics());
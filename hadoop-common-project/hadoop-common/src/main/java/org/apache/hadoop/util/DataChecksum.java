@@ -287,7 +287,7 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
           fileName, basePos);
       return;
     }
-    if (NativeCrc32.isAvailable()) {
+    if (NativeCrc32.isAvailable() && data.isDirect() && checksums.isDirect()) {
       NativeCrc32.verifyChunkedSums(bytesPerChecksum, type.id, checksums, data,
           fileName, basePos);
       return;
@@ -324,14 +324,33 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
   }
   
   /**
-   * Implementation of chunked verification specifically on byte arrays. This
-   * is to avoid the copy when dealing with ByteBuffers that have array backing.
+   * Verify that the given checksums match the given data, held in arrays.
+   * This is also used for ByteBuffers that have array backing, to avoid
+   * copying them. Where the native checksum code is loaded, all of the
+   * chunks are verified in a single native call.
+   *
+   * @param data the array holding the data to verify
+   * @param dataOff the offset of the data in the array
+   * @param dataLen the length of the data
+   * @param checksums the array holding the stored checksums, one for each
+   *                  chunk of the data
+   * @param checksumsOff the offset of the first checksum in the array
+   * @param fileName the name of the file being read, for error-reporting
+   * @param basePos the file position to which the start of 'data' corresponds
+   * @throws ChecksumException if the checksums do not match
    */
-  private void verifyChunkedSums(
+  public void verifyChunkedSums(
       byte[] data, int dataOff, int dataLen,
       byte[] checksums, int checksumsOff, String fileName,
       long basePos) throws ChecksumException {
-    
+    if (type.size == 0) return;
+
+    if (NativeCrc32.isAvailable()) {
+      NativeCrc32.verifyChunkedSumsByteArray(bytesPerChecksum, type.id,
+          checksums, checksumsOff, data, dataOff, dataLen, fileName, basePos);
+      return;
+    }
+
     int remaining = dataLen;
     int dataPos = 0;
     while (remaining > 0) {
@@ -376,6 +395,11 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
           checksums.array(), checksums.arrayOffset() + checksums.position());
       return;
     }
+    if (NativeCrc32.isAvailable() && data.isDirect() && checksums.isDirect()) {
+      NativeCrc32.calculateChunkedSums(bytesPerChecksum, type.id,
+          checksums, data);
+      return;
+    }
     
     data.mark();
     checksums.mark();
@@ -395,12 +419,28 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
   }
 
   /**
-   * Implementation of chunked calculation specifically on byte arrays. This
-   * is to avoid the copy when dealing with ByteBuffers that have array backing.
+   * Calculate checksums for the given data, held in an array. This is also
+   * used for ByteBuffers that have array backing, to avoid copying them.
+   * Where the native checksum code is loaded, all of the chunks are
+   * checksummed in a single native call.
+   *
+   * @param data the array holding the data to checksum
+   * @param dataOffset the offset of the data in the array
+   * @param dataLength the length of the data
+   * @param sums the array into which the checksums will be stored, one for
+   *             each chunk of the data
+   * @param sumsOffset the offset in 'sums' to store the first checksum at
    */
-  private void calculateChunkedSums(
+  public void calculateChunkedSums(
       byte[] data, int dataOffset, int dataLength,
       byte[] sums, int sumsOffset) {
+    if (type.size == 0) return;
+
+    if (NativeCrc32.isAvailable()) {
+      NativeCrc32.calculateChunkedSumsByteArray(bytesPerChecksum, type.id,
+          sums, sumsOffset, data, dataOffset, dataLength);
+      return;
+    }
 
     int remaining = dataLength;
     while (remaining > 0) {
@@ -25,6 +25,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.FastByteScans;
 import org.apache.hadoop.io.Text;
 
 /**
@@ -214,6 +215,14 @@ private int readDefaultLine(Text str, int maxLineLength, int maxBytesToConsume)
         }
       }
       for (; bufferPosn < bufferLength; ++bufferPosn) { //search for newline
+        if (!prevCharCR) {
+          // skip to the next CR or LF, a word at a time
+          bufferPosn =
+              FastByteScans.indexOfLineEnd(buffer, bufferPosn, bufferLength);
+          if (bufferPosn >= bufferLength) {
+            break;
+          }
+        }
         if (buffer[bufferPosn] == LF) {
           newlineLength = (prevCharCR) ? 2 : 1;
           ++bufferPosn; // at next invocation proceed from following byte
@@ -303,6 +312,14 @@ private int readCustomLine(Text str, int maxLineLength, int maxBytesToConsume)
         }
       }
       for (; bufferPosn < bufferLength; ++bufferPosn) {
+        if (delPosn == 0) {
+          // skip to the next first byte of the delimiter, a word at a time
+          bufferPosn = FastByteScans.indexOf(buffer, bufferPosn, bufferLength,
+              recordDelimiterBytes[0]);
+          if (bufferPosn >= bufferLength) {
+            break;
+          }
+        }
         if (buffer[bufferPosn] == recordDelimiterBytes[delPosn]) {
           delPosn++;
           if (delPosn >= recordDelimiterBytes.length) {
@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.util;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 import org.apache.hadoop.fs.ChecksumException;
@@ -54,17 +56,114 @@ public static boolean isAvailable() {
   public static void verifyChunkedSums(int bytesPerSum, int checksumType,
       ByteBuffer sums, ByteBuffer data, String fileName, long basePos)
       throws ChecksumException {
-    nativeVerifyChunkedSums(bytesPerSum, checksumType,
+    if (sums.remaining() < sumsLength(bytesPerSum, data.remaining())) {
+      throw new BufferUnderflowException();
+    }
+    nativeComputeChunkedSums(bytesPerSum, checksumType,
         sums, sums.position(),
         data, data.position(), data.remaining(),
-        fileName, basePos);
+        fileName, basePos, true);
   }
-  
-  private static native void nativeVerifyChunkedSums(
+
+  /**
+   * Calculate the checksums of the given buffer of data into the given
+   * buffer of checksums. The position, limit, and mark of either buffer are
+   * not modified.
+   *
+   * @param bytesPerSum the chunk size (eg 512 bytes)
+   * @param checksumType the DataChecksum type constant
+   * @param sums the DirectByteBuffer to store the checksums at, starting
+   *             at its position
+   * @param data the DirectByteBuffer holding the data to checksum between
+   *             its position and limit
+   */
+  public static void calculateChunkedSums(int bytesPerSum, int checksumType,
+      ByteBuffer sums, ByteBuffer data) {
+    if (sums.remaining() < sumsLength(bytesPerSum, data.remaining())) {
+      throw new BufferOverflowException();
+    }
+    nativeComputeChunkedSums(bytesPerSum, checksumType,
+        sums, sums.position(),
+        data, data.position(), data.remaining(),
+        null, 0, false);
+  }
+
+  /**
+   * Verify the given arrays of data and checksums, and throw an exception
+   * if any checksum is invalid.
+   *
+   * @see #verifyChunkedSums(int, int, ByteBuffer, ByteBuffer, String, long)
+   */
+  public static void verifyChunkedSumsByteArray(int bytesPerSum,
+      int checksumType, byte[] sums, int sumsOffset, byte[] data,
+      int dataOffset, int dataLength, String fileName, long basePos)
+      throws ChecksumException {
+    checkArrayBounds(bytesPerSum, sums, sumsOffset, data, dataOffset,
+        dataLength);
+    nativeComputeChunkedSumsByteArray(bytesPerSum, checksumType,
+        sums, sumsOffset,
+        data, dataOffset, dataLength,
+        fileName, basePos, true);
+  }
+
+  /**
+   * Calculate the checksums of the given array of data into the given
+   * array of checksums.
+   *
+   * @see #calculateChunkedSums(int, int, ByteBuffer, ByteBuffer)
+   */
+  public static void calculateChunkedSumsByteArray(int bytesPerSum,
+      int checksumType, byte[] sums, int sumsOffset, byte[] data,
+      int dataOffset, int dataLength) {
+    checkArrayBounds(bytesPerSum, sums, sumsOffset, data, dataOffset,
+        dataLength);
+    nativeComputeChunkedSumsByteArray(bytesPerSum, checksumType,
+        sums, sumsOffset,
+        data, dataOffset, dataLength,
+        null, 0, false);
+  }
+
+  /**
+   * @return the number of bytes of checksums for the given length of data
+   */
+  private static long sumsLength(int bytesPerSum, int dataLength) {
+    return ((long)dataLength + bytesPerSum - 1) / bytesPerSum * 4;
+  }
+
+  /**
+   * The native code reads and writes the arrays directly, so check the
+   * offsets and lengths here, where going out of bounds still just throws.
+   */
+  private static void checkArrayBounds(int bytesPerSum, byte[] sums,
+      int sumsOffset, byte[] data, int dataOffset, int dataLength) {
+    if (bytesPerSum <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid bytesPerSum: " + bytesPerSum);
+    }
+    if (dataOffset < 0 || dataLength < 0 ||
+        (long)dataOffset + dataLength > data.length) {
+      throw new ArrayIndexOutOfBoundsException("Data range " + dataOffset +
+          "+" + dataLength + " is outside an array of " + data.length);
+    }
+    if (sumsOffset < 0 ||
+        sumsOffset + sumsLength(bytesPerSum, dataLength) > sums.length) {
+      throw new ArrayIndexOutOfBoundsException("Checksums of " + dataLength +
+          " bytes at offset " + sumsOffset + " do not fit in an array of " +
+          sums.length);
+    }
+  }
+
+  private static native void nativeComputeChunkedSums(
       int bytesPerSum, int checksumType,
       ByteBuffer sums, int sumsOffset,
       ByteBuffer data, int dataOffset, int dataLength,
-      String fileName, long basePos);
+      String fileName, long basePos, boolean verify);
+
+  private static native void nativeComputeChunkedSumsByteArray(
+      int bytesPerSum, int checksumType,
+      byte[] sums, int sumsOffset,
+      byte[] data, int dataOffset, int dataLength,
+      String fileName, long basePos, boolean verify);
 
   // Copy the constants over from DataChecksum so that javah will pick them up
   // and make them available in the native code header.
@@ -21,6 +21,7 @@
 import org.apache.hadoop.util.NativeCodeLoader;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Factory;
 import org.apache.hadoop.io.compress.zlib.ZlibFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -54,20 +55,23 @@ public static void main(String[] args) {
     boolean nativeHadoopLoaded = NativeCodeLoader.isNativeCodeLoaded();
     boolean zlibLoaded = false;
     boolean snappyLoaded = false;
+    boolean bzip2Loaded = false;
     // lz4 is linked within libhadoop
     boolean lz4Loaded = nativeHadoopLoaded;
     if (nativeHadoopLoaded) {
       zlibLoaded = ZlibFactory.isNativeZlibLoaded(new Configuration());
       snappyLoaded = NativeCodeLoader.buildSupportsSnappy() &&
           SnappyCodec.isNativeCodeLoaded();
+      bzip2Loaded = Bzip2Factory.isNativeBzip2Loaded(new Configuration());
     }
     System.out.println("Native library checking:");
     System.out.printf("hadoop: %b\n", nativeHadoopLoaded);
     System.out.printf("zlib:   %b\n", zlibLoaded);
     System.out.printf("snappy: %b\n", snappyLoaded);
     System.out.printf("lz4:    %b\n", lz4Loaded);
+    System.out.printf("bzip2:  %b\n", bzip2Loaded);
     if ((!nativeHadoopLoaded) ||
-        (checkAll && !(zlibLoaded && snappyLoaded && lz4Loaded))) {
+        (checkAll && !(zlibLoaded && snappyLoaded && lz4Loaded && bzip2Loaded))) {
       // return 1 to indicated check failed
       ExitUtil.terminate(1);
     }
@@ -96,3 +96,24 @@ JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_lz4_Lz4Compressor_comp
   return (jint)compressed_direct_buf_len;
 }
 
+JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_lz4_Lz4Compressor_compressDirectBuf
+(JNIEnv *env, jclass clazz, jobject src, jint src_off, jint src_len,
+ jobject dst, jint dst_off, jint dst_len){
+  // The caller's buffers are compressed in place, with no copying. The
+  // caller has checked that dst has room for the worst case.
+  const char* src_bytes = (const char*)(*env)->GetDirectBufferAddress(env, src);
+  char* dst_bytes = (char *)(*env)->GetDirectBufferAddress(env, dst);
+
+  if (src_bytes == 0 || dst_bytes == 0) {
+    THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct.");
+    return (jint)0;
+  }
+
+  int compressed_len = LZ4_compress(src_bytes + src_off, dst_bytes + dst_off, src_len);
+  if (compressed_len < 0 || compressed_len > dst_len){
+    THROW(env, "java/lang/InternalError", "LZ4_compress failed");
+    return (jint)0;
+  }
+  return (jint)compressed_len;
+}
+
@@ -92,3 +92,24 @@ JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_lz4_Lz4Decompressor_de
 
   return (jint)uncompressed_direct_buf_len;
 }
+
+JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_lz4_Lz4Decompressor_decompressDirectBuf
+(JNIEnv *env, jclass clazz, jobject src, jint src_off, jint src_len,
+ jobject dst, jint dst_off, jint dst_len){
+  // The caller's buffers are decompressed in place, with no copying
+  const char* src_bytes = (const char*)(*env)->GetDirectBufferAddress(env, src);
+  char* dst_bytes = (char *)(*env)->GetDirectBufferAddress(env, dst);
+
+  if (src_bytes == 0 || dst_bytes == 0) {
+    THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct.");
+    return (jint)0;
+  }
+
+  int uncompressed_len = LZ4_uncompress_unknownOutputSize(src_bytes + src_off,
+      dst_bytes + dst_off, src_len, dst_len);
+  if (uncompressed_len < 0) {
+    THROW(env, "java/io/IOException", "Could not decompress data. Input is invalid or the buffer length is too small.");
+    return (jint)0;
+  }
+  return (jint)uncompressed_len;
+}
@@ -593,7 +593,9 @@ int LZ4_uncompress_unknownOutputSize(
 		cpy = op+length;
 		if (cpy>oend-COPYLENGTH) 
 		{ 
-			if (cpy > oend) goto _output_error;
+			// The last literals must end the input; anything else means
+			// the output buffer is too small.
+			if ((cpy > oend) || (ip + length != iend)) goto _output_error;
 			memcpy(op, ip, length);
 			op += length;
 			break;    // Necessarily EOF
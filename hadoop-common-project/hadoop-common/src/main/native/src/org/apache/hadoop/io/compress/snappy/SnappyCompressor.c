@@ -109,3 +109,30 @@ JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_snappy_SnappyCompresso
   (*env)->SetIntField(env, thisj, SnappyCompressor_uncompressedDirectBufLen, 0);
   return (jint)buf_len;
 }
+
+JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_snappy_SnappyCompressor_compressDirectBuf
+(JNIEnv *env, jclass clazz, jobject src, jint src_off, jint src_len,
+ jobject dst, jint dst_off, jint dst_len){
+  // The caller's buffers are compressed in place, with no copying
+  const char* src_bytes = (const char*)(*env)->GetDirectBufferAddress(env, src);
+  char* dst_bytes = (char *)(*env)->GetDirectBufferAddress(env, dst);
+  size_t buf_len;
+
+  if (src_bytes == 0 || dst_bytes == 0) {
+    THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct.");
+    return 0;
+  }
+
+  buf_len = (size_t)dst_len;
+  snappy_status ret = dlsym_snappy_compress(src_bytes + src_off, src_len,
+        dst_bytes + dst_off, &buf_len);
+  if (ret != SNAPPY_OK){
+    THROW(env, "java/lang/InternalError", "Could not compress data. Buffer length is too small.");
+    return 0;
+  }
+  if (buf_len > JINT_MAX) {
+    THROW(env, "java/lang/InternalError", "Invalid return buffer length.");
+    return 0;
+  }
+  return (jint)buf_len;
+}
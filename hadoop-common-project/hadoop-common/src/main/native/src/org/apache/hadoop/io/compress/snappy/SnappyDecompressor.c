@@ -103,3 +103,28 @@ JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_snappy_SnappyDecompres
 
   return (jint)uncompressed_direct_buf_len;
 }
+
+JNIEXPORT jint JNICALL Java_org_apache_hadoop_io_compress_snappy_SnappyDecompressor_decompressDirectBuf
+(JNIEnv *env, jclass clazz, jobject src, jint src_off, jint src_len,
+ jobject dst, jint dst_off, jint dst_len){
+  // The caller's buffers are decompressed in place, with no copying
+  const char* src_bytes = (const char*)(*env)->GetDirectBufferAddress(env, src);
+  char* dst_bytes = (char *)(*env)->GetDirectBufferAddress(env, dst);
+  size_t buf_len = (size_t)dst_len;
+
+  if (src_bytes == 0 || dst_bytes == 0) {
+    THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct.");
+    return 0;
+  }
+
+  snappy_status ret = dlsym_snappy_uncompress(src_bytes + src_off, src_len,
+        dst_bytes + dst_off, &buf_len);
+  if (ret == SNAPPY_BUFFER_TOO_SMALL){
+    THROW(env, "java/io/IOException", "Could not decompress data. Buffer length is too small.");
+  } else if (ret == SNAPPY_INVALID_INPUT){
+    THROW(env, "java/io/IOException", "Could not decompress data. Input is invalid.");
+  } else if (ret != SNAPPY_OK){
+    THROW(env, "java/io/IOException", "Could not decompress data.");
+  }
+  return (jint)buf_len;
+}
@@ -276,6 +276,37 @@ Java_org_apache_hadoop_io_compress_zlib_ZlibCompressor_end(
     }
 }
 
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zlib_ZlibCompressor_deflateDirectBuf(
+	JNIEnv *env, jclass class, jlong stream,
+	jobject src, jint src_off, jint src_len,
+	jobject dst, jint dst_off, jint dst_len
+	) {
+	// The caller's buffers are compressed in place, with no copying
+	Bytef* src_bytes = (*env)->GetDirectBufferAddress(env, src);
+	Bytef* dst_bytes = (*env)->GetDirectBufferAddress(env, dst);
+	if (!src_bytes || !dst_bytes) {
+		THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct");
+		return (jint)0;
+	}
+
+	z_stream *strm = ZSTREAM(stream);
+	strm->next_in = src_bytes + src_off;
+	strm->avail_in = src_len;
+	strm->next_out = dst_bytes + dst_off;
+	strm->avail_out = dst_len;
+
+	// The caller has checked that dst has room for the whole stream, so
+	// one call compresses it all.
+	int rv = dlsym_deflate(strm, Z_FINISH);
+	if (rv != Z_STREAM_END) {
+		THROW(env, "java/lang/InternalError",
+			rv == Z_OK || rv == Z_BUF_ERROR ? "Buffer length is too small." : strm->msg);
+		return (jint)0;
+	}
+	return (jint)(dst_len - strm->avail_out);
+}
+
 /**
  * vim: sw=2: ts=2: et:
  */
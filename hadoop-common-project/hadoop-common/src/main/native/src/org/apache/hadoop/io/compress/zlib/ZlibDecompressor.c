@@ -296,6 +296,63 @@ Java_org_apache_hadoop_io_compress_zlib_ZlibDecompressor_end(
     }
 }
 
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zlib_ZlibDecompressor_inflateDirectBuf(
+	JNIEnv *env, jclass class, jlong stream,
+	jobject src, jint src_off, jint src_len,
+	jobject dst, jint dst_off, jint dst_len
+	) {
+	// The caller's buffers are decompressed in place, with no copying
+	Bytef* src_bytes = (*env)->GetDirectBufferAddress(env, src);
+	Bytef* dst_bytes = (*env)->GetDirectBufferAddress(env, dst);
+	if (!src_bytes || !dst_bytes) {
+		THROW(env, "java/lang/IllegalArgumentException", "Buffers must be direct");
+		return (jint)0;
+	}
+
+	z_stream *strm = ZSTREAM(stream);
+	strm->next_in = src_bytes + src_off;
+	strm->avail_in = src_len;
+	strm->next_out = dst_bytes + dst_off;
+	strm->avail_out = dst_len;
+
+	// Decompress the whole stream; any input after its end is left in
+	// avail_in for the caller.
+	int rv = dlsym_inflate(strm, Z_FINISH);
+	switch (rv) {
+		case Z_STREAM_END:
+		break;
+		case Z_OK:
+		case Z_BUF_ERROR:
+		{
+		    THROW(env, "java/io/IOException", strm->avail_out == 0
+		    			? "Buffer length is too small." : "Truncated input.");
+		}
+		break;
+		case Z_NEED_DICT:
+		{
+		    THROW(env, "java/io/IOException", "A preset dictionary is needed.");
+		}
+		break;
+		case Z_DATA_ERROR:
+		{
+		    THROW(env, "java/io/IOException", strm->msg);
+		}
+		break;
+		case Z_MEM_ERROR:
+		{
+		    THROW(env, "java/lang/OutOfMemoryError", NULL);
+		}
+		break;
+		default:
+		{
+		    THROW(env, "java/lang/InternalError", strm->msg);
+		}
+		break;
+	}
+	return (jint)(dst_len - strm->avail_out);
+}
+
 /**
  * vim: sw=2: ts=2: et:
  */
@@ -96,12 +96,86 @@ static int convert_java_crc_type(JNIEnv *env, jint crc_type) {
   }
 }
 
-JNIEXPORT void JNICALL Java_org_apache_hadoop_util_NativeCrc32_nativeVerifyChunkedSums
+/**
+ * Calculate or verify the checksums of the data, and throw a
+ * ChecksumException for the first bad checksum.
+ */
+static void compute_chunked_sums(JNIEnv *env,
+    jint bytes_per_checksum, jint j_crc_type,
+    uint32_t *sums, uint8_t *data, jint data_len,
+    jstring j_filename, jlong base_pos, jboolean verify)
+{
+  // Convert to correct internal C constant for CRC type
+  int crc_type = convert_java_crc_type(env, j_crc_type);
+  if (crc_type == -1) return; // exception already thrown
+
+  if (!verify) {
+    if (unlikely(bulk_calculate_crc(data, data_len, sums, crc_type,
+                                    bytes_per_checksum) != 0)) {
+      THROW(env, "java/lang/AssertionError",
+        "Bad response code from native bulk_calculate_crc");
+    }
+    return;
+  }
+
+  crc32_error_t error_data;
+  int ret = bulk_verify_crc(data, data_len, sums, crc_type,
+                            bytes_per_checksum, &error_data);
+  if (likely(ret == CHECKSUMS_VALID)) {
+    return;
+  } else if (unlikely(ret == INVALID_CHECKSUM_DETECTED)) {
+    long pos = base_pos + (error_data.bad_data - data);
+    throw_checksum_exception(
+      env, error_data.got_crc, error_data.expected_crc,
+      j_filename, pos);
+  } else {
+    THROW(env, "java/lang/AssertionError",
+      "Bad response code from native bulk_verify_crc");
+  }
+}
+
+static int check_chunked_sums_args(JNIEnv *env,
+    jint bytes_per_checksum, jint sums_offset,
+    jint data_offset, jint data_len)
+{
+  if (unlikely(sums_offset < 0 || data_offset < 0 || data_len < 0)) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "bad offsets or lengths");
+    return 0;
+  }
+  if (unlikely(bytes_per_checksum <= 0)) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "invalid bytes_per_checksum");
+    return 0;
+  }
+  return 1;
+}
+
+/**
+ * Check that the data, and the checksums of all of its chunks, lie within
+ * their buffers or arrays, since nothing else stops the native code from
+ * reading or writing beyond them.
+ */
+static int check_chunked_sums_bounds(JNIEnv *env, const char *exc_class,
+    jint bytes_per_checksum, jlong sums_capacity, jint sums_offset,
+    jlong data_capacity, jint data_offset, jint data_len)
+{
+  jlong num_chunks =
+    ((jlong)data_len + bytes_per_checksum - 1) / bytes_per_checksum;
+  if (unlikely((jlong)data_offset + data_len > data_capacity ||
+               (jlong)sums_offset + num_chunks * 4 > sums_capacity)) {
+    THROW(env, exc_class, "offsets or lengths out of bounds");
+    return 0;
+  }
+  return 1;
+}
+
+JNIEXPORT void JNICALL Java_org_apache_hadoop_util_NativeCrc32_nativeComputeChunkedSums
   (JNIEnv *env, jclass clazz,
     jint bytes_per_checksum, jint j_crc_type,
     jobject j_sums, jint sums_offset,
     jobject j_data, jint data_offset, jint data_len,
-    jstring j_filename, jlong base_pos)
+    jstring j_filename, jlong base_pos, jboolean verify)
 {
   if (unlikely(!j_sums || !j_data)) {
     THROW(env, "java/lang/NullPointerException",
@@ -118,38 +192,99 @@ JNIEXPORT void JNICALL Java_org_apache_hadoop_util_NativeCrc32_nativeVerifyChunk
       "input ByteBuffers must be direct buffers");
     return;
   }
-  if (unlikely(sums_offset < 0 || data_offset < 0 || data_len < 0)) {
-    THROW(env, "java/lang/IllegalArgumentException",
-      "bad offsets or lengths");
+  if (!check_chunked_sums_args(env, bytes_per_checksum, sums_offset,
+                               data_offset, data_len)) {
     return;
   }
-  if (unlikely(bytes_per_checksum) <= 0) {
-    THROW(env, "java/lang/IllegalArgumentException",
-      "invalid bytes_per_checksum");
+  if (!check_chunked_sums_bounds(env, "java/lang/IndexOutOfBoundsException",
+        bytes_per_checksum,
+        (*env)->GetDirectBufferCapacity(env, j_sums), sums_offset,
+        (*env)->GetDirectBufferCapacity(env, j_data), data_offset, data_len)) {
     return;
   }
 
-  uint32_t *sums = (uint32_t *)(sums_addr + sums_offset);
-  uint8_t *data = data_addr + data_offset;
+  compute_chunked_sums(env, bytes_per_checksum, j_crc_type,
+    (uint32_t *)(sums_addr + sums_offset), data_addr + data_offset, data_len,
+    j_filename, base_pos, verify);
+}
 
-  // Convert to correct internal C constant for CRC type
-  int crc_type = convert_java_crc_type(env, j_crc_type);
-  if (crc_type == -1) return; // exception already thrown
+JNIEXPORT void JNICALL Java_org_apache_hadoop_util_NativeCrc32_nativeComputeChunkedSumsByteArray
+  (JNIEnv *env, jclass clazz,
+    jint bytes_per_checksum, jint j_crc_type,
+    jbyteArray j_sums, jint sums_offset,
+    jbyteArray j_data, jint data_offset, jint data_len,
+    jstring j_filename, jlong base_pos, jboolean verify)
+{
+  if (unlikely(!j_sums || !j_data)) {
+    THROW(env, "java/lang/NullPointerException",
+      "input byte arrays must not be null");
+    return;
+  }
+  if (!check_chunked_sums_args(env, bytes_per_checksum, sums_offset,
+                               data_offset, data_len)) {
+    return;
+  }
+  if (!check_chunked_sums_bounds(env,
+        "java/lang/ArrayIndexOutOfBoundsException", bytes_per_checksum,
+        (*env)->GetArrayLength(env, j_sums), sums_offset,
+        (*env)->GetArrayLength(env, j_data), data_offset, data_len)) {
+    return;
+  }
+
+  // Pin the arrays rather than copying them. No JNI calls may be made
+  // until they are released, so any exception is thrown afterwards.
+  uint8_t *sums_addr = (*env)->GetPrimitiveArrayCritical(env, j_sums, NULL);
+  if (unlikely(!sums_addr)) {
+    return; // OOME already thrown
+  }
+  uint8_t *data_addr = (*env)->GetPrimitiveArrayCritical(env, j_data, NULL);
+  if (unlikely(!data_addr)) {
+    (*env)->ReleasePrimitiveArrayCritical(env, j_sums, sums_addr, 0);
+    return; // OOME already thrown
+  }
+
+  int crc_type = -1;
+  switch (j_crc_type) {
+    case org_apache_hadoop_util_NativeCrc32_CHECKSUM_CRC32:
+      crc_type = CRC32_ZLIB_POLYNOMIAL;
+      break;
+    case org_apache_hadoop_util_NativeCrc32_CHECKSUM_CRC32C:
+      crc_type = CRC32C_POLYNOMIAL;
+      break;
+  }
 
-  // Setup complete. Actually verify checksums.
+  uint8_t *data = data_addr + data_offset;
   crc32_error_t error_data;
-  int ret = bulk_verify_crc(data, data_len, sums, crc_type,
-                            bytes_per_checksum, &error_data);
+  int ret = INVALID_CHECKSUM_TYPE;
+  if (crc_type != -1) {
+    if (verify) {
+      ret = bulk_verify_crc(data, data_len,
+        (uint32_t *)(sums_addr + sums_offset), crc_type,
+        bytes_per_checksum, &error_data);
+    } else {
+      ret = bulk_calculate_crc(data, data_len,
+        (uint32_t *)(sums_addr + sums_offset), crc_type,
+        bytes_per_checksum);
+    }
+  }
+
+  (*env)->ReleasePrimitiveArrayCritical(env, j_data, data_addr, JNI_ABORT);
+  (*env)->ReleasePrimitiveArrayCritical(env, j_sums, sums_addr,
+    verify ? JNI_ABORT : 0);
+
   if (likely(ret == CHECKSUMS_VALID)) {
     return;
-  } else if (unlikely(ret == INVALID_CHECKSUM_DETECTED)) {
+  } else if (crc_type == -1) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "Invalid checksum type");
+  } else if (ret == INVALID_CHECKSUM_DETECTED) {
     long pos = base_pos + (error_data.bad_data - data);
     throw_checksum_exception(
       env, error_data.got_crc, error_data.expected_crc,
       j_filename, pos);
   } else {
     THROW(env, "java/lang/AssertionError",
-      "Bad response code from native bulk_verify_crc");
+      "Bad response code from native bulk checksum");
   }
 }
 
@@ -49,39 +49,52 @@ static void pipelined_crc32c(uint32_t *crc1, uint32_t *crc2, uint32_t *crc3, con
 static int cached_cpu_supports_crc32; // initialized by constructor below
 static uint32_t crc32c_hardware(uint32_t crc, const uint8_t* data, size_t length);
 
+static int bulk_crc(const uint8_t *data, size_t data_len,
+                    uint32_t *sums, int checksum_type,
+                    int bytes_per_checksum, int verify,
+                    crc32_error_t *error_info);
+
 int bulk_calculate_crc(const uint8_t *data, size_t data_len,
                     uint32_t *sums, int checksum_type,
                     int bytes_per_checksum) {
-  uint32_t crc;
-  crc_update_func_t crc_update_func;
-
-  switch (checksum_type) {
-    case CRC32_ZLIB_POLYNOMIAL:
-      crc_update_func = crc32_zlib_sb8;
-      break;
-    case CRC32C_POLYNOMIAL:
-      crc_update_func = crc32c_sb8;
-      break;
-    default:
-      return -EINVAL;
-      break;
-  }
-  while (likely(data_len > 0)) {
-    int len = likely(data_len >= bytes_per_checksum) ? bytes_per_checksum : data_len;
-    crc = CRC_INITIAL_VAL;
-    crc = crc_update_func(crc, data, len);
-    *sums = ntohl(crc_val(crc));
-    data += len;
-    data_len -= len;
-    sums++;
-  }
-  return 0;
+  int ret = bulk_crc(data, data_len, sums, checksum_type,
+                     bytes_per_checksum, 0, NULL);
+  return ret == INVALID_CHECKSUM_TYPE ? -EINVAL : ret;
 }
 
 int bulk_verify_crc(const uint8_t *data, size_t data_len,
                     const uint32_t *sums, int checksum_type,
                     int bytes_per_checksum,
                     crc32_error_t *error_info) {
+  // The sums are only written to when calculating.
+  return bulk_crc(data, data_len, (uint32_t *)sums, checksum_type,
+                  bytes_per_checksum, 1, error_info);
+}
+
+/**
+ * Store the checksum of the current chunk, or compare it with the stored
+ * one when verifying, and move on to the next checksum.
+ */
+#define STORE_OR_VERIFY_CRC(crc_value) \
+  do { \
+    crc = ntohl(crc_val(crc_value)); \
+    if (verify) { \
+      if (unlikely(crc != *sums)) \
+        goto return_crc_error; \
+    } else { \
+      *sums = crc; \
+    } \
+    sums++; \
+  } while (0)
+
+/**
+ * Calculate or verify the checksums of a buffer of data. Both use the same
+ * hardware-accelerated path where the CPU supports it.
+ */
+static int bulk_crc(const uint8_t *data, size_t data_len,
+                    uint32_t *sums, int checksum_type,
+                    int bytes_per_checksum, int verify,
+                    crc32_error_t *error_info) {
 
 #ifdef USE_PIPELINED
   uint32_t crc1, crc2, crc3;
@@ -116,18 +129,11 @@ int bulk_verify_crc(const uint8_t *data, size_t data_len,
       crc1 = crc2 = crc3 = CRC_INITIAL_VAL;
       pipelined_crc32c(&crc1, &crc2, &crc3, data, bytes_per_checksum, 3);
 
-      crc = ntohl(crc_val(crc1));
-      if ((crc = ntohl(crc_val(crc1))) != *sums)
-        goto return_crc_error;
-      sums++;
+      STORE_OR_VERIFY_CRC(crc1);
       data += bytes_per_checksum;
-      if ((crc = ntohl(crc_val(crc2))) != *sums)
-        goto return_crc_error;
-      sums++;
+      STORE_OR_VERIFY_CRC(crc2);
       data += bytes_per_checksum;
-      if ((crc = ntohl(crc_val(crc3))) != *sums)
-        goto return_crc_error;
-      sums++;
+      STORE_OR_VERIFY_CRC(crc3);
       data += bytes_per_checksum;
       n_blocks -= 3;
     }
@@ -137,14 +143,10 @@ int bulk_verify_crc(const uint8_t *data, size_t data_len,
       crc1 = crc2 = crc3 = CRC_INITIAL_VAL;
       pipelined_crc32c(&crc1, &crc2, &crc3, data, bytes_per_checksum, n_blocks);
 
-      if ((crc = ntohl(crc_val(crc1))) != *sums)
-        goto return_crc_error;
+      STORE_OR_VERIFY_CRC(crc1);
       data += bytes_per_checksum;
-      sums++;
       if (n_blocks == 2) {
-        if ((crc = ntohl(crc_val(crc2))) != *sums)
-          goto return_crc_error;
-        sums++;
+        STORE_OR_VERIFY_CRC(crc2);
         data += bytes_per_checksum;
       }
     }
@@ -154,8 +156,7 @@ int bulk_verify_crc(const uint8_t *data, size_t data_len,
       crc1 = crc2 = crc3 = CRC_INITIAL_VAL;
       pipelined_crc32c(&crc1, &crc2, &crc3, data, remainder, 1);
 
-      if ((crc = ntohl(crc_val(crc1))) != *sums)
-        goto return_crc_error;
+      STORE_OR_VERIFY_CRC(crc1);
     }
     return CHECKSUMS_VALID;
   }
@@ -165,13 +166,9 @@ int bulk_verify_crc(const uint8_t *data, size_t data_len,
     int len = likely(data_len >= bytes_per_checksum) ? bytes_per_checksum : data_len;
     crc = CRC_INITIAL_VAL;
     crc = crc_update_func(crc, data, len);
-    crc = ntohl(crc_val(crc));
-    if (unlikely(crc != *sums)) {
-      goto return_crc_error;
-    }
+    STORE_OR_VERIFY_CRC(crc);
     data += len;
     data_len -= len;
-    sums++;
   }
   return CHECKSUMS_VALID;
 
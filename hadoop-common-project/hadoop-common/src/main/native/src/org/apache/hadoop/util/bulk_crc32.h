@@ -67,8 +67,8 @@ extern int bulk_verify_crc(const uint8_t *data, size_t data_len,
  * The checksums are each 32 bits and are stored in sequential indexes of the
  * 'sums' array.
  *
- * This function is not (yet) optimized.  It is provided for testing purposes
- * only.
+ * This uses the same hardware-accelerated code as bulk_verify_crc where
+ * the CPU supports it.
  *
  * @param data                  The data to checksum
  * @param dataLen               Length of the data buffer
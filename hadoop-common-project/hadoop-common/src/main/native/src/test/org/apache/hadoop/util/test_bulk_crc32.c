@@ -18,9 +18,11 @@
 
 #include "bulk_crc32.h"
 
+#include <arpa/inet.h>
 #include <stdint.h>
 #include <stdio.h>
 #include <stdlib.h>
+#include <string.h>
 
 #define EXPECT_ZERO(x) \
     do { \
@@ -55,8 +57,30 @@ static int testBulkVerifyCrc(int dataLen, int crcType, int bytesPerChecksum)
   return 0;
 }
 
+static int testKnownCrc(int crcType, uint32_t expected)
+{
+  const char *data = "123456789";
+  int dataLen = strlen(data);
+  uint32_t sums[3];
+
+  /* The same chunk three times over, to go through the pipelined path. */
+  uint8_t buf[27];
+  memcpy(buf, data, dataLen);
+  memcpy(buf + dataLen, data, dataLen);
+  memcpy(buf + 2 * dataLen, data, dataLen);
+  EXPECT_ZERO(bulk_calculate_crc(buf, sizeof(buf), sums, crcType, dataLen));
+  EXPECT_ZERO(ntohl(sums[0]) != expected);
+  EXPECT_ZERO(ntohl(sums[1]) != expected);
+  EXPECT_ZERO(ntohl(sums[2]) != expected);
+  return 0;
+}
+
 int main(int argc, char **argv)
 {
+  /* Check the calculated checksums against the well-known values. */
+  EXPECT_ZERO(testKnownCrc(CRC32C_POLYNOMIAL, 0xe3069283));
+  EXPECT_ZERO(testKnownCrc(CRC32_ZLIB_POLYNOMIAL, 0xcbf43926));
+
   /* Test running bulk_calculate_crc with some different algorithms and
    * bytePerChecksum values. */
   EXPECT_ZERO(testBulkVerifyCrc(4096, CRC32C_POLYNOMIAL, 512));
@@ -21,6 +21,7 @@
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -332,6 +333,72 @@ public void testWriteXml() throws IOException {
     assertTrue("Result has proper footer", result.endsWith("</configuration>"));
   }
   
+  public void testWriteBinary() throws IOException {
+    out=new BufferedWriter(new FileWriter(CONFIG));
+    startConfig();
+    appendProperty("my.final", "fixed", true);
+    appendProperty("my.var", "${my.final}/var", false, "my-source");
+    endConfig();
+    Configuration conf = new Configuration();
+    conf.addResource(new Path(CONFIG));
+    conf.set("my.set", "\u00e9t\u00e9");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    conf.writeBinary(baos);
+
+    // Loading the binary resource alone gives the same configuration,
+    // including the defaults
+    Configuration copy = new Configuration(false);
+    copy.addResource(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(conf.size(), copy.size());
+    for (Map.Entry<String, String> entry : conf) {
+      assertEquals(entry.getKey(), entry.getValue(),
+          copy.getRaw(entry.getKey()));
+    }
+    assertEquals("fixed/var", copy.get("my.var"));
+    assertEquals("\u00e9t\u00e9", copy.get("my.set"));
+    String[] sources = copy.getPropertySources("my.var");
+    assertEquals("my-source", sources[0]);
+
+    // Final parameters stay final, and binary files are loaded as paths too
+    FileOutputStream fos = new FileOutputStream(CONFIG2);
+    fos.write(baos.toByteArray());
+    fos.close();
+    out=new BufferedWriter(new FileWriter(CONFIG));
+    startConfig();
+    appendProperty("my.final", "changed");
+    appendProperty("my.set", "changed");
+    endConfig();
+    copy = new Configuration(false);
+    copy.addResource(new Path(CONFIG2));
+    copy.addResource(new Path(CONFIG));
+    assertEquals("fixed", copy.get("my.final"));
+    assertEquals("changed", copy.get("my.set"));
+  }
+
+  public void testResourceClosedOnReadError() {
+    final boolean[] closed = new boolean[1];
+    InputStream in = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("injected");
+      }
+
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    Configuration conf = new Configuration(false);
+    conf.addResource(in);
+    try {
+      conf.get("my.var");
+      fail("Expected the read error");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertTrue("Stream not closed", closed[0]);
+  }
+
   public void testIncludes() throws Exception {
     tearDown();
     System.out.println("XXX testIncludes");
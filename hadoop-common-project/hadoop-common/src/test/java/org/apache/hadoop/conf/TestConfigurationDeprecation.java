@@ -23,6 +23,8 @@
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -254,6 +256,30 @@ public void testDeprecationForFinalParameters() throws IOException {
     assertNull(conf.get("J"));
   }
 
+  @Test
+  public void testWriteBinaryWithDeprecatedKeys() throws IOException {
+    // Keys set before they were deprecated keep their own values; the
+    // replacing key's value is the one in effect
+    conf.set("binary.old-key", "stale");
+    conf.set("binary.new-key", "fresh");
+    conf.set("binary.lone-old-key", "lone");
+    Configuration.addDeprecation("binary.old-key",
+        new String[]{"binary.new-key"});
+    Configuration.addDeprecation("binary.lone-old-key",
+        new String[]{"binary.lone-new-key"});
+    assertEquals("fresh", conf.get("binary.old-key"));
+    assertEquals("fresh", conf.get("binary.new-key"));
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    conf.writeBinary(baos);
+    Configuration copy = new Configuration(false);
+    copy.addResource(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals("fresh", copy.get("binary.new-key"));
+    assertEquals("fresh", copy.get("binary.old-key"));
+    assertEquals("lone", copy.get("binary.lone-old-key"));
+    assertEquals("lone", copy.get("binary.lone-new-key"));
+  }
+
   @Test
   public void testSetBeforeAndGetAfterDeprecation() {
     Configuration conf = new Configuration();
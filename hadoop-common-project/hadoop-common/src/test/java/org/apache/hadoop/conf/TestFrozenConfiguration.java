@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.conf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFrozenConfiguration {
+  private Configuration conf;
+
+  static {
+    Configuration.addDeprecation("test.frozen.old", "test.frozen.new");
+  }
+
+  @Before
+  public void setUp() {
+    conf = new Configuration(false);
+    conf.set("test.frozen.dir", "/tmp");
+    conf.set("test.frozen.path", "${test.frozen.dir}/frozen");
+    conf.set("test.frozen.int", " 0x10 ");
+    conf.set("test.frozen.long", "-12345678901");
+    conf.set("test.frozen.float", "0.5");
+    conf.set("test.frozen.bool", "TRUE");
+    conf.set("test.frozen.notbool", "maybe");
+    conf.set("test.frozen.old", "deprecated");
+  }
+
+  @Test
+  public void testSameValues() {
+    FrozenConfiguration frozen = conf.freeze();
+    for (Map.Entry<String, String> entry : conf) {
+      assertEquals(entry.getKey(), conf.get(entry.getKey()),
+          frozen.get(entry.getKey()));
+    }
+    assertEquals(conf.size(), frozen.size());
+    assertEquals("/tmp/frozen", frozen.get("test.frozen.path"));
+    assertEquals("/tmp/x",
+        frozen.get("test.frozen.unset", "${test.frozen.dir}/x"));
+    assertEquals("x", frozen.get("test.frozen.unset", "x"));
+    assertNull(frozen.get("test.frozen.unset"));
+
+    // Deprecated keys map to their replacement
+    assertEquals("deprecated", frozen.get("test.frozen.old"));
+    assertEquals("deprecated", frozen.get("test.frozen.new"));
+  }
+
+  @Test
+  public void testTypedValues() {
+    FrozenConfiguration frozen = conf.freeze();
+    for (int i = 0; i < 2; i++) {
+      // The second time round, the values come from the cache
+      assertEquals(16, frozen.getInt("test.frozen.int", 0));
+      assertEquals(16L, frozen.getLong("test.frozen.int", 0));
+      assertEquals(-12345678901L, frozen.getLong("test.frozen.long", 0));
+      assertEquals(0.5f, frozen.getFloat("test.frozen.float", 0), 0);
+      assertEquals(0.5, frozen.getDouble("test.frozen.float", 0), 0);
+      assertTrue(frozen.getBoolean("test.frozen.bool", false));
+      assertTrue(frozen.getBoolean("test.frozen.notbool", true));
+      assertFalse(frozen.getBoolean("test.frozen.notbool", false));
+      assertEquals(7, frozen.getInt("test.frozen.unset", 7));
+      assertTrue(frozen.getBoolean("test.frozen.unset", true));
+    }
+    try {
+      frozen.getInt("test.frozen.float", 0);
+      fail("Parsed a float as an int");
+    } catch (NumberFormatException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testImmutable() {
+    FrozenConfiguration frozen = conf.freeze();
+    assertSame(frozen, frozen.freeze());
+    try {
+      frozen.set("test.frozen.dir", "/var");
+      fail("Modified a frozen configuration");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      frozen.setInt("test.frozen.int", 1);
+      fail("Modified a frozen configuration");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      frozen.addResource("test.xml");
+      fail("Modified a frozen configuration");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    // Changes to the original are not seen by the snapshot
+    conf.set("test.frozen.dir", "/var");
+    assertEquals("/tmp/frozen", frozen.get("test.frozen.path"));
+    assertEquals("/var/frozen", conf.get("test.frozen.path"));
+
+    // A copy of the snapshot can be modified
+    Configuration copy = new Configuration(frozen);
+    copy.set("test.frozen.dir", "/usr");
+    assertEquals("/usr/frozen", copy.get("test.frozen.path"));
+    assertEquals("/tmp/frozen", frozen.get("test.frozen.path"));
+  }
+}
@@ -24,6 +24,7 @@
 import static org.apache.hadoop.fs.FileSystemTestHelper.*;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 
 import static org.junit.Assert.*;
 import static org.junit.Assume.assumeTrue;
@@ -260,6 +261,103 @@ public void testStatistics() throws Exception {
     assertEquals(1, fileSchemeCount);
   }
 
+  @Test
+  public void testThreadStatistics() throws Exception {
+    final Statistics stats = new Statistics("test");
+    stats.incrementBytesRead(1);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final int bytes = 10 * (i + 1);
+      threads[i] = new Thread("reader-" + i) {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            stats.incrementBytesRead(bytes);
+            stats.incrementReadOps(1);
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(1 + 100 * 1000, stats.getBytesRead());
+    assertEquals(4000, stats.getReadOps());
+
+    // Dead threads are no longer broken down, but still count in the totals
+    String self = Thread.currentThread().getName();
+    assertEquals(1, stats.getThreadStatisticsMap().size());
+    assertEquals(1, stats.getThreadStatisticsMap().get(self).getBytesRead());
+    assertEquals(1 + 100 * 1000, stats.getBytesRead());
+
+    stats.reset();
+    assertEquals(0, stats.getBytesRead());
+    assertEquals(4000, stats.getReadOps());
+    stats.incrementBytesRead(5);
+    assertEquals(5, stats.getBytesRead());
+    assertEquals(6, stats.getThreadStatistics().getBytesRead());
+  }
+
+  @Test
+  public void testDeadThreadsAreReleased() throws Exception {
+    final Statistics stats = new Statistics("test");
+    Runnable reader = new Runnable() {
+      @Override
+      public void run() {
+        stats.incrementBytesRead(1);
+      }
+    };
+    Thread dead = new Thread(reader);
+    dead.start();
+    dead.join();
+    WeakReference<Thread> deadRef = new WeakReference<Thread>(dead);
+    dead = null;
+
+    // Registering another thread drops the dead one, with no getter called
+    Thread other = new Thread(reader);
+    other.start();
+    other.join();
+    for (int i = 0; i < 100 && deadRef.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(deadRef.get());
+    assertEquals(2, stats.getBytesRead());
+  }
+
+  @Test
+  public void testSeekAndReadLatencyStatistics() throws IOException {
+    Path path = new Path(TEST_ROOT_DIR, "test-file");
+    writeFile(fileSys, path, 8192);
+    Statistics stats = FileSystem.getStatistics("file",
+        fileSys.getRawFileSystem().getClass());
+    int seeks = stats.getSeekOps();
+    long reads = 0;
+    for (long count : stats.getReadLatencyHistogram()) {
+      reads += count;
+    }
+
+    FSDataInputStream in = fileSys.getRawFileSystem().open(path, 1024);
+    try {
+      byte[] b = new byte[100];
+      in.readFully(b);
+      // Seek outside the buffer, so the file is seeked
+      in.seek(4096);
+      in.readFully(b);
+    } finally {
+      in.close();
+    }
+    assertEquals(seeks + 1, stats.getSeekOps());
+    long newReads = 0;
+    for (long count : stats.getReadLatencyHistogram()) {
+      newReads += count;
+    }
+    assertTrue(newReads >= reads + 2);
+  }
+
   @Test
   public void testHasFileDescriptor() throws IOException {
     Configuration conf = new Configuration();
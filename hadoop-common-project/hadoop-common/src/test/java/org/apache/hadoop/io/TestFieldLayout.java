@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.FieldLayoutSerialization;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.junit.Test;
+
+public class TestFieldLayout {
+
+  /** A key of every supported type, some of them declared by a superclass */
+  static class BaseKey {
+    protected int partition;
+  }
+
+  @FieldLayout.Fields({ "partition", "flag", "b", "s", "c", "name", "id",
+      "f", "d", "payload" })
+  public static class LayoutKey extends BaseKey
+      implements WritableComparable<LayoutKey> {
+    private static final FieldLayout<LayoutKey> LAYOUT =
+        FieldLayout.get(LayoutKey.class);
+
+    private boolean flag;
+    private byte b;
+    private short s;
+    private char c;
+    private Text name = new Text();
+    private long id;
+    private float f;
+    private double d;
+    private BytesWritable payload = new BytesWritable();
+    // not part of the layout
+    private transient int cached;
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      LAYOUT.write(this, out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      LAYOUT.readFields(this, in);
+    }
+
+    @Override
+    public int compareTo(LayoutKey other) {
+      return LAYOUT.compare(this, other);
+    }
+
+    @Override
+    public int hashCode() {
+      return LAYOUT.hashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof LayoutKey && compareTo((LayoutKey) obj) == 0;
+    }
+  }
+
+  /** A plain class, serialized by FieldLayoutSerialization */
+  @FieldLayout.Fields({ "count", "word" })
+  public static class Pojo {
+    int count;
+    Text word;
+  }
+
+  @FieldLayout.Fields({ "missing" })
+  static class MissingField {
+  }
+
+  @FieldLayout.Fields({ "value" })
+  static class UnsupportedField {
+    String value;
+  }
+
+  private static LayoutKey randomKey(Random r) {
+    // few distinct values, so that many keys share their first fields
+    LayoutKey key = new LayoutKey();
+    key.partition = r.nextInt(3) - 1;
+    key.flag = r.nextBoolean();
+    key.b = (byte) (r.nextInt(3) - 1);
+    key.s = (short) (r.nextInt(3) * 20000 - 20000);
+    key.c = (char) (r.nextInt(2) * 0xf000);
+    key.name.set(new String[] { "", "a", "ab", "é" }[r.nextInt(4)]);
+    key.id = (r.nextInt(3) - 1) * Long.MAX_VALUE;
+    key.f = new float[] { -1.5f, 0f, Float.NaN }[r.nextInt(3)];
+    key.d = new double[] { -0.0, 0.0, 1e300 }[r.nextInt(3)];
+    byte[] payload = new byte[r.nextInt(3)];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) (r.nextInt(2) * 0xff);
+    }
+    key.payload.set(payload, 0, payload.length);
+    return key;
+  }
+
+  private static byte[] serialize(Writable w) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    w.write(out);
+    byte[] bytes = new byte[out.getLength() + 3];
+    // at an offset, as in a sort buffer
+    System.arraycopy(out.getData(), 0, bytes, 3, out.getLength());
+    return bytes;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random r = new Random(0);
+    for (int i = 0; i < 100; i++) {
+      LayoutKey key = randomKey(r);
+      key.cached = 1;
+      DataOutputBuffer out = new DataOutputBuffer();
+      key.write(out);
+      LayoutKey read = new LayoutKey();
+      Text name = read.name;
+      DataInputBuffer in = new DataInputBuffer();
+      in.reset(out.getData(), out.getLength());
+      read.readFields(in);
+      assertEquals(0, key.compareTo(read));
+      assertEquals(key.hashCode(), read.hashCode());
+      assertEquals(key.name, read.name);
+      assertEquals(key.payload, read.payload);
+      assertEquals(0, read.cached);
+      // read into the existing fields
+      assertSame(name, read.name);
+    }
+  }
+
+  @Test
+  public void testRawCompare() throws IOException {
+    WritableComparator comparator = WritableComparator.get(LayoutKey.class);
+    assertTrue(comparator instanceof FieldLayout.Comparator);
+    assertSame(LayoutKey.class, comparator.getKeyClass());
+
+    Random r = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      LayoutKey a = randomKey(r);
+      LayoutKey b = randomKey(r);
+      byte[] ba = serialize(a);
+      byte[] bb = serialize(b);
+      int expected = Integer.signum(a.compareTo(b));
+      assertEquals(expected, Integer.signum(
+          comparator.compare(ba, 3, ba.length - 3, bb, 3, bb.length - 3)));
+      assertEquals(expected, Integer.signum(comparator.compare(a, b)));
+      assertEquals(0,
+          comparator.compare(ba, 3, ba.length - 3, ba, 3, ba.length - 3));
+    }
+  }
+
+  @Test
+  public void testOrder() {
+    LayoutKey a = new LayoutKey();
+    LayoutKey b = new LayoutKey();
+    assertEquals(0, a.compareTo(b));
+    // the first field decides, whatever the later ones
+    a.partition = -1;
+    b.id = -5;
+    assertTrue(a.compareTo(b) < 0);
+    a.partition = 0;
+    assertTrue(a.compareTo(b) > 0);
+    b.name.set("z");
+    assertTrue(a.compareTo(b) < 0);
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    Configuration conf = new Configuration();
+    SerializationFactory factory = new SerializationFactory(conf);
+    Object serialization = factory.getSerialization(Pojo.class);
+    assertTrue(serialization instanceof FieldLayoutSerialization);
+    Serializer<Pojo> serializer = factory.getSerializer(Pojo.class);
+    Deserializer<Pojo> deserializer = factory.getDeserializer(Pojo.class);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    serializer.open(out);
+    Pojo pojo = new Pojo();
+    for (int i = 0; i < 3; i++) {
+      pojo.count = i;
+      pojo.word = new Text("word" + i);
+      serializer.serialize(pojo);
+    }
+    serializer.close();
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    deserializer.open(in);
+    Pojo read = deserializer.deserialize(null);
+    Text word = read.word;
+    assertEquals(0, read.count);
+    assertEquals("word0", read.word.toString());
+    for (int i = 1; i < 3; i++) {
+      assertSame(read, deserializer.deserialize(read));
+      assertSame(word, read.word);
+      assertEquals(i, read.count);
+      assertEquals("word" + i, read.word.toString());
+    }
+    deserializer.close();
+
+    // plain classes are compared by a comparator configured by name
+    FieldLayout.Comparator comparator =
+        new FieldLayout.Comparator(Pojo.class) { };
+    Pojo other = new Pojo();
+    other.count = 2;
+    other.word = new Text("word3");
+    assertTrue(comparator.compare(read, other) < 0);
+  }
+
+  @Test
+  public void testInvalidLayouts() {
+    try {
+      FieldLayout.get(MissingField.class);
+      fail("missing field accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("No field missing"));
+    }
+    try {
+      FieldLayout.get(UnsupportedField.class);
+      fail("unsupported field accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("unsupported type"));
+    }
+    try {
+      FieldLayout.get(BaseKey.class);
+      fail("class without a layout accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("not annotated"));
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSequenceFileBlockIndex {
+  private static final int NUMRECORDS = 5000;
+
+  private final Configuration conf = new Configuration();
+  private FileSystem fs;
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    // many blocks
+    conf.setInt("io.seqfile.compress.blocksize", 4096);
+    fs = FileSystem.getLocal(conf);
+    path = new Path(System.getProperty("test.build.data", "/tmp"),
+        "sequencefile.blockindex.test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(path, false);
+  }
+
+  private SequenceFile.Writer createWriter(boolean bloomFilters)
+      throws IOException {
+    return SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK),
+        SequenceFile.Writer.blockIndex(bloomFilters));
+  }
+
+  /** Write the even keys from 0, each with its value. */
+  private void writeFile(boolean bloomFilters) throws IOException {
+    SequenceFile.Writer writer = createWriter(bloomFilters);
+    IntWritable key = new IntWritable();
+    Text val = new Text();
+    for (int i = 0; i < NUMRECORDS; i++) {
+      key.set(2 * i);
+      val.set("value " + (2 * i));
+      writer.append(key, val);
+    }
+    writer.close();
+  }
+
+  private SequenceFile.Reader createReader() throws IOException {
+    return new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+  }
+
+  private void checkLookups() throws IOException {
+    SequenceFile.Reader reader = createReader();
+    try {
+      assertTrue(reader.hasBlockIndex());
+      IntWritable key = new IntWritable();
+      Text val = new Text();
+      for (int i = -3; i < 2 * NUMRECORDS + 3; i++) {
+        key.set(i);
+        Writable found = reader.get(key, val);
+        if (i >= 0 && i < 2 * NUMRECORDS && i % 2 == 0) {
+          assertTrue("key " + i, found == val);
+          assertEquals("value " + i, val.toString());
+        } else {
+          assertNull("key " + i, found);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /** Check that the blocks are read as before, up to the index. */
+  private void checkScans() throws IOException {
+    SequenceFile.Reader reader = createReader();
+    SequenceFile.MappedReader mapped =
+        new SequenceFile.MappedReader(conf, path);
+    try {
+      IntWritable key = new IntWritable();
+      Text val = new Text();
+      IntWritable mappedKey = new IntWritable();
+      int records = 0;
+      while (reader.next(key, val)) {
+        assertEquals(2 * records, key.get());
+        assertEquals("value " + key.get(), val.toString());
+        assertTrue(mapped.next(mappedKey));
+        assertEquals(key.get(), mappedKey.get());
+        records++;
+      }
+      assertEquals(NUMRECORDS, records);
+      assertFalse(mapped.next());
+
+      // a sync past the last block finds no records
+      long length = fs.getFileStatus(path).getLen();
+      for (long off = length - 20000; off < length; off += 997) {
+        reader.sync(off);
+        if (reader.next(key)) {
+          assertEquals(0, key.get() % 2);
+        }
+      }
+    } finally {
+      reader.close();
+      mapped.close();
+    }
+  }
+
+  @Test
+  public void testBlockIndex() throws IOException {
+    writeFile(false);
+    checkScans();
+    checkLookups();
+  }
+
+  @Test
+  public void testBlockIndexWithBloomFilters() throws IOException {
+    writeFile(true);
+    checkScans();
+    checkLookups();
+  }
+
+  @Test
+  public void testDuplicateKeys() throws IOException {
+    // runs of equal keys, longer than a block
+    SequenceFile.Writer writer = createWriter(true);
+    IntWritable key = new IntWritable();
+    Text val = new Text();
+    for (int i = 0; i < NUMRECORDS; i++) {
+      key.set(i / 1000);
+      val.set("value " + key.get());
+      writer.append(key, val);
+    }
+    writer.close();
+
+    SequenceFile.Reader reader = createReader();
+    try {
+      for (int i = 0; i < NUMRECORDS / 1000; i++) {
+        key.set(i);
+        assertTrue(reader.get(key, val) != null);
+        assertEquals("value " + i, val.toString());
+      }
+      key.set(NUMRECORDS / 1000);
+      assertNull(reader.get(key, val));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testUnsortedKeys() throws IOException {
+    SequenceFile.Writer writer = createWriter(false);
+    try {
+      writer.append(new IntWritable(2), new Text("two"));
+      writer.append(new IntWritable(1), new Text("one"));
+      fail("Appended a key out of order");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("key out of order"));
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testNeedsBlockCompression() throws IOException {
+    try {
+      SequenceFile.createWriter(conf,
+          SequenceFile.Writer.file(path),
+          SequenceFile.Writer.keyClass(IntWritable.class),
+          SequenceFile.Writer.valueClass(Text.class),
+          SequenceFile.Writer.compression(CompressionType.RECORD),
+          SequenceFile.Writer.blockIndex(false));
+      fail("Wrote a block index without block compression");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNoBlockIndex() throws IOException {
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK));
+    writer.append(new IntWritable(1), new Text("one"));
+    writer.close();
+    SequenceFile.Reader reader = createReader();
+    try {
+      assertFalse(reader.hasBlockIndex());
+      reader.get(new IntWritable(1), new Text());
+      fail("Looked up a key without a block index");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().endsWith("has no block index"));
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSequenceFileMappedReader {
+  private static final int NUMRECORDS = 2000;
+  private static final int RECORDSIZE = 80;
+
+  private final Configuration conf = new Configuration();
+  private FileSystem fs;
+  private Path path;
+  /** The offset of each record, for files which are not block-compressed */
+  private final List<Long> offsets = new ArrayList<Long>();
+
+  @Before
+  public void setUp() throws IOException {
+    // several blocks for block-compressed files
+    conf.setInt("io.seqfile.compress.blocksize", 8192);
+    fs = FileSystem.getLocal(conf);
+    path = new Path(System.getProperty("test.build.data", "/tmp"),
+        "sequencefile.mapped.test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(path, false);
+  }
+
+  private void writeFile(CompressionType compression) throws IOException {
+    offsets.clear();
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(compression));
+    IntWritable key = new IntWritable();
+    Text val = new Text();
+    for (int i = 0; i < NUMRECORDS; i++) {
+      key.set(i);
+      TestSequenceFileSync.randomText(val, i, RECORDSIZE);
+      offsets.add(writer.getLength());
+      writer.append(key, val);
+    }
+    writer.close();
+  }
+
+  private static byte[] bytes(ByteBuffer buf) {
+    byte[] b = new byte[buf.remaining()];
+    buf.duplicate().get(b);
+    return b;
+  }
+
+  /**
+   * Check that a MappedReader returns the raw records and the records
+   * returned by a Reader.
+   */
+  private void checkRecords(SequenceFile.MappedReader mapped)
+      throws IOException {
+    SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(path));
+    try {
+      assertEquals(IntWritable.class, mapped.getKeyClass());
+      assertEquals(Text.class, mapped.getValueClass());
+      assertEquals(reader.isCompressed(), mapped.isCompressed());
+      assertEquals(reader.isBlockCompressed(), mapped.isBlockCompressed());
+
+      DataOutputBuffer rawKey = new DataOutputBuffer();
+      SequenceFile.ValueBytes rawVal = reader.createValueBytes();
+      DataOutputBuffer rawValBytes = new DataOutputBuffer();
+      IntWritable key = new IntWritable();
+      Text val = new Text();
+      int records = 0;
+      while (true) {
+        rawKey.reset();
+        boolean more = reader.nextRaw(rawKey, rawVal) >= 0;
+        assertEquals(more, mapped.next());
+        if (!more) {
+          break;
+        }
+        rawValBytes.reset();
+        rawVal.writeUncompressedBytes(rawValBytes);
+        assertEquals(new BytesWritable(rawKey.getData(), rawKey.getLength()),
+            new BytesWritable(bytes(mapped.getKey())));
+        assertEquals(
+            new BytesWritable(rawValBytes.getData(), rawValBytes.getLength()),
+            new BytesWritable(bytes(mapped.getValue())));
+        mapped.getCurrentKey(key);
+        mapped.getCurrentValue(val);
+        assertEquals(records, key.get());
+        assertTrue(val.toString().startsWith(records + " RECORDID"));
+        records++;
+      }
+      assertEquals(NUMRECORDS, records);
+      assertFalse(mapped.next());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void checkAll(CompressionType compression) throws IOException {
+    writeFile(compression);
+    FileSystem streamed = new FilterFileSystem(
+        FileSystem.getLocal(conf).getRawFileSystem());
+    // mapped and streamed, with a window of the whole file and with windows
+    // smaller than a block, which move every few records
+    for (FileSystem f : new FileSystem[] { fs, streamed }) {
+      for (int window : new int[] { 0, 512 }) {
+        SequenceFile.MappedReader mapped =
+            new SequenceFile.MappedReader(f, path, conf, window);
+        try {
+          checkRecords(mapped);
+        } finally {
+          mapped.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUncompressed() throws IOException {
+    checkAll(CompressionType.NONE);
+  }
+
+  @Test
+  public void testRecordCompressed() throws IOException {
+    checkAll(CompressionType.RECORD);
+  }
+
+  @Test
+  public void testBlockCompressed() throws IOException {
+    checkAll(CompressionType.BLOCK);
+  }
+
+  @Test
+  public void testSeekAndSync() throws IOException {
+    for (CompressionType compression : new CompressionType[] {
+        CompressionType.NONE, CompressionType.RECORD,
+        CompressionType.BLOCK }) {
+      writeFile(compression);
+      SequenceFile.MappedReader mapped =
+          new SequenceFile.MappedReader(conf, path);
+      SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(path));
+      IntWritable key = new IntWritable();
+      IntWritable expected = new IntWritable();
+      try {
+        if (compression != CompressionType.BLOCK) {
+          for (int i = 0; i < NUMRECORDS; i += 97) {
+            mapped.seek(offsets.get(i));
+            assertTrue(mapped.next(key));
+            assertEquals(i, key.get());
+          }
+        }
+        for (long off = 0; off < fs.getFileStatus(path).getLen();
+             off += 1999) {
+          reader.sync(off);
+          mapped.sync(off);
+          assertEquals(reader.getPosition(), mapped.getPosition());
+          boolean more = reader.next(expected);
+          assertEquals(more, mapped.next(key));
+          if (more) {
+            assertEquals(expected.get(), key.get());
+          }
+        }
+      } finally {
+        reader.close();
+        mapped.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSyncNearEnd() throws IOException {
+    for (CompressionType compression : new CompressionType[] {
+        CompressionType.NONE, CompressionType.RECORD,
+        CompressionType.BLOCK }) {
+      writeFile(compression);
+      long len = fs.getFileStatus(path).getLen();
+      SequenceFile.MappedReader mapped =
+          new SequenceFile.MappedReader(conf, path);
+      SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(path));
+      IntWritable key = new IntWritable();
+      IntWritable expected = new IntWritable();
+      try {
+        // A split which starts within the last sync's length of the end
+        // has no records
+        for (long off = len - SequenceFile.SYNC_INTERVAL / 10; off < len;
+             off++) {
+          reader.sync(off);
+          mapped.sync(off);
+          assertEquals(reader.getPosition(), mapped.getPosition());
+          boolean more = reader.next(expected);
+          assertEquals(more, mapped.next(key));
+          if (more) {
+            assertEquals(expected.get(), key.get());
+          }
+        }
+      } finally {
+        reader.close();
+        mapped.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSkippedValues() throws IOException {
+    writeFile(CompressionType.BLOCK);
+    SequenceFile.MappedReader mapped =
+        new SequenceFile.MappedReader(conf, path);
+    try {
+      IntWritable key = new IntWritable();
+      Text val = new Text();
+      int records = 0;
+      while (mapped.next(key)) {
+        // values are only decompressed, and followed, when read
+        if (records % 13 == 0) {
+          mapped.getCurrentValue(val);
+          assertTrue(val.toString().startsWith(key.get() + " RECORDID"));
+        }
+        assertEquals(records++, key.get());
+      }
+      assertEquals(NUMRECORDS, records);
+    } finally {
+      mapped.close();
+    }
+  }
+}
@@ -226,6 +226,25 @@ public void testFind() throws Exception {
     assertTrue(text.find("\u20ac", 5)==11);
   }
 
+  public void testFindLong() throws Exception {
+    // the first bytes are skipped a word at a time, so try every alignment
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      sb.append((char) ('a' + i % 8));
+    }
+    Text text = new Text(sb.toString() + "xyz\u20acxy");
+    assertEquals(40, text.find("xyz"));
+    assertEquals(40, text.find("xyz\u20ac"));
+    assertEquals(46, text.find("xy", 41));
+    assertEquals(-1, text.find("xyz", 41));
+    // a match of the first byte where the rest runs past the end
+    assertEquals(-1, text.find("xyq"));
+    assertEquals(-1, text.find("xyz", text.getLength()));
+    for (int i = 0; i < 39; i++) {
+      assertEquals(i, text.find(sb.substring(i, i + 2), i));
+    }
+  }
+
   public void testFindAfterUpdatingContents() throws Exception {
     Text text = new Text("abcd");
     text.set("a".getBytes());
@@ -241,6 +260,46 @@ public void testValidate() throws Exception {
     Text.validateUTF8(utf8, 0, length);
   }
 
+  public void testValidateLong() throws Exception {
+    // invalid bytes after, inside and between runs of ASCII longer than a word
+    String ascii = "0123456789abcdefghij";
+    Text valid = new Text(ascii + "\u20ac" + ascii + "\u00e9");
+    Text.validateUTF8(valid.getBytes(), 0, valid.getLength());
+    for (int i = 0; i <= ascii.length(); i++) {
+      byte[] utf8 = (ascii + ascii).getBytes();
+      utf8[i] = (byte) 0xff;
+      try {
+        Text.validateUTF8(utf8);
+        fail("invalid byte at " + i + " not found");
+      } catch (java.nio.charset.MalformedInputException e) {
+        assertEquals(i, e.getInputLength());
+      }
+    }
+    // a lead byte whose trail bytes would be ASCII
+    byte[] utf8 = (ascii + ascii).getBytes();
+    utf8[ascii.length()] = (byte) 0xe2;
+    try {
+      Text.validateUTF8(utf8);
+      fail("truncated sequence not found");
+    } catch (java.nio.charset.MalformedInputException e) {
+      assertEquals(ascii.length() + 1, e.getInputLength());
+    }
+  }
+
+  public void testDecodeAscii() throws Exception {
+    String ascii = "2012-10-18 12:00:00,000 INFO org.apache.hadoop: ok";
+    byte[] utf8 = ("\u00e9" + ascii).getBytes("UTF-8");
+    assertEquals(ascii, Text.decode(utf8, 2, utf8.length - 2));
+    assertEquals("\u00e9" + ascii, Text.decode(utf8));
+    assertEquals(ascii.substring(0, 9), Text.decode(utf8, 2, 9, false));
+    assertEquals("", Text.decode(utf8, 2, 0));
+    assertEquals(ascii, new Text(ascii).toString());
+    // malformed input after ASCII is still replaced
+    utf8 = (ascii + "x").getBytes();
+    utf8[utf8.length - 1] = (byte) 0xff;
+    assertEquals(ascii + "\ufffd", Text.decode(utf8));
+  }
+
   public void testClear() throws Exception {
     // Test lengths on an empty text object
     Text text = new Text();
@@ -278,6 +337,19 @@ public void testTextText() throws CharacterCodingException {
     assertEquals(14, a.getBytes().length);
     assertEquals(8, a.copyBytes().length);
   }
+
+  public void testAppendAfterClear() {
+    Text text = new Text("abcdefgh");
+    text.clear();
+    text.append("xyz".getBytes(), 0, 3);
+    assertEquals("xyz", text.toString());
+    text.clear();
+    byte[] longer = "0123456789".getBytes();
+    text.append(longer, 0, longer.length);
+    assertEquals("0123456789", text.toString());
+    text.append(longer, 2, 3);
+    assertEquals("0123456789234", text.toString());
+  }
   
   private class ConcurrentEncodeDecodeThread extends Thread {
     public ConcurrentEncodeDecodeThread(String name) {
@@ -33,8 +33,11 @@
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.zip.GZIPInputStream;
@@ -54,6 +57,9 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Compressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Decompressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Factory;
 import org.apache.hadoop.io.compress.zlib.BuiltInGzipDecompressor;
 import org.apache.hadoop.io.compress.zlib.BuiltInZlibDeflater;
 import org.apache.hadoop.io.compress.zlib.BuiltInZlibInflater;
@@ -285,6 +291,151 @@ private void testSplitableCodec(
     fs.delete(infile.getPath().getParent(), true);
   }
 
+  @Test
+  public void testNativeBzip2Compatibility() throws IOException {
+    Configuration nativeConf = new Configuration();
+    if (!Bzip2Factory.isNativeBzip2Loaded(nativeConf)) {
+      LOG.warn("skipped: native libs not loaded");
+      return;
+    }
+    Configuration javaConf = new Configuration();
+    javaConf.set(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_LIBRARY_KEY,
+        Bzip2Factory.JAVA_BUILTIN);
+    CompressionCodec nativeCodec =
+        ReflectionUtils.newInstance(BZip2Codec.class, nativeConf);
+    CompressionCodec javaCodec =
+        ReflectionUtils.newInstance(BZip2Codec.class, javaConf);
+    assertEquals(Bzip2Compressor.class, nativeCodec.getCompressorType());
+    assertEquals(Bzip2Decompressor.class, nativeCodec.getDecompressorType());
+    assertFalse(Bzip2Factory.isNativeBzip2Loaded(javaConf));
+
+    Random rand = new Random(seed);
+    byte[] data = new byte[300000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + rand.nextInt(rand.nextBoolean() ? 2 : 26));
+    }
+    CompressionCodec[] codecs = { nativeCodec, javaCodec };
+    for (CompressionCodec writer : codecs) {
+      byte[] compressed = bzip2(writer, data, 0, data.length);
+      for (CompressionCodec reader : codecs) {
+        assertArrayEquals(data, bunzip2(reader, compressed));
+      }
+    }
+
+    // Concatenated streams, such as pbzip2 writes, are read as one.
+    ByteArrayOutputStream concat = new ByteArrayOutputStream();
+    concat.write(bzip2(nativeCodec, data, 0, 1000));
+    concat.write(bzip2(javaCodec, data, 1000, data.length - 1000));
+    for (CompressionCodec reader : codecs) {
+      assertArrayEquals(data, bunzip2(reader, concat.toByteArray()));
+    }
+  }
+
+  private static byte[] bzip2(CompressionCodec codec, byte[] b, int off,
+      int len) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out = codec.createOutputStream(bytes);
+    out.write(b, off, len);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static byte[] bunzip2(CompressionCodec codec, byte[] b)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InputStream in = codec.createInputStream(new ByteArrayInputStream(b));
+    IOUtils.copyBytes(in, bytes, 4096, true);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Splits of a file read with native bzip2 must begin and end where the
+   * Java implementation's do, or tasks on nodes with and without the native
+   * library would disagree on which records each split holds.
+   */
+  @Test
+  public void testNativeBzip2SplitsMatchJava() throws IOException {
+    Configuration nativeConf = new Configuration();
+    if (!Bzip2Factory.isNativeBzip2Loaded(nativeConf)) {
+      LOG.warn("skipped: native libs not loaded");
+      return;
+    }
+    // Small blocks, to have many in a small file.
+    Bzip2Factory.setBlockSize(nativeConf, 1);
+    Configuration javaConf = new Configuration();
+    javaConf.set(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_LIBRARY_KEY,
+        Bzip2Factory.JAVA_BUILTIN);
+    SplittableCompressionCodec nativeCodec =
+        ReflectionUtils.newInstance(BZip2Codec.class, nativeConf);
+    SplittableCompressionCodec javaCodec =
+        ReflectionUtils.newInstance(BZip2Codec.class, javaConf);
+
+    // Two concatenated streams, of several blocks each.
+    FileSystem fs = FileSystem.getLocal(nativeConf);
+    Path file = new Path(new Path(System.getProperty("test.build.data",
+        "/tmp")).makeQualified(fs), "TestCodec/splits.bz2");
+    Random rand = new Random(seed);
+    Base64 b64 = new Base64(0, null);
+    byte[] b = new byte[60];
+    CompressionOutputStream out =
+        nativeCodec.createOutputStream(fs.create(file, true));
+    try {
+      for (int i = 0; i < 12000; i++) {
+        if (i == 5000) {
+          out.finish();
+          out.resetState();
+        }
+        rand.nextBytes(b);
+        out.write((i + " " + new String(b64.encode(b)) + "\n").getBytes());
+      }
+    } finally {
+      out.close();
+    }
+
+    long flen = fs.getFileStatus(file).getLen();
+    Decompressor decompressor = CodecPool.getDecompressor(nativeCodec);
+    int[] lens = { 4096, 1, 100, 65536 };
+    byte[] javaBuf = new byte[65536];
+    byte[] nativeBuf = new byte[65536];
+    try {
+      for (long start = 0; start < flen + 10; start += 1 + rand.nextInt(
+          (int) flen / 20)) {
+        SplitCompressionInputStream javaIn = javaCodec.createInputStream(
+            fs.open(file), null, start, flen,
+            SplittableCompressionCodec.READ_MODE.BYBLOCK);
+        SplitCompressionInputStream nativeIn = nativeCodec.createInputStream(
+            fs.open(file), decompressor, start, flen,
+            SplittableCompressionCodec.READ_MODE.BYBLOCK);
+        try {
+          assertEquals("start of split at " + start,
+              javaIn.getAdjustedStart(), nativeIn.getAdjustedStart());
+          assertEquals(javaIn.getPos(), nativeIn.getPos());
+          for (int i = 0; ; i++) {
+            int len = lens[i % lens.length];
+            int javaRead = javaIn.read(javaBuf, 0, len);
+            int nativeRead = nativeIn.read(nativeBuf, 0, len);
+            assertEquals("read " + i + " of split at " + start,
+                javaRead, nativeRead);
+            assertEquals("position after read " + i + " of split at " + start,
+                javaIn.getPos(), nativeIn.getPos());
+            if (javaRead < 0) {
+              break;
+            }
+            for (int j = 0; j < javaRead; j++) {
+              assertEquals(javaBuf[j], nativeBuf[j]);
+            }
+          }
+        } finally {
+          javaIn.close();
+          nativeIn.close();
+        }
+      }
+    } finally {
+      CodecPool.returnDecompressor(decompressor);
+    }
+    fs.delete(file, false);
+  }
+
   private static int readLeadingInt(Text txt) throws IOException {
     DataInputStream in =
       new DataInputStream(new ByteArrayInputStream(txt.getBytes()));
@@ -347,6 +498,143 @@ public void testCodecPoolGzipReuse() throws Exception {
     assertTrue("Got mismatched ZlibCompressor", c2 != CodecPool.getCompressor(gzc));
   }
 
+  @Test
+  public void testDirectCompression() throws IOException {
+    Configuration conf = new Configuration();
+    directCompressionTest(ReflectionUtils.newInstance(DefaultCodec.class, conf));
+    directCompressionTest(ReflectionUtils.newInstance(GzipCodec.class, conf));
+    if (SnappyCodec.isNativeCodeLoaded()) {
+      directCompressionTest(ReflectionUtils.newInstance(SnappyCodec.class, conf));
+    }
+    if (Lz4Codec.isNativeCodeLoaded()) {
+      directCompressionTest(ReflectionUtils.newInstance(Lz4Codec.class, conf));
+    }
+  }
+
+  private void directCompressionTest(DirectCompressionCodec codec)
+      throws IOException {
+    DirectCompressor compressor = codec.createDirectCompressor();
+    DirectDecompressor decompressor = codec.createDirectDecompressor();
+    if (compressor == null || decompressor == null) {
+      LOG.warn("Skipping direct compression with " +
+          codec.getClass().getSimpleName() + ": native code not loaded");
+      return;
+    }
+    LOG.info("Testing direct compression with " +
+        codec.getClass().getSimpleName());
+    byte[] data = new byte[64 * 1024];
+    Random r = new Random(seed);
+    for (int i = 0; i < data.length; i++) {
+      // compressible, but not trivially so
+      data[i] = (byte)('a' + r.nextInt(8));
+    }
+
+    ByteBuffer src = CodecPool.getDirectBuffer(data.length);
+    ByteBuffer compressed = CodecPool.getDirectBuffer(
+        compressor.maxCompressedLength(data.length));
+    ByteBuffer uncompressed = CodecPool.getDirectBuffer(data.length);
+    try {
+      src.put(data);
+      src.flip();
+      compressor.compress(src, compressed);
+      assertEquals(0, src.remaining());
+      compressed.flip();
+      assertTrue("Data were not compressed",
+          compressed.remaining() < data.length);
+
+      decompressor.decompress(compressed, uncompressed);
+      assertEquals(0, compressed.remaining());
+      assertEquals(data.length, uncompressed.position());
+      uncompressed.flip();
+      byte[] result = new byte[data.length];
+      uncompressed.get(result);
+      assertArrayEquals(data, result);
+
+      // A block which does not fit is an error, rather than truncated
+      compressed.rewind();
+      ByteBuffer small = CodecPool.getDirectBuffer(data.length / 2);
+      try {
+        decompressor.decompress(compressed, small);
+        fail("Decompressed into a buffer which is too small");
+      } catch (IOException ioe) {
+        // expected
+      } finally {
+        CodecPool.returnDirectBuffer(small);
+      }
+
+      // A compressor which has been used for a block still compresses
+      // streams.
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CompressionOutputStream out =
+          codec.createOutputStream(bytes, (Compressor) compressor);
+      out.write(data);
+      out.finish();
+      InputStream in = codec.createInputStream(
+          new ByteArrayInputStream(bytes.toByteArray()));
+      IOUtils.readFully(in, result, 0, result.length);
+      assertArrayEquals(data, result);
+      assertEquals(-1, in.read());
+    } finally {
+      CodecPool.returnDirectBuffer(src);
+      CodecPool.returnDirectBuffer(compressed);
+      CodecPool.returnDirectBuffer(uncompressed);
+    }
+  }
+
+  @Test
+  public void testCodecPoolDirectBuffers() {
+    ByteBuffer b1 = CodecPool.getDirectBuffer(1234);
+    assertTrue(b1.isDirect());
+    assertEquals(1234, b1.capacity());
+    b1.put((byte) 1);
+    CodecPool.returnDirectBuffer(b1);
+    ByteBuffer b2 = CodecPool.getDirectBuffer(1234);
+    assertSame(b1, b2);
+    assertEquals(0, b2.position());
+    assertEquals(1234, b2.limit());
+    // a buffer of another size is not reused
+    assertNotSame(b1, CodecPool.getDirectBuffer(1235));
+    CodecPool.returnDirectBuffer(ByteBuffer.allocate(10));
+    assertTrue(CodecPool.getDirectBuffer(10).isDirect());
+
+    // Only a bounded number of buffers of each capacity are kept.
+    List<ByteBuffer> bufs = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < CodecPool.MAX_POOLED_DIRECT_BUFFERS + 2; i++) {
+      bufs.add(CodecPool.getDirectBuffer(4321));
+    }
+    for (ByteBuffer b : bufs) {
+      CodecPool.returnDirectBuffer(b);
+    }
+    int reused = 0;
+    for (int i = 0; i < bufs.size(); i++) {
+      ByteBuffer b = CodecPool.getDirectBuffer(4321);
+      for (ByteBuffer old : bufs) {
+        if (old == b) {
+          reused++;
+        }
+      }
+    }
+    assertTrue("Reused " + reused + " buffers",
+        reused <= CodecPool.MAX_POOLED_DIRECT_BUFFERS);
+  }
+
+  @Test
+  public void testDirectCodecsWithoutNativeCode() {
+    // Without the native library, the codecs offer no direct
+    // (de)compressors, rather than failing.
+    Configuration conf = new Configuration();
+    if (!SnappyCodec.isNativeCodeLoaded()) {
+      SnappyCodec snappy = ReflectionUtils.newInstance(SnappyCodec.class, conf);
+      assertNull(snappy.createDirectCompressor());
+      assertNull(snappy.createDirectDecompressor());
+    }
+    if (!Lz4Codec.isNativeCodeLoaded()) {
+      Lz4Codec lz4 = ReflectionUtils.newInstance(Lz4Codec.class, conf);
+      assertNull(lz4.createDirectCompressor());
+      assertNull(lz4.createDirectDecompressor());
+    }
+  }
+
   private static void gzipReinitTest(Configuration conf, CompressionCodec codec)
       throws IOException {
     // Add codec to cache
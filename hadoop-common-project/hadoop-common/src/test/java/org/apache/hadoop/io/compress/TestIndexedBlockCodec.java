@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TestIndexedBlockCodec {
+  private static final Path TEST_ROOT_DIR = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestIndexedBlockCodec");
+
+  private final Configuration conf = new Configuration();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    roundTrip(DefaultCodec.class, 1024, 100 * 1024 + 17);
+    roundTrip(GzipCodec.class, 1024, 10 * 1024);
+    roundTrip(BZip2Codec.class, 4096, 10 * 1024);
+    if (Lz4Codec.isNativeCodeLoaded()) {
+      roundTrip(Lz4Codec.class, 1024, 100 * 1024);
+    }
+    if (SnappyCodec.isNativeCodeLoaded()) {
+      roundTrip(SnappyCodec.class, 1024, 100 * 1024);
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException {
+    roundTrip(DefaultCodec.class, 1024, 0);
+    IndexedBlockCodec codec = newCodec(DefaultCodec.class, 1024);
+    InputStream in = codec.createInputStream(
+        new ByteArrayInputStream(new byte[0]));
+    assertEquals(-1, in.read());
+    in.close();
+  }
+
+  @Test
+  public void testResetState() throws IOException {
+    // As SequenceFile uses codecs: a stream of separately finished chunks
+    IndexedBlockCodec codec = newCodec(DefaultCodec.class, 1024);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out = codec.createOutputStream(bytes);
+    byte[] chunk = new byte[3000];
+    new Random(0).nextBytes(chunk);
+    out.write(chunk);
+    out.finish();
+    int firstLength = bytes.size();
+    out.resetState();
+    out.write(chunk, 0, 10);
+    out.finish();
+    out.close();
+
+    byte[] compressed = bytes.toByteArray();
+    CompressionInputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed, 0, firstLength));
+    byte[] result = new byte[chunk.length];
+    IOUtils.readFully(in, result, 0, result.length);
+    assertArrayEquals(chunk, result);
+    assertEquals(-1, in.read());
+    in.close();
+
+    in = codec.createInputStream(new ByteArrayInputStream(compressed,
+        firstLength, compressed.length - firstLength));
+    assertEquals(10, in.read(result, 0, result.length));
+    assertEquals(-1, in.read());
+    in.close();
+  }
+
+  @Test
+  public void testCorruptSyncMarker() throws IOException {
+    IndexedBlockCodec codec = newCodec(DefaultCodec.class, 1024);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out = codec.createOutputStream(bytes);
+    out.write(new byte[5000]);
+    out.close();
+    byte[] compressed = bytes.toByteArray();
+    // The sync marker of the first block follows that of the header.
+    int headerLength = 4 + 1 + 1 + DefaultCodec.class.getName().length() + 16;
+    compressed[headerLength]++;
+
+    InputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed));
+    try {
+      in.read();
+      fail("Read a block without its sync marker");
+    } catch (IOException ioe) {
+      assertTrue(ioe.getMessage().contains("sync"));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read the lines of a file in splits as LineRecordReader does, and check
+   * that every line is read exactly once.
+   */
+  @Test
+  public void testSplits() throws IOException {
+    IndexedBlockCodec codec = newCodec(DefaultCodec.class, 1000);
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path file = new Path(TEST_ROOT_DIR, "lines" + codec.getDefaultExtension());
+    List<String> lines = new ArrayList<String>();
+    Random r = new Random(0);
+    OutputStream out = codec.createOutputStream(fs.create(file, true));
+    try {
+      for (int i = 0; i < 2000; i++) {
+        // Some lines span several blocks, and some end on block boundaries
+        int length = r.nextInt(10) == 0 ? r.nextInt(3000) : r.nextInt(100);
+        StringBuilder line = new StringBuilder(i + ":");
+        while (line.length() < length) {
+          line.append((char)('a' + r.nextInt(26)));
+        }
+        lines.add(line.toString());
+        out.write((line + "\n").getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+    long length = fs.getFileStatus(file).getLen();
+
+    for (long splitSize : new long[] {10, 100, 333, 1024, 9999, length}) {
+      List<String> read = new ArrayList<String>();
+      for (long start = 0; start < length; start += splitSize) {
+        readSplit(fs, file, codec, start, Math.min(start + splitSize, length),
+            read);
+      }
+      assertEquals("Split size " + splitSize, lines, read);
+    }
+    fs.delete(TEST_ROOT_DIR, true);
+  }
+
+  private void readSplit(FileSystem fs, Path file, IndexedBlockCodec codec,
+      long start, long end, List<String> lines) throws IOException {
+    FSDataInputStream fileIn = fs.open(file);
+    SplitCompressionInputStream in = codec.createInputStream(fileIn,
+        codec.createDecompressor(), start, end,
+        SplittableCompressionCodec.READ_MODE.BYBLOCK);
+    try {
+      LineReader reader = new LineReader(in, conf);
+      Text line = new Text();
+      if (in.getAdjustedStart() != 0) {
+        reader.readLine(line);
+      }
+      while (in.getPos() <= in.getAdjustedEnd()) {
+        if (reader.readLine(line) == 0) {
+          break;
+        }
+        lines.add(line.toString());
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void roundTrip(Class<? extends CompressionCodec> blockCodec,
+      int blockSize, int length) throws IOException {
+    IndexedBlockCodec codec = newCodec(blockCodec, blockSize);
+    byte[] data = new byte[length];
+    Random r = new Random(0);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)('a' + r.nextInt(8));
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Compressor compressor = CodecPool.getCompressor(codec);
+    CompressionOutputStream out =
+        codec.createOutputStream(bytes, compressor);
+    out.write(data, 0, data.length / 2);
+    for (int i = data.length / 2; i < data.length; i++) {
+      out.write(data[i]);
+    }
+    out.close();
+    CodecPool.returnCompressor(compressor);
+
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    InputStream in = codec.createInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()), decompressor);
+    byte[] result = new byte[data.length];
+    try {
+      IOUtils.readFully(in, result, 0, result.length);
+      assertEquals(-1, in.read());
+    } finally {
+      in.close();
+      CodecPool.returnDecompressor(decompressor);
+    }
+    assertArrayEquals("Block codec " + blockCodec, data, result);
+  }
+
+  private IndexedBlockCodec newCodec(
+      Class<? extends CompressionCodec> blockCodec, int blockSize) {
+    Configuration c = new Configuration(conf);
+    c.setClass(CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_CODEC_KEY,
+        blockCodec, CompressionCodec.class);
+    c.setInt(CommonConfigurationKeys.IO_COMPRESSION_CODEC_INDEXEDBLOCK_BLOCKSIZE_KEY,
+        blockSize);
+    return ReflectionUtils.newInstance(IndexedBlockCodec.class, c);
+  }
+}
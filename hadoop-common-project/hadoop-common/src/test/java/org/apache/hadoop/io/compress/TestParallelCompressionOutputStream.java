@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TestParallelCompressionOutputStream {
+  private final Configuration conf = new Configuration();
+
+  @Test
+  public void testDefaultCodec() throws IOException {
+    roundTrip(DefaultCodec.class);
+  }
+
+  @Test
+  public void testGzipCodec() throws IOException {
+    roundTrip(GzipCodec.class);
+  }
+
+  @Test
+  public void testBZip2Codec() throws IOException {
+    roundTrip(BZip2Codec.class);
+  }
+
+  @Test
+  public void testLz4Codec() throws IOException {
+    if (Lz4Codec.isNativeCodeLoaded()) {
+      roundTrip(Lz4Codec.class);
+    }
+  }
+
+  @Test
+  public void testSnappyCodec() throws IOException {
+    if (SnappyCodec.isNativeCodeLoaded()) {
+      roundTrip(SnappyCodec.class);
+    }
+  }
+
+  @Test
+  public void testCreateOutputStream() throws IOException {
+    CompressionCodec codec =
+        ReflectionUtils.newInstance(GzipCodec.class, conf);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out =
+        ParallelCompressionOutputStream.createOutputStream(codec, bytes, conf);
+    assertFalse(out instanceof ParallelCompressionOutputStream);
+    out.close();
+
+    Configuration parallel = new Configuration(conf);
+    parallel.setInt(
+        CommonConfigurationKeys.IO_COMPRESSION_PARALLEL_THREADS_KEY, 4);
+    out = ParallelCompressionOutputStream.createOutputStream(
+        codec, bytes, parallel);
+    assertTrue(out instanceof ParallelCompressionOutputStream);
+    out.close();
+  }
+
+  @Test
+  public void testUnsupportedCodec() {
+    assertTrue(ParallelCompressionOutputStream.isSupported(new DeflateCodec()));
+    assertFalse(ParallelCompressionOutputStream.isSupported(
+        new NotConcatenableCodec()));
+    try {
+      new ParallelCompressionOutputStream(
+          new ByteArrayOutputStream(), new NotConcatenableCodec(), 2, 1024);
+      fail("Created a parallel stream for an unsupported codec");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  private void roundTrip(Class<? extends CompressionCodec> codecClass)
+      throws IOException {
+    CompressionCodec codec = ReflectionUtils.newInstance(codecClass, conf);
+    // Text-like data, over a number of blocks which don't divide it evenly
+    Random r = new Random(codecClass.getName().hashCode());
+    byte[] data = new byte[100 * 1024 + 17];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)('a' + r.nextInt(8));
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out =
+        new ParallelCompressionOutputStream(bytes, codec, 3, 4096);
+    // Writes of assorted sizes, some of them spanning blocks
+    for (int off = 0; off < data.length; ) {
+      int len = Math.min(data.length - off, r.nextInt(10000));
+      if (len == 1) {
+        out.write(data[off]);
+      } else {
+        out.write(data, off, len);
+      }
+      off += len;
+      if (r.nextInt(4) == 0) {
+        out.flush();
+      }
+    }
+    out.close();
+    byte[] compressed = bytes.toByteArray();
+    assertTrue(compressed.length < data.length);
+
+    InputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed));
+    byte[] result = new byte[data.length];
+    try {
+      IOUtils.readFully(in, result, 0, result.length);
+      assertEquals("Trailing data after decompressing with " + codecClass,
+          -1, in.read());
+    } finally {
+      in.close();
+    }
+    assertArrayEquals(data, result);
+  }
+
+  /** A codec whose streams may not be concatenable */
+  private static class NotConcatenableCodec implements CompressionCodec {
+    @Override
+    public CompressionOutputStream createOutputStream(OutputStream out) {
+      return null;
+    }
+    @Override
+    public CompressionOutputStream createOutputStream(OutputStream out,
+        Compressor compressor) {
+      return null;
+    }
+    @Override
+    public Class<? extends Compressor> getCompressorType() {
+      return null;
+    }
+    @Override
+    public Compressor createCompressor() {
+      return null;
+    }
+    @Override
+    public CompressionInputStream createInputStream(InputStream in) {
+      return null;
+    }
+    @Override
+    public CompressionInputStream createInputStream(InputStream in,
+        Decompressor decompressor) {
+      return null;
+    }
+    @Override
+    public Class<? extends Decompressor> getDecompressorType() {
+      return null;
+    }
+    @Override
+    public Decompressor createDecompressor() {
+      return null;
+    }
+    @Override
+    public String getDefaultExtension() {
+      return ".none";
+    }
+  }
+}
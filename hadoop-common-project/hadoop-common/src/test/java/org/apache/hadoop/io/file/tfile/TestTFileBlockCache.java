@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.hadoop.io.file.tfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.file.tfile.TFile.Reader;
+import org.apache.hadoop.io.file.tfile.TFile.Reader.Scanner;
+import org.apache.hadoop.io.file.tfile.TFile.Writer;
+
+/**
+ * Test the block cache shared by TFile readers.
+ */
+public class TestTFileBlockCache extends TestCase {
+  private static String ROOT =
+      System.getProperty("test.build.data", "/tmp/tfile-test");
+
+  private final static int BLOCK_SIZE = 512;
+  private final static int RECORDS = 1000;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path path;
+
+  @Override
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    conf.setLong("tfile.block.cache.size", 1024 * 1024);
+    path = new Path(ROOT, "TestTFileBlockCache");
+    fs = path.getFileSystem(conf);
+    FSDataOutputStream out = fs.create(path);
+    Writer writer = new Writer(out, BLOCK_SIZE, "none", "memcmp", conf);
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.append(key(i), ("value" + i).getBytes());
+      }
+    } finally {
+      writer.close();
+      out.close();
+    }
+  }
+
+  @Override
+  public void tearDown() throws IOException {
+    fs.delete(path, true);
+  }
+
+  private static byte[] key(int i) {
+    return String.format("key%06d", i).getBytes();
+  }
+
+  private Reader open(String cacheName) throws IOException {
+    return new Reader(fs.open(path), fs.getFileStatus(path).getLen(), conf,
+        cacheName);
+  }
+
+  private void readAll(Reader reader) throws IOException {
+    Scanner scanner = reader.createScanner();
+    try {
+      for (int i = 0; i < RECORDS; i++, scanner.advance()) {
+        assertFalse(scanner.atEnd());
+        byte[] k = new byte[scanner.entry().getKeyLength()];
+        scanner.entry().getKey(k);
+        assertEquals(new String(key(i)), new String(k));
+        byte[] v = new byte[scanner.entry().getValueLength()];
+        scanner.entry().getValue(v);
+        assertEquals("value" + i, new String(v));
+      }
+      assertTrue(scanner.atEnd());
+    } finally {
+      scanner.close();
+    }
+  }
+
+  public void testReadersShareBlocks() throws IOException {
+    BlockCache cache = TFile.getBlockCache(conf);
+    assertNotNull(cache);
+    assertSame(cache, TFile.getBlockCache(new Configuration()));
+    String name = path + ":" + fs.getFileStatus(path).getModificationTime();
+
+    Reader first = open(name);
+    int blocks = first.readerBCF.getBlockCount();
+    assertTrue(blocks > 1);
+    long hits = cache.getHitCount();
+    long misses = cache.getMissCount();
+    try {
+      readAll(first);
+    } finally {
+      first.close();
+    }
+    assertEquals(hits, cache.getHitCount());
+    assertEquals(misses + blocks, cache.getMissCount());
+
+    Reader second = open(name);
+    try {
+      readAll(second);
+      // random lookups are served from the cache too
+      Scanner scanner = second.createScanner();
+      try {
+        assertTrue(scanner.seekTo(key(RECORDS / 2)));
+        assertTrue(scanner.seekTo(key(7)));
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      second.close();
+    }
+    assertTrue(cache.getHitCount() >= hits + blocks + 2);
+    assertEquals(misses + blocks, cache.getMissCount());
+
+    // readers not given a name do not use the cache
+    hits = cache.getHitCount();
+    Reader uncached = open(null);
+    try {
+      readAll(uncached);
+    } finally {
+      uncached.close();
+    }
+    assertEquals(hits, cache.getHitCount());
+    assertEquals(misses + blocks, cache.getMissCount());
+
+    assertEquals(blocks, cache.evictBlocks(name));
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testLruEviction() {
+    LruBlockCache cache = new LruBlockCache(300, false);
+    cache.cacheBlock("f", 0, ByteBuffer.allocate(100));
+    cache.cacheBlock("f", 100, ByteBuffer.allocate(100));
+    cache.cacheBlock("g", 0, ByteBuffer.allocate(100));
+    assertEquals(300, cache.getSize());
+    assertEquals(3, cache.getBlockCount());
+
+    // use the oldest block, so that the second one is evicted
+    assertNotNull(cache.getBlock("f", 0));
+    cache.cacheBlock("g", 100, ByteBuffer.allocate(100));
+    assertEquals(1, cache.getEvictionCount());
+    assertNull(cache.getBlock("f", 100));
+    assertNotNull(cache.getBlock("f", 0));
+    assertNotNull(cache.getBlock("g", 0));
+    assertNotNull(cache.getBlock("g", 100));
+    assertEquals(4, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // replacing a block does not count it twice
+    cache.cacheBlock("g", 100, ByteBuffer.allocate(50));
+    assertEquals(250, cache.getSize());
+
+    // blocks larger than the cache are not kept
+    cache.cacheBlock("h", 0, ByteBuffer.allocate(301));
+    assertNull(cache.getBlock("h", 0));
+    assertEquals(250, cache.getSize());
+
+    assertEquals(2, cache.evictBlocks("g"));
+    assertEquals(100, cache.getSize());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  public void testDirectBuffers() {
+    LruBlockCache cache = new LruBlockCache(1024, true);
+    ByteBuffer block = ByteBuffer.wrap("0123456789".getBytes());
+    block.position(2);
+    cache.cacheBlock("f", 0, block);
+    assertEquals(2, block.position());
+
+    ByteBuffer cached = cache.getBlock("f", 0);
+    assertTrue(cached.isDirect());
+    assertEquals(8, cached.remaining());
+    assertEquals('2', cached.get());
+    // readers do not move each other's position
+    assertEquals(8, cache.getBlock("f", 0).remaining());
+  }
+}
@@ -35,7 +35,9 @@
 
 import org.apache.hadoop.io.retry.UnreliableInterface.FatalException;
 import org.apache.hadoop.io.retry.UnreliableInterface.UnreliableException;
+import org.apache.hadoop.io.retry.RetryPolicy.RetryAction;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
 
 public class TestRetryProxy extends TestCase {
   
@@ -153,4 +155,30 @@ public void testRetryByRemoteException() throws UnreliableException {
     }
   }  
   
+  public void testRetriableExceptionIsRetried() throws Exception {
+    // A busy server's RetriableException is retried on the same server,
+    // even for non-idempotent methods, up to the limit.
+    RetryPolicy policy = RetryPolicies.failoverOnNetworkException(
+        TRY_ONCE_THEN_FAIL, 2, 10, 100);
+    RemoteException busy = new RemoteException(
+        RetriableException.class.getName(), "busy");
+    assertEquals(RetryAction.RetryDecision.RETRY,
+        policy.shouldRetry(busy, 0, 0, false).action);
+    assertEquals(RetryAction.RetryDecision.RETRY,
+        policy.shouldRetry(busy, 1, 0, false).action);
+    assertEquals(RetryAction.RetryDecision.FAIL,
+        policy.shouldRetry(busy, 2, 0, false).action);
+
+    // Retries are limited separately from failovers, and count all the
+    // attempts made, failovers included
+    policy = RetryPolicies.failoverOnNetworkException(
+        TRY_ONCE_THEN_FAIL, 2, 5, 10, 100);
+    assertEquals(RetryAction.RetryDecision.RETRY,
+        policy.shouldRetry(busy, 4, 1, false).action);
+    assertEquals(RetryAction.RetryDecision.FAIL,
+        policy.shouldRetry(busy, 5, 1, false).action);
+    assertEquals(RetryAction.RetryDecision.FAIL,
+        policy.shouldRetry(busy, 3, 2, false).action);
+  }
+
 }
@@ -22,7 +22,10 @@
 import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -49,6 +52,7 @@
 import org.apache.hadoop.util.ToolRunner;
 
 import com.google.common.base.Joiner;
+import com.google.common.primitives.Ints;
 import com.google.protobuf.BlockingService;
 
 /**
@@ -58,6 +62,7 @@
 public class RPCCallBenchmark implements Tool, Configurable {
   private Configuration conf;
   private AtomicLong callCount = new AtomicLong(0);
+  private LatencyHistogram latencies = new LatencyHistogram();
   private static ThreadMXBean threadBean =
     ManagementFactory.getThreadMXBean();
   
@@ -66,6 +71,7 @@ private static class MyOptions {
     private int serverThreads = 0;
     private int serverReaderThreads = 1;
     private int clientThreads = 0;
+    private int[] clientThreadCounts = new int[0];
     private String host = "0.0.0.0";
     private int port = 0;
     public int secondsToRun = 15;
@@ -110,8 +116,9 @@ private Options buildOptions() {
       
       opts.addOption(
         OptionBuilder.withLongOpt("clientThreads").hasArg(true)
-        .withArgName("numthreads")
-        .withDescription("number of client threads to run (or 0 to not run client)")
+        .withArgName("numthreads[,numthreads...]")
+        .withDescription("number of client threads to run (or 0 to not run client)."
+            + " With a list, the clients are run with each number in turn")
         .create("c"));
 
       opts.addOption(
@@ -169,7 +176,12 @@ private void processOptions(CommandLine line, Options opts)
         serverReaderThreads = Integer.parseInt(line.getOptionValue('r'));
       }
       if (line.hasOption('c')) {
-        clientThreads = Integer.parseInt(line.getOptionValue('c'));
+        String[] counts = line.getOptionValue('c').split(",");
+        clientThreadCounts = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+          clientThreadCounts[i] = Integer.parseInt(counts[i].trim());
+          clientThreads = Math.max(clientThreads, clientThreadCounts[i]);
+        }
       }
       if (line.hasOption('t')) {
         secondsToRun = Integer.parseInt(line.getOptionValue('t'));
@@ -215,7 +227,8 @@ public int getPort() {
     public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
-          + clientThreads + "\nhost=" + host + "\nport=" + getPort()
+          + Joiner.on(",").join(Ints.asList(clientThreadCounts))
+          + "\nhost=" + host + "\nport=" + getPort()
           + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
     }
   }
@@ -260,6 +273,29 @@ private long getTotalCpuTime(Iterable<? extends Thread> threads) {
     }
     return total;
   }
+
+  /**
+   * @return the number of bytes allocated so far by all live threads in
+   *         the JVM, or -1 if the JVM does not measure it
+   */
+  private static long getTotalAllocatedBytes() {
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean bean =
+      (com.sun.management.ThreadMXBean)threadBean;
+    if (!bean.isThreadAllocatedMemorySupported() ||
+        !bean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      if (bytes > 0) {
+        total += bytes;
+      }
+    }
+    return total;
+  }
   
   @Override
   public int run(String[] args) throws Exception {
@@ -273,50 +309,18 @@ public int run(String[] args) throws Exception {
 
     Server server = startServer(opts);
     try {
-      
-      TestContext ctx = setupClientTestContext(opts);
-      if (ctx != null) {
-        long totalCalls = 0;
-        ctx.startThreads();
-        long veryStart = System.nanoTime();
-
-        // Loop printing results every second until the specified
-        // time has elapsed
-        for (int i = 0; i < opts.secondsToRun ; i++) {
-          long st = System.nanoTime();
-          ctx.waitFor(1000);
-          long et = System.nanoTime();
-          long ct = callCount.getAndSet(0);
-          totalCalls += ct;
-          double callsPerSec = (ct * 1000000000)/(et - st);
-          System.out.println("Calls per second: " + callsPerSec);
+      if (opts.clientThreads > 0) {
+        List<String> summary = new ArrayList<String>();
+        for (int numThreads : opts.clientThreadCounts) {
+          summary.add(runClients(opts, numThreads, server));
         }
-        
-        // Print results
-
-        if (totalCalls > 0) {
-          long veryEnd = System.nanoTime();
-          double callsPerSec =
-            (totalCalls * 1000000000)/(veryEnd - veryStart);
-          long cpuNanosClient = getTotalCpuTime(ctx.getTestThreads());
-          long cpuNanosServer = -1;
-          if (server != null) {
-            cpuNanosServer = getTotalCpuTime(server.getHandlers());; 
+        if (summary.size() > 1) {
+          System.out.println("====== Summary ======");
+          System.out.println("clients\tcalls/s\tp50 (us)\tp99 (us)");
+          for (String line : summary) {
+            System.out.println(line);
           }
-          System.out.println("====== Results ======");
-          System.out.println("Options:\n" + opts);
-          System.out.println("Total calls per second: " + callsPerSec);
-          System.out.println("CPU time per call on client: " +
-              (cpuNanosClient / totalCalls) + " ns");
-          if (server != null) {
-            System.out.println("CPU time per call on server: " +
-                (cpuNanosServer / totalCalls) + " ns");
-          }
-        } else {
-          System.out.println("No calls!");
         }
-
-        ctx.stop();
       } else {
         while (true) {
           Thread.sleep(10000);
@@ -331,16 +335,83 @@ public int run(String[] args) throws Exception {
     return 0;
   }
 
+  /**
+   * Run the given number of client threads for the configured time, and
+   * print the results.
+   * @return a line summarizing the throughput and latency of the run
+   */
+  private String runClients(MyOptions opts, int numThreads, Server server)
+      throws Exception {
+    TestContext ctx = setupClientTestContext(opts, numThreads);
+    callCount.set(0);
+    latencies.reset();
+    long totalCalls = 0;
+    long allocatedAtStart = getTotalAllocatedBytes();
+    long cpuNanosServerAtStart = 0;
+    if (server != null) {
+      cpuNanosServerAtStart = getTotalCpuTime(server.getHandlers());
+    }
+    ctx.startThreads();
+    long veryStart = System.nanoTime();
 
-  private TestContext setupClientTestContext(final MyOptions opts)
-      throws IOException, InterruptedException {
-    if (opts.clientThreads <= 0) {
-      return null;
+    // Loop printing results every second until the specified
+    // time has elapsed
+    for (int i = 0; i < opts.secondsToRun ; i++) {
+      long st = System.nanoTime();
+      ctx.waitFor(1000);
+      long et = System.nanoTime();
+      long ct = callCount.getAndSet(0);
+      totalCalls += ct;
+      double callsPerSec = (ct * 1000000000)/(et - st);
+      System.out.println("Calls per second: " + callsPerSec);
     }
+    
+    // Print results
 
+    double callsPerSec = 0;
+    if (totalCalls > 0) {
+      long veryEnd = System.nanoTime();
+      long allocatedAtEnd = getTotalAllocatedBytes();
+      callsPerSec = (totalCalls * 1000000000)/(veryEnd - veryStart);
+      long cpuNanosClient = getTotalCpuTime(ctx.getTestThreads());
+      long cpuNanosServer = -1;
+      if (server != null) {
+        cpuNanosServer =
+          getTotalCpuTime(server.getHandlers()) - cpuNanosServerAtStart;
+      }
+      System.out.println("====== Results ======");
+      System.out.println("Options:\n" + opts);
+      System.out.println("Client threads in this run: " + numThreads);
+      System.out.println("Total calls per second: " + callsPerSec);
+      System.out.println("Median latency: " +
+          latencies.getPercentile(50) + " us");
+      System.out.println("99th percentile latency: " +
+          latencies.getPercentile(99) + " us");
+      System.out.println("CPU time per call on client: " +
+          (cpuNanosClient / totalCalls) + " ns");
+      if (server != null) {
+        System.out.println("CPU time per call on server: " +
+            (cpuNanosServer / totalCalls) + " ns");
+      }
+      if (allocatedAtStart >= 0) {
+        // Includes the client threads, if they run in this process.
+        System.out.println("Bytes allocated per call: " +
+            ((allocatedAtEnd - allocatedAtStart) / totalCalls));
+      }
+    } else {
+      System.out.println("No calls!");
+    }
+
+    ctx.stop();
+    return numThreads + "\t" + callsPerSec + "\t" +
+        latencies.getPercentile(50) + "\t" + latencies.getPercentile(99);
+  }
+
+  private TestContext setupClientTestContext(final MyOptions opts,
+      int numThreads) throws IOException, InterruptedException {
     // Set up a separate proxy for each client thread,
     // rather than making them share TCP pipes.
-    int numProxies = opts.clientThreads;
+    int numProxies = numThreads;
     final RpcServiceWrapper proxies[] = new RpcServiceWrapper[numProxies];
     for (int i = 0; i < numProxies; i++) {
       proxies[i] =
@@ -362,13 +433,15 @@ public RpcServiceWrapper run() throws Exception {
 
     // Create the clients in a test context
     TestContext ctx = new TestContext();
-    for (int i = 0; i < opts.clientThreads; i++) {
+    for (int i = 0; i < numThreads; i++) {
       final RpcServiceWrapper proxy = proxies[i % numProxies];
       
       ctx.addThread(new MultithreadedTestUtil.RepeatingTestThread(ctx) {
         @Override
         public void doAnAction() throws Exception {
+          long start = System.nanoTime();
           proxy.doEcho(echoMessage);
+          latencies.add(System.nanoTime() - start);
           callCount.incrementAndGet();
         }
       });
@@ -376,6 +449,44 @@ public void doAnAction() throws Exception {
     return ctx;
   }
 
+  /**
+   * A histogram of call latencies, in buckets of 10us up to 100ms.
+   * Slower calls are counted in the last bucket.
+   */
+  private static class LatencyHistogram {
+    private static final int BUCKET_MICROS = 10;
+    private final AtomicLongArray buckets = new AtomicLongArray(10001);
+
+    void add(long nanos) {
+      int bucket = (int)Math.min(nanos / 1000 / BUCKET_MICROS,
+          buckets.length() - 1);
+      buckets.incrementAndGet(bucket);
+    }
+
+    void reset() {
+      for (int i = 0; i < buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+    }
+
+    /** @return the given percentile of the latencies, in microseconds */
+    long getPercentile(double percentile) {
+      long total = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        total += buckets.get(i);
+      }
+      long target = (long)Math.ceil(total * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= target && seen > 0) {
+          return (i + 1) * BUCKET_MICROS;
+        }
+      }
+      return 0;
+    }
+  }
+
   /**
    * Simple interface that can be implemented either by the
    * protobuf or writable implementations.
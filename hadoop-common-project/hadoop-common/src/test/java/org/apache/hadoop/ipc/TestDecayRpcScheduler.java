@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestDecayRpcScheduler {
+  private Configuration conf;
+
+  private static Schedulable newCall(String user) {
+    Schedulable call = Mockito.mock(Schedulable.class);
+    Mockito.doReturn(UserGroupInformation.createRemoteUser(user))
+        .when(call).getUserGroupInformation();
+    return call;
+  }
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    conf.setLong(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_KEY,
+        Long.MAX_VALUE / 2);
+  }
+
+  @Test
+  public void testPriorityByShareOfCalls() {
+    DecayRpcScheduler scheduler = new DecayRpcScheduler(4, conf);
+    Schedulable a = newCall("a");
+    Schedulable b = newCall("b");
+    Schedulable c = newCall("c");
+
+    // a starts with all of the calls, then b has a half and c a third.
+    assertEquals(3, scheduler.getPriorityLevel(a));
+    assertEquals(2, scheduler.getPriorityLevel(b));
+    assertEquals(2, scheduler.getPriorityLevel(c));
+    for (int i = 0; i < 20; i++) {
+      scheduler.getPriorityLevel(a);
+    }
+    // a has 22 of 24 calls, so c's share is below 1/8.
+    assertEquals(3, scheduler.getPriorityLevel(a));
+    assertEquals(0, scheduler.getPriorityLevel(c));
+  }
+
+  @Test
+  public void testDecay() {
+    conf.setFloat(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_FACTOR_KEY, 0.5f);
+    DecayRpcScheduler scheduler = new DecayRpcScheduler(2, conf);
+    Schedulable a = newCall("a");
+    Schedulable b = newCall("b");
+    for (int i = 0; i < 8; i++) {
+      scheduler.getPriorityLevel(a);
+    }
+    scheduler.getPriorityLevel(b);
+    assertEquals(8, scheduler.getCallCount("a"));
+    assertEquals(9, scheduler.getTotalCallCount());
+
+    scheduler.decayCallCounts();
+    assertEquals(4, scheduler.getCallCount("a"));
+    // b's count decayed to zero, so it is forgotten.
+    assertEquals(0, scheduler.getCallCount("b"));
+    assertEquals(4, scheduler.getTotalCallCount());
+  }
+
+  @Test
+  public void testConfiguredThresholds() {
+    conf.set(CommonConfigurationKeys.IPC_SERVER_SCHEDULER_THRESHOLDS_KEY,
+        "10, 90");
+    DecayRpcScheduler scheduler = new DecayRpcScheduler(3, conf);
+    Schedulable a = newCall("a");
+    Schedulable b = newCall("b");
+    assertEquals(2, scheduler.getPriorityLevel(a));
+    // b has half the calls: above 10% but not above 90%.
+    assertEquals(1, scheduler.getPriorityLevel(b));
+
+    conf.set(CommonConfigurationKeys.IPC_SERVER_SCHEDULER_THRESHOLDS_KEY,
+        "10");
+    try {
+      new DecayRpcScheduler(3, conf);
+      fail("Accepted the wrong number of thresholds");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnknownUser() {
+    DecayRpcScheduler scheduler = new DecayRpcScheduler(2, conf);
+    Schedulable call = Mockito.mock(Schedulable.class);
+    assertEquals(1, scheduler.getPriorityLevel(call));
+    assertEquals(1,
+        scheduler.getCallCount(DecayRpcScheduler.UNKNOWN_IDENTITY));
+  }
+}
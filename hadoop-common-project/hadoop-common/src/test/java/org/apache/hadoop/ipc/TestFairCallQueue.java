@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFairCallQueue {
+  private Configuration conf;
+
+  /** A call from the given user. */
+  private static class TestCall implements Schedulable {
+    private final UserGroupInformation ugi;
+    private int level;
+
+    TestCall(String user) {
+      this.ugi = UserGroupInformation.createRemoteUser(user);
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return ugi;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return level;
+    }
+
+    @Override
+    public void setPriorityLevel(int level) {
+      this.level = level;
+    }
+  }
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    // Don't let the counts decay during the tests.
+    conf.setLong(
+        CommonConfigurationKeys.IPC_SERVER_SCHEDULER_DECAY_PERIOD_MS_KEY,
+        Long.MAX_VALUE / 2);
+  }
+
+  @Test
+  public void testHeavyCallerIsDeprioritized() throws Exception {
+    FairCallQueue<TestCall> fcq = new FairCallQueue<TestCall>(100, 2, conf);
+    for (int i = 0; i < 9; i++) {
+      fcq.put(new TestCall("heavy"));
+    }
+    TestCall light = new TestCall("light");
+    fcq.put(light);
+    assertEquals(9, fcq.size(1));
+    assertEquals(1, fcq.size(0));
+    assertEquals(0, light.getPriorityLevel());
+    assertEquals(10, fcq.size());
+
+    // The light caller's call is served first, despite arriving last.
+    assertSame(light, fcq.take());
+    for (int i = 0; i < 9; i++) {
+      assertEquals("heavy",
+          fcq.take().getUserGroupInformation().getShortUserName());
+    }
+    assertNull(fcq.poll());
+    assertNull(fcq.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testWeightedRoundRobin() throws Exception {
+    conf.set(CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_WEIGHTS_KEY, "2,1");
+    FairCallQueue<TestCall> fcq = new FairCallQueue<TestCall>(100, 2, conf);
+    // The first caller takes level 1, and those which follow level 0.
+    List<TestCall> low = new ArrayList<TestCall>();
+    for (int i = 0; i < 3; i++) {
+      TestCall c = new TestCall("heavy");
+      fcq.put(c);
+      low.add(c);
+    }
+    List<TestCall> high = new ArrayList<TestCall>();
+    for (int i = 0; i < 3; i++) {
+      TestCall c = new TestCall("light" + i);
+      fcq.put(c);
+      high.add(c);
+    }
+    assertEquals(3, fcq.size(0));
+    assertEquals(3, fcq.size(1));
+
+    // Two calls from level 0 are served for each from level 1.
+    assertSame(high.get(0), fcq.take());
+    assertSame(high.get(1), fcq.take());
+    assertSame(low.get(0), fcq.take());
+    assertSame(high.get(2), fcq.take());
+    // Level 0 is empty, so its turns fall through to level 1.
+    assertSame(low.get(1), fcq.take());
+    assertSame(low.get(2), fcq.take());
+  }
+
+  @Test
+  public void testMultiplexerDefaultWeights() {
+    WeightedRoundRobinMultiplexer mux = new WeightedRoundRobinMultiplexer(3,
+        conf);
+    int[] expected = { 0, 0, 0, 0, 1, 1, 2, 0 };
+    for (int level : expected) {
+      assertEquals(level, mux.getAndAdvanceCurrentLevel());
+    }
+  }
+
+  @Test
+  public void testOfferFailsWhenLevelIsFull() throws Exception {
+    FairCallQueue<TestCall> fcq = new FairCallQueue<TestCall>(4, 2, conf);
+    assertEquals(4, fcq.remainingCapacity());
+    // The heavy caller fills its level...
+    int accepted = 0;
+    while (fcq.offer(new TestCall("heavy"))) {
+      accepted++;
+    }
+    assertEquals(2, accepted);
+    // ...but the light caller can still get in.
+    assertTrue(fcq.offer(new TestCall("light")));
+
+    List<TestCall> drained = new ArrayList<TestCall>();
+    assertEquals(3, fcq.drainTo(drained));
+    assertEquals(0, fcq.size());
+  }
+
+  @Test
+  public void testIterateAndRemove() throws Exception {
+    FairCallQueue<TestCall> fcq = new FairCallQueue<TestCall>(100, 2, conf);
+    TestCall heavy1 = new TestCall("heavy");
+    TestCall heavy2 = new TestCall("heavy");
+    TestCall light = new TestCall("light");
+    fcq.put(heavy1);
+    fcq.put(heavy2);
+    fcq.put(light);
+
+    // Higher priority levels come first.
+    List<TestCall> seen = new ArrayList<TestCall>();
+    for (TestCall c : fcq) {
+      seen.add(c);
+    }
+    assertEquals(3, seen.size());
+    assertSame(light, seen.get(0));
+    assertSame(heavy1, seen.get(1));
+    assertSame(heavy2, seen.get(2));
+    assertTrue(fcq.contains(heavy2));
+    assertTrue(fcq.toString().length() > 0);
+
+    // Removal takes the call's permit with it, so consumers never wait
+    // for a call which is no longer there.
+    assertTrue(fcq.remove(heavy2));
+    assertFalse(fcq.remove(heavy2));
+    assertFalse(fcq.contains(heavy2));
+    Iterator<TestCall> it = fcq.iterator();
+    while (it.hasNext()) {
+      if (it.next() == light) {
+        it.remove();
+      }
+    }
+    assertEquals(1, fcq.size());
+    assertSame(heavy1, fcq.poll());
+    assertNull(fcq.poll());
+  }
+}
@@ -20,7 +20,9 @@
 
 import org.apache.commons.logging.*;
 
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Writable;
@@ -40,6 +42,13 @@
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.SocketFactory;
 
 import org.junit.Test;
@@ -157,6 +166,28 @@ public void testSerial() throws Exception {
     testSerial(3, true, 2, 5, 10);
   }
 
+  /** Test that calls are served correctly through a FairCallQueue. */
+  @Test
+  public void testSerialWithFairCallQueue() throws Exception {
+    conf.setClass(CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_IMPL_KEY,
+        FairCallQueue.class, BlockingQueue.class);
+    try {
+      testSerial(3, false, 2, 5, 100);
+    } finally {
+      conf.unset(CommonConfigurationKeys.IPC_SERVER_CALLQUEUE_IMPL_KEY);
+    }
+  }
+
+  @Test
+  public void testSerialWithHandlerBatches() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_KEY, 8);
+    try {
+      testSerial(2, false, 2, 10, 200);
+    } finally {
+      conf.unset(CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_KEY);
+    }
+  }
+
   public void testSerial(int handlerCount, boolean handlerSleep, 
                          int clientCount, int callerCount, int callCount)
     throws Exception {
@@ -184,6 +215,178 @@ public void testSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 	
+  /** Test that many calls can be outstanding from a single thread. */
+  @Test
+  public void testAsyncCall() throws Exception {
+    Server server = new TestServer(3, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      Client.ConnectionId remoteId =
+          Client.ConnectionId.getConnectionId(addr, null, null, 0, conf);
+      List<LongWritable> params = new ArrayList<LongWritable>();
+      List<Future<Writable>> futures = new ArrayList<Future<Writable>>();
+      for (int i = 0; i < 1000; i++) {
+        LongWritable param = new LongWritable(RANDOM.nextLong());
+        params.add(param);
+        futures.add(client.asyncCall(RPC.RpcKind.RPC_BUILTIN, param,
+            remoteId));
+      }
+      for (int i = 0; i < params.size(); i++) {
+        assertEquals(params.get(i), futures.get(i).get());
+      }
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * Test that responses of mixed sizes, queued behind each other on one
+   * connection and written together, each reach their own caller, when
+   * handlers take calls in batches and large responses are only written
+   * in part at a time.
+   */
+  @Test(timeout=120000)
+  public void testCoalescedResponses() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_KEY, 4);
+    Server server;
+    try {
+      server = new TestServer(3, false, BytesWritable.class, null);
+    } finally {
+      conf.unset(CommonConfigurationKeys.IPC_SERVER_HANDLER_BATCH_SIZE_KEY);
+    }
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(BytesWritable.class, conf);
+    try {
+      Client.ConnectionId remoteId =
+          Client.ConnectionId.getConnectionId(addr, null, null, 0, conf);
+      List<BytesWritable> params = new ArrayList<BytesWritable>();
+      List<Future<Writable>> futures = new ArrayList<Future<Writable>>();
+      for (int i = 0; i < 300; i++) {
+        // Mostly small responses, which are coalesced, with some larger
+        // than a socket buffer among them
+        byte[] bytes = new byte[i % 10 == 0 ? 512 * 1024 : RANDOM.nextInt(100)];
+        RANDOM.nextBytes(bytes);
+        BytesWritable param = new BytesWritable(bytes);
+        params.add(param);
+        futures.add(client.asyncCall(RPC.RpcKind.RPC_BUILTIN, param,
+            remoteId));
+      }
+      for (int i = 0; i < params.size(); i++) {
+        assertEquals(params.get(i), futures.get(i).get());
+      }
+      assertEquals(1, server.getNumOpenConnections());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /** Test that an async call fails with the same exception as a sync one. */
+  @Test
+  public void testAsyncCallFailure() throws Exception {
+    Client client = new Client(LongWritable.class, conf);
+    InetSocketAddress address = new InetSocketAddress("127.0.0.1", 10);
+    try {
+      Client.ConnectionId remoteId =
+          Client.ConnectionId.getConnectionId(address, null, null, 0, conf);
+      Future<Writable> future = client.asyncCall(RPC.RpcKind.RPC_BUILTIN,
+          new LongWritable(RANDOM.nextLong()), remoteId);
+      future.get();
+      fail("Expected an exception to have been thrown");
+    } catch (ExecutionException e) {
+      String message = e.getCause().getMessage();
+      String addressText = address.getHostName() + ":" + address.getPort();
+      assertTrue("Did not find "+addressText+" in "+message,
+          message.contains(addressText));
+    } finally {
+      client.stop();
+    }
+  }
+
+  /** Test that calls are spread over several connections, if configured. */
+  @Test
+  public void testConnectionsPerAddress() throws Exception {
+    Configuration multiConf = new Configuration(conf);
+    multiConf.setInt(
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTIONS_PER_ADDRESS_KEY, 3);
+    Server server = new TestServer(3, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, multiConf);
+    try {
+      for (int i = 0; i < 6; i++) {
+        LongWritable param = new LongWritable(RANDOM.nextLong());
+        assertEquals(param, client.call(param, addr, null, null, 0, conf));
+      }
+      assertEquals(3, server.getNumOpenConnections());
+      assertEquals(1, client.getConnectionIds().size());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * Test that a call to an unresolved address leaves nothing behind in the
+   * connection pool, so that the client can still be stopped.
+   */
+  @Test(timeout=60000)
+  public void testStopAfterUnresolvedAddress() throws Exception {
+    Client client = new Client(LongWritable.class, conf);
+    InetSocketAddress address =
+        InetSocketAddress.createUnresolved("unresolved.invalid", 10);
+    try {
+      client.call(new LongWritable(RANDOM.nextLong()),
+          address, null, null, 0, conf);
+      fail("Expected an exception to have been thrown");
+    } catch (UnknownHostException e) {
+      // expected
+    }
+    assertTrue(client.getConnectionIds().isEmpty());
+    client.stop();
+  }
+
+  /**
+   * Test that an interrupted caller fails without its request being sent,
+   * and that the connection goes on serving other calls.
+   */
+  @Test(timeout=60000)
+  public void testInterruptedCallIsNotSent() throws Exception {
+    final AtomicInteger served = new AtomicInteger();
+    Server server = new TestServer(1, false) {
+      @Override
+      public Writable call(RPC.RpcKind rpcKind, String protocol,
+          Writable param, long receiveTime) throws IOException {
+        served.incrementAndGet();
+        return param;
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      LongWritable param = new LongWritable(RANDOM.nextLong());
+      assertEquals(param, client.call(param, addr, null, null, 0, conf));
+      Thread.currentThread().interrupt();
+      try {
+        client.call(param, addr, null, null, 0, conf);
+        fail("Expected an exception to have been thrown");
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof InterruptedException);
+        assertTrue(Thread.interrupted());
+      }
+      assertEquals(param, client.call(param, addr, null, null, 0, conf));
+      assertEquals(2, served.get());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test
   public void testStandAloneClient() throws Exception {
     Client client = new Client(LongWritable.class, conf);
@@ -50,4 +50,16 @@ public void testBenchmarkWithProto() throws Exception {
       "--engine", "protobuf"});
     assertEquals(0, rc);
   }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithConcurrencyLevels() throws Exception {
+    int rc = ToolRunner.run(new RPCCallBenchmark(),
+        new String[] {
+      "--clientThreads", "1,10",
+      "--serverThreads", "10",
+      "--time", "3",
+      "--messageSize", "128",
+      "--engine", "protobuf"});
+    assertEquals(0, rc);
+  }
 }
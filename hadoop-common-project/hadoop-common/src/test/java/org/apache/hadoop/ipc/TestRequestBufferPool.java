@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestRequestBufferPool {
+
+  @Test
+  public void testSmallRequestsReuseBuffers() {
+    RequestBufferPool pool = new RequestBufferPool(100, 2);
+    ByteBuffer b1 = pool.getBuffer(10);
+    assertEquals(100, b1.capacity());
+    assertEquals(0, b1.position());
+    assertEquals(10, b1.remaining());
+
+    b1.put(new byte[10]);
+    pool.returnBuffer(b1);
+    assertEquals(1, pool.size());
+
+    ByteBuffer b2 = pool.getBuffer(100);
+    assertSame(b1, b2);
+    assertEquals(0, b2.position());
+    assertEquals(100, b2.remaining());
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testLargeRequestsAreNotPooled() {
+    RequestBufferPool pool = new RequestBufferPool(100, 2);
+    ByteBuffer b = pool.getBuffer(101);
+    assertEquals(101, b.capacity());
+    pool.returnBuffer(b);
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testPoolIsBounded() {
+    RequestBufferPool pool = new RequestBufferPool(100, 2);
+    ByteBuffer[] bufs = new ByteBuffer[3];
+    for (int i = 0; i < bufs.length; i++) {
+      bufs[i] = pool.getBuffer(50);
+    }
+    for (ByteBuffer b : bufs) {
+      pool.returnBuffer(b);
+    }
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  public void testDisabledPool() {
+    RequestBufferPool pool = new RequestBufferPool(100, 0);
+    ByteBuffer b = pool.getBuffer(10);
+    assertEquals(10, b.capacity());
+    pool.returnBuffer(b);
+    assertEquals(0, pool.size());
+  }
+}
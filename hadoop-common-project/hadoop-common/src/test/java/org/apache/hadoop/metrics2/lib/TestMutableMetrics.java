@@ -29,9 +29,11 @@
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.junit.Assert.assertEquals;
 
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.util.Quantile;
@@ -96,6 +98,52 @@ public class TestMutableMetrics {
                            eq(1.0, EPSILON));
   }
 
+  /**
+   * Updates from many threads at once should all be counted
+   */
+  @Test(timeout = 30000)
+  public void testConcurrentUpdates() throws Exception {
+    final int numThreads = 16;
+    final int numUpdates = 10000;
+    MetricsRegistry registry = new MetricsRegistry("test");
+    final MutableCounterLong counter = registry.newCounter("c1", "counter", 0L);
+    final MutableStat stat = registry.newStat("s1", "stat", "Ops", "Time", true);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int value = t + 1;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < numUpdates; i++) {
+            counter.incr();
+            counter.incr(2);
+            stat.add(value);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(3L * numThreads * numUpdates, counter.value());
+    MetricsRecordBuilder rb = mockMetricsRecordBuilder();
+    registry.snapshot(rb, false);
+    assertCounter("c1", 3L * numThreads * numUpdates, rb);
+    assertCounter("S1NumOps", (long) numThreads * numUpdates, rb);
+    assertGauge("S1AvgTime", (numThreads + 1) / 2.0, rb);
+    assertGauge("S1IMinTime", 1.0, rb);
+    assertGauge("S1IMaxTime", (double) numThreads, rb);
+  }
+
   interface TestProtocol {
     void foo();
     void bar();
@@ -64,4 +64,32 @@ public class TestSampleStat {
     assertEquals("max", SampleStat.MinMax.DEFAULT_MAX_VALUE, stat.max(), EPSILON);
   }
 
+  /**
+   * Adding stats together should match adding their samples one by one
+   */
+  @Test public void testAddStat() {
+    SampleStat all = new SampleStat();
+    SampleStat a = new SampleStat();
+    SampleStat b = new SampleStat();
+    SampleStat empty = new SampleStat();
+    for (int i = 1; i <= 10; i++) {
+      all.add(i * i);
+      (i % 3 == 0 ? a : b).add(i * i);
+    }
+
+    SampleStat merged = new SampleStat();
+    merged.add(empty).add(a).add(empty).add(b);
+    assertEquals("num samples", all.numSamples(), merged.numSamples());
+    assertEquals("mean", all.mean(), merged.mean(), 1e-9);
+    assertEquals("variance", all.variance(), merged.variance(), 1e-9);
+    assertEquals("min", 1.0, merged.min(), EPSILON);
+    assertEquals("max", 100.0, merged.max(), EPSILON);
+
+    // Samples added after a merge carry on from the merged stat
+    all.add(7);
+    merged.add(7);
+    assertEquals("mean", all.mean(), merged.mean(), 1e-9);
+    assertEquals("variance", all.variance(), merged.variance(), 1e-9);
+  }
+
 }
@@ -24,10 +24,16 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -87,8 +93,61 @@ public static void addToBlackList(String user) throws IOException {
     }
   }
 
+  /**
+   * A mapping which counts its lookups and can be made to block them.
+   */
+  public static class CountingGroupMapping
+      implements GroupMappingServiceProvider {
+    static final AtomicInteger lookups = new AtomicInteger();
+    static volatile List<String> groups = Arrays.asList(myGroups);
+    static volatile CountDownLatch started = new CountDownLatch(0);
+    static volatile CountDownLatch proceed = new CountDownLatch(0);
+
+    @Override
+    public List<String> getGroups(String user) throws IOException {
+      lookups.incrementAndGet();
+      started.countDown();
+      try {
+        proceed.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return new LinkedList<String>(groups);
+    }
+
+    @Override
+    public void cacheGroupsRefresh() throws IOException {
+    }
+
+    @Override
+    public void cacheGroupsAdd(List<String> groups) throws IOException {
+    }
+
+    static void reset() {
+      lookups.set(0);
+      groups = Arrays.asList(myGroups);
+      started = new CountDownLatch(0);
+      proceed = new CountDownLatch(0);
+    }
+  }
+
+  private static Configuration countingConf() {
+    CountingGroupMapping.reset();
+    Configuration conf = new Configuration();
+    conf.setClass(CommonConfigurationKeys.HADOOP_SECURITY_GROUP_MAPPING,
+        CountingGroupMapping.class, GroupMappingServiceProvider.class);
+    conf.setLong(CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS, 1);
+    conf.setLong(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS, 1);
+    return conf;
+  }
+
   @Test
   public void TestGroupsCaching() throws Exception {
+    // the failed lookup below must not be remembered
+    Configuration conf = new Configuration(TestGroupsCaching.conf);
+    conf.setLong(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_NEGATIVE_CACHE_SECS, 0);
     Groups groups = new Groups(conf);
     groups.cacheGroupsAdd(Arrays.asList(myGroups));
     groups.refresh();
@@ -117,4 +176,145 @@ public void TestGroupsCaching() throws Exception {
     FakeGroupMapping.clearBlackList();
     assertTrue(groups.getGroups("user1").size() == 2);
   }
+
+  @Test
+  public void testNegativeCaching() throws Exception {
+    Configuration conf = countingConf();
+    conf.setBoolean(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD,
+        true);
+    Groups groups = new Groups(conf);
+    CountingGroupMapping.groups = new LinkedList<String>();
+    for (int i = 0; i < 3; i++) {
+      try {
+        groups.getGroups("nobody");
+        fail();
+      } catch (IOException ioe) {
+        assertTrue(ioe.getMessage().startsWith("No groups found"));
+      }
+    }
+    assertEquals(1, CountingGroupMapping.lookups.get());
+
+    // the user is looked up again once the negative entry expires, and
+    // by the caller, even with background reload
+    CountingGroupMapping.groups = Arrays.asList(myGroups);
+    Thread.sleep(1100);
+    assertEquals(2, groups.getGroups("nobody").size());
+    assertEquals(2, CountingGroupMapping.lookups.get());
+  }
+
+  @Test
+  public void testBackgroundReload() throws Exception {
+    Configuration conf = countingConf();
+    conf.setBoolean(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD,
+        true);
+    Groups groups = new Groups(conf);
+    assertEquals(2, groups.getGroups("me").size());
+    Thread.sleep(1100);
+
+    // the expired entry is returned while the reload is blocked
+    long staleHits = getLongCounter("GroupsCacheStaleHits",
+        getMetrics("UgiMetrics"));
+    CountingGroupMapping.groups = Arrays.asList("grp3");
+    CountingGroupMapping.started = new CountDownLatch(1);
+    CountingGroupMapping.proceed = new CountDownLatch(1);
+    assertEquals(Arrays.asList(myGroups), groups.getGroups("me"));
+    assertTrue(CountingGroupMapping.started.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(myGroups), groups.getGroups("me"));
+    assertEquals(2, CountingGroupMapping.lookups.get());
+    assertEquals(staleHits + 2, getLongCounter("GroupsCacheStaleHits",
+        getMetrics("UgiMetrics")));
+
+    CountingGroupMapping.proceed.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (groups.getGroups("me").size() != 1) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    assertEquals(Arrays.asList("grp3"), groups.getGroups("me"));
+    assertEquals(2, CountingGroupMapping.lookups.get());
+  }
+
+  @Test
+  public void testSynchronousReload() throws Exception {
+    // background reload is off by default
+    Groups groups = new Groups(countingConf());
+    assertEquals(2, groups.getGroups("me").size());
+    Thread.sleep(1100);
+    CountingGroupMapping.groups = Arrays.asList("grp3");
+    assertEquals(Arrays.asList("grp3"), groups.getGroups("me"));
+    assertEquals(2, CountingGroupMapping.lookups.get());
+  }
+
+  @Test
+  public void testRefreshDuringLookup() throws Exception {
+    final Groups groups = new Groups(countingConf());
+    CountingGroupMapping.started = new CountDownLatch(1);
+    CountingGroupMapping.proceed = new CountDownLatch(1);
+    final AtomicInteger found = new AtomicInteger();
+    Thread lookup = new Thread() {
+      @Override
+      public void run() {
+        try {
+          found.set(groups.getGroups("me").size());
+        } catch (IOException e) {
+          LOG.error("Lookup failed", e);
+        }
+      }
+    };
+    lookup.start();
+    assertTrue(CountingGroupMapping.started.await(10, TimeUnit.SECONDS));
+
+    // the lookup begun before the refresh gets its groups, but does not
+    // cache them, so the next lookup asks the provider again
+    groups.refresh();
+    CountingGroupMapping.proceed.countDown();
+    lookup.join();
+    assertEquals(2, found.get());
+    assertEquals(2, groups.getGroups("me").size());
+    assertEquals(2, CountingGroupMapping.lookups.get());
+    assertEquals(2, groups.getGroups("me").size());
+    assertEquals(2, CountingGroupMapping.lookups.get());
+  }
+
+  @Test
+  public void testConcurrentLookupsShareLoad() throws Exception {
+    final Groups groups = new Groups(countingConf());
+    CountingGroupMapping.started = new CountDownLatch(1);
+    CountingGroupMapping.proceed = new CountDownLatch(1);
+    long misses = getLongCounter("GroupsCacheMisses",
+        getMetrics("UgiMetrics"));
+
+    final int n = 4;
+    final AtomicInteger found = new AtomicInteger();
+    Thread[] threads = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            found.addAndGet(groups.getGroups("me").size());
+          } catch (IOException e) {
+            LOG.error("Lookup failed", e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    assertTrue(CountingGroupMapping.started.await(10, TimeUnit.SECONDS));
+    // let every thread reach the lookup in progress
+    long deadline = System.currentTimeMillis() + 10000;
+    while (getLongCounter("GroupsCacheMisses", getMetrics("UgiMetrics"))
+        < misses + n) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    CountingGroupMapping.proceed.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(2 * n, found.get());
+    assertEquals(1, CountingGroupMapping.lookups.get());
+  }
 }
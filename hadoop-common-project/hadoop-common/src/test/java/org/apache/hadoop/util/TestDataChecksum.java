@@ -19,6 +19,7 @@
 
 import java.nio.ByteBuffer;
 import java.util.Random;
+import java.util.zip.Checksum;
 
 import org.apache.hadoop.fs.ChecksumException;
 import org.junit.Test;
@@ -115,6 +116,50 @@ private void doBulkTest(DataChecksum checksum, int dataLength,
     }
   }
   
+  @Test
+  public void testBulkArrayOps() throws Exception {
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      DataChecksum checksum = DataChecksum.newDataChecksum(
+          type, BYTES_PER_CHUNK);
+      Checksum single = type == DataChecksum.Type.CRC32C
+          ? new PureJavaCrc32C() : new PureJavaCrc32();
+      // Enough chunks to cover the three-at-a-time native path, and a
+      // partial chunk at the end.
+      int dataLength = BYTES_PER_CHUNK * 7 + 100;
+      int numSums = 8;
+      byte data[] = new byte[DATA_OFFSET_IN_BUFFER + dataLength];
+      new Random().nextBytes(data);
+      byte sums[] = new byte[SUMS_OFFSET_IN_BUFFER + numSums * 4];
+
+      checksum.calculateChunkedSums(data, DATA_OFFSET_IN_BUFFER, dataLength,
+          sums, SUMS_OFFSET_IN_BUFFER);
+      for (int i = 0; i < numSums; i++) {
+        int off = i * BYTES_PER_CHUNK;
+        single.reset();
+        single.update(data, DATA_OFFSET_IN_BUFFER + off,
+            Math.min(BYTES_PER_CHUNK, dataLength - off));
+        int sumOff = SUMS_OFFSET_IN_BUFFER + i * 4;
+        int stored = ((sums[sumOff] & 0xff) << 24) |
+            ((sums[sumOff + 1] & 0xff) << 16) |
+            ((sums[sumOff + 2] & 0xff) << 8) |
+            (sums[sumOff + 3] & 0xff);
+        assertEquals("chunk " + i, (int)single.getValue(), stored);
+      }
+      checksum.verifyChunkedSums(data, DATA_OFFSET_IN_BUFFER, dataLength,
+          sums, SUMS_OFFSET_IN_BUFFER, "fake file", 0);
+
+      // A bad chunk in the middle is reported at its own position.
+      data[DATA_OFFSET_IN_BUFFER + BYTES_PER_CHUNK * 4 + 1]++;
+      try {
+        checksum.verifyChunkedSums(data, DATA_OFFSET_IN_BUFFER, dataLength,
+            sums, SUMS_OFFSET_IN_BUFFER, "fake file", 1000);
+        fail("Did not throw on bad data");
+      } catch (ChecksumException ce) {
+        assertEquals(1000 + BYTES_PER_CHUNK * 4, ce.getPos());
+      }
+    }
+  }
+
   @Test
   public void testEquality() {
     assertEquals(
@@ -134,6 +179,52 @@ public void testToString() {
         DataChecksum.newDataChecksum(DataChecksum.Type.CRC32, 512).toString());
   }
 
+  @Test
+  public void testMixedHeapAndDirectBuffers() throws Exception {
+    DataChecksum checksum = DataChecksum.newDataChecksum(
+        DataChecksum.Type.CRC32C, BYTES_PER_CHUNK);
+    byte[] data = new byte[BYTES_PER_CHUNK * 3 + 7];
+    new Random(1).nextBytes(data);
+    byte[] expected = new byte[4 * 4];
+    checksum.calculateChunkedSums(data, 0, data.length, expected, 0);
+
+    // Heap data with direct checksums, and the other way round, are
+    // handled without the native code, which only takes direct buffers.
+    ByteBuffer directSums = ByteBuffer.allocateDirect(expected.length);
+    checksum.calculateChunkedSums(ByteBuffer.wrap(data), directSums);
+    byte[] got = new byte[expected.length];
+    directSums.get(got);
+    assertArrayEquals(expected, got);
+
+    ByteBuffer directData = directify(ByteBuffer.wrap(data));
+    ByteBuffer heapSums = ByteBuffer.allocate(expected.length);
+    checksum.calculateChunkedSums(directData, heapSums);
+    assertArrayEquals(expected, heapSums.array());
+    checksum.verifyChunkedSums(directData, ByteBuffer.wrap(expected),
+        "fake file", 0);
+  }
+
+  @Test
+  public void testNativeArrayBoundsAreChecked() {
+    // The bounds are checked before the native code is called, so this
+    // throws whether or not it is loaded.
+    byte[] data = new byte[BYTES_PER_CHUNK * 2];
+    try {
+      NativeCrc32.calculateChunkedSumsByteArray(BYTES_PER_CHUNK,
+          NativeCrc32.CHECKSUM_CRC32C, new byte[8], 0, data, 1, data.length);
+      fail("Did not reject data beyond the end of the array");
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      NativeCrc32.calculateChunkedSumsByteArray(BYTES_PER_CHUNK,
+          NativeCrc32.CHECKSUM_CRC32C, new byte[8], 1, data, 0, data.length);
+      fail("Did not reject checksums beyond the end of the array");
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
   private static void corruptBufferOffset(ByteBuffer buf, int offset) {
     buf.put(offset, (byte)(buf.get(offset) + 1));    
   }
@@ -138,4 +138,50 @@ public void testCustomDelimiter() throws Exception {
     lineReader.readLine(line); 
     Assert.assertEquals(("ecord"+"recor"+"core"),line.toString());
   }
+
+  @Test
+  public void testLineEnds() throws Exception {
+    /*
+     * Line ends are found a word at a time, so put lines of every length up
+     * to a few words, with each kind of line end, across buffer boundaries
+     */
+    String[] lineEnds = { "\n", "\r", "\r\n" };
+    StringBuilder data = new StringBuilder();
+    int lines = 0;
+    for (int length = 0; length < 30; length++) {
+      for (String lineEnd : lineEnds) {
+        for (int i = 0; i < length; i++) {
+          data.append((char) ('a' + (lines + i) % 26));
+        }
+        data.append(lineEnd);
+        lines++;
+      }
+    }
+    data.append("last");
+
+    for (int bufferSize : new int[] { 7, 16, 64 * 1024 }) {
+      lineReader = new LineReader(
+          new ByteArrayInputStream(data.toString().getBytes()), bufferSize);
+      line = new Text();
+      int n = 0;
+      long consumed = 0;
+      for (int length = 0; length < 30; length++) {
+        for (String lineEnd : lineEnds) {
+          StringBuilder expected = new StringBuilder();
+          for (int i = 0; i < length; i++) {
+            expected.append((char) ('a' + (n + i) % 26));
+          }
+          int read = lineReader.readLine(line);
+          Assert.assertEquals(expected.toString(), line.toString());
+          Assert.assertEquals(length + lineEnd.length(), read);
+          consumed += read;
+          n++;
+        }
+      }
+      Assert.assertEquals(4, lineReader.readLine(line));
+      Assert.assertEquals("last", line.toString());
+      Assert.assertEquals(0, lineReader.readLine(line));
+      Assert.assertEquals(data.length(), consumed + 4);
+    }
+  }
 }
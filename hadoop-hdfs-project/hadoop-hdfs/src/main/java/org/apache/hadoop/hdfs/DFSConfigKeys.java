@@ -149,6 +149,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_DEFAULT = 4;
   public static final String  DFS_WEBHDFS_ENABLED_KEY = "dfs.webhdfs.enabled";
   public static final boolean DFS_WEBHDFS_ENABLED_DEFAULT = false;
+  public static final String  DFS_WEBHDFS_KEEPALIVE_ENABLED_KEY = "dfs.webhdfs.keepalive.enabled";
+  public static final boolean DFS_WEBHDFS_KEEPALIVE_ENABLED_DEFAULT = true;
   public static final String  DFS_PERMISSIONS_ENABLED_KEY = "dfs.permissions.enabled";
   public static final boolean DFS_PERMISSIONS_ENABLED_DEFAULT = true;
   public static final String  DFS_PERSIST_BLOCKS_KEY = "dfs.persist.blocks";
@@ -408,6 +410,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_KEY = "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY = "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
   public static final String DFS_HA_AUTO_FAILOVER_ENABLED_KEY = "dfs.ha.automatic-failover.enabled";
   public static final boolean DFS_HA_AUTO_FAILOVER_ENABLED_DEFAULT = false;
@@ -433,10 +439,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_USER_NAME_KEY = "dfs.journalnode.kerberos.principal";
   public static final String  DFS_JOURNALNODE_INTERNAL_SPNEGO_USER_NAME_KEY = "dfs.journalnode.kerberos.internal.spnego.principal";
+  public static final String  DFS_JOURNALNODE_OUT_OF_ORDER_WAIT_KEY = "dfs.journalnode.out-of-order-edits.wait.ms";
+  public static final int     DFS_JOURNALNODE_OUT_OF_ORDER_WAIT_DEFAULT = 1000;
+  public static final String  DFS_JOURNALNODE_EDITS_PREALLOCATION_SIZE_KEY = "dfs.journalnode.edits.preallocation.size";
+  public static final int     DFS_JOURNALNODE_EDITS_PREALLOCATION_SIZE_DEFAULT = 8 * 1024 * 1024;
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final int     DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
   public static final int     DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT = 10;
+  public static final String  DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY = "dfs.qjournal.max-outstanding-batches";
+  public static final int     DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_DEFAULT = 1;
+  public static final String  DFS_QJOURNAL_MAX_BATCH_SIZE_KEY = "dfs.qjournal.max-batch-size.kb";
+  public static final int     DFS_QJOURNAL_MAX_BATCH_SIZE_DEFAULT = 1024;
   
   // Quorum-journal timeouts for various operations. Unlikely to need
   // to be tweaked, but configurable just in case.
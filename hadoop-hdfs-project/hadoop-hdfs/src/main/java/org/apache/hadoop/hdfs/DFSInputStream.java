@@ -641,6 +641,7 @@ private int readWithStrategy(ReaderStrategy strategy, int off, int len) throws I
         try {
           // currentNode can be left as null if previous read had a checksum
           // error on the same block. See HDFS-3067
+          long start = System.nanoTime();
           if (pos > blockEnd || currentNode == null) {
             currentNode = blockSeekTo(pos);
           }
@@ -654,6 +655,7 @@ private int readWithStrategy(ReaderStrategy strategy, int off, int len) throws I
             throw new IOException("Unexpected EOS from the reader");
           }
           if (dfsClient.stats != null && result != -1) {
+            dfsClient.stats.addReadLatency(System.nanoTime() - start);
             dfsClient.stats.incrementBytesRead(result);
           }
           return result;
@@ -983,6 +985,7 @@ public int read(long position, byte[] buffer, int offset, int length)
     if ((position < 0) || (position >= filelen)) {
       return -1;
     }
+    long start = System.nanoTime();
     int realLen = length;
     if ((position + length) > filelen) {
       realLen = (int)(filelen - position);
@@ -1013,6 +1016,7 @@ public int read(long position, byte[] buffer, int offset, int length)
     }
     assert remaining == 0 : "Wrong number of bytes read.";
     if (dfsClient.stats != null) {
+      dfsClient.stats.addReadLatency(System.nanoTime() - start);
       dfsClient.stats.incrementBytesRead(realLen);
     }
     return realLen;
@@ -1082,6 +1086,9 @@ public synchronized void seek(long targetPos) throws IOException {
     if (closed) {
       throw new IOException("Stream is closed!");
     }
+    if (dfsClient.stats != null) {
+      dfsClient.stats.incrementSeekOps(1);
+    }
     boolean done = false;
     if (pos <= targetPos && targetPos <= blockEnd) {
       //
@@ -22,10 +22,15 @@
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -38,6 +43,7 @@
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -54,12 +60,14 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncaughtExceptionHandlers;
 
@@ -119,6 +127,41 @@ public class IPCLoggerChannel implements AsyncLogger {
    */
   private final int queueSizeLimitBytes;
 
+  /**
+   * The maximum number of journal() RPCs which may be outstanding to the
+   * remote node at once. If this is greater than 1, batches are pipelined:
+   * the next batch is sent before the previous one has been acknowledged,
+   * and the JournalNode applies them in txid order. This hides the
+   * round-trip time to a distant JournalNode, which would otherwise cap
+   * the rate at which it can keep up with the quorum.
+   */
+  private final int maxOutstandingBatches;
+  
+  /**
+   * One permit per journal() RPC which may be outstanding.
+   */
+  private final Semaphore outstandingBatches;
+  
+  /**
+   * Executor on which pipelined journal() RPCs are run, or null if only
+   * one batch may be outstanding, in which case the RPCs are made directly
+   * from {@link #executor}.
+   */
+  private final ExecutorService journalExecutor;
+  
+  /**
+   * The maximum number of bytes which will be sent in a single journal()
+   * RPC when several queued batches are coalesced.
+   */
+  private final int maxBatchSizeBytes;
+  
+  /**
+   * Batches of edits which have been accepted by
+   * {@link #sendEdits(long, long, int, byte[])} but not yet sent.
+   */
+  private final Deque<PendingBatch> pendingBatches =
+      new ArrayDeque<PendingBatch>();
+
   /**
    * If this logger misses some edits, or restarts in the middle of
    * a segment, the writer won't be able to write any more edits until
@@ -154,9 +197,21 @@ public IPCLoggerChannel(Configuration conf,
     this.queueSizeLimitBytes = 1024 * 1024 * conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT);
+    this.maxOutstandingBatches = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_DEFAULT);
+    Preconditions.checkArgument(maxOutstandingBatches > 0,
+        "%s must be positive", 
+        DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY);
+    this.maxBatchSizeBytes = 1024 * conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_MAX_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_MAX_BATCH_SIZE_DEFAULT);
+    this.outstandingBatches = new Semaphore(maxOutstandingBatches);
     
     executor = MoreExecutors.listeningDecorator(
         createExecutor());
+    journalExecutor = maxOutstandingBatches > 1 ?
+        createJournalExecutor() : null;
     
     metrics = IPCLoggerChannelMetrics.create(this);
   }
@@ -179,6 +234,9 @@ public synchronized void setCommittedTxId(long txid) {
   public void close() {
     // No more tasks may be submitted after this point.
     executor.shutdown();
+    if (journalExecutor != null) {
+      journalExecutor.shutdown();
+    }
     if (proxy != null) {
       // TODO: this can hang for quite some time if the client
       // is currently in the middle of a call to a downed JN.
@@ -234,6 +292,20 @@ protected ExecutorService createExecutor() {
               UncaughtExceptionHandlers.systemExit())
           .build());
   }
+
+  /**
+   * Separated out for easy overriding in tests.
+   */
+  @VisibleForTesting
+  protected ExecutorService createJournalExecutor() {
+    return Executors.newFixedThreadPool(maxOutstandingBatches,
+        new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("Logger channel journal thread %d to " + addr)
+          .setUncaughtExceptionHandler(
+              UncaughtExceptionHandlers.systemExit())
+          .build());
+  }
   
   @Override
   public URL buildURLToFetchLogs(long segmentTxId) {
@@ -267,6 +339,14 @@ public synchronized int getQueuedEditsSize() {
     return queuedEditsSizeBytes;
   }
   
+  /**
+   * @return the number of journal() RPCs currently outstanding to the
+   * remote node.
+   */
+  public int getOutstandingBatches() {
+    return maxOutstandingBatches - outstandingBatches.availablePermits();
+  }
+  
   public InetSocketAddress getRemoteAddress() {
     return addr;
   }
@@ -286,6 +366,7 @@ void waitForAllPendingCalls() throws InterruptedException {
       executor.submit(new Runnable() {
         @Override
         public void run() {
+          waitForOutstandingBatches();
         }
       }).get();
     } catch (ExecutionException e) {
@@ -340,68 +421,214 @@ public ListenableFuture<Void> sendEdits(
     
     // When this batch is acked, we use its submission time in order
     // to calculate how far we are lagging.
-    final long submitNanos = System.nanoTime();
+    final PendingBatch batch = new PendingBatch(segmentTxId, firstTxnId,
+        numTxns, data, System.nanoTime(), getOutstandingBatches() > 0);
     
-    ListenableFuture<Void> ret = null;
+    // Adjust the queue size back down once the batch completes,
+    // regardless of whether it succeeds or fails.
+    Futures.addCallback(batch.future, new FutureCallback<Void>() {
+      @Override
+      public void onFailure(Throwable t) {
+        unreserveQueueSpace(data.length);
+      }
+
+      @Override
+      public void onSuccess(Void t) {
+        unreserveQueueSpace(data.length);
+      }
+    });
+
+    synchronized (this) {
+      pendingBatches.add(batch);
+    }
     try {
-      ret = executor.submit(new Callable<Void>() {
+      executor.submit(new Runnable() {
         @Override
-        public Void call() throws IOException {
-          throwIfOutOfSync();
-
-          long rpcSendTimeNanos = System.nanoTime();
-          try {
-            getProxy().journal(createReqInfo(),
-                segmentTxId, firstTxnId, numTxns, data);
-          } catch (IOException e) {
-            QuorumJournalManager.LOG.warn(
-                "Remote journal " + IPCLoggerChannel.this + " failed to " +
-                "write txns " + firstTxnId + "-" + (firstTxnId + numTxns - 1) +
-                ". Will try to write to this JN again after the next " +
-                "log roll.", e); 
-            synchronized (IPCLoggerChannel.this) {
-              outOfSync = true;
-            }
-            throw e;
-          } finally {
-            long now = System.nanoTime();
-            long rpcTime = TimeUnit.MICROSECONDS.convert(
-                now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
-            long endToEndTime = TimeUnit.MICROSECONDS.convert(
-                now - submitNanos, TimeUnit.NANOSECONDS);
-            metrics.addWriteEndToEndLatency(endToEndTime);
-            metrics.addWriteRpcLatency(rpcTime);
-          }
-          synchronized (IPCLoggerChannel.this) {
-            highestAckedTxId = firstTxnId + numTxns - 1;
-            lastAckNanos = submitNanos;
-          }
-          return null;
+        public void run() {
+          sendPendingBatches();
         }
       });
-    } finally {
-      if (ret == null) {
-        // it didn't successfully get submitted,
-        // so adjust the queue size back down.
-        unreserveQueueSpace(data.length);
-      } else {
-        // It was submitted to the queue, so adjust the length
-        // once the call completes, regardless of whether it
-        // succeeds or fails.
-        Futures.addCallback(ret, new FutureCallback<Void>() {
-          @Override
-          public void onFailure(Throwable t) {
-            unreserveQueueSpace(data.length);
-          }
+    } catch (RejectedExecutionException ree) {
+      // it didn't successfully get submitted, so nothing will ever
+      // send it.
+      boolean removed;
+      synchronized (this) {
+        removed = pendingBatches.remove(batch);
+      }
+      if (removed) {
+        batch.future.setException(ree);
+      }
+      throw ree;
+    }
+    return batch.future;
+  }
+  
+  /**
+   * Send the batches queued by {@link #sendEdits(long, long, int, byte[])}.
+   * This always runs on {@link #executor}, so batches are assigned their
+   * IPC serial numbers in order, even if the RPCs themselves are pipelined.
+   */
+  private void sendPendingBatches() {
+    outstandingBatches.acquireUninterruptibly();
+    final List<PendingBatch> batches = takePendingBatches();
+    if (batches.isEmpty()) {
+      // Already sent along with an earlier batch.
+      outstandingBatches.release();
+      return;
+    }
+    
+    final RequestInfo reqInfo;
+    try {
+      throwIfOutOfSync();
+      reqInfo = createReqInfo();
+    } catch (Throwable t) {
+      outstandingBatches.release();
+      failBatches(batches, t);
+      return;
+    }
+    
+    Runnable rpc = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          journalBatches(reqInfo, batches);
+        } finally {
+          outstandingBatches.release();
+        }
+      }
+    };
+    if (journalExecutor == null) {
+      rpc.run();
+    } else {
+      try {
+        journalExecutor.execute(rpc);
+      } catch (RejectedExecutionException ree) {
+        outstandingBatches.release();
+        failBatches(batches, ree);
+      }
+    }
+  }
+  
+  /**
+   * Remove the next batches to send from the queue. The first queued batch
+   * is always taken. If the following batches were queued while an earlier
+   * RPC was still outstanding, they are coalesced with it into a single
+   * RPC, up to the configured maximum batch size. Thus the amount of data
+   * per RPC adapts to the latency of the remote node: if it keeps up, each
+   * batch is sent as soon as it is flushed, and if it falls behind, the
+   * backlog is sent in fewer, larger RPCs.
+   */
+  private synchronized List<PendingBatch> takePendingBatches() {
+    List<PendingBatch> batches = Lists.newArrayList();
+    PendingBatch first = pendingBatches.poll();
+    if (first == null) {
+      return batches;
+    }
+    batches.add(first);
+    
+    PendingBatch last = first;
+    int size = first.data.length;
+    for (PendingBatch next = pendingBatches.peek(); next != null;
+        next = pendingBatches.peek()) {
+      if (!next.queuedBehindRpc ||
+          next.segmentTxId != first.segmentTxId ||
+          next.firstTxnId != last.getLastTxnId() + 1 ||
+          size + next.data.length > maxBatchSizeBytes) {
+        break;
+      }
+      pendingBatches.poll();
+      batches.add(next);
+      last = next;
+      size += next.data.length;
+    }
+    return batches;
+  }
+  
+  /**
+   * Send the given contiguous batches to the remote node as a single
+   * journal() RPC, and complete their futures.
+   */
+  private void journalBatches(RequestInfo reqInfo,
+      List<PendingBatch> batches) {
+    PendingBatch first = batches.get(0);
+    PendingBatch last = batches.get(batches.size() - 1);
+    final long firstTxnId = first.firstTxnId;
+    final int numTxns = (int)(last.getLastTxnId() - firstTxnId + 1);
+    final byte[] data;
+    if (batches.size() == 1) {
+      data = first.data;
+    } else {
+      int size = 0;
+      for (PendingBatch b : batches) {
+        size += b.data.length;
+      }
+      data = new byte[size];
+      int off = 0;
+      for (PendingBatch b : batches) {
+        System.arraycopy(b.data, 0, data, off, b.data.length);
+        off += b.data.length;
+      }
+      metrics.addCoalescedBatches(batches.size() - 1);
+    }
 
-          @Override
-          public void onSuccess(Void t) {
-            unreserveQueueSpace(data.length);
-          }
-        });
+    long rpcSendTimeNanos = System.nanoTime();
+    try {
+      getProxy().journal(reqInfo,
+          first.segmentTxId, firstTxnId, numTxns, data);
+    } catch (IOException e) {
+      QuorumJournalManager.LOG.warn(
+          "Remote journal " + IPCLoggerChannel.this + " failed to " +
+          "write txns " + firstTxnId + "-" + last.getLastTxnId() +
+          ". Will try to write to this JN again after the next " +
+          "log roll.", e); 
+      synchronized (IPCLoggerChannel.this) {
+        outOfSync = true;
+      }
+      failBatches(batches, e);
+      return;
+    } catch (Throwable t) {
+      failBatches(batches, t);
+      return;
+    } finally {
+      long now = System.nanoTime();
+      long rpcTime = TimeUnit.MICROSECONDS.convert(
+          now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
+      metrics.addWriteRpcLatency(rpcTime);
+      for (PendingBatch b : batches) {
+        long endToEndTime = TimeUnit.MICROSECONDS.convert(
+            now - b.submitNanos, TimeUnit.NANOSECONDS);
+        metrics.addWriteEndToEndLatency(endToEndTime);
       }
     }
-    return ret;
+    synchronized (IPCLoggerChannel.this) {
+      // With pipelining, the acks for consecutive RPCs may be
+      // processed out of order.
+      if (last.getLastTxnId() > highestAckedTxId) {
+        highestAckedTxId = last.getLastTxnId();
+        lastAckNanos = last.submitNanos;
+      }
+    }
+    for (PendingBatch b : batches) {
+      b.future.set(null);
+    }
+  }
+  
+  private static void failBatches(List<PendingBatch> batches, Throwable t) {
+    for (PendingBatch b : batches) {
+      b.future.setException(t);
+    }
+  }
+  
+  /**
+   * Wait until none of the pipelined journal() RPCs are outstanding, so
+   * that the next call is ordered after all previously sent edits.
+   * This must only be called from {@link #executor}.
+   */
+  private void waitForOutstandingBatches() {
+    if (journalExecutor != null) {
+      outstandingBatches.acquireUninterruptibly(maxOutstandingBatches);
+      outstandingBatches.release(maxOutstandingBatches);
+    }
   }
 
   private void throwIfOutOfSync()
@@ -469,6 +696,7 @@ public ListenableFuture<Void> startLogSegment(final long txid) {
     return executor.submit(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
+        waitForOutstandingBatches();
         getProxy().startLogSegment(createReqInfo(), txid);
         synchronized (IPCLoggerChannel.this) {
           if (outOfSync) {
@@ -490,6 +718,7 @@ public ListenableFuture<Void> finalizeLogSegment(
     return executor.submit(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
+        waitForOutstandingBatches();
         throwIfOutOfSync();
         
         getProxy().finalizeLogSegment(createReqInfo(), startTxId, endTxId);
@@ -503,6 +732,7 @@ public ListenableFuture<Void> purgeLogsOlderThan(final long minTxIdToKeep) {
     return executor.submit(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
+        waitForOutstandingBatches();
         getProxy().purgeLogsOlderThan(createReqInfo(), minTxIdToKeep);
         return null;
       }
@@ -525,12 +755,25 @@ public RemoteEditLogManifest call() throws IOException {
     });
   }
 
+  @Override
+  public ListenableFuture<GetJournaledEditsResponseProto> getJournaledEdits(
+      final long fromTxnId, final int maxTransactions) {
+    return executor.submit(new Callable<GetJournaledEditsResponseProto>() {
+      @Override
+      public GetJournaledEditsResponseProto call() throws IOException {
+        return getProxy().getJournaledEdits(journalId, fromTxnId,
+            maxTransactions);
+      }
+    });
+  }
+
   @Override
   public ListenableFuture<PrepareRecoveryResponseProto> prepareRecovery(
       final long segmentTxId) {
     return executor.submit(new Callable<PrepareRecoveryResponseProto>() {
       @Override
       public PrepareRecoveryResponseProto call() throws IOException {
+        waitForOutstandingBatches();
         if (httpPort < 0) {
           // If the HTTP port hasn't been set yet, force an RPC call so we know
           // what the HTTP port should be.
@@ -547,6 +790,7 @@ public ListenableFuture<Void> acceptRecovery(
     return executor.submit(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
+        waitForOutstandingBatches();
         getProxy().acceptRecovery(createReqInfo(), log, url);
         return null;
       }
@@ -585,4 +829,36 @@ public synchronized long getLagTimeMillis() {
         Math.max(lastCommitNanos - lastAckNanos, 0),
         TimeUnit.NANOSECONDS);
   }
+
+  /**
+   * A batch of edits passed to {@link #sendEdits(long, long, int, byte[])}
+   * which has not yet been acknowledged.
+   */
+  private static class PendingBatch {
+    private final long segmentTxId;
+    private final long firstTxnId;
+    private final int numTxns;
+    private final byte[] data;
+    private final long submitNanos;
+    /**
+     * Whether an earlier RPC was still outstanding when this batch was
+     * queued, in which case it may be coalesced with its predecessors.
+     */
+    private final boolean queuedBehindRpc;
+    private final SettableFuture<Void> future = SettableFuture.create();
+
+    PendingBatch(long segmentTxId, long firstTxnId, int numTxns,
+        byte[] data, long submitNanos, boolean queuedBehindRpc) {
+      this.segmentTxId = segmentTxId;
+      this.firstTxnId = firstTxnId;
+      this.numTxns = numTxns;
+      this.data = data;
+      this.submitNanos = submitNanos;
+      this.queuedBehindRpc = queuedBehindRpc;
+    }
+
+    long getLastTxnId() {
+      return firstTxnId + numTxns - 1;
+    }
+  }
 }
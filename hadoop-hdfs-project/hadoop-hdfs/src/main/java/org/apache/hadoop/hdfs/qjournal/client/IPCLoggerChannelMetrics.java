@@ -27,6 +27,7 @@
 import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 
 import com.google.common.collect.Maps;
@@ -42,7 +43,10 @@ class IPCLoggerChannelMetrics {
   
   private final MutableQuantiles[] writeEndToEndLatencyQuantiles;
   private final MutableQuantiles[] writeRpcLatencyQuantiles;
-
+  
+  @Metric("Number of batches which were sent along with an earlier batch " +
+      "rather than in their own RPC")
+  MutableCounterLong batchesCoalesced;
   
   /**
    * In the case of the NN transitioning between states, edit logs are closed
@@ -136,6 +140,16 @@ public int getQueuedEditsSize() {
     return ch.getQueuedEditsSize();
   }
 
+  @Metric("The number of journal RPCs currently outstanding to the " +
+          "remote node")
+  public int getOutstandingBatches() {
+    return ch.getOutstandingBatches();
+  }
+
+  public void addCoalescedBatches(int count) {
+    batchesCoalesced.incr(count);
+  }
+
   public void addWriteEndToEndLatency(long micros) {
     if (writeEndToEndLatencyQuantiles != null) {
       for (MutableQuantiles q : writeEndToEndLatencyQuantiles) {
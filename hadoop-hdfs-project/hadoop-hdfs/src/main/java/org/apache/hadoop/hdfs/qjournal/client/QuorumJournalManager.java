@@ -35,6 +35,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -73,6 +74,13 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  /**
+   * Whether a reader may fetch edits from the in-progress segment over RPC,
+   * and the maximum number it should fetch in a single call.
+   */
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -128,6 +136,13 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -449,7 +464,95 @@ public void close() throws IOException {
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled && !isActiveWriter) {
+      try {
+        if (selectRpcInputStreams(streams, fromTxnId)) {
+          return;
+        }
+      } catch (IOException ioe) {
+        LOG.info("Could not fetch edits from txid " + fromTxnId +
+            " over RPC, falling back to finalized segments: " +
+            ioe.getMessage());
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Exception fetching edits over RPC", ioe);
+        }
+      }
+      // The JournalNodes' manifests only include finalized segments, and
+      // reading a segment still being written over HTTP could return
+      // transactions which have not yet been accepted by a quorum.
+      inProgressOk = false;
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk);
+  }
+
+  /**
+   * Fetch the edits starting at the given txid from the JournalNodes'
+   * in-memory caches. Only transactions which a majority of the nodes
+   * have written are returned, so that this never exposes a transaction
+   * which may later be discarded by recovery.
+   *
+   * @return true if the edits available from the quorum were fetched,
+   *         false if there were too many to fetch in a single call, in
+   *         which case the caller should read finalized segments instead
+   * @throws IOException if a quorum of nodes could not serve the edits,
+   *         eg because they are no longer in their caches
+   */
+  private boolean selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> responseMap =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    // For each node, the number of txns at or after fromTxnId which it
+    // has returned.
+    List<Long> responseCounts = Lists.newArrayListWithCapacity(
+        responseMap.size());
+    AsyncLogger bestLogger = null;
+    long bestCount = 0;
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        responseMap.entrySet()) {
+      GetJournaledEditsResponseProto resp = e.getValue();
+      long count = 0;
+      if (resp.getTxnCount() > 0) {
+        count = resp.getFirstTxId() + resp.getTxnCount() - fromTxnId;
+      }
+      if (count >= maxTxnsPerRpc) {
+        // The response may have been truncated, so it may not reflect
+        // everything the node has.
+        return false;
+      }
+      responseCounts.add(count);
+      if (bestLogger == null || count > bestCount) {
+        bestLogger = e.getKey();
+        bestCount = count;
+      }
+    }
+    Collections.sort(responseCounts);
+    long quorumCount = responseCounts.get(
+        responseCounts.size() - loggers.getMajoritySize());
+    if (quorumCount <= 0) {
+      // Nothing new has been committed.
+      return true;
+    }
+
+    GetJournaledEditsResponseProto resp = responseMap.get(bestLogger);
+    EditLogInputStream elis = EditLogFileInputStream.fromByteString(
+        resp.getEditLog(), "RPC from " + bestLogger,
+        resp.getFirstTxId(), fromTxnId + quorumCount - 1, true);
+    PriorityQueue<EditLogInputStream> allStreams =
+        new PriorityQueue<EditLogInputStream>(1,
+            JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
+    allStreams.add(elis);
+    JournalSet.chainAndMakeRedundantStreams(
+        streams, allStreams, fromTxnId, true);
+    return true;
+  }
 
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk) throws IOException {
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId);
     Map<AsyncLogger, RemoteEditLogManifest> resps =
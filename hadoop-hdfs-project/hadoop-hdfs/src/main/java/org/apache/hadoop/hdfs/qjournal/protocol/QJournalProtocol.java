@@ -25,6 +25,7 @@
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -127,6 +128,23 @@ public void purgeLogsOlderThan(RequestInfo requestInfo, long minTxIdToKeep)
    */
   public GetEditLogManifestResponseProto getEditLogManifest(
       String jid, long sinceTxId) throws IOException;
+
+  /**
+   * Fetch recently journaled edits from the JournalNode's in-memory cache,
+   * including those in the segment which is still in progress.
+   *
+   * @param jid the journal from which to fetch edits
+   * @param sinceTxId the first transaction which the client cares about
+   * @param maxTxns the maximum number of transactions to return
+   * @return the edits, starting at the beginning of the batch which
+   *         contains sinceTxId. No edits are returned if sinceTxId is
+   *         beyond the last transaction written to the journal.
+   * @throws IOException if the edits are no longer in the cache, in which
+   *         case the caller should fall back to reading them from the log
+   *         segments over HTTP
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException;
   
   /**
    * Begin the recovery process for a given segment. See the HDFS-3077
@@ -22,6 +22,7 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
@@ -32,18 +33,21 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.RequestInfo;
 import org.apache.hadoop.hdfs.server.common.StorageErrorReporter;
-import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
 import org.apache.hadoop.hdfs.server.namenode.FileJournalManager;
 import org.apache.hadoop.hdfs.server.namenode.FileJournalManager.EditLogFile;
 import org.apache.hadoop.hdfs.server.namenode.JournalManager;
@@ -56,6 +60,7 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.security.SecurityUtil;
+import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
@@ -76,10 +81,28 @@ class Journal implements Closeable {
 
 
   // Current writing state
-  private EditLogOutputStream curSegment;
+  private EditLogFileOutputStream curSegment;
   private long curSegmentTxId = HdfsConstants.INVALID_TXID;
+  /**
+   * The txid following the last one written to the current segment,
+   * whether or not it has been synced yet. Pipelined writes are checked
+   * against this.
+   */
   private long nextTxId = HdfsConstants.INVALID_TXID;
+  /**
+   * The highest txid which is durable on this node: batches only move
+   * it forward once they have been synced, or when they need no sync
+   * since a quorum of other nodes has already committed them.
+   */
   private long highestWrittenTxId = 0;
+
+  /**
+   * Held, in addition to the journal's lock, whenever curSegment is
+   * replaced, closed or aborted, and by the {@link JournalSyncer} while
+   * it syncs a segment outside of the journal's lock. Thus a segment is
+   * never synced while it is being closed, or after.
+   */
+  private final Object segmentLock = new Object();
   
   private final String journalId;
   
@@ -128,15 +151,49 @@ class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /**
+   * The maximum amount of time that a journal() call which arrives ahead
+   * of its predecessors will wait for them. See
+   * {@link #waitForPrecedingEdits(RequestInfo, long, long)}.
+   */
+  private final long outOfOrderWaitMs;
 
-  Journal(File logDir, String journalId,
+  /**
+   * Syncs the segments written by journal() calls, possibly along with
+   * those of other journals on the same JournalNode.
+   */
+  private final JournalSyncer syncer;
+
+  /**
+   * Recently written edits, served to Standby NameNodes which tail the
+   * in-progress segment.
+   */
+  private final JournaledEditsCache cache;
+
+  Journal(Configuration conf, File logDir, String journalId,
       StorageErrorReporter errorReporter) throws IOException {
+    this(conf, logDir, journalId, errorReporter, new JournalSyncer());
+  }
+
+  Journal(Configuration conf, File logDir, String journalId,
+      StorageErrorReporter errorReporter, JournalSyncer syncer)
+      throws IOException {
     storage = new JNStorage(logDir, errorReporter);
     this.journalId = journalId;
+    this.syncer = syncer;
+    this.outOfOrderWaitMs = conf.getInt(
+        DFSConfigKeys.DFS_JOURNALNODE_OUT_OF_ORDER_WAIT_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_OUT_OF_ORDER_WAIT_DEFAULT);
+    this.cache = new JournaledEditsCache(conf.getInt(
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
 
     refreshCachedData();
     
     this.fjm = storage.getJournalManager();
+    this.fjm.setPreallocationLength(conf.getInt(
+        DFSConfigKeys.DFS_JOURNALNODE_EDITS_PREALLOCATION_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDITS_PREALLOCATION_SIZE_DEFAULT));
     
     this.metrics = JournalMetrics.create(this);
     
@@ -207,6 +264,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    cache.clear();
   }
 
   /**
@@ -316,19 +374,74 @@ private void abortCurSegment() throws IOException {
       return;
     }
     
-    curSegment.abort();
-    curSegment = null;
+    if (nextTxId - 1 > highestWrittenTxId) {
+      // Make the edits written so far durable, so that what recovery
+      // reads back from the segment can't be lost afterwards.
+      try {
+        synchronized (segmentLock) {
+          curSegment.force();
+        }
+        highestWrittenTxId = nextTxId - 1;
+      } catch (IOException ioe) {
+        LOG.warn("Unable to sync " + curSegment + " before aborting it", ioe);
+      }
+    }
+    discardCurSegment();
+  }
+
+  /**
+   * Abort the current segment without syncing it.
+   */
+  private void discardCurSegment() throws IOException {
+    synchronized (segmentLock) {
+      curSegment.abort();
+      curSegment = null;
+    }
     curSegmentTxId = HdfsConstants.INVALID_TXID;
+    // Wake up any out-of-order writes, which can now never succeed.
+    notifyAll();
   }
 
   /**
    * Write a batch of edits to the journal.
    * {@see QJournalProtocol#journal(RequestInfo, long, long, int, byte[])}
    */
-  synchronized void journal(RequestInfo reqInfo,
+  void journal(RequestInfo reqInfo,
       long segmentTxId, long firstTxnId,
       int numTxns, byte[] records) throws IOException {
+    Stopwatch sw = new Stopwatch();
+    sw.start();
+    EditLogFileOutputStream toSync = writeEdits(reqInfo, segmentTxId,
+        firstTxnId, numTxns, records);
+    if (toSync != null) {
+      // Sync outside of the lock, so that the next batch can be written
+      // in the meantime, and share the following fsync with any others
+      // which arrive while this one is running.
+      metrics.syncRequests.incr(1);
+      boolean success = false;
+      try {
+        syncer.sync(this, toSync);
+        success = true;
+      } finally {
+        syncDone(toSync, firstTxnId + numTxns - 1, success);
+      }
+    }
+    sw.stop();
+    
+    metrics.addSync(sw.elapsedTime(TimeUnit.MICROSECONDS));
+  }
+
+  /**
+   * Write a batch of edits to the current segment, without syncing it.
+   * @return the segment if it needs to be synced before the batch
+   * can be acknowledged, or null if the batch was already committed
+   * by a quorum of other nodes.
+   */
+  private synchronized EditLogFileOutputStream writeEdits(
+      RequestInfo reqInfo, long segmentTxId, long firstTxnId,
+      int numTxns, byte[] records) throws IOException {
     checkFormatted();
+    waitForPrecedingEdits(reqInfo, segmentTxId, firstTxnId);
     checkWriteRequest(reqInfo);
 
     checkSync(curSegment != null,
@@ -364,12 +477,8 @@ synchronized void journal(RequestInfo reqInfo,
     
     curSegment.writeRaw(records, 0, records.length);
     curSegment.setReadyToFlush();
-    Stopwatch sw = new Stopwatch();
-    sw.start();
-    curSegment.flush(shouldFsync);
-    sw.stop();
-    
-    metrics.addSync(sw.elapsedTime(TimeUnit.MICROSECONDS));
+    curSegment.flush(false);
+    cache.storeEdits(firstTxnId, numTxns, records);
 
     if (isLagging) {
       // This batch of edits has already been committed on a quorum of other
@@ -381,8 +490,103 @@ synchronized void journal(RequestInfo reqInfo,
     metrics.bytesWritten.incr(records.length);
     metrics.txnsWritten.incr(numTxns);
     
-    highestWrittenTxId = lastTxnId;
+    if (isLagging) {
+      // Already durable on a quorum, so it counts as written without
+      // waiting for a sync.
+      highestWrittenTxId = lastTxnId;
+    }
     nextTxId = lastTxnId + 1;
+    
+    // Wake up any pipelined writes which arrived ahead of this one.
+    notifyAll();
+    
+    return shouldFsync ? curSegment : null;
+  }
+
+  /**
+   * Sync the given segment, unless it is no longer the current one.
+   * Called by the {@link JournalSyncer} without the journal's lock held.
+   * A segment which has been finalized was synced before it was closed,
+   * and one which has been aborted must not be touched: in either case
+   * this returns without syncing, and {@link #syncDone} sorts out what
+   * that means for the waiting batches.
+   */
+  void syncSegment(EditLogFileOutputStream stm) throws IOException {
+    synchronized (segmentLock) {
+      if (stm != curSegment || !stm.isOpen()) {
+        return;
+      }
+      stm.force();
+    }
+    metrics.fsyncs.incr(1);
+  }
+
+  /**
+   * Called once the sync of a batch ending at the given txid has
+   * completed. On success, the batch -- and every batch written to the
+   * segment before it -- is now durable. On failure, the segment is
+   * aborted, so that no further edits are accepted on top of ones which
+   * may have been lost; the writer must recover the segment.
+   *
+   * @throws JournalOutOfSyncException if the segment was aborted before
+   * the batch could be synced
+   */
+  private synchronized void syncDone(EditLogFileOutputStream stm,
+      long lastTxnId, boolean success) throws IOException {
+    if (!success) {
+      if (stm == curSegment) {
+        LOG.warn("Failed to sync " + stm + " up to txid " + lastTxnId +
+            "; aborting the segment");
+        discardCurSegment();
+      }
+      return;
+    }
+    if (stm == curSegment) {
+      highestWrittenTxId = Math.max(highestWrittenTxId, lastTxnId);
+    }
+    checkSync(highestWrittenTxId >= lastTxnId,
+        "Segment %s was aborted before txid %s could be synced",
+        stm, lastTxnId);
+  }
+
+  /**
+   * A writer which pipelines its edits (see
+   * {@link DFSConfigKeys#DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY}) may
+   * have several journal() calls outstanding at once, and the IPC handlers
+   * may hand them to us in a different order than they were sent. If this
+   * batch starts beyond the next expected txid of the current segment,
+   * and it comes from the current writer with a not-yet-seen IPC serial,
+   * give the preceding batches a bounded amount of time to arrive before
+   * the normal sanity checks reject it.
+   * 
+   * This must be called before {@link #checkWriteRequest(RequestInfo)},
+   * since that would advance the IPC serial past the preceding batches.
+   */
+  private synchronized void waitForPrecedingEdits(RequestInfo reqInfo,
+      long segmentTxId, long firstTxnId) throws IOException {
+    long deadline = Time.monotonicNow() + outOfOrderWaitMs;
+    boolean waited = false;
+    while (curSegment != null &&
+        curSegmentTxId == segmentTxId &&
+        firstTxnId > nextTxId &&
+        reqInfo.getEpoch() == lastWriterEpoch.get() &&
+        reqInfo.getIpcSerialNumber() > currentEpochIpcSerial) {
+      long remaining = deadline - Time.monotonicNow();
+      if (remaining <= 0) {
+        break;
+      }
+      waited = true;
+      try {
+        wait(remaining);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " +
+            "edits preceding txid " + firstTxnId);
+      }
+    }
+    if (waited) {
+      metrics.batchesReordered.incr(1);
+    }
   }
 
   public void heartbeat(RequestInfo reqInfo) throws IOException {
@@ -527,7 +731,10 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid)
     // remove the record of the older segment here.
     purgePaxosDecision(txid);
     
-    curSegment = fjm.startLogSegment(txid);
+    EditLogFileOutputStream stm = fjm.startLogSegment(txid);
+    synchronized (segmentLock) {
+      curSegment = stm;
+    }
     curSegmentTxId = txid;
     nextTxId = txid;
   }
@@ -545,8 +752,17 @@ public synchronized void finalizeLogSegment(RequestInfo reqInfo, long startTxId,
     // Finalizing the log that the writer was just writing.
     if (startTxId == curSegmentTxId) {
       if (curSegment != null) {
-        curSegment.close();
-        curSegment = null;
+        synchronized (segmentLock) {
+          if (nextTxId - 1 > highestWrittenTxId) {
+            // Some journal() calls may still be waiting for their sync.
+            // Do it for them, since the stream can't be synced once
+            // it is closed.
+            curSegment.force();
+            highestWrittenTxId = nextTxId - 1;
+          }
+          curSegment.close();
+          curSegment = null;
+        }
         curSegmentTxId = HdfsConstants.INVALID_TXID;
       }
       
@@ -625,11 +841,41 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId)
     // of segments.
     checkFormatted();
     
+    // A reader which has been tailing the in-progress segment through
+    // getJournaledEdits() may ask for a txid in the middle of a segment
+    // which has since been finalized.
     RemoteEditLogManifest manifest = new RemoteEditLogManifest(
-        fjm.getRemoteEditLogs(sinceTxId));
+        fjm.getRemoteEditLogs(sinceTxId, true));
     return manifest;
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // As with getEditLogManifest(), anyone may read the edits.
+    checkFormatted();
+    // Edits are cached as soon as they are written, so only serve
+    // those which have been synced.
+    long durableTxId = getHighestWrittenTxId();
+    if (sinceTxId > durableTxId) {
+      // Caught up, whether or not the cache is populated yet.
+      return GetJournaledEditsResponseProto.newBuilder()
+          .setTxnCount(0)
+          .build();
+    }
+    try {
+      GetJournaledEditsResponseProto resp =
+          cache.retrieveEdits(sinceTxId, maxTxns, durableTxId);
+      metrics.editsCacheHits.incr(1);
+      return resp;
+    } catch (JournaledEditsCache.CacheMissException cme) {
+      metrics.editsCacheMisses.incr(1);
+      throw cme;
+    }
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -668,6 +914,8 @@ public synchronized PrepareRecoveryResponseProto prepareRecovery(
     checkRequest(reqInfo);
     
     abortCurSegment();
+    // Recovery may replace the contents of the segment.
+    cache.clear();
     
     PrepareRecoveryResponseProto.Builder builder =
         PrepareRecoveryResponseProto.newBuilder();
@@ -713,6 +961,8 @@ public synchronized void acceptRecovery(RequestInfo reqInfo,
     checkRequest(reqInfo);
     
     abortCurSegment();
+    // Recovery may replace the contents of the segment.
+    cache.clear();
 
     long segmentTxId = segment.getStartTxId();
 
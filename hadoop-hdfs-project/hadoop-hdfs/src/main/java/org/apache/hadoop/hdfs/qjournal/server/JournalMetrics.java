@@ -46,6 +46,22 @@ class JournalMetrics {
   @Metric("Number of batches written where this node was lagging")
   MutableCounterLong batchesWrittenWhileLagging;
   
+  @Metric("Number of pipelined batches which arrived ahead of their " +
+      "predecessors and had to wait for them")
+  MutableCounterLong batchesReordered;
+  
+  @Metric("Number of batches which needed to be synced to disk")
+  MutableCounterLong syncRequests;
+  
+  @Metric("Number of fsyncs performed on this journal's segments")
+  MutableCounterLong fsyncs;
+  
+  @Metric("Number of requests for journaled edits served from the cache")
+  MutableCounterLong editsCacheHits;
+  
+  @Metric("Number of requests for journaled edits which missed the cache")
+  MutableCounterLong editsCacheMisses;
+  
   private final int[] QUANTILE_INTERVALS = new int[] {
       1*60, // 1m
       5*60, // 5m
@@ -110,6 +126,12 @@ public long getCurrentLagTxns() {
     }
   }
   
+  @Metric("Average number of batches made durable by each fsync")
+  public float getSyncBatchingRatio() {
+    long numFsyncs = fsyncs.value();
+    return numFsyncs == 0 ? 0 : (float)syncRequests.value() / numFsyncs;
+  }
+  
   void addSync(long us) {
     for (MutableQuantiles q : syncsQuantiles) {
       q.add(us);
@@ -56,6 +56,12 @@ public class JournalNode implements Tool, Configurable {
   private JournalNodeRpcServer rpcServer;
   private JournalNodeHttpServer httpServer;
   private Map<String, Journal> journalsById = Maps.newHashMap();
+  
+  /**
+   * Shared by all of the journals, so that concurrent writes to
+   * different namespaces can share fsyncs.
+   */
+  private final JournalSyncer syncer = new JournalSyncer();
 
   private File localDir;
 
@@ -75,7 +81,8 @@ synchronized Journal getOrCreateJournal(String jid) throws IOException {
     if (journal == null) {
       File logDir = getLogDir(jid);
       LOG.info("Initializing journal in directory " + logDir);      
-      journal = new Journal(logDir, jid, new ErrorReporter());
+      journal = new Journal(conf, logDir, jid, new ErrorReporter(),
+          syncer);
       journalsById.put(jid, journal);
     }
     
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Group commit for the edit log segments written by a JournalNode.
+ *
+ * Rather than each journal() call syncing its segment while holding its
+ * {@link Journal}'s lock, edits are written under the lock, and the calls
+ * then wait here for a sync round which includes their segment. At most
+ * one round runs at a time. Calls which arrive while a round is running
+ * are batched into the next one, which is run by the first of them to
+ * wake up. Thus concurrent calls -- pipelined batches from the same
+ * writer, or writes to the journals of several namespaces hosted on one
+ * JournalNode -- share fsyncs instead of queueing up behind each other's,
+ * and each segment is synced at most once per round.
+ *
+ * The segments themselves are synced through
+ * {@link Journal#syncSegment(EditLogFileOutputStream)}, which ensures
+ * that a segment is never synced after it has been closed or aborted.
+ */
+class JournalSyncer {
+
+  /**
+   * The set of segments to be synced together, along with the
+   * outcome of syncing each of them.
+   */
+  private static class Round {
+    private final Map<EditLogFileOutputStream, Journal> streams =
+        new IdentityHashMap<EditLogFileOutputStream, Journal>();
+    private final Map<EditLogFileOutputStream, IOException> failures =
+        new IdentityHashMap<EditLogFileOutputStream, IOException>();
+    private boolean done = false;
+
+    void syncAll() {
+      for (Map.Entry<EditLogFileOutputStream, Journal> e :
+          streams.entrySet()) {
+        try {
+          e.getValue().syncSegment(e.getKey());
+        } catch (IOException ioe) {
+          failures.put(e.getKey(), ioe);
+        }
+      }
+    }
+  }
+
+  /** The round which new sync requests join. */
+  private Round nextRound = new Round();
+
+  /** Whether a round is currently being synced. */
+  private boolean syncing = false;
+
+  private long numRounds = 0;
+
+  /**
+   * Wait until all of the data previously flushed to the given stream
+   * has been synced to persistent storage.
+   *
+   * @param journal the journal to which the segment belongs
+   * @param stm the segment to sync
+   * @throws IOException if the sync fails
+   */
+  void sync(Journal journal, EditLogFileOutputStream stm)
+      throws IOException {
+    Round round;
+    boolean leader = false;
+    synchronized (this) {
+      round = nextRound;
+      round.streams.put(stm, journal);
+      while (!round.done && syncing) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while waiting to sync " + stm);
+        }
+      }
+      if (!round.done) {
+        // Nobody is syncing, so this round is still the one collecting
+        // requests: take it over and run it.
+        syncing = true;
+        leader = true;
+        nextRound = new Round();
+        numRounds++;
+      }
+    }
+
+    if (leader) {
+      try {
+        round.syncAll();
+      } finally {
+        synchronized (this) {
+          round.done = true;
+          syncing = false;
+          notifyAll();
+        }
+      }
+    }
+
+    IOException failure;
+    synchronized (this) {
+      failure = round.failures.get(stm);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getNumRounds() {
+    return numRounds;
+  }
+}
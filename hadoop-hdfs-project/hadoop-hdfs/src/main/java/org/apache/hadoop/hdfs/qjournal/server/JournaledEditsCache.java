@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+
+/**
+ * A bounded in-memory cache of the most recent batches of edits written
+ * to a {@link Journal}, including those of the in-progress segment. This
+ * allows a Standby NameNode to tail edits over RPC with low latency,
+ * rather than waiting for segments to be finalized and fetching them
+ * whole over HTTP.
+ *
+ * The cache holds a contiguous range of transactions. Batches are kept
+ * as they were received from the writer, and are evicted oldest first
+ * once the total size exceeds the configured capacity. A batch which
+ * does not follow on from the last one cached (eg after the writer
+ * failed over, or the journal was recovered) empties the cache.
+ */
+class JournaledEditsCache {
+  private static final Log LOG = LogFactory.getLog(JournaledEditsCache.class);
+
+  /**
+   * Thrown when some of the requested transactions are no longer, or not
+   * yet, held in the cache.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private static class Batch {
+    private final int numTxns;
+    private final byte[] records;
+
+    Batch(int numTxns, byte[] records) {
+      this.numTxns = numTxns;
+      this.records = records;
+    }
+  }
+
+  /** The maximum total size of the cached batches, in bytes. */
+  private final int capacity;
+
+  /** Cached batches, keyed by their first transaction ID. */
+  private final NavigableMap<Long, Batch> batches = new TreeMap<Long, Batch>();
+
+  private long totalSize = 0;
+
+  /** The transaction ID following the last one in the cache. */
+  private long nextTxId = HdfsConstants.INVALID_TXID;
+
+  JournaledEditsCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a batch of edits which has just been written to the journal.
+   */
+  synchronized void storeEdits(long firstTxId, int numTxns, byte[] records) {
+    if (records.length > capacity) {
+      // Too large to cache at all, and caching any batches which follow
+      // it would leave a gap.
+      clear();
+      return;
+    }
+    if (!batches.isEmpty() && firstTxId != nextTxId) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Clearing edits cache: expected txid " + nextTxId +
+            " but got a batch starting at " + firstTxId);
+      }
+      clear();
+    }
+    batches.put(firstTxId, new Batch(numTxns, records));
+    totalSize += records.length;
+    nextTxId = firstTxId + numTxns;
+
+    while (totalSize > capacity) {
+      totalSize -= batches.pollFirstEntry().getValue().records.length;
+    }
+  }
+
+  /**
+   * Fetch cached edits, starting with the batch which contains the given
+   * transaction, and continuing with whole batches until at least
+   * maxTxns transactions from sinceTxId onwards have been included.
+   * Batches which extend beyond maxTxId are never included, since the
+   * edits are cached before they are durable.
+   *
+   * @param sinceTxId the first transaction wanted
+   * @param maxTxns the number of transactions wanted
+   * @param maxTxId the highest transaction which may be returned
+   * @return the edits, preceded by an edit log header, or a response
+   *         containing no transactions if sinceTxId is beyond the end of
+   *         the cache or of the batches ending by maxTxId
+   * @throws CacheMissException if sinceTxId precedes the cached range
+   */
+  GetJournaledEditsResponseProto retrieveEdits(long sinceTxId, int maxTxns,
+      long maxTxId) throws IOException {
+    List<byte[]> toSend = Lists.newArrayList();
+    long firstTxId;
+    int txnCount = 0;
+    int size = 0;
+    synchronized (this) {
+      if (batches.isEmpty() || sinceTxId < batches.firstKey()) {
+        throw new CacheMissException("Cache does not contain txid " +
+            sinceTxId + ": cached range is " + getCachedRange());
+      }
+      if (sinceTxId >= nextTxId) {
+        return GetJournaledEditsResponseProto.newBuilder()
+            .setTxnCount(0)
+            .build();
+      }
+      firstTxId = batches.floorKey(sinceTxId);
+      for (Map.Entry<Long, Batch> e :
+          batches.tailMap(firstTxId, true).entrySet()) {
+        long batchEnd = e.getKey() + e.getValue().numTxns;
+        if (batchEnd - 1 > maxTxId ||
+            (batchEnd - sinceTxId > maxTxns && !toSend.isEmpty())) {
+          break;
+        }
+        toSend.add(e.getValue().records);
+        txnCount += e.getValue().numTxns;
+        size += e.getValue().records.length;
+      }
+    }
+
+    if (toSend.isEmpty()) {
+      return GetJournaledEditsResponseProto.newBuilder()
+          .setTxnCount(0)
+          .build();
+    }
+
+    // Copy the data outside of the lock, so as not to hold up writes.
+    ByteString.Output out = ByteString.newOutput(size + 4);
+    DataOutputStream dos = new DataOutputStream(out);
+    EditLogFileOutputStream.writeHeader(dos);
+    for (byte[] records : toSend) {
+      dos.write(records);
+    }
+    dos.flush();
+    return GetJournaledEditsResponseProto.newBuilder()
+        .setTxnCount(txnCount)
+        .setFirstTxId(firstTxId)
+        .setEditLog(out.toByteString())
+        .build();
+  }
+
+  /**
+   * Discard all cached edits. This must be called whenever the journal's
+   * contents may change other than by appending edits, eg on recovery.
+   */
+  synchronized void clear() {
+    batches.clear();
+    totalSize = 0;
+    nextTxId = HdfsConstants.INVALID_TXID;
+  }
+
+  @VisibleForTesting
+  synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  private synchronized String getCachedRange() {
+    if (batches.isEmpty()) {
+      return "empty";
+    }
+    return batches.firstKey() + "-" + (nextTxId - 1);
+  }
+}
@@ -412,7 +412,7 @@ private Response get(
       
       final long n = length.getValue() != null? length.getValue()
         : in.getVisibleLength() - offset.getValue();
-      return Response.ok(new OpenEntity(in, n, dfsclient)).type(
+      return Response.ok(new OpenEntity(in, n, b, dfsclient)).type(
           MediaType.APPLICATION_OCTET_STREAM).build();
     }
     case GETFILECHECKSUM:
@@ -37,12 +37,14 @@
 public class OpenEntity {
   private final HdfsDataInputStream in;
   private final long length;
+  private final int bufferSize;
   private final DFSClient dfsclient;
   
   OpenEntity(final HdfsDataInputStream in, final long length,
-      final DFSClient dfsclient) {
+      final int bufferSize, final DFSClient dfsclient) {
     this.in = in;
     this.length = length;
+    this.bufferSize = bufferSize;
     this.dfsclient = dfsclient;
   }
   
@@ -71,7 +73,17 @@ public void writeTo(OpenEntity e, Class<?> type, Type genericType,
         MultivaluedMap<String, Object> httpHeaders, OutputStream out
         ) throws IOException {
       try {
-        IOUtils.copyBytes(e.in, out, e.length, false);
+        // Copy with the requested buffer size, as the write path does,
+        // rather than IOUtils' fixed 4kB buffer.
+        final byte[] buf = new byte[e.bufferSize];
+        for(long remaining = e.length; remaining > 0; ) {
+          final int n = e.in.read(buf, 0, (int)Math.min(buf.length, remaining));
+          if (n == -1) {
+            break;
+          }
+          out.write(buf, 0, n);
+          remaining -= n;
+        }
       } finally {
         IOUtils.cleanup(DatanodeWebHdfsMethods.LOG, e.in);
         IOUtils.cleanup(DatanodeWebHdfsMethods.LOG, e.dfsclient);
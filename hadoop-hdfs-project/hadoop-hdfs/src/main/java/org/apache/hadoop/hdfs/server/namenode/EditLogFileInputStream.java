@@ -42,6 +42,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.protobuf.ByteString;
 
 /**
  * An implementation of the abstract class {@link EditLogInputStream}, which
@@ -112,6 +113,23 @@ public static EditLogInputStream fromUrl(URL url, long startTxId,
         startTxId, endTxId, inProgress);
   }
   
+  /**
+   * Open an EditLogInputStream for edits held in memory, preceded by an
+   * edit log header, such as those served from a JournalNode's cache.
+   *
+   * @param data the header and edits
+   * @param name a description of where the edits came from
+   * @param startTxId the txid of the first edit in the data
+   * @param endTxId the txid of the last edit to be read
+   * @param inProgress whether the edits come from an in-progress segment
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteString(ByteString data,
+      String name, long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteStringLog(data, name),
+        startTxId, endTxId, inProgress);
+  }
+  
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
       boolean isInProgress) {
@@ -360,6 +378,31 @@ public String getName() {
     }
   }
 
+  private static class ByteStringLog implements LogSource {
+    private final ByteString data;
+    private final String name;
+    
+    public ByteStringLog(ByteString data, String name) {
+      this.data = data;
+      this.name = name;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return data.newInput();
+    }
+
+    @Override
+    public long length() {
+      return data.size();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
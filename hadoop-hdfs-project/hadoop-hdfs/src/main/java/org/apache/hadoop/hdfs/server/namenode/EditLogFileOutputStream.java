@@ -47,6 +47,7 @@ public class EditLogFileOutputStream extends EditLogOutputStream {
   private FileOutputStream fp; // file stream for storing edit logs
   private FileChannel fc; // channel of the file stream for sync
   private EditsDoubleBuffer doubleBuf;
+  private final int preallocationLength;
   static ByteBuffer fill = ByteBuffer.allocateDirect(MIN_PREALLOCATION_LENGTH);
 
   private static boolean shouldSkipFsyncForTests = false;
@@ -68,8 +69,26 @@ public class EditLogFileOutputStream extends EditLogOutputStream {
    * @throws IOException
    */
   public EditLogFileOutputStream(File name, int size) throws IOException {
+    this(name, size, MIN_PREALLOCATION_LENGTH);
+  }
+
+  /**
+   * Creates output buffers and file object.
+   * 
+   * @param name
+   *          File name to store edit log
+   * @param size
+   *          Size of flush buffer
+   * @param preallocationLength
+   *          Minimum number of bytes by which to extend the file whenever
+   *          it needs to grow
+   * @throws IOException
+   */
+  public EditLogFileOutputStream(File name, int size,
+      int preallocationLength) throws IOException {
     super();
     file = name;
+    this.preallocationLength = preallocationLength;
     doubleBuf = new EditsDoubleBuffer(size);
     RandomAccessFile rp = new RandomAccessFile(name, "rw");
     fp = new FileOutputStream(rp.getFD()); // open for append
@@ -189,6 +208,20 @@ public void flushAndSync(boolean durable) throws IOException {
     }
   }
 
+  /**
+   * Sync all data previously flushed by {@link #flush(boolean)} to
+   * persistent storage. This may be called concurrently with writes to
+   * the stream, which allows several flushes to share a single fsync.
+   */
+  public void force() throws IOException {
+    if (fp == null) {
+      throw new IOException("Trying to use aborted output stream");
+    }
+    if (!shouldSkipFsyncForTests) {
+      fc.force(false); // metadata updates not needed
+    }
+  }
+
   /**
    * @return true if the number of buffered data exceeds the intial buffer size
    */
@@ -205,12 +238,18 @@ private void preallocate() throws IOException {
     if (need <= 0) {
       return;
     }
+    // Grow the file in extents of at least the preallocation length, so
+    // that it is extended (and its metadata updated) as rarely as possible.
+    need = Math.max(need, preallocationLength);
     long oldSize = size;
     long total = 0;
-    long fillCapacity = fill.capacity();
+    // Several streams may preallocate concurrently, so don't share the
+    // position of the fill buffer.
+    ByteBuffer fillBuf = fill.duplicate();
+    long fillCapacity = fillBuf.capacity();
     while (need > 0) {
-      fill.position(0);
-      IOUtils.writeFully(fc, fill, size);
+      fillBuf.position(0);
+      IOUtils.writeFully(fc, fillBuf, size);
       need -= fillCapacity;
       size += fillCapacity;
       total += fillCapacity;
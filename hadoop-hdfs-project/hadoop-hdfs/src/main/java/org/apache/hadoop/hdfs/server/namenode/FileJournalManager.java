@@ -60,6 +60,8 @@ public class FileJournalManager implements JournalManager {
   private final StorageDirectory sd;
   private final StorageErrorReporter errorReporter;
   private int outputBufferCapacity = 512*1024;
+  private int preallocationLength =
+      EditLogFileOutputStream.MIN_PREALLOCATION_LENGTH;
 
   private static final Pattern EDITS_REGEX = Pattern.compile(
     NameNodeFile.EDITS.getName() + "_(\\d+)-(\\d+)");
@@ -98,12 +100,12 @@ public boolean hasSomeData() {
   }
 
   @Override
-  synchronized public EditLogOutputStream startLogSegment(long txid) 
+  synchronized public EditLogFileOutputStream startLogSegment(long txid) 
       throws IOException {
     try {
       currentInProgress = NNStorage.getInProgressEditsFile(sd, txid);
-      EditLogOutputStream stm = new EditLogFileOutputStream(currentInProgress,
-          outputBufferCapacity);
+      EditLogFileOutputStream stm = new EditLogFileOutputStream(
+          currentInProgress, outputBufferCapacity, preallocationLength);
       stm.create();
       return stm;
     } catch (IOException e) {
@@ -146,6 +148,14 @@ synchronized public void setOutputBufferCapacity(int size) {
     this.outputBufferCapacity = size;
   }
 
+  /**
+   * Set the minimum number of bytes by which newly started log segments
+   * are extended whenever they need to grow.
+   */
+  synchronized public void setPreallocationLength(int length) {
+    this.preallocationLength = length;
+  }
+
   @Override
   public void purgeLogsOlderThan(long minTxIdToKeep)
       throws IOException {
@@ -168,6 +178,20 @@ public void purgeLogsOlderThan(long minTxIdToKeep)
    * @throws IOException if edit logs cannot be listed.
    */
   public List<RemoteEditLog> getRemoteEditLogs(long firstTxId) throws IOException {
+    return getRemoteEditLogs(firstTxId, false);
+  }
+
+  /**
+   * Find all finalized editlog segments containing transactions at or
+   * above the given txid.
+   * @param firstTxId the txnid which to start looking
+   * @param allowMidSegment whether to include the segment containing
+   *        firstTxId if it does not start there, rather than throwing
+   * @return a list of remote edit logs
+   * @throws IOException if edit logs cannot be listed.
+   */
+  public List<RemoteEditLog> getRemoteEditLogs(long firstTxId,
+      boolean allowMidSegment) throws IOException {
     File currentDir = sd.getCurrentDir();
     List<EditLogFile> allLogFiles = matchEditLogs(currentDir);
     List<RemoteEditLog> ret = Lists.newArrayListWithCapacity(
@@ -179,6 +203,10 @@ public List<RemoteEditLog> getRemoteEditLogs(long firstTxId) throws IOException
         ret.add(new RemoteEditLog(elf.firstTxId, elf.lastTxId));
       } else if ((firstTxId > elf.getFirstTxId()) &&
                  (firstTxId <= elf.getLastTxId())) {
+        if (allowMidSegment) {
+          ret.add(new RemoteEditLog(elf.firstTxId, elf.lastTxId));
+          continue;
+        }
         // Note that this behavior is different from getLogFiles below.
         throw new IllegalStateException("Asked for firstTxId " + firstTxId
             + " which is in the middle of file " + elf.file);
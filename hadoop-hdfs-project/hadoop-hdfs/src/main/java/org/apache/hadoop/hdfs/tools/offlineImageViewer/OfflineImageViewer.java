@@ -23,6 +23,8 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -83,6 +85,10 @@ public class OfflineImageViewer {
     "  * NameDistribution: This processor analyzes the file names\n" +
     "    in the image and prints total number of file names and how frequently" +
     "    file names are reused.\n" +
+    "\n" +
+    "Several processors may be given, separated by commas, in which case\n" +
+    "the image is read once and the processors run in parallel, each in\n" +
+    "its own thread. The output of each is written to OUTPUTFILE.<processor>.\n" +
     "\n" + 
     "Required command line arguments:\n" +
     "-i,--inputFile <arg>   FSImage file to process.\n" +
@@ -91,8 +97,9 @@ public class OfflineImageViewer {
     "\n" + 
     "Optional command line arguments:\n" +
     "-p,--processor <arg>   Select which type of processor to apply\n" +
-    "                       against image file." +
-    " (Ls|XML|Delimited|Indented|FileDistribution).\n" +
+    "                       against image file, or a comma-separated\n" +
+    "                       list of processors." +
+    " (Ls|XML|Delimited|Indented|FileDistribution|NameDistribution).\n" +
     "-h,--help              Display usage information and exit\n" +
     "-printToScreen         For processors that write to a file, also\n" +
     "                       output to screen. On large image files this\n" +
@@ -228,40 +235,60 @@ public static void main(String[] args) throws IOException {
     String outputFile = cmd.getOptionValue("o");
     String delimiter = cmd.getOptionValue("delimiter");
     
-    if( !(delimiter == null || processor.equals("Delimited")) ) {
+    if( !(delimiter == null || processor.contains("Delimited")) ) {
       System.out.println("Can only specify -delimiter with Delimited processor");
       printUsage();
       return;
     }
     
-    ImageVisitor v;
+    String[] processors = processor.split(",");
+    List<ImageVisitor> visitors = new ArrayList<ImageVisitor>();
+    for (String p : processors) {
+      String out = processors.length == 1 ? outputFile : outputFile + "." + p;
+      ImageVisitor v = createVisitor(p, out, printToScreen, delimiter, cmd);
+      if (v instanceof LsImageVisitor || v instanceof DelimitedImageVisitor) {
+        // These processors need the blocks, see the usage above.
+        skipBlocks = false;
+      }
+      visitors.add(v);
+    }
+    ImageVisitor visitor = visitors.size() == 1 ? visitors.get(0) :
+        new ParallelImageVisitor(visitors);
+    
+    try {
+      OfflineImageViewer d =
+          new OfflineImageViewer(inputFile, visitor, skipBlocks);
+      d.go();
+    } catch (EOFException e) {
+      System.err.println("Input file ended unexpectedly.  Exiting");
+    } catch(IOException e) {
+      System.err.println("Encountered exception.  Exiting: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Create the visitor for the named processor. Unknown names get the
+   * default Ls processor.
+   */
+  private static ImageVisitor createVisitor(String processor,
+      String outputFile, boolean printToScreen, String delimiter,
+      CommandLine cmd) throws IOException {
     if(processor.equals("Indented")) {
-      v = new IndentedImageVisitor(outputFile, printToScreen);
+      return new IndentedImageVisitor(outputFile, printToScreen);
     } else if (processor.equals("XML")) {
-      v = new XmlImageVisitor(outputFile, printToScreen);
+      return new XmlImageVisitor(outputFile, printToScreen);
     } else if (processor.equals("Delimited")) {
-      v = delimiter == null ?  
+      return delimiter == null ?  
                  new DelimitedImageVisitor(outputFile, printToScreen) :
                  new DelimitedImageVisitor(outputFile, printToScreen, delimiter);
-      skipBlocks = false;
     } else if (processor.equals("FileDistribution")) {
       long maxSize = Long.parseLong(cmd.getOptionValue("maxSize", "0"));
       int step = Integer.parseInt(cmd.getOptionValue("step", "0"));
-      v = new FileDistributionVisitor(outputFile, maxSize, step);
+      return new FileDistributionVisitor(outputFile, maxSize, step);
     } else if (processor.equals("NameDistribution")) {
-      v = new NameDistributionVisitor(outputFile, printToScreen);
+      return new NameDistributionVisitor(outputFile, printToScreen);
     } else {
-      v = new LsImageVisitor(outputFile, printToScreen);
-      skipBlocks = false;
-    }
-    
-    try {
-      OfflineImageViewer d = new OfflineImageViewer(inputFile, v, skipBlocks);
-      d.go();
-    } catch (EOFException e) {
-      System.err.println("Input file ended unexpectedly.  Exiting");
-    } catch(IOException e) {
-      System.err.println("Encountered exception.  Exiting: " + e.getMessage());
+      return new LsImageVisitor(outputFile, printToScreen);
     }
   }
 
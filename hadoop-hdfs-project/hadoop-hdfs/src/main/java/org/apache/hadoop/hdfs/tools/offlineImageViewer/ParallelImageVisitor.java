@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An ImageVisitor which passes every element of the image on to several
+ * other visitors, each of which runs in its own thread. This allows a
+ * single pass over the image to feed several processors, with the
+ * decoding of the image and each processor running on separate cores.
+ *
+ * Elements are passed on in fixed-size batches through bounded queues,
+ * so memory use does not depend on the size of the image: if one of the
+ * visitors falls behind, the loader blocks until it catches up.
+ */
+class ParallelImageVisitor extends ImageVisitor {
+  static final int DEFAULT_BATCH_SIZE = 4096;
+  static final int DEFAULT_QUEUE_BATCHES = 16;
+
+  private enum EventType {
+    VISIT,
+    ENCLOSING,
+    ENCLOSING_WITH_KEY,
+    LEAVE
+  }
+
+  private static class Event {
+    final EventType type;
+    final ImageElement element;
+    final ImageElement key;
+    final String value;
+
+    Event(EventType type, ImageElement element, ImageElement key,
+        String value) {
+      this.type = type;
+      this.element = element;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /** Marks the end of the events passed to each worker. */
+  private static final Event[] END_OF_EVENTS = new Event[0];
+
+  /**
+   * Replays the batches of events from its queue onto a single visitor.
+   */
+  private static class Worker extends Thread {
+    private final ImageVisitor visitor;
+    private final BlockingQueue<Event[]> queue;
+    private volatile Throwable error;
+
+    Worker(ImageVisitor visitor, int queueBatches) {
+      super("ImageVisitor worker for " + visitor.getClass().getSimpleName());
+      setDaemon(true);
+      this.visitor = visitor;
+      this.queue = new ArrayBlockingQueue<Event[]>(queueBatches);
+    }
+
+    @Override
+    public void run() {
+      try {
+        Event[] batch;
+        while ((batch = queue.take()) != END_OF_EVENTS) {
+          if (error != null) {
+            // Keep draining, so that the loader doesn't block on us.
+            continue;
+          }
+          try {
+            replay(batch);
+          } catch (Throwable t) {
+            error = t;
+          }
+        }
+      } catch (InterruptedException ie) {
+        error = ie;
+      }
+    }
+
+    private void replay(Event[] batch) throws IOException {
+      for (Event e : batch) {
+        if (e == null) {
+          break;
+        }
+        switch (e.type) {
+        case VISIT:
+          visitor.visit(e.element, e.value);
+          break;
+        case ENCLOSING:
+          visitor.visitEnclosingElement(e.element);
+          break;
+        case ENCLOSING_WITH_KEY:
+          visitor.visitEnclosingElement(e.element, e.key, e.value);
+          break;
+        case LEAVE:
+          visitor.leaveEnclosingElement();
+          break;
+        }
+      }
+    }
+  }
+
+  private final List<ImageVisitor> visitors;
+  private final List<Worker> workers;
+  private final int batchSize;
+
+  private Event[] batch;
+  private int batchLen = 0;
+
+  ParallelImageVisitor(List<ImageVisitor> visitors) {
+    this(visitors, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_BATCHES);
+  }
+
+  ParallelImageVisitor(List<ImageVisitor> visitors, int batchSize,
+      int queueBatches) {
+    Preconditions.checkArgument(!visitors.isEmpty(), "No visitors given");
+    this.visitors = ImmutableList.copyOf(visitors);
+    this.batchSize = batchSize;
+    ImmutableList.Builder<Worker> b = ImmutableList.builder();
+    for (ImageVisitor v : visitors) {
+      b.add(new Worker(v, queueBatches));
+    }
+    this.workers = b.build();
+    this.batch = new Event[batchSize];
+  }
+
+  @Override
+  void start() throws IOException {
+    for (ImageVisitor v : visitors) {
+      v.start();
+    }
+    for (Worker w : workers) {
+      w.start();
+    }
+  }
+
+  @Override
+  void finish() throws IOException {
+    boolean succeeded = false;
+    try {
+      stopWorkers();
+      checkErrors();
+      succeeded = true;
+    } finally {
+      for (ImageVisitor v : visitors) {
+        if (succeeded) {
+          v.finish();
+        } else {
+          v.finishAbnormally();
+        }
+      }
+    }
+  }
+
+  @Override
+  void finishAbnormally() throws IOException {
+    try {
+      stopWorkers();
+    } finally {
+      for (ImageVisitor v : visitors) {
+        v.finishAbnormally();
+      }
+    }
+  }
+
+  @Override
+  void visit(ImageElement element, String value) throws IOException {
+    add(new Event(EventType.VISIT, element, null, value));
+  }
+
+  @Override
+  void visitEnclosingElement(ImageElement element) throws IOException {
+    add(new Event(EventType.ENCLOSING, element, null, null));
+  }
+
+  @Override
+  void visitEnclosingElement(ImageElement element, ImageElement key,
+      String value) throws IOException {
+    add(new Event(EventType.ENCLOSING_WITH_KEY, element, key, value));
+  }
+
+  @Override
+  void leaveEnclosingElement() throws IOException {
+    add(new Event(EventType.LEAVE, null, null, null));
+  }
+
+  private void add(Event e) throws IOException {
+    batch[batchLen++] = e;
+    if (batchLen == batchSize) {
+      flushBatch();
+      // Fail fast rather than decoding the rest of the image for nothing.
+      checkErrors();
+    }
+  }
+
+  /**
+   * Hand the current batch to all of the workers. The batch is shared
+   * between them, since the events are immutable.
+   */
+  private void flushBatch() throws IOException {
+    if (batchLen == 0) {
+      return;
+    }
+    for (Worker w : workers) {
+      put(w, batch);
+    }
+    batch = new Event[batchSize];
+    batchLen = 0;
+  }
+
+  private void stopWorkers() throws IOException {
+    flushBatch();
+    for (Worker w : workers) {
+      put(w, END_OF_EVENTS);
+    }
+    for (Worker w : workers) {
+      try {
+        w.join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted waiting for " + w.getName());
+      }
+    }
+  }
+
+  private static void put(Worker w, Event[] batch) throws IOException {
+    try {
+      w.queue.put(batch);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted passing elements to " + w.getName());
+    }
+  }
+
+  private void checkErrors() throws IOException {
+    for (Worker w : workers) {
+      Throwable t = w.error;
+      if (t == null) {
+        continue;
+      }
+      if (t instanceof IOException) {
+        throw (IOException)t;
+      }
+      throw new IOException(w.getName() + " failed", t);
+    }
+  }
+}
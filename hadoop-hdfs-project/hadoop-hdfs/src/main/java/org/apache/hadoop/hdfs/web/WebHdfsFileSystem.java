@@ -131,6 +131,7 @@ public static boolean isEnabled(final Configuration conf, final Log log) {
   private final AuthenticatedURL.Token authToken = new AuthenticatedURL.Token();
   private RetryPolicy retryPolicy = null;
   private Path workingDir;
+  private boolean keepAlive;
 
   /**
    * Return the protocol scheme for the FileSystem.
@@ -164,6 +165,9 @@ public synchronized void initialize(URI uri, Configuration conf
             DFSConfigKeys.DFS_CLIENT_RETRY_POLICY_SPEC_DEFAULT,
             SafeModeException.class);
     this.workingDir = getHomeDirectory();
+    this.keepAlive = conf.getBoolean(
+        DFSConfigKeys.DFS_WEBHDFS_KEEPALIVE_ENABLED_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_KEEPALIVE_ENABLED_DEFAULT);
 
     if (UserGroupInformation.isSecurityEnabled()) {
       initDelegationToken();
@@ -388,6 +392,61 @@ private HttpURLConnection getHttpUrlConnection(URL url)
     return conn;
   }
 
+  /**
+   * The most that {@link #releaseConnection(HttpURLConnection, boolean)}
+   * reads of the rest of a response in order to reuse its connection.
+   * Reconnecting is cheaper than reading any more.
+   */
+  static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+  /**
+   * Release a connection once its response has been handled.
+   *
+   * {@link HttpURLConnection#disconnect()} closes the underlying socket.
+   * With keep-alive enabled, the rest of a small response is read and the
+   * stream closed instead, which returns the socket to the JDK's
+   * keep-alive cache for the next request to the same server. This saves
+   * a TCP (and possibly SPNEGO) handshake per operation.
+   *
+   * @param conn the connection
+   * @param responded whether a response was received on the connection.
+   *        If not, asking for its stream would send the request again, so
+   *        the connection is just disconnected.
+   */
+  void releaseConnection(final HttpURLConnection conn,
+      final boolean responded) {
+    if (!keepAlive || !responded) {
+      conn.disconnect();
+      return;
+    }
+    InputStream in = null;
+    try {
+      try {
+        in = conn.getInputStream();
+      } catch(IOException ioe) {
+        // The response was an error; its body is in the error stream.
+        in = conn.getErrorStream();
+      }
+      if (in != null) {
+        final byte[] buf = new byte[4096];
+        long remaining = MAX_DRAIN_BYTES;
+        int n;
+        while (remaining >= 0 && (n = in.read(buf)) != -1) {
+          remaining -= n;
+        }
+        if (remaining < 0) {
+          // Too much left to be worth reading; give up on the socket.
+          conn.disconnect();
+          return;
+        }
+        in.close();
+      }
+    } catch(IOException ioe) {
+      LOG.debug("Failed to drain the response; disconnecting", ioe);
+      conn.disconnect();
+    }
+  }
+
   /**
    * Run a http operation.
    * Connect to the http server, validate response, and obtain the JSON output.
@@ -414,6 +473,8 @@ class Runner {
 
     private boolean checkRetry;
     private HttpURLConnection conn = null;
+    /** Whether a response has been received on conn. */
+    private boolean responded = false;
     private Map<?, ?> json = null;
 
     Runner(final HttpOpParam.Op op, final URL url, final boolean redirected) {
@@ -436,6 +497,7 @@ private void init() throws IOException {
       checkRetry = !redirected;
       try {
         conn = getHttpUrlConnection(url);
+        responded = false;
       } catch(AuthenticationException ae) {
         checkRetry = false;
         throw new IOException("Authentication failed, url=" + url, ae);
@@ -455,11 +517,17 @@ private void connect(boolean doOutput) throws IOException {
 
     private void disconnect() {
       if (conn != null) {
-        conn.disconnect();
+        releaseConnection(conn, responded);
         conn = null;
       }
     }
 
+    private int getResponseCode() throws IOException {
+      final int code = conn.getResponseCode();
+      responded = true;
+      return code;
+    }
+
     Runner run() throws IOException {
       for(int retry = 0; ; retry++) {
         try {
@@ -513,6 +581,7 @@ private void shouldRetry(final IOException ioe, final int retry
     HttpURLConnection twoStepWrite() throws IOException {
       //Step 1) Submit a Http request with neither auto-redirect nor data. 
       connect(false);
+      getResponseCode();
       validateResponse(HttpOpParam.TemporaryRedirectOp.valueOf(op), conn, false);
       final String redirect = conn.getHeaderField("Location");
       disconnect();
@@ -520,6 +589,7 @@ HttpURLConnection twoStepWrite() throws IOException {
       
       //Step 2) Submit another Http request with the URL from the Location header with data.
       conn = (HttpURLConnection)new URL(redirect).openConnection();
+      responded = false;
       conn.setRequestProperty("Content-Type", MediaType.APPLICATION_OCTET_STREAM);
       conn.setChunkedStreamingMode(32 << 10); //32kB-chunk
       connect();
@@ -533,7 +603,7 @@ FSDataOutputStream write(final int bufferSize) throws IOException {
     void getResponse(boolean getJsonAndDisconnect) throws IOException {
       try {
         connect();
-        final int code = conn.getResponseCode();
+        final int code = getResponseCode();
         if (!redirected && op.getRedirect()
             && code != op.getExpectedHttpResponseCode()) {
           final String redirect = conn.getHeaderField("Location");
@@ -543,7 +613,9 @@ void getResponse(boolean getJsonAndDisconnect) throws IOException {
   
           checkRetry = false;
           conn = (HttpURLConnection)new URL(redirect).openConnection();
+          responded = false;
           connect();
+          getResponseCode();
         }
 
         json = validateResponse(op, conn, false);
@@ -684,13 +756,16 @@ FSDataOutputStream write(final HttpOpParam.Op op,
         conn.getOutputStream(), bufferSize), statistics) {
       @Override
       public void close() throws IOException {
+        boolean responded = false;
         try {
           super.close();
         } finally {
           try {
+            conn.getResponseCode();
+            responded = true;
             validateResponse(op, conn, true);
           } finally {
-            conn.disconnect();
+            releaseConnection(conn, responded);
           }
         }
       }
@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.impl.Log4JLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
+import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
+import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
+import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.util.Quantile;
+import org.apache.hadoop.metrics2.util.SampleQuantiles;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Level;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Measures the rate at which a {@link QuorumJournalManager} can write
+ * transactions to an in-process {@link MiniJournalCluster}, with an
+ * artificial round-trip time injected in front of one of the
+ * JournalNodes to model a quorum which spans datacenters.
+ *
+ * For each configured RTT, this reports the rate at which the writer
+ * could sync transactions to a quorum, as well as the rate at which
+ * the distant JournalNode was able to keep up, and the percentiles of
+ * the journal RPC latency of each JournalNode.
+ */
+public class QJMThroughputBenchmark extends Configured implements Tool {
+  private static final String JID = "qjm-benchmark";
+
+  /**
+   * Factory for loggers which delay every call to the JN listening on
+   * the given port by the given number of milliseconds, and time the
+   * journal RPCs to each JN.
+   */
+  private static class DelayingLoggerFactory implements AsyncLogger.Factory {
+    private final int slowPort;
+    private final long delayMs;
+    private final Map<InetSocketAddress, SampleQuantiles> latencies =
+        Maps.newConcurrentMap();
+
+    DelayingLoggerFactory(int slowPort, long delayMs) {
+      this.slowPort = slowPort;
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public AsyncLogger createLogger(Configuration conf, NamespaceInfo nsInfo,
+        String journalId, InetSocketAddress addr) {
+      final long delay = (addr.getPort() == slowPort) ? delayMs : 0;
+      final SampleQuantiles latency =
+          new SampleQuantiles(MutableQuantiles.quantiles);
+      latencies.put(addr, latency);
+      return new IPCLoggerChannel(conf, nsInfo, journalId, addr) {
+        @Override
+        protected QJournalProtocol createProxy() throws IOException {
+          return (QJournalProtocol)Proxy.newProxyInstance(
+              QJournalProtocol.class.getClassLoader(),
+              new Class<?>[] { QJournalProtocol.class },
+              new TimingInvocationHandler(super.createProxy(), delay,
+                  latency));
+        }
+      };
+    }
+  }
+
+  /**
+   * Delays each call by a fixed time, and adds the time each journal call
+   * takes to the given quantiles.
+   */
+  private static class TimingInvocationHandler
+      implements InvocationHandler, Closeable {
+    private final QJournalProtocol realProxy;
+    private final long delayMs;
+    private final SampleQuantiles latency;
+
+    TimingInvocationHandler(QJournalProtocol realProxy, long delayMs,
+        SampleQuantiles latency) {
+      this.realProxy = realProxy;
+      this.delayMs = delayMs;
+      this.latency = latency;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      long start = Time.monotonicNow();
+      if (delayMs > 0) {
+        Thread.sleep(delayMs);
+      }
+      try {
+        return method.invoke(realProxy, args);
+      } catch (InvocationTargetException ite) {
+        throw ite.getCause();
+      } finally {
+        if (method.getName().equals("journal")) {
+          latency.insert(Time.monotonicNow() - start);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      RPC.stopProxy(realProxy);
+    }
+  }
+
+  private void runOne(MiniJournalCluster cluster, long rttMs,
+      int numBatches, int txnsPerBatch) throws Exception {
+    Configuration conf = new Configuration(getConf());
+    // The slow node is expected to lag, so give it room to do so.
+    conf.setInt(DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY, 1024);
+
+    int slowPort = cluster.getJournalNode(2).getBoundIpcAddress().getPort();
+    DelayingLoggerFactory loggerFactory =
+        new DelayingLoggerFactory(slowPort, rttMs);
+    QuorumJournalManager qjm = new QuorumJournalManager(conf,
+        cluster.getQuorumJournalURI(JID + "-" + rttMs),
+        QJMTestUtil.FAKE_NSINFO, loggerFactory);
+    try {
+      qjm.format(QJMTestUtil.FAKE_NSINFO);
+      qjm.recoverUnfinalizedSegments();
+
+      long startTime = Time.monotonicNow();
+      EditLogOutputStream stm = qjm.startLogSegment(1);
+      long txid = 1;
+      for (int i = 0; i < numBatches; i++) {
+        for (int j = 0; j < txnsPerBatch; j++) {
+          QJMTestUtil.writeOp(stm, txid++);
+        }
+        stm.setReadyToFlush();
+        stm.flush();
+      }
+      long quorumTime = Time.monotonicNow() - startTime;
+
+      // Wait for the slow node to catch up.
+      List<AsyncLogger> loggers = qjm.getLoggerSetForTests()
+          .getLoggersForTests();
+      for (AsyncLogger l : loggers) {
+        ((IPCLoggerChannel)l).waitForAllPendingCalls();
+      }
+      long allTime = Time.monotonicNow() - startTime;
+
+      stm.close();
+      qjm.finalizeLogSegment(1, txid - 1);
+
+      long numTxns = txid - 1;
+      System.out.println(String.format(
+          "rtt=%dms depth=%d txns=%d quorum: %.0f txns/s, " +
+          "slowest JN: %.0f txns/s",
+          rttMs,
+          conf.getInt(DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY,
+              DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_DEFAULT),
+          numTxns,
+          numTxns * 1000.0 / Math.max(quorumTime, 1),
+          numTxns * 1000.0 / Math.max(allTime, 1)));
+      for (Map.Entry<InetSocketAddress, SampleQuantiles> e :
+          loggerFactory.latencies.entrySet()) {
+        StringBuilder sb = new StringBuilder("  JN ")
+            .append(e.getKey().getPort())
+            .append(e.getKey().getPort() == slowPort ? " (slow)" : "")
+            .append(" journal latency ms:");
+        Map<Quantile, Long> snapshot = e.getValue().snapshot();
+        if (snapshot != null) {
+          for (Map.Entry<Quantile, Long> q : snapshot.entrySet()) {
+            sb.append(String.format(" p%d=%d",
+                (int) (q.getKey().quantile * 100), q.getValue()));
+          }
+        }
+        System.out.println(sb);
+      }
+    } finally {
+      qjm.close();
+    }
+  }
+
+  private static void printUsage() {
+    ToolRunner.printGenericCommandUsage(System.err);
+    System.err.println("Usage: QJMThroughputBenchmark [rttMs ...]");
+    System.err.println("Config properties:\n" +
+      "  qjmbench.num.batches:\tnumber of batches to sync (1000)\n" +
+      "  qjmbench.txns.per.batch:\ttransactions per batch (10)\n" +
+      "  " + DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY +
+      ":\tjournal RPCs in flight per JN (1)\n");
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    Log hadoopLog = LogFactory.getLog("org");
+    if (hadoopLog instanceof Log4JLogger) {
+      ((Log4JLogger) hadoopLog).getLogger().setLevel(Level.WARN);
+    }
+    long[] rtts = new long[] { 0, 1, 5, 20, 50 };
+    if (args.length > 0) {
+      rtts = new long[args.length];
+      try {
+        for (int i = 0; i < args.length; i++) {
+          rtts[i] = Long.parseLong(args[i]);
+        }
+      } catch (NumberFormatException e) {
+        printUsage();
+        return -1;
+      }
+    }
+    Configuration conf = getConf();
+    int numBatches = conf.getInt("qjmbench.num.batches", 1000);
+    int txnsPerBatch = conf.getInt("qjmbench.txns.per.batch", 10);
+
+    File baseDir = new File(System.getProperty("test.build.data",
+        "target/test/data"), "qjm-benchmark");
+    FileUtil.fullyDelete(baseDir);
+    // Each JournalNode registers its own metrics sources.
+    DefaultMetricsSystem.setMiniClusterMode(true);
+    MiniJournalCluster cluster = new MiniJournalCluster.Builder(conf)
+        .baseDir(baseDir.getAbsolutePath())
+        .build();
+    try {
+      for (long rtt : rtts) {
+        runOne(cluster, rtt, numBatches, txnsPerBatch);
+      }
+    } finally {
+      cluster.shutdown();
+      FileUtil.fullyDelete(baseDir);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(new HdfsConfiguration(),
+        new QJMThroughputBenchmark(), args);
+    System.exit(res);
+  }
+}
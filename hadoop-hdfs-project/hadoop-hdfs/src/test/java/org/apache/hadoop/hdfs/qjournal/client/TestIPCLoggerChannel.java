@@ -40,6 +40,7 @@
 import org.mockito.Mockito;
 
 import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class TestIPCLoggerChannel {
   private static final Log LOG = LogFactory.getLog(
@@ -61,10 +62,13 @@ public class TestIPCLoggerChannel {
       LIMIT_QUEUE_SIZE_MB * 1024 * 1024;
   
   @Before
-  public void setupMock() {
+  public void setupConf() {
     conf.setInt(DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY,
         LIMIT_QUEUE_SIZE_MB);
+    setupMock();
+  }
 
+  private void setupMock() {
     // Channel to the mock object instead of a real IPC proxy.
     ch = new IPCLoggerChannel(conf, FAKE_NSINFO, JID, FAKE_ADDR) {
       @Override
@@ -178,4 +182,79 @@ public void testStopSendingEditsWhenOutOfSync() throws Exception {
 
     ch.sendEdits(3L, 3L, 1, FAKE_DATA).get();
   }
+
+  /**
+   * Test that batches which queue up behind a slow RPC are coalesced
+   * into a single RPC once it completes.
+   */
+  @Test
+  public void testCoalesceQueuedBatches() throws Exception {
+    DelayAnswer delayer = new DelayAnswer(LOG);
+    Mockito.doAnswer(delayer).when(mockProxy).journal(
+        Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(1L),
+        Mockito.eq(1), Mockito.same(FAKE_DATA));
+
+    ch.sendEdits(1L, 1L, 1, FAKE_DATA);
+    delayer.waitForCall();
+
+    // These are queued while the first RPC is outstanding.
+    ch.sendEdits(1L, 2L, 1, FAKE_DATA);
+    ch.sendEdits(1L, 3L, 1, FAKE_DATA);
+    ListenableFuture<Void> last = ch.sendEdits(1L, 4L, 1, FAKE_DATA);
+
+    delayer.proceed();
+    last.get();
+
+    // They should have been sent as a single RPC.
+    Mockito.verify(mockProxy).journal(Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(2L),
+        Mockito.eq(3), Mockito.<byte[]>any());
+    Mockito.verify(mockProxy, Mockito.times(2)).journal(
+        Mockito.<RequestInfo>any(), Mockito.anyLong(), Mockito.anyLong(),
+        Mockito.anyInt(), Mockito.<byte[]>any());
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return ch.getQueuedEditsSize() == 0;
+      }
+    }, 10, 1000);
+  }
+
+  /**
+   * Test that, with more than one outstanding batch allowed, the next
+   * batch is sent before the previous one has been acknowledged.
+   */
+  @Test
+  public void testPipelinedBatches() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_QJOURNAL_MAX_OUTSTANDING_BATCHES_KEY, 2);
+    setupMock();
+
+    DelayAnswer delayer = new DelayAnswer(LOG);
+    Mockito.doAnswer(delayer).when(mockProxy).journal(
+        Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(1L),
+        Mockito.eq(1), Mockito.same(FAKE_DATA));
+
+    ListenableFuture<Void> first = ch.sendEdits(1L, 1L, 1, FAKE_DATA);
+    delayer.waitForCall();
+    assertEquals(1, ch.getOutstandingBatches());
+
+    // The second batch should be acked even though the first is still
+    // outstanding.
+    ch.sendEdits(1L, 2L, 1, FAKE_DATA).get();
+    assertFalse(first.isDone());
+
+    // A call which isn't a write of edits should wait for the pipeline to
+    // drain.
+    ListenableFuture<Void> finalize = ch.finalizeLogSegment(1L, 2L);
+    Thread.sleep(100);
+    Mockito.verify(mockProxy, Mockito.never()).finalizeLogSegment(
+        Mockito.<RequestInfo>any(), Mockito.anyLong(), Mockito.anyLong());
+
+    delayer.proceed();
+    finalize.get();
+    assertTrue(first.isDone());
+    assertEquals(0, ch.getOutstandingBatches());
+  }
 }
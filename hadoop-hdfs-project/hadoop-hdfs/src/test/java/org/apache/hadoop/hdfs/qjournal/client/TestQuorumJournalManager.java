@@ -39,6 +39,7 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -184,6 +185,53 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  /**
+   * Test that, with in-progress tailing enabled, a reader fetches edits
+   * from the JournalNodes' caches over RPC, including those in the
+   * segment which is still being written, and starting in the middle of
+   * a segment. Once the edits are no longer cached, it should fall back
+   * to reading the finalized segments.
+   */
+  @Test
+  public void testSelectInProgressEditsOverRpc() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    QuorumJournalManager readerQjm = createSpyingQJM();
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    try {
+      writeSegment(cluster, qjm, 1, 3, true);
+      EditLogOutputStream stm = writeSegment(cluster, qjm, 4, 3, false);
+      waitForAllPendingCalls(qjm.getLoggerSetForTests());
+
+      readerQjm.selectInputStreams(streams, 1, true);
+      verifyEdits(streams, 1, 6);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      readerQjm.selectInputStreams(streams, 5, true);
+      verifyEdits(streams, 5, 6);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      // Nothing more to read.
+      readerQjm.selectInputStreams(streams, 7, true);
+      assertTrue(streams.isEmpty());
+
+      stm.close();
+      qjm.finalizeLogSegment(4, 6);
+      waitForAllPendingCalls(qjm.getLoggerSetForTests());
+
+      // Restarting the JNs empties their caches.
+      for (int i = 0; i < 3; i++) {
+        cluster.restartJournalNode(i);
+      }
+      readerQjm.selectInputStreams(streams, 5, true);
+      verifyEdits(streams, 5, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      readerQjm.close();
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
@@ -22,7 +22,9 @@
 import java.io.File;
 import java.io.IOException;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.RequestInfo;
@@ -33,6 +35,7 @@
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageErrorReporter;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -56,13 +59,15 @@ public class TestJournal {
   private StorageErrorReporter mockErrorReporter = Mockito.mock(
       StorageErrorReporter.class);
 
+  private Configuration conf;
   private Journal journal;
 
   
   @Before
   public void setup() throws Exception {
     FileUtil.fullyDelete(TEST_LOG_DIR);
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    conf = new Configuration();
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     journal.format(FAKE_NSINFO);
   }
   
@@ -138,7 +143,7 @@ public void testRestartJournal() throws Exception {
     journal.close(); // close to unlock the storage dir
     
     // Now re-instantiate, make sure history is still there
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     
     // The storage info should be read, even if no writer has taken over.
     assertEquals(storageString,
@@ -193,7 +198,7 @@ public void testJournalLocking() throws Exception {
 
     journal.newEpoch(FAKE_NSINFO,  1);
     try {
-      new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+      new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
       fail("Did not fail to create another journal in same dir");
     } catch (IOException ioe) {
       GenericTestUtils.assertExceptionContains(
@@ -204,7 +209,7 @@ public void testJournalLocking() throws Exception {
     
     // Journal should no longer be locked after the close() call.
     // Hence, should be able to create a new Journal in the same dir.
-    Journal journal2 = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    Journal journal2 = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     journal2.newEpoch(FAKE_NSINFO, 2);
   }
   
@@ -231,7 +236,7 @@ public void testFinalizeWhenEditsAreMissed() throws Exception {
     // Check that, even if we re-construct the journal by scanning the
     // disk, we don't allow finalizing incorrectly.
     journal.close();
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     
     try {
       journal.finalizeLogSegment(makeRI(4), 1, 6);
@@ -340,7 +345,99 @@ public void testStartLogSegmentWhenAlreadyExists() throws Exception {
     }
 
   }
-  
+
+  /**
+   * Test that a pipelined journal() call which arrives before the
+   * call carrying the preceding transactions waits for it, rather
+   * than knocking the journal out of sync.
+   */
+  @Test(timeout=10000)
+  public void testOutOfOrderBatchWaitsForPredecessor() throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1);
+
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          journal.journal(makeRI(3), 1, 4, 3,
+              QJMTestUtil.createTxnData(4, 3));
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    t.start();
+    // Give the second batch a chance to arrive first.
+    Thread.sleep(100);
+    journal.journal(makeRI(2), 1, 1, 3,
+        QJMTestUtil.createTxnData(1, 3));
+    t.join();
+
+    assertEquals(6, journal.getHighestWrittenTxId());
+    journal.finalizeLogSegment(makeRI(4), 1, 6);
+  }
+
+  /**
+   * Test that a batch whose predecessor never arrives still fails
+   * once the out-of-order wait has elapsed.
+   */
+  @Test(timeout=10000)
+  public void testOutOfOrderBatchGivesUp() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_JOURNALNODE_OUT_OF_ORDER_WAIT_KEY, 100);
+    journal.close();
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
+
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1);
+    try {
+      journal.journal(makeRI(3), 1, 4, 3,
+          QJMTestUtil.createTxnData(4, 3));
+      fail("Did not fail to write a batch with missing predecessors");
+    } catch (JournalOutOfSyncException e) {
+      GenericTestUtils.assertExceptionContains(
+          "Can't write txid 4 expecting nextTxId=1", e);
+    }
+  }
+
+  /**
+   * Test that a batch only counts as written once it has been synced,
+   * and that a failed sync stops the journal from accepting further
+   * edits to the segment.
+   */
+  @Test(timeout=10000)
+  public void testFailedSyncAbortsSegment() throws Exception {
+    journal.close();
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter,
+        new JournalSyncer() {
+          @Override
+          void sync(Journal j, EditLogFileOutputStream stm)
+              throws IOException {
+            assertEquals(0, j.getHighestWrittenTxId());
+            throw new IOException("injected");
+          }
+        });
+
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1);
+    try {
+      journal.journal(makeRI(2), 1, 1, 3,
+          QJMTestUtil.createTxnData(1, 3));
+      fail("Did not fail when the sync failed");
+    } catch (IOException ioe) {
+      GenericTestUtils.assertExceptionContains("injected", ioe);
+    }
+    assertEquals(0, journal.getHighestWrittenTxId());
+
+    try {
+      journal.journal(makeRI(3), 1, 4, 3,
+          QJMTestUtil.createTxnData(4, 3));
+      fail("Accepted edits after a failed sync");
+    } catch (JournalOutOfSyncException e) {
+      GenericTestUtils.assertExceptionContains("no segment open", e);
+    }
+  }
+
   private static RequestInfo makeRI(int serial) {
     return new RequestInfo(JID, 1, serial, 0);
   }
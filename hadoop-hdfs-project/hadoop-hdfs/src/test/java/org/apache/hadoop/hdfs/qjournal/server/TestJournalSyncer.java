@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.GenericTestUtils.DelayAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestJournalSyncer {
+  private static final Log LOG = LogFactory.getLog(TestJournalSyncer.class);
+
+  private final JournalSyncer syncer = new JournalSyncer();
+  private final ExecutorService exec = Executors.newCachedThreadPool();
+  private Journal journal;
+
+  @Before
+  public void setup() throws IOException {
+    // Sync the segments directly, as a Journal does for its current one.
+    journal = Mockito.mock(Journal.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((EditLogFileOutputStream) invocation.getArguments()[0]).force();
+        return null;
+      }
+    }).when(journal).syncSegment(Mockito.<EditLogFileOutputStream>any());
+  }
+
+  @After
+  public void shutdown() {
+    exec.shutdownNow();
+  }
+
+  /**
+   * Test that syncs requested while another sync is running are
+   * batched into a single following round.
+   */
+  @Test(timeout=10000)
+  public void testConcurrentSyncsAreCoalesced() throws Exception {
+    EditLogFileOutputStream stm1 = Mockito.mock(EditLogFileOutputStream.class);
+    EditLogFileOutputStream stm2 = Mockito.mock(EditLogFileOutputStream.class);
+    DelayAnswer delayer = new DelayAnswer(LOG) {
+      @Override
+      protected Object passThrough(InvocationOnMock invocation) {
+        return null;
+      }
+    };
+    Mockito.doAnswer(delayer).when(stm1).force();
+
+    Future<Void> first = submitSync(stm1);
+    delayer.waitForCall();
+
+    // While the first sync is blocked, queue up several more, to
+    // two different streams.
+    Future<Void> second = submitSync(stm1);
+    Future<Void> third = submitSync(stm2);
+    Future<Void> fourth = submitSync(stm2);
+    Thread.sleep(100);
+    assertFalse(second.isDone());
+
+    delayer.proceed();
+    first.get();
+    second.get();
+    third.get();
+    fourth.get();
+
+    // One round for the first call, and one for the rest, in which
+    // each stream is only synced once.
+    assertEquals(2, syncer.getNumRounds());
+    Mockito.verify(stm1, Mockito.times(2)).force();
+    Mockito.verify(stm2, Mockito.times(1)).force();
+  }
+
+  /**
+   * Test that a failure to sync one stream is only reported to the
+   * callers waiting on that stream.
+   */
+  @Test(timeout=10000)
+  public void testFailureIsPerStream() throws Exception {
+    EditLogFileOutputStream good = Mockito.mock(EditLogFileOutputStream.class);
+    EditLogFileOutputStream bad = Mockito.mock(EditLogFileOutputStream.class);
+    Mockito.doThrow(new IOException("injected")).when(bad).force();
+
+    syncer.sync(journal, good);
+    try {
+      syncer.sync(journal, bad);
+      fail("Did not throw when the sync failed");
+    } catch (IOException ioe) {
+      GenericTestUtils.assertExceptionContains("injected", ioe);
+    }
+    syncer.sync(journal, good);
+  }
+
+  private Future<Void> submitSync(final EditLogFileOutputStream stm) {
+    return exec.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        syncer.sync(journal, stm);
+        return null;
+      }
+    });
+  }
+}
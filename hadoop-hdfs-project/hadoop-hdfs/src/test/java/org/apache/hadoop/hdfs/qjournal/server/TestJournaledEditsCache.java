@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.Test;
+
+public class TestJournaledEditsCache {
+
+  // Use three-digit txids so that all the batches are the same size.
+  private static final int BATCH_SIZE;
+  static {
+    try {
+      BATCH_SIZE = QJMTestUtil.createTxnData(101, 10).length;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final JournaledEditsCache cache =
+      new JournaledEditsCache(BATCH_SIZE * 3);
+
+  private void storeBatch(int firstTxId) throws Exception {
+    cache.storeEdits(firstTxId, 10,
+        QJMTestUtil.createTxnData(firstTxId, 10));
+  }
+
+  @Test
+  public void testRetrieveEdits() throws Exception {
+    storeBatch(101);
+    storeBatch(111);
+
+    // Should start from the batch containing the requested txid.
+    GetJournaledEditsResponseProto resp =
+        cache.retrieveEdits(115, 100, Long.MAX_VALUE);
+    assertEquals(111, resp.getFirstTxId());
+    assertEquals(10, resp.getTxnCount());
+    assertReadable(resp, 111, 120);
+
+    resp = cache.retrieveEdits(101, 100, Long.MAX_VALUE);
+    assertEquals(101, resp.getFirstTxId());
+    assertEquals(20, resp.getTxnCount());
+    assertReadable(resp, 101, 120);
+
+    // Beyond the end of the cache.
+    assertEquals(0,
+        cache.retrieveEdits(121, 100, Long.MAX_VALUE).getTxnCount());
+  }
+
+  @Test
+  public void testMaxTxns() throws Exception {
+    storeBatch(101);
+    storeBatch(111);
+    storeBatch(121);
+
+    // Whole batches are returned, up to the limit.
+    GetJournaledEditsResponseProto resp =
+        cache.retrieveEdits(105, 16, Long.MAX_VALUE);
+    assertEquals(101, resp.getFirstTxId());
+    assertEquals(20, resp.getTxnCount());
+
+    // At least one batch is returned, even if it's over the limit.
+    resp = cache.retrieveEdits(101, 5, Long.MAX_VALUE);
+    assertEquals(10, resp.getTxnCount());
+  }
+
+  @Test
+  public void testMaxTxId() throws Exception {
+    storeBatch(101);
+    storeBatch(111);
+    storeBatch(121);
+
+    // Batches beyond the durable txid are not served.
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(101, 100, 120);
+    assertEquals(101, resp.getFirstTxId());
+    assertEquals(20, resp.getTxnCount());
+    assertReadable(resp, 101, 120);
+
+    // Not even when the requested txid is in such a batch.
+    assertEquals(0, cache.retrieveEdits(115, 100, 119).getTxnCount());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      storeBatch(i * 10 + 101);
+    }
+    assertEquals(BATCH_SIZE * 3, cache.getTotalSize());
+    try {
+      cache.retrieveEdits(115, 100, Long.MAX_VALUE);
+      fail("Should have been evicted");
+    } catch (JournaledEditsCache.CacheMissException cme) {
+      // expected
+    }
+    assertEquals(121,
+        cache.retrieveEdits(121, 100, Long.MAX_VALUE).getFirstTxId());
+  }
+
+  @Test
+  public void testNonContiguousBatchClearsCache() throws Exception {
+    storeBatch(101);
+    storeBatch(111);
+    // eg the writer was recovered and rewrote some txns
+    storeBatch(106);
+    try {
+      cache.retrieveEdits(101, 100, Long.MAX_VALUE);
+      fail("Should have been cleared");
+    } catch (JournaledEditsCache.CacheMissException cme) {
+      // expected
+    }
+    assertEquals(10,
+        cache.retrieveEdits(106, 100, Long.MAX_VALUE).getTxnCount());
+  }
+
+  private void assertReadable(GetJournaledEditsResponseProto resp,
+      int firstTxId, int lastTxId) throws Exception {
+    EditLogInputStream elis = EditLogFileInputStream.fromByteString(
+        resp.getEditLog(), "test", resp.getFirstTxId(), lastTxId, true);
+    try {
+      QJMTestUtil.verifyEdits(Collections.singletonList(elis),
+          firstTxId, lastTxId);
+    } finally {
+      IOUtils.closeStream(elis);
+    }
+  }
+}
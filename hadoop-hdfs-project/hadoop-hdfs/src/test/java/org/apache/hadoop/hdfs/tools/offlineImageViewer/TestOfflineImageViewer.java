@@ -33,6 +33,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -52,6 +53,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.server.namenode.FSImageTestUtil;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -414,6 +416,86 @@ public void outputOfFileDistributionVisitor() throws IOException {
     assertEquals(totalFiles, NUM_DIRS * FILES_PER_DIR);
   }
   
+  // Verify that several visitors fed from a single pass over the image
+  // produce the same results as they would on their own.
+  @Test
+  public void outputOfParallelVisitors() throws IOException {
+    File testFile = new File(ROOT, "/basicCheck");
+    File expectedLsOutputFile = new File(ROOT, "/serialLsOutput");
+    File lsOutputFile = new File(ROOT, "/parallelLsOutput");
+    File fdOutputFile = new File(ROOT, "/parallelFileDistributionOutput");
+
+    int totalFiles = 0;
+    try {
+      copyFile(originalFsimage, testFile);
+      new OfflineImageViewer(testFile.getPath(),
+          new LsImageVisitor(expectedLsOutputFile.getPath(), false),
+          false).go();
+
+      List<ImageVisitor> visitors = new ArrayList<ImageVisitor>();
+      visitors.add(new LsImageVisitor(lsOutputFile.getPath(), false));
+      visitors.add(new FileDistributionVisitor(fdOutputFile.getPath(), 0, 0));
+      TestImageVisitor testVisitor = new TestImageVisitor();
+      visitors.add(testVisitor);
+      // Use small batches, to exercise handing over many of them.
+      ImageVisitor v = new ParallelImageVisitor(visitors, 7, 2);
+      OfflineImageViewer oiv =
+        new OfflineImageViewer(testFile.getPath(), v, false);
+
+      oiv.go();
+
+      assertEquals(readLsfile(expectedLsOutputFile).keySet(),
+          readLsfile(lsOutputFile).keySet());
+      assertEquals(expectedLsOutputFile.length(), lsOutputFile.length());
+
+      BufferedReader reader = new BufferedReader(new FileReader(fdOutputFile));
+      String line = reader.readLine();
+      assertEquals("Size\tNumFiles", line);
+      while((line = reader.readLine()) != null) {
+        totalFiles += Integer.parseInt(line.split("\t")[1]);
+      }
+      reader.close();
+
+      assertEquals(1, testVisitor.getDelegationTokenRenewers().size());
+    } finally {
+      if(testFile.exists()) testFile.delete();
+      if(expectedLsOutputFile.exists()) expectedLsOutputFile.delete();
+      if(lsOutputFile.exists()) lsOutputFile.delete();
+      if(fdOutputFile.exists()) fdOutputFile.delete();
+    }
+    assertEquals(NUM_DIRS * FILES_PER_DIR, totalFiles);
+  }
+
+  // Verify that a failure in one of several parallel visitors fails
+  // the processing of the image.
+  @Test
+  public void failureOfParallelVisitor() throws IOException {
+    File testFile = new File(ROOT, "/basicCheck");
+
+    try {
+      copyFile(originalFsimage, testFile);
+      List<ImageVisitor> visitors = new ArrayList<ImageVisitor>();
+      visitors.add(new TestImageVisitor());
+      visitors.add(new TestImageVisitor() {
+        @Override
+        void leaveEnclosingElement() throws IOException {
+          throw new IOException("injected failure");
+        }
+      });
+      ImageVisitor v = new ParallelImageVisitor(visitors, 7, 2);
+      OfflineImageViewer oiv =
+        new OfflineImageViewer(testFile.getPath(), v, false);
+      try {
+        oiv.go();
+        fail("Did not fail when a visitor failed");
+      } catch (IOException ioe) {
+        GenericTestUtils.assertExceptionContains("injected failure", ioe);
+      }
+    } finally {
+      if(testFile.exists()) testFile.delete();
+    }
+  }
+
   private static class TestImageVisitor extends ImageVisitor {
     private List<String> delegationTokenRenewers = new LinkedList<String>();
     TestImageVisitor() {
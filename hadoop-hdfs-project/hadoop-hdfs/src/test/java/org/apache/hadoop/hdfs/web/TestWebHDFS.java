@@ -18,7 +18,10 @@
 
 package org.apache.hadoop.hdfs.web;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.util.Random;
 
 import org.apache.commons.logging.Log;
@@ -29,12 +32,14 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.TestDFSClientRetries;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
 import org.apache.log4j.Level;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 /** Test WebHDFS */
 public class TestWebHDFS {
@@ -208,4 +213,56 @@ public void testNamenodeRestart() throws Exception {
     final Configuration conf = WebHdfsTestUtil.createConf();
     TestDFSClientRetries.namenodeRestartTest(conf, true);
   }
+
+  /**
+   * Test that, with keep-alive enabled, connections are released by
+   * reading the rest of the response rather than by disconnecting, so
+   * that the JDK can reuse them.
+   */
+  @Test
+  public void testReleaseConnection() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    final URI uri = new URI(WebHdfsFileSystem.SCHEME + "://localhost:50070");
+
+    final WebHdfsFileSystem keepAliveFs = new WebHdfsFileSystem();
+    keepAliveFs.initialize(uri, conf);
+    final ByteArrayInputStream body = new ByteArrayInputStream(new byte[100]);
+    HttpURLConnection conn = Mockito.mock(HttpURLConnection.class);
+    Mockito.doReturn(body).when(conn).getInputStream();
+    keepAliveFs.releaseConnection(conn, true);
+    Assert.assertEquals(0, body.available());
+    Mockito.verify(conn, Mockito.never()).disconnect();
+
+    // An error response is drained from the error stream.
+    final ByteArrayInputStream error = new ByteArrayInputStream(new byte[10]);
+    conn = Mockito.mock(HttpURLConnection.class);
+    Mockito.doThrow(new IOException("injected")).when(conn).getInputStream();
+    Mockito.doReturn(error).when(conn).getErrorStream();
+    keepAliveFs.releaseConnection(conn, true);
+    Assert.assertEquals(0, error.available());
+    Mockito.verify(conn, Mockito.never()).disconnect();
+
+    // Without a response, asking for the stream would resend the request.
+    conn = Mockito.mock(HttpURLConnection.class);
+    keepAliveFs.releaseConnection(conn, false);
+    Mockito.verify(conn).disconnect();
+    Mockito.verify(conn, Mockito.never()).getInputStream();
+
+    // A large response is not read to the end.
+    final ByteArrayInputStream large = new ByteArrayInputStream(
+        new byte[WebHdfsFileSystem.MAX_DRAIN_BYTES * 4]);
+    conn = Mockito.mock(HttpURLConnection.class);
+    Mockito.doReturn(large).when(conn).getInputStream();
+    keepAliveFs.releaseConnection(conn, true);
+    Assert.assertTrue(large.available() > 0);
+    Mockito.verify(conn).disconnect();
+
+    conf.setBoolean(DFSConfigKeys.DFS_WEBHDFS_KEEPALIVE_ENABLED_KEY, false);
+    final WebHdfsFileSystem noKeepAliveFs = new WebHdfsFileSystem();
+    noKeepAliveFs.initialize(uri, conf);
+    conn = Mockito.mock(HttpURLConnection.class);
+    noKeepAliveFs.releaseConnection(conn, true);
+    Mockito.verify(conn).disconnect();
+    Mockito.verify(conn, Mockito.never()).getInputStream();
+  }
 }
@@ -362,7 +362,12 @@ private static void writeLocalJobFile(Path jobFile, JobConf conf)
     OutputStream out = null;
     try {
       out = FileSystem.create(localFs, jobFile, urw_gr);
-      conf.writeXml(out);
+      if (conf.getBoolean(MRJobConfig.JOB_CONF_BINARY,
+          MRJobConfig.DEFAULT_JOB_CONF_BINARY)) {
+        conf.writeBinary(out);
+      } else {
+        conf.writeXml(out);
+      }
     } finally {
       IOUtils.cleanup(LOG, out);
     }
@@ -44,6 +44,7 @@
 import org.apache.hadoop.mapreduce.Cluster.JobTrackerStatus;
 import org.apache.hadoop.mapreduce.ClusterMetrics;
 import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.QueueInfo;
 import org.apache.hadoop.mapreduce.TaskCompletionEvent;
@@ -157,7 +158,12 @@ public Job(JobID jobid, String jobSubmitDir) throws IOException {
       // updated it.
       OutputStream out = localFs.create(localJobFile);
       try {
-        conf.writeXml(out);
+        if (conf.getBoolean(MRJobConfig.JOB_CONF_BINARY,
+            MRJobConfig.DEFAULT_JOB_CONF_BINARY)) {
+          conf.writeBinary(out);
+        } else {
+          conf.writeXml(out);
+        }
       } finally {
         out.close();
       }
@@ -32,6 +32,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.ParallelCompressionOutputStream;
 import org.apache.hadoop.util.*;
 
 /** 
@@ -134,7 +135,9 @@ public RecordWriter<K, V> getRecordWriter(FileSystem ignored,
       FileSystem fs = file.getFileSystem(job);
       FSDataOutputStream fileOut = fs.create(file, progress);
       return new LineRecordWriter<K, V>(new DataOutputStream
-                                        (codec.createOutputStream(fileOut)),
+                                        (ParallelCompressionOutputStream
+                                         .createOutputStream(codec, fileOut,
+                                                             job)),
                                         keyValueSeparator);
     }
   }
@@ -428,7 +428,12 @@ private void writeConf(Configuration conf, Path jobFile)
       FileSystem.create(jtFs, jobFile, 
                         new FsPermission(JobSubmissionFiles.JOB_FILE_PERMISSION));
     try {
-      conf.writeXml(out);
+      if (conf.getBoolean(MRJobConfig.JOB_CONF_BINARY,
+          MRJobConfig.DEFAULT_JOB_CONF_BINARY)) {
+        conf.writeBinary(out);
+      } else {
+        conf.writeXml(out);
+      }
     } finally {
       out.close();
     }
@@ -333,6 +333,14 @@ public interface MRJobConfig {
   public static final String JOB_UBERTASK_MAXBYTES =
     "mapreduce.job.ubertask.maxbytes";
 
+  /**
+   * Whether the job configuration files handed to the AM and the tasks are
+   * written in the binary format of Configuration, which loads faster than
+   * XML.
+   */
+  public static final String JOB_CONF_BINARY = "mapreduce.job.conf.binary";
+  public static final boolean DEFAULT_JOB_CONF_BINARY = false;
+
   public static final String MR_PREFIX = "yarn.app.mapreduce.";
 
   public static final String MR_AM_PREFIX = MR_PREFIX + "am.";
@@ -33,6 +33,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.ParallelCompressionOutputStream;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -134,7 +135,9 @@ void close(TaskAttemptContext context) throws IOException {
     } else {
       FSDataOutputStream fileOut = fs.create(file, false);
       return new LineRecordWriter<K, V>(new DataOutputStream
-                                        (codec.createOutputStream(fileOut)),
+                                        (ParallelCompressionOutputStream
+                                         .createOutputStream(codec, fileOut,
+                                                             conf)),
                                         keyValueSeparator);
     }
   }